@@ -11,10 +11,11 @@ import javafx.stage.Stage;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.database.WorkingCopy;
 import com.passwordmanager.ui.LoginDialog;
 import com.passwordmanager.ui.SignUpDialog;
-import com.passwordmanager.security.SecurityKeyManager;
-import java.sql.SQLException;
+import com.passwordmanager.security.KdfCalibrator;
+import com.passwordmanager.security.CipherSuite;
 import com.passwordmanager.ui.MainWindow;
 import java.io.File;
 import java.io.FileInputStream;
@@ -23,8 +24,15 @@ import com.passwordmanager.security.LoginAttemptManager;
 public class App extends Application {
     private DatabaseManager dbManager;
     private static final String APP_TITLE = "The Password Vault";
+    /**
+     * The key failed logins are counted under. The vault holds one account, so
+     * every wrong password or recovery code counts against it, whatever was typed.
+     */
+    private static final String VAULT_ACCOUNT = "vault";
+    private static WorkingCopy.Mode workingCopyMode;
 
     public static void main(String[] args) {
+        workingCopyMode = parseWorkingCopyMode(args);
         try {
             launch(args);
         } catch (RuntimeException e) {
@@ -39,13 +47,17 @@ public class App extends Application {
     @Override
     public void start(Stage stage) {
         try {
-            dbManager = new DatabaseManager();
+            dbManager = new DatabaseManager(workingCopyMode);
         } catch (Exception e) {
             showError("Database Error", "Failed to initialize database.");
             e.printStackTrace();
             return;
         }
 
+        // Measure the key derivation cost while the user is still on the welcome screen
+        KdfCalibrator.startInBackground();
+        CipherSuite.startProbeInBackground();
+
         // Create welcome screen
         VBox welcomeBox = new VBox(15);
         welcomeBox.setAlignment(Pos.CENTER);
@@ -78,43 +90,42 @@ public class App extends Application {
 
         Button loginButton = createStyledButton("Login", false);
         Button signUpButton = createStyledButton("Sign Up", false);
+        Hyperlink recoveryLink = new Hyperlink("Use a recovery code");
 
         VBox buttonContainer = new VBox(10);
         buttonContainer.setAlignment(Pos.CENTER);
-        buttonContainer.getChildren().addAll(loginButton, signUpButton);
+        buttonContainer.getChildren().addAll(loginButton, signUpButton, recoveryLink);
 
         welcomeBox.getChildren().addAll(titleLabel, buttonContainer);
 
         loginButton.setOnAction(e -> {
-            LoginDialog loginDialog = new LoginDialog(stage);
+            LoginDialog loginDialog = new LoginDialog(stage, dbManager);
             loginDialog.showAndWait().ifPresent(result -> {
-                String username = result.getMasterPassword(); 
                 LoginAttemptManager attemptManager = LoginAttemptManager.getInstance();
                 
-                if (attemptManager.isLockedOut(username)) {
-                    long remainingSeconds = attemptManager.getRemainingLockoutSeconds(username);
+                if (attemptManager.isLockedOut(VAULT_ACCOUNT)) {
+                    long remainingSeconds = attemptManager.getRemainingLockoutSeconds(VAULT_ACCOUNT);
                     showError("Account Locked", 
                         String.format("Too many failed attempts. Please try again in %d seconds.", remainingSeconds));
+                    dbManager.discardSpeculativeKEKs();
                     return;
                 }
                 
                 try {
-                    if (dbManager.verifyMasterPassword(result.getMasterPassword()) &&
-                        SecurityKeyManager.verifyKeyFile(result.getMasterPassword(), result.getKeyFilePath())) {
+                    if (dbManager.unlockWithKeyFile(result.getMasterPassword(), result.getKeyFilePath())) {
                         
-                        attemptManager.resetAttempts(username);
+                        attemptManager.resetAttempts(VAULT_ACCOUNT);
                         
-                        dbManager.initializeDatabase(result.getMasterPassword());
                         showMainWindow(stage);
                     } else {
-                        attemptManager.recordFailedAttempt(username);
+                        attemptManager.recordFailedAttempt(VAULT_ACCOUNT);
                         
-                        int remainingAttempts = attemptManager.getRemainingAttempts(username);
+                        int remainingAttempts = attemptManager.getRemainingAttempts(VAULT_ACCOUNT);
                         if (remainingAttempts > 0) {
                             showError("Login Failed", 
                                 String.format("Invalid password or key file. %d attempts remaining.", remainingAttempts));
                         } else {
-                            long lockoutSeconds = attemptManager.getRemainingLockoutSeconds(username);
+                            long lockoutSeconds = attemptManager.getRemainingLockoutSeconds(VAULT_ACCOUNT);
                             showError("Account Locked", 
                                 String.format("Too many failed attempts. Please try again in %d seconds.", lockoutSeconds));
                         }
@@ -122,6 +133,45 @@ public class App extends Application {
                 } catch (Exception ex) {
                     showError("Login Error", "An error occurred during login.");
                     ex.printStackTrace();
+                } finally {
+                    dbManager.discardSpeculativeKEKs();
+                }
+            });
+        });
+
+        recoveryLink.setOnAction(e -> {
+            TextInputDialog recoveryDialog = new TextInputDialog();
+            recoveryDialog.initOwner(stage);
+            recoveryDialog.setTitle("Recovery Code");
+            recoveryDialog.setHeaderText("Enter one of your recovery codes");
+            recoveryDialog.setContentText("Code:");
+            recoveryDialog.showAndWait().ifPresent(code -> {
+                LoginAttemptManager attemptManager = LoginAttemptManager.getInstance();
+                if (attemptManager.isLockedOut(VAULT_ACCOUNT)) {
+                    showError("Account Locked",
+                        String.format("Too many failed attempts. Please try again in %d seconds.",
+                            attemptManager.getRemainingLockoutSeconds(VAULT_ACCOUNT)));
+                    return;
+                }
+                try {
+                    if (dbManager.unlockWithRecoveryCode(code)) {
+                        attemptManager.resetAttempts(VAULT_ACCOUNT);
+                        showMainWindow(stage);
+                    } else {
+                        attemptManager.recordFailedAttempt(VAULT_ACCOUNT);
+                        int remainingAttempts = attemptManager.getRemainingAttempts(VAULT_ACCOUNT);
+                        if (remainingAttempts > 0) {
+                            showError("Login Failed",
+                                String.format("The recovery code is not valid. %d attempts remaining.", remainingAttempts));
+                        } else {
+                            showError("Account Locked",
+                                String.format("Too many failed attempts. Please try again in %d seconds.",
+                                    attemptManager.getRemainingLockoutSeconds(VAULT_ACCOUNT)));
+                        }
+                    }
+                } catch (Exception ex) {
+                    showError("Login Error", "An error occurred during login: " + ex.getMessage());
+                    ex.printStackTrace();
                 }
             });
         });
@@ -138,26 +188,13 @@ public class App extends Application {
                         return;
                     }
 
-                    if (dbManager.createUser(result.getMasterPassword())) {
-                        try {
-                            SecurityKeyManager.generateKeyFile(
-                                result.getMasterPassword(), 
-                                result.getKeyFilePath()
-                            );
-                            
-                            showInfo("Account Created", 
-                                "Account created successfully!\n" +
-                                "Your key file has been saved to:\n" + 
-                                result.getKeyFilePath() + "\n\n" +
-                                "IMPORTANT: Keep this file safe - you will need it to log in!");
-                        } catch (Exception ex) {
-                            try {
-                                dbManager.deleteUser();
-                            } catch (SQLException deleteEx) {
-                                deleteEx.printStackTrace();
-                            }
-                            throw ex;
-                        }
+                    if (dbManager.createUser(result.getMasterPassword(), result.getKdfAlgorithm(),
+                                             result.getKeyFilePath())) {
+                        showInfo("Account Created", 
+                            "Account created successfully!\n" +
+                            "Your key file has been saved to:\n" + 
+                            result.getKeyFilePath() + "\n\n" +
+                            "IMPORTANT: Keep this file safe - you will need it to log in!");
                     } else {
                         showError("Sign Up Failed", 
                             "Failed to create account.\n" +
@@ -268,6 +305,22 @@ public class App extends Application {
         alert.showAndWait();
     }
 
+    /**
+     * Reads {@code --working-copy} (a local file) or {@code --working-copy=memory}
+     * from the command line, for running from a USB stick
+     */
+    private static WorkingCopy.Mode parseWorkingCopyMode(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--working-copy") || arg.equals("--working-copy=local")) {
+                return WorkingCopy.Mode.LOCAL_FILE;
+            }
+            if (arg.equals("--working-copy=memory")) {
+                return WorkingCopy.Mode.MEMORY;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void stop() {
         if (dbManager != null) {
@@ -0,0 +1,73 @@
+package com.passwordmanager.audit;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One action a user took on the vault
+ * @param time Milliseconds since the epoch
+ * @param entryId The entry acted on, or 0 for the vault as a whole
+ * @param detail What else is worth knowing, such as which field was copied; may be empty
+ */
+public record AuditEvent(long time, Type type, int entryId, String detail) {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public enum Type {
+        VIEWED,
+        COPIED,
+        CLIPBOARD_CLEARED,
+        CREATED,
+        EDITED,
+        DELETED,
+        RESTORED,
+        EXPORTED,
+        SYNCED,
+        SYNC_CONFLICT
+    }
+
+    public AuditEvent {
+        detail = detail == null ? "" : detail.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Writes events one per line, with tab separated fields
+     */
+    public static String encodeAll(List<AuditEvent> events) {
+        StringBuilder text = new StringBuilder(events.size() * 48);
+        for (AuditEvent event : events) {
+            text.append(event.time).append('\t').append(event.type).append('\t')
+                .append(event.entryId).append('\t').append(event.detail).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads events written by {@link #encodeAll(List)}
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static List<AuditEvent> decodeAll(String text) {
+        List<AuditEvent> events = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", 4);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Malformed audit event: " + line);
+            }
+            events.add(new AuditEvent(Long.parseLong(fields[0]), Type.valueOf(fields[1]),
+                Integer.parseInt(fields[2]), fields[3]));
+        }
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        String when = TIME_FORMAT.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+        String what = entryId > 0 ? type + " entry " + entryId : type.toString();
+        return detail.isEmpty() ? when + "  " + what : when + "  " + what + "  " + detail;
+    }
+}
@@ -0,0 +1,182 @@
+package com.passwordmanager.audit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects audit events and hands them to a {@link Sink} in batches from a
+ * background thread, so recording an event costs the UI thread one
+ * compare-and-set and one array write, and never waits on the database.
+ *
+ * Events go into a fixed ring of {@value #CAPACITY} slots that any thread
+ * may add to without locking; only the flushing thread takes them out. A
+ * slot is free again once it has been emptied, so a full ring drops new
+ * events rather than block, and counts them in {@link #getDroppedCount()}.
+ * Events the sink could not take, for instance while the vault is locked,
+ * are kept and offered again with the next batch, up to a limit.
+ *
+ * The journal of the logged in user is reachable through
+ * {@link #record(AuditEvent.Type, int, String)}, so UI code can report
+ * actions without being handed the journal.
+ */
+public class AuditJournal implements AutoCloseable {
+    /** A power of two, so slot indexes are a mask of the sequence number */
+    public static final int CAPACITY = 4096;
+    public static final int FLUSH_INTERVAL_MILLIS = 1000;
+    /** The most events kept for retry while the sink fails */
+    private static final int MAX_PENDING = 4 * CAPACITY;
+
+    private static volatile AuditJournal active;
+
+    /**
+     * Where batches of events are stored
+     */
+    public interface Sink {
+        /**
+         * @return false if the events cannot be stored now, such as while the
+         *         vault is locked; they are offered again with the next batch
+         */
+        boolean write(List<AuditEvent> events) throws SQLException;
+    }
+
+    private final Sink sink;
+    private final AtomicReferenceArray<AuditEvent> slots = new AtomicReferenceArray<>(CAPACITY);
+    /** The sequence number the next added event gets */
+    private final AtomicLong tail = new AtomicLong();
+    /** The sequence number of the next event to take out; only the flushing thread advances it */
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final List<AuditEvent> pending = new ArrayList<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long written;
+
+    /**
+     * Creates a journal and starts flushing it every {@value #FLUSH_INTERVAL_MILLIS} ms
+     */
+    public AuditJournal(Sink sink) {
+        this.sink = sink;
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+            FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes a journal the one {@link #record(AuditEvent.Type, int, String)} adds to
+     */
+    public static void setActive(AuditJournal journal) {
+        active = journal;
+    }
+
+    /**
+     * Records an event in the active journal. Does nothing if no user is logged in.
+     * @param entryId The entry acted on, or 0 for the vault as a whole
+     */
+    public static void record(AuditEvent.Type type, int entryId, String detail) {
+        AuditJournal journal = active;
+        if (journal != null) {
+            journal.append(new AuditEvent(System.currentTimeMillis(), type, entryId, detail));
+        }
+    }
+
+    /**
+     * Adds an event without blocking
+     * @return false if the ring is full and the event was dropped
+     */
+    public boolean append(AuditEvent event) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= CAPACITY) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) (sequence & (CAPACITY - 1)), event);
+        return true;
+    }
+
+    /**
+     * Takes every event added so far out of the ring and writes them to the
+     * sink as one batch
+     * @return The number of events written; 0 if the sink could not take them yet
+     * @throws SQLException if the sink fails; the events are kept for the next flush
+     */
+    public synchronized int flush() throws SQLException {
+        long sequence = head.get();
+        AuditEvent event;
+        // A claimed slot stays empty until its event is stored; it and the slots after it wait for the next flush
+        while ((event = slots.get((int) (sequence & (CAPACITY - 1)))) != null) {
+            pending.add(event);
+            slots.set((int) (sequence & (CAPACITY - 1)), null);
+            sequence++;
+        }
+        head.set(sequence);
+
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        if (pending.size() > MAX_PENDING) {
+            int excess = pending.size() - MAX_PENDING;
+            pending.subList(0, excess).clear();
+            dropped.add(excess);
+        }
+        List<AuditEvent> batch = new ArrayList<>(pending);
+        if (!sink.write(batch)) {
+            return 0;
+        }
+        pending.clear();
+        written += batch.size();
+        return batch.size();
+    }
+
+    /**
+     * @return How many events were lost because the ring, or the list kept for retry, was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return How many events the sink has taken
+     */
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Stops the background thread and writes what is left. The journal is
+     * no longer the active one afterwards.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (active == this) {
+            active = null;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            // Retried at the next interval
+            System.err.println("Failed to write audit events: " + e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.passwordmanager.backup;
 
+import com.passwordmanager.database.DatabaseManager;
 import com.passwordmanager.security.Encryptor;
 import com.passwordmanager.security.SecureWiper;
 import javax.crypto.SecretKey;
@@ -74,63 +75,104 @@ public class BackupManager {
     public void restoreBackup(String backupPath, String targetPath) throws Exception {
         Path tempDir = Files.createTempDirectory("db_restore_");
         try {
-            byte[] decryptedZipData;
-            String storedChecksum;
+            Path restoredDb = extractDatabase(backupPath, tempDir);
+
+            Files.copy(restoredDb, 
+                     Paths.get(targetPath), 
+                     StandardCopyOption.REPLACE_EXISTING);
+
+        } finally {
+            SecureWiper.secureTempCleanup(tempDir.toFile());
+        }
+    }
+
+    /**
+     * Restores a backup into a running database without closing its connection
+     * @param backupPath The path to the backup file
+     * @param dbManager The logged-in database to restore into
+     * @throws Exception if restoration fails
+     */
+    public void restoreInto(String backupPath, DatabaseManager dbManager) throws Exception {
+        Path tempDir = Files.createTempDirectory("db_restore_");
+        try {
+            Path restoredDb = extractDatabase(backupPath, tempDir);
+            dbManager.replaceDatabase(restoredDb);
+        } finally {
+            SecureWiper.secureTempCleanup(tempDir.toFile());
+        }
+    }
+
+    /**
+     * Opens a backup as a read-only, in-memory database so that single entries
+     * can be browsed and restored without replacing the live database.
+     * The caller is responsible for closing the returned connection.
+     * @param backupPath The path to the backup file
+     * @param userId The user whose entries should be visible
+     * @return A database manager backed by an in-memory copy of the backup
+     * @throws Exception if the backup cannot be decrypted or loaded
+     */
+    public DatabaseManager openBackup(String backupPath, int userId) throws Exception {
+        Path tempDir = Files.createTempDirectory("db_browse_");
+        try {
+            Path restoredDb = extractDatabase(backupPath, tempDir);
+            return DatabaseManager.openSnapshot(restoredDb, masterKey, userId);
+        } finally {
+            SecureWiper.secureTempCleanup(tempDir.toFile());
+        }
+    }
+
+    private Path extractDatabase(String backupPath, Path tempDir) throws Exception {
+        byte[] decryptedZipData;
+        String storedChecksum;
+        
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(backupPath))) {
             
-            try (DataInputStream in = new DataInputStream(
-                    new FileInputStream(backupPath))) {
-                
-                int version = in.readInt();
-                if (version > CURRENT_BACKUP_VERSION) {
-                    throw new Exception("Backup version " + version + 
-                        " is newer than supported version " + CURRENT_BACKUP_VERSION);
-                }
+            int version = in.readInt();
+            if (version > CURRENT_BACKUP_VERSION) {
+                throw new Exception("Backup version " + version + 
+                    " is newer than supported version " + CURRENT_BACKUP_VERSION);
+            }
 
-                storedChecksum = in.readUTF();
+            storedChecksum = in.readUTF();
+            
+            try {
+                int encryptedLength = in.readInt();
+                byte[] encryptedData = new byte[encryptedLength];
                 
-                try {
-                    int encryptedLength = in.readInt();
-                    byte[] encryptedData = new byte[encryptedLength];
+                in.readFully(encryptedData);
+
+                Encryptor encryptor = new Encryptor(masterKey);
+                decryptedZipData = encryptor.decryptBytes(encryptedData);
+            } catch (EOFException e) {
+                in.close();
+                try (DataInputStream oldIn = new DataInputStream(
+                        new FileInputStream(backupPath))) {
+                    oldIn.readInt();
+                    oldIn.readUTF();
+                    
+                    String encryptedString = oldIn.readUTF();
                     
-                    in.readFully(encryptedData);
-
                     Encryptor encryptor = new Encryptor(masterKey);
-                    decryptedZipData = encryptor.decryptBytes(encryptedData);
-                } catch (EOFException e) {
-                    in.close();
-                    try (DataInputStream oldIn = new DataInputStream(
-                            new FileInputStream(backupPath))) {
-                        oldIn.readInt();
-                        oldIn.readUTF();
-                        
-                        String encryptedString = oldIn.readUTF();
-                        
-                        Encryptor encryptor = new Encryptor(masterKey);
-                        String decryptedString = encryptor.decrypt(encryptedString);
-                        decryptedZipData = decryptedString.getBytes();
-                    }
+                    String decryptedString = encryptor.decrypt(encryptedString);
+                    decryptedZipData = decryptedString.getBytes();
                 }
             }
+        }
 
-            String calculatedChecksum = calculateChecksum(decryptedZipData);
-            if (!storedChecksum.equals(calculatedChecksum)) {
-                throw new Exception("Backup file is corrupted or has been tampered with");
-            }
+        String calculatedChecksum = calculateChecksum(decryptedZipData);
+        if (!storedChecksum.equals(calculatedChecksum)) {
+            throw new Exception("Backup file is corrupted or has been tampered with");
+        }
 
-            Path tempZip = tempDir.resolve("temp.zip");
-            Files.write(tempZip, decryptedZipData);
+        Path tempZip = tempDir.resolve("temp.zip");
+        Files.write(tempZip, decryptedZipData);
 
-            unzipFile(tempZip.toFile(), tempDir.toFile());
+        unzipFile(tempZip.toFile(), tempDir.toFile());
 
-            verifyBackupMetadata(tempDir.resolve(METADATA_FILE));
+        verifyBackupMetadata(tempDir.resolve(METADATA_FILE));
 
-            Files.copy(tempDir.resolve("database.db"), 
-                     Paths.get(targetPath), 
-                     StandardCopyOption.REPLACE_EXISTING);
-
-        } finally {
-            SecureWiper.secureTempCleanup(tempDir.toFile());
-        }
+        return tempDir.resolve("database.db");
     }
 
     private String createBackupMetadata() {
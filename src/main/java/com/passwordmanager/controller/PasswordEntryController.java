@@ -156,14 +156,7 @@ public class PasswordEntryController {
     public PasswordEntry getEntry() throws ValidationException {
         handleSave();
         if (entry != null) {
-            InputValidator.validatePasswordEntry(
-                entry.getTitle(),
-                entry.getUsername(),
-                entry.getPassword(),
-                entry.getUrl(),
-                entry.getNotes(),
-                entry.getCategory()
-            );
+            InputValidator.validatePasswordEntry(entry.getTitle(), entry.getUsernameSecret(), entry.getPasswordSecret());
             return entry;
         }
         throw new ValidationException("No entry data available");
@@ -9,66 +9,327 @@ import java.sql.ResultSet;
 import java.io.File;
 import com.passwordmanager.security.PasswordHasher;
 import com.passwordmanager.model.PasswordEntry;
+import com.passwordmanager.model.EntrySummary;
+import com.passwordmanager.model.DeletedEntrySummary;
+import com.passwordmanager.model.ColumnarVault;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.OptionalInt;
+import com.passwordmanager.security.CipherSuite;
 import com.passwordmanager.security.Encryptor;
+import com.passwordmanager.security.Hkdf;
 import javax.crypto.SecretKey;
 import com.passwordmanager.security.SaltManager;
+import com.passwordmanager.security.KdfCalibrator;
+import com.passwordmanager.security.KdfParameters;
+import com.passwordmanager.security.KekCache;
+import com.passwordmanager.security.KeyFile;
+import com.passwordmanager.security.KeyFileSecret;
+import com.passwordmanager.security.KeySlot;
+import com.passwordmanager.security.KeySlotManager;
+import com.passwordmanager.security.RecoveryCode;
+import com.passwordmanager.security.SecurityKeyManager;
+import com.passwordmanager.security.SessionTicket;
+import com.passwordmanager.security.Scrypt;
 import com.passwordmanager.security.InputValidator;
 import com.passwordmanager.security.InputValidator.ValidationException;
+import com.passwordmanager.security.SecretBuffer;
 import com.passwordmanager.security.SecureWiper;
+import com.passwordmanager.security.WipePolicy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import com.passwordmanager.model.Attachment;
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.audit.AuditJournal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DatabaseManager {
     private static final String DB_NAME = "passwords.db";
     private Connection connection;
     private Encryptor encryptor;
     private int currentUserId = -1;
+    private SecretKey kek;
+    private KdfParameters kdfParameters;
+    private final ReentrantReadWriteLock accessLock = new ReentrantReadWriteLock();
+    private VaultSession session = new VaultSession();
+    private final KekCache kekCache = new KekCache();
+    private CompletableFuture<Void> maintenance = CompletableFuture.completedFuture(null);
+    private int keyVersion;
+    private Encryptor previousEncryptor;
+    /** The previous key after a finished rotation, kept until vaults loaded before it are replaced */
+    private Encryptor retiredEncryptor;
+    private static final int KEY_ROTATION_BATCH_SIZE = 256;
+    private KeySlot loginSlot;
+    private SecretKey loginSlotKek;
+    private SessionTicket sessionTicket;
+    private CipherSuite cipherSuite = CipherSuite.AES_GCM;
+    private boolean locked;
+    /** Entry changes are queued here and committed in batches; see {@link GroupCommitEntryStore}. */
+    private GroupCommitEntryStore entryStore;
+    private WorkingCopy workingCopy;
+    private ScheduledExecutorService writeBackTimer;
+    private static final int WRITE_BACK_INTERVAL_SECONDS = 30;
+    private ScheduledExecutorService trashPurger;
+    /** Audit events of the current user; see {@link AuditJournal}. */
+    private AuditJournal auditJournal;
+    /** Entries in the trash are erased for good this long after they were deleted. */
+    public static final int TRASH_RETENTION_DAYS = 30;
+    private static final int TRASH_PURGE_BATCH_SIZE = 100;
+    private static final int TRASH_PURGE_INTERVAL_MINUTES = 60;
+    /** The users columns needed to unlock a user. */
+    private static final String USER_KEY_COLUMNS = "id, encrypted_dek, pending_dek, key_version, cipher_suite, " + KdfParameters.COLUMNS;
+    private static final String KEYSLOTS_TABLE = """
+        CREATE TABLE IF NOT EXISTS keyslots (
+            id INTEGER PRIMARY KEY,
+            user_id INTEGER NOT NULL,
+            slot_type TEXT NOT NULL,
+            lookup_id TEXT NOT NULL UNIQUE,
+            wrapped_dek TEXT NOT NULL,
+            salt TEXT NOT NULL,
+            kdf_algorithm TEXT NOT NULL,
+            kdf_iterations INTEGER NOT NULL,
+            kdf_block_size INTEGER NOT NULL DEFAULT 1,
+            kdf_parallelism INTEGER NOT NULL DEFAULT 1,
+            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            FOREIGN KEY (user_id) REFERENCES users(id)
+        )
+    """;
+
+    /** Attachment metadata; chunk_count stays NULL until every chunk is stored. */
+    private static final String ATTACHMENTS_TABLE = """
+        CREATE TABLE IF NOT EXISTS attachments (
+            id INTEGER PRIMARY KEY,
+            user_id INTEGER NOT NULL,
+            entry_id INTEGER NOT NULL,
+            name TEXT NOT NULL,
+            size INTEGER NOT NULL DEFAULT 0,
+            chunk_count INTEGER,
+            key_version INTEGER NOT NULL DEFAULT 0,
+            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            sync_id TEXT,
+            FOREIGN KEY (user_id) REFERENCES users(id),
+            FOREIGN KEY (entry_id) REFERENCES passwords(id)
+        )
+    """;
+    private static final String ATTACHMENT_CHUNKS_TABLE = """
+        CREATE TABLE IF NOT EXISTS attachment_chunks (
+            attachment_id INTEGER NOT NULL,
+            chunk_index INTEGER NOT NULL,
+            data BLOB NOT NULL,
+            key_version INTEGER NOT NULL DEFAULT 0,
+            PRIMARY KEY (attachment_id, chunk_index),
+            FOREIGN KEY (attachment_id) REFERENCES attachments(id)
+        )
+    """;
+    /**
+     * Prior versions of entries. Each row holds only the fields that differ from
+     * the next newer version, flagged in changed_fields; the others stay NULL.
+     */
+    private static final String PASSWORD_HISTORY_TABLE = """
+        CREATE TABLE IF NOT EXISTS password_history (
+            id INTEGER PRIMARY KEY,
+            user_id INTEGER NOT NULL,
+            entry_id INTEGER NOT NULL,
+            changed_fields INTEGER NOT NULL,
+            title TEXT,
+            username TEXT,
+            password TEXT,
+            url TEXT,
+            notes TEXT,
+            category TEXT,
+            last_modified INTEGER,
+            key_version INTEGER NOT NULL DEFAULT 0,
+            FOREIGN KEY (user_id) REFERENCES users(id),
+            FOREIGN KEY (entry_id) REFERENCES passwords(id)
+        )
+    """;
+    /** The most prior versions kept per entry; older ones are dropped. */
+    public static final int PASSWORD_HISTORY_LIMIT = 10;
+    private static final String[] HISTORY_FIELDS = {"title", "username", "password", "url", "notes", "category"};
+    /** Batches of audit events, each encrypted as a whole; rows are only ever added or rotated out. */
+    private static final String AUDIT_JOURNAL_TABLE = """
+        CREATE TABLE IF NOT EXISTS audit_journal (
+            id INTEGER PRIMARY KEY,
+            user_id INTEGER NOT NULL,
+            first_event_at INTEGER NOT NULL,
+            event_count INTEGER NOT NULL,
+            data TEXT NOT NULL,
+            key_version INTEGER NOT NULL DEFAULT 0,
+            FOREIGN KEY (user_id) REFERENCES users(id)
+        )
+    """;
+    /** Once a user's journal holds more than this, its oldest batches are dropped. */
+    public static final int AUDIT_JOURNAL_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int ATTACHMENT_CHUNK_SIZE = 64 * 1024;
+    /** Chunks are larger than entries, so fewer of them are re-encrypted per batch. */
+    private static final int CHUNK_ROTATION_BATCH_SIZE = 16;
 
     public DatabaseManager() {
+        this(null);
+    }
+
+    /**
+     * Opens the vault, optionally through a working copy on fast storage that
+     * is written back to {@code passwords.db} every
+     * {@value #WRITE_BACK_INTERVAL_SECONDS} seconds, on lock and on close.
+     * @param workingCopyMode Where to keep the working copy, or null to use the file directly
+     */
+    public DatabaseManager(WorkingCopy.Mode workingCopyMode) {
         try {
             boolean isNewDatabase = !new File(DB_NAME).exists();
             
             File dbFile = new File(DB_NAME);
             System.out.println("Database location: " + dbFile.getAbsolutePath());
-            connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
+            if (workingCopyMode == null) {
+                connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
+            } else {
+                workingCopy = new WorkingCopy(dbFile.toPath(), workingCopyMode);
+                connection = workingCopy.open();
+                writeBackTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "working-copy-write-back");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                writeBackTimer.scheduleWithFixedDelay(this::writeBackQuietly,
+                    WRITE_BACK_INTERVAL_SECONDS, WRITE_BACK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            }
             
             if (isNewDatabase) {
                 System.out.println("Creating new database...");
                 createTables();
             }
+            migrateSchema();
+            deleteIncompleteAttachments();
         } catch (SQLException e) {
             System.err.println("Error initializing database connection: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private DatabaseManager(Connection connection, SecretKey dek, int userId) {
+        this.connection = connection;
+        this.encryptor = new Encryptor(dek);
+        this.currentUserId = userId;
+        this.entryStore = new GroupCommitEntryStore(new SqliteEntryStore(connection, userId), accessLock);
+    }
+
+    /**
+     * Opens a read-only, in-memory copy of a database file. The file is loaded
+     * completely into memory, so it can be wiped as soon as this call returns.
+     * @param dbFile The database file to load
+     * @param dek The data encryption key the file's entries are encrypted with
+     * @param userId The user whose entries should be visible
+     * @return A database manager backed by the in-memory copy
+     * @throws SQLException if the file cannot be loaded
+     */
+    public static DatabaseManager openSnapshot(Path dbFile, SecretKey dek, int userId) throws SQLException {
+        Connection snapshot = DriverManager.getConnection("jdbc:sqlite::memory:");
+        DatabaseManager manager = new DatabaseManager(snapshot, dek, userId);
+        try (Statement stmt = snapshot.createStatement()) {
+            SqliteBackup.restore(snapshot, dbFile);
+            // Only the in-memory copy is migrated, so backups from older versions can be read
+            manager.migrateSchema();
+            try (PreparedStatement pstmt = snapshot.prepareStatement("SELECT cipher_suite FROM users WHERE id = ?")) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        manager.cipherSuite = CipherSuite.forName(rs.getString("cipher_suite"));
+                        manager.encryptor = new Encryptor(dek, manager.cipherSuite);
+                    }
+                }
+            }
+            stmt.execute("PRAGMA query_only = true");
+        } catch (SQLException e) {
+            manager.closeEntryStore();
+            snapshot.close();
+            throw e;
+        }
+        return manager;
+    }
+
+    /**
+     * Opens another copy of the vault, such as the one on a USB stick, to
+     * synchronize with through {@link VaultSync}. Changes are written to the
+     * file directly.
+     * @param dbFile The database file of the other copy
+     * @param dek The data encryption key of the current vault, which the other copy must share
+     * @param userId The user whose entries should be synchronized
+     * @return A database manager for the other copy; close it with {@link #closeConnection()}
+     * @throws SQLException if the file does not exist, has no such user, or is encrypted with another key
+     */
+    public static DatabaseManager openForSync(Path dbFile, SecretKey dek, int userId) throws SQLException {
+        if (!Files.isRegularFile(dbFile)) {
+            throw new SQLException("No vault found at " + dbFile);
+        }
+        Connection peer = DriverManager.getConnection("jdbc:sqlite:" + dbFile.toAbsolutePath());
+        DatabaseManager manager = new DatabaseManager(peer, dek, userId);
+        try {
+            manager.migrateSchema();
+            String sql = "SELECT key_version, cipher_suite, pending_dek FROM users WHERE id = ?";
+            try (PreparedStatement pstmt = peer.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("The other vault does not belong to this user");
+                    }
+                    if (rs.getString("pending_dek") != null) {
+                        throw new SQLException("The other vault has an unfinished key rotation. Log in to it first.");
+                    }
+                    manager.keyVersion = rs.getInt("key_version");
+                    manager.cipherSuite = CipherSuite.forName(rs.getString("cipher_suite"));
+                    manager.encryptor = new Encryptor(dek, manager.cipherSuite);
+                }
+            }
+            List<StoredEntry> sample = manager.entryStore.listSummaries();
+            if (!sample.isEmpty()) {
+                try {
+                    manager.encryptor.decrypt(sample.get(0).title());
+                } catch (Exception e) {
+                    throw new SQLException("The other vault is encrypted with a different key", e);
+                }
+            }
+        } catch (SQLException e) {
+            manager.closeEntryStore();
+            peer.close();
+            throw e;
+        }
+        return manager;
+    }
+
     public void initializeDatabase(String masterPassword) throws SQLException {
+        awaitMaintenance();
         try {
-            String sql = "SELECT id, current_salt, encrypted_dek FROM users";
+            String sql = "SELECT " + USER_KEY_COLUMNS + " FROM users";
             try (Statement stmt = connection.createStatement();
                  ResultSet rs = stmt.executeQuery(sql)) {
                 
                 boolean userFound = false;
                 while (rs.next()) {
-                    int userId = rs.getInt("id");
-                    String salt = rs.getString("current_salt");
-                    String encryptedDEK = rs.getString("encrypted_dek");
+                    KdfParameters params = KdfParameters.fromResultSet(rs);
                     
                     try {
-                        SecretKey kek = Encryptor.deriveKEK(masterPassword, salt);
-                        
-                        SecretKey dek = Encryptor.decryptDEK(encryptedDEK, kek);
+                        SecretKey kek = deriveKEK(masterPassword, params);
                         
-                        currentUserId = userId;
-                        encryptor = new Encryptor(dek);
+                        SecretKey dek = Encryptor.decryptDEK(rs.getString("encrypted_dek"), kek);
                         
-                        SaltManager saltManager = new SaltManager(connection, userId, masterPassword);
-                        saltManager.rotateSaltIfNeeded();
+                        openUser(rs, masterPassword, kek, dek, null, null);
                         
-                        System.out.println("Encryptor initialized successfully for user " + userId);
                         userFound = true;
                         break;
                     } catch (Exception e) {
@@ -88,6 +349,304 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Logs in with the master password and a key file through the key file's
+     * key slot. Only the slot the key file points to is tried, and the key
+     * file is proven by the same key derivation that unwraps the DEK.
+     *
+     * Version 1 key files without a slot are checked the old way and enrolled
+     * into a slot, unless the user already has a key file slot. Version 2 key
+     * files are always enrolled when they are created.
+     * @param masterPassword The master password
+     * @param keyFilePath The key file
+     * @return true if the vault was unlocked
+     * @throws SQLException if the database cannot be read
+     */
+    public boolean unlockWithKeyFile(String masterPassword, String keyFilePath) throws SQLException {
+        KeyFileSecret keyFileSecret = SecurityKeyManager.readKeyFileSecret(keyFilePath);
+        if (keyFileSecret == null) {
+            return false;
+        }
+        try {
+            KeySlot slot = KeySlotManager.find(connection, keyFileSecret.lookupId());
+            if (slot == null) {
+                return !(keyFileSecret instanceof KeyFile)
+                    && unlockAndEnrollKeyFile(masterPassword, keyFilePath, keyFileSecret);
+            }
+            if (!KeySlot.PASSWORD_KEY_FILE.equals(slot.type())) {
+                return false;
+            }
+
+            SecretKey slotKek;
+            SecretKey dek;
+            try {
+                SecretKey passwordKek = deriveKEK(masterPassword, slot.params());
+                slotKek = keyFileSecret.slotKek(passwordKek);
+                SecureWiper.wipeKey(passwordKek);
+                dek = Encryptor.decryptDEK(slot.wrappedDek(), slotKek);
+            } catch (Exception e) {
+                return false;
+            }
+            return openUserFromSlot(slot, slotKek, dek, masterPassword);
+        } finally {
+            keyFileSecret.wipe();
+        }
+    }
+
+    /**
+     * Logs in with a recovery code, without the master password or key file.
+     * Maintenance that needs the master password, such as salt rotation, is
+     * skipped for the session.
+     * @param code The recovery code as typed
+     * @return true if the vault was unlocked
+     * @throws SQLException if the database cannot be read
+     */
+    public boolean unlockWithRecoveryCode(String code) throws SQLException {
+        RecoveryCode recoveryCode = RecoveryCode.parse(code);
+        if (recoveryCode == null) {
+            return false;
+        }
+        KeySlot slot = KeySlotManager.find(connection, recoveryCode.lookupId());
+        if (slot == null || !KeySlot.RECOVERY_CODE.equals(slot.type())) {
+            return false;
+        }
+
+        SecretKey slotKek;
+        SecretKey dek;
+        try {
+            slotKek = Encryptor.deriveKEK(recoveryCode.secret(), slot.params());
+            dek = Encryptor.decryptDEK(slot.wrappedDek(), slotKek);
+        } catch (Exception e) {
+            return false;
+        }
+        return openUserFromSlot(slot, slotKek, dek, null);
+    }
+
+    private boolean openUserFromSlot(KeySlot slot, SecretKey slotKek, SecretKey dek, String masterPassword)
+            throws SQLException {
+        awaitMaintenance();
+        String sql = "SELECT " + USER_KEY_COLUMNS + " FROM users WHERE id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, slot.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                SecretKey kek = null;
+                if (masterPassword != null) {
+                    KdfParameters params = KdfParameters.fromResultSet(rs);
+                    // Usually the slot was enrolled with the user's parameters and the key is cached
+                    kek = deriveKEK(masterPassword, params);
+                } else if (rs.getString("pending_dek") != null) {
+                    throw new SQLException("A key rotation is in progress; log in with your master password to finish it");
+                }
+                openUser(rs, masterPassword, kek, dek, slot, slotKek);
+                System.out.println("Unlocked with key slot " + slot.id() + " (" + slot.type() + ")");
+                return true;
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Failed to unlock: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean unlockAndEnrollKeyFile(String masterPassword, String keyFilePath,
+                                           KeyFileSecret keyFileSecret) throws SQLException {
+        try {
+            if (!verifyMasterPassword(masterPassword)
+                    || !SecurityKeyManager.verifyKeyFile(masterPassword, keyFilePath, kekCache)) {
+                return false;
+            }
+        } catch (Exception e) {
+            return false;
+        }
+        initializeDatabase(masterPassword);
+        KeySlotManager slots = new KeySlotManager(connection, currentUserId);
+        if (slots.hasSlot(KeySlot.PASSWORD_KEY_FILE)) {
+            // Once a key file is enrolled, other key files made with the same password are not accepted
+            closeSession();
+            encryptor.secureWipeKeys();
+            encryptor = null;
+            SecureWiper.wipeKey(kek);
+            kek = null;
+            currentUserId = -1;
+            return false;
+        }
+        enrollKeyFile(keyFileSecret, true);
+        return true;
+    }
+
+    /**
+     * Reads the user's key state from a users row selected with
+     * {@link #USER_KEY_COLUMNS} and starts the session.
+     * @param kek The KEK of the users row, or null if it is not known
+     * @param slot The key slot used to log in, or null for the master password alone
+     * @param slotKek The KEK of that slot
+     */
+    private void openUser(ResultSet rs, String masterPassword, SecretKey kek, SecretKey dek,
+                          KeySlot slot, SecretKey slotKek) throws Exception {
+        String pendingDEK = rs.getString("pending_dek");
+        currentUserId = rs.getInt("id");
+        // Set before maintenance starts, since a resumed key rotation keeps only this slot
+        loginSlot = slot;
+        loginSlotKek = slotKek;
+        openEntryStore();
+        startTrashPurger();
+        startAuditJournal();
+        this.kek = kek;
+        this.kdfParameters = KdfParameters.fromResultSet(rs);
+        keyVersion = rs.getInt("key_version");
+        cipherSuite = CipherSuite.forName(rs.getString("cipher_suite"));
+        locked = false;
+        if (pendingDEK == null) {
+            encryptor = new Encryptor(dek, cipherSuite);
+            previousEncryptor = null;
+        } else {
+            // A key rotation was interrupted; read with both keys until it finishes
+            encryptor = new Encryptor(Encryptor.decryptDEK(pendingDEK, kek), cipherSuite);
+            previousEncryptor = new Encryptor(dek, cipherSuite);
+            keyVersion++;
+        }
+
+        if (masterPassword != null) {
+            upgradeKdfIfNeeded(masterPassword, dek);
+        }
+        startMaintenance(masterPassword, dek);
+        System.out.println("Encryptor initialized successfully for user " + currentUserId);
+    }
+
+    /**
+     * Adds a key slot for a key file, with the user's current parameters so
+     * that logging in derives the same password key as the users row.
+     * @return The slot's KEK, which the caller owns
+     */
+    private SecretKey enrollKeyFile(KeyFileSecret keyFileSecret, boolean usedForLogin) throws SQLException {
+        SecretKey slotKek;
+        try {
+            slotKek = keyFileSecret.slotKek(kek);
+        } catch (Exception e) {
+            throw new SQLException("Failed to derive key slot key: " + e.getMessage(), e);
+        }
+        KeySlot slot = new KeySlotManager(connection, currentUserId)
+            .add(KeySlot.PASSWORD_KEY_FILE, keyFileSecret.lookupId(), kdfParameters, slotKek, encryptor.getDEK());
+        System.out.println("Enrolled key file into key slot " + slot.id());
+        if (usedForLogin) {
+            loginSlot = slot;
+            loginSlotKek = slotKek;
+        }
+        return slotKek;
+    }
+
+    /**
+     * Creates a spare key file that unlocks the vault together with the master
+     * password. The user must be logged in; the password is checked against
+     * the account.
+     * @param masterPassword The master password
+     * @param keyFilePath Where to write the new key file
+     * @throws SQLException if not logged in, the password is wrong, or the file cannot be written
+     */
+    public void addSpareKeyFile(String masterPassword, String keyFilePath) throws SQLException {
+        requireSingleKey();
+        if (!PasswordHasher.hashPassword(masterPassword, kdfParameters.salt()).equals(getMasterPasswordHash())) {
+            throw new SQLException("Incorrect master password");
+        }
+        KeyFile keyFile = KeyFile.generate(kdfParameters);
+        try {
+            if (kek == null) {
+                // Logged in with a recovery code, so the password KEK was never derived
+                kek = Encryptor.deriveKEK(masterPassword, kdfParameters);
+            }
+            keyFile.write(Path.of(keyFilePath));
+            SecureWiper.wipeKey(enrollKeyFile(keyFile, false));
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Failed to create key file: " + e.getMessage(), e);
+        } finally {
+            keyFile.wipe();
+        }
+    }
+
+    /**
+     * Creates a recovery code that unlocks the vault on its own. The code is
+     * only returned here and must be written down by the user.
+     * @return The formatted recovery code
+     * @throws SQLException if not logged in or the slot cannot be stored
+     */
+    public String addRecoveryCode() throws SQLException {
+        requireSingleKey();
+        RecoveryCode code = RecoveryCode.generate();
+        KdfParameters params = RecoveryCode.parameters(PasswordHasher.generateSalt());
+        SecretKey slotKek;
+        try {
+            slotKek = Encryptor.deriveKEK(code.secret(), params);
+        } catch (Exception e) {
+            throw new SQLException("Failed to derive recovery key: " + e.getMessage(), e);
+        }
+        try {
+            new KeySlotManager(connection, currentUserId)
+                .add(KeySlot.RECOVERY_CODE, code.lookupId(), params, slotKek, encryptor.getDEK());
+        } finally {
+            SecureWiper.wipeKey(slotKek);
+        }
+        return code.toString();
+    }
+
+    /**
+     * Gets the current user's key slots
+     * @return The slots, oldest first
+     * @throws SQLException if not logged in
+     */
+    public List<KeySlot> getKeySlots() throws SQLException {
+        if (currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        return new KeySlotManager(connection, currentUserId).list();
+    }
+
+    /**
+     * Gets the key slots a key rotation would revoke: all but the one used to
+     * log in, since only that slot's KEK is known
+     * @return The slots, oldest first
+     * @throws SQLException if not logged in
+     */
+    public List<KeySlot> getKeySlotsRevokedByRotation() throws SQLException {
+        int keep = loginSlot != null ? loginSlot.id() : -1;
+        return getKeySlots().stream().filter(slot -> slot.id() != keep).toList();
+    }
+
+    /**
+     * Revokes one of the current user's key slots. No data is re-encrypted.
+     * @param slotId The slot's id
+     * @return true if the slot existed
+     * @throws SQLException if not logged in
+     */
+    public boolean revokeKeySlot(int slotId) throws SQLException {
+        if (currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        return new KeySlotManager(connection, currentUserId).revoke(slotId);
+    }
+
+    private void requireSingleKey() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        if (previousEncryptor != null) {
+            throw new SQLException("The encryption key is being rotated. Please try again when it has finished.");
+        }
+    }
+
+    private String getMasterPasswordHash() throws SQLException {
+        String sql = "SELECT master_password_hash FROM users WHERE id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, currentUserId);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getString("master_password_hash") : null;
+        }
+    }
+
     private void testConnection() throws SQLException {
         try (Statement statement = connection.createStatement()) {
             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM users");
@@ -111,6 +670,14 @@ public class DatabaseManager {
                     master_password_hash TEXT NOT NULL,
                     current_salt TEXT NOT NULL,
                     encrypted_dek TEXT NOT NULL,
+                    kdf_algorithm TEXT NOT NULL DEFAULT 'PBKDF2WithHmacSHA256',
+                    kdf_iterations INTEGER NOT NULL DEFAULT 65536,
+                    kdf_block_size INTEGER NOT NULL DEFAULT 1,
+                    kdf_parallelism INTEGER NOT NULL DEFAULT 1,
+                    key_version INTEGER NOT NULL DEFAULT 0,
+                    pending_dek TEXT,
+                    cipher_suite TEXT NOT NULL DEFAULT 'AES-GCM',
+                    last_synced_at INTEGER,
                     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
                 )
             """);
@@ -126,6 +693,10 @@ public class DatabaseManager {
                     FOREIGN KEY (user_id) REFERENCES users(id)
                 )
             """);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_salt_history_user ON salt_history(user_id, created_at)");
+
+            // Create key slots, each wrapping the DEK under a different KEK source
+            statement.execute(KEYSLOTS_TABLE);
 
             // Create passwords table with user_id
             statement.execute("""
@@ -138,256 +709,2663 @@ public class DatabaseManager {
                     url TEXT,
                     notes TEXT,
                     category TEXT,
-                    last_modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    last_modified INTEGER,
+                    key_version INTEGER NOT NULL DEFAULT 0,
+                    deleted_at INTEGER,
+                    sync_id TEXT,
                     FOREIGN KEY (user_id) REFERENCES users(id)
                 )
             """);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_passwords_key_version ON passwords(user_id, key_version)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_passwords_trash ON passwords(user_id, deleted_at)");
+
+            // Create attachments, stored apart from entries so listing the vault never reads them
+            statement.execute(ATTACHMENTS_TABLE);
+            statement.execute(ATTACHMENT_CHUNKS_TABLE);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_attachments_entry ON attachments(entry_id)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_attachment_chunks_key_version ON attachment_chunks(key_version)");
+            createSyncIds(statement);
+
+            // Create password history, only read when a user asks for it
+            statement.execute(PASSWORD_HISTORY_TABLE);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_password_history_entry ON password_history(entry_id, id)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_password_history_key_version ON password_history(user_id, key_version)");
+
+            // Create the audit journal, written in batches in the background
+            statement.execute(AUDIT_JOURNAL_TABLE);
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_audit_journal_user ON audit_journal(user_id, id)");
             
             System.out.println("Database tables created successfully");
         }
     }
 
-    public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                cleanupTempFiles();
-                
-                connection.close();
-                System.out.println("Database connection closed.");
+    /**
+     * Brings databases created by older versions up to the current schema
+     */
+    private void migrateSchema() throws SQLException {
+        if (!tableExists("users")) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            if (!hasColumn("users", "kdf_algorithm")) {
+                // Existing vaults keep the iteration count they were created with
+                statement.execute("ALTER TABLE users ADD COLUMN kdf_algorithm TEXT NOT NULL DEFAULT 'PBKDF2WithHmacSHA256'");
+                statement.execute("ALTER TABLE users ADD COLUMN kdf_iterations INTEGER NOT NULL DEFAULT 65536");
+                System.out.println("Added key derivation parameters to users table");
+            }
+            if (!hasColumn("users", "kdf_parallelism")) {
+                statement.execute("ALTER TABLE users ADD COLUMN kdf_block_size INTEGER NOT NULL DEFAULT 1");
+                statement.execute("ALTER TABLE users ADD COLUMN kdf_parallelism INTEGER NOT NULL DEFAULT 1");
+                System.out.println("Added scrypt parameters to users table");
+            }
+            if (!hasColumn("users", "key_version")) {
+                statement.execute("ALTER TABLE users ADD COLUMN key_version INTEGER NOT NULL DEFAULT 0");
+                statement.execute("ALTER TABLE users ADD COLUMN pending_dek TEXT");
+                System.out.println("Added key versions to users table");
+            }
+            if (!hasColumn("users", "cipher_suite")) {
+                // Values written so far are AES-GCM, with or without a header
+                statement.execute("ALTER TABLE users ADD COLUMN cipher_suite TEXT NOT NULL DEFAULT 'AES-GCM'");
+                System.out.println("Added cipher suite to users table");
+            }
+            if (!hasColumn("users", "last_synced_at")) {
+                statement.execute("ALTER TABLE users ADD COLUMN last_synced_at INTEGER");
+                System.out.println("Added sync time to users table");
+            }
+            if (!tableExists("keyslots")) {
+                statement.execute(KEYSLOTS_TABLE);
+                System.out.println("Added key slots table");
+            }
+            if (!tableExists("attachments")) {
+                statement.execute(ATTACHMENTS_TABLE);
+                statement.execute(ATTACHMENT_CHUNKS_TABLE);
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_attachments_entry ON attachments(entry_id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_attachment_chunks_key_version ON attachment_chunks(key_version)");
+                System.out.println("Added attachments tables");
+            }
+            if (!tableExists("password_history")) {
+                statement.execute(PASSWORD_HISTORY_TABLE);
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_password_history_entry ON password_history(entry_id, id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_password_history_key_version ON password_history(user_id, key_version)");
+                System.out.println("Added password history table");
+            }
+            if (!tableExists("audit_journal")) {
+                statement.execute(AUDIT_JOURNAL_TABLE);
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_audit_journal_user ON audit_journal(user_id, id)");
+                System.out.println("Added audit journal table");
+            }
+            if (tableExists("salt_history")) {
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_salt_history_user ON salt_history(user_id, created_at)");
+            }
+            if (tableExists("passwords")) {
+                if (!hasColumn("passwords", "key_version")) {
+                    statement.execute("ALTER TABLE passwords ADD COLUMN key_version INTEGER NOT NULL DEFAULT 0");
+                    System.out.println("Added key versions to passwords table");
+                }
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_passwords_key_version ON passwords(user_id, key_version)");
+                if (!hasColumn("passwords", "deleted_at")) {
+                    statement.execute("ALTER TABLE passwords ADD COLUMN deleted_at INTEGER");
+                    System.out.println("Added trash to passwords table");
+                }
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_passwords_trash ON passwords(user_id, deleted_at)");
+                // Entries used to be stamped with SQLite's CURRENT_TIMESTAMP text, which reads back as the year
+                int converted = statement.executeUpdate("""
+                    UPDATE passwords SET last_modified = CAST(strftime('%s', last_modified) AS INTEGER) * 1000
+                    WHERE typeof(last_modified) = 'text' AND strftime('%s', last_modified) IS NOT NULL
+                """);
+                if (converted > 0) {
+                    System.out.println("Converted " + converted + " modification times to milliseconds");
+                }
+                // Copies made before sync ids existed numbered their rows alike, so ids derived from them still match
+                if (!hasColumn("passwords", "sync_id")) {
+                    statement.execute("ALTER TABLE passwords ADD COLUMN sync_id TEXT");
+                    statement.execute("UPDATE passwords SET sync_id = 'legacy-' || id");
+                    System.out.println("Added sync ids to passwords table");
+                }
+                if (!hasColumn("attachments", "sync_id")) {
+                    statement.execute("ALTER TABLE attachments ADD COLUMN sync_id TEXT");
+                    statement.execute("UPDATE attachments SET sync_id = 'legacy-' || id");
+                    System.out.println("Added sync ids to attachments table");
+                }
+                createSyncIds(statement);
+            }
+        }
+    }
+
+    /**
+     * Gives every new entry and attachment a random sync id. Row ids are
+     * assigned by each copy of the vault on its own, so {@link VaultSync}
+     * matches rows by sync id instead.
+     */
+    private static void createSyncIds(Statement statement) throws SQLException {
+        statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_passwords_sync_id ON passwords(sync_id)");
+        statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_attachments_sync_id ON attachments(sync_id)");
+        statement.execute("""
+            CREATE TRIGGER IF NOT EXISTS passwords_sync_id AFTER INSERT ON passwords WHEN NEW.sync_id IS NULL
+            BEGIN
+                UPDATE passwords SET sync_id = lower(hex(randomblob(16))) WHERE id = NEW.id;
+            END
+        """);
+        statement.execute("""
+            CREATE TRIGGER IF NOT EXISTS attachments_sync_id AFTER INSERT ON attachments WHEN NEW.sync_id IS NULL
+            BEGIN
+                UPDATE attachments SET sync_id = lower(hex(randomblob(16))) WHERE id = NEW.id;
+            END
+        """);
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        String sql = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private boolean hasColumn(String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-wraps the DEK with stronger key derivation parameters if the user's
+     * are weaker than what this machine calibrates to. The iteration count is
+     * only ever raised, never lowered, so moving the vault to a slower machine
+     * does not weaken it.
+     */
+    private void upgradeKdfIfNeeded(String masterPassword, SecretKey dek) {
+        OptionalInt calibrated = KdfCalibrator.calibratedIterationsIfReady();
+        if (calibrated.isEmpty() || previousEncryptor != null) {
+            // Don't hold up the login; the upgrade happens on a later login
+            return;
+        }
+        KdfParameters target = new KdfParameters(KdfParameters.PBKDF2_SHA256, calibrated.getAsInt(), kdfParameters.salt());
+        if (!kdfParameters.isWeakerThan(target)) {
+            return;
+        }
+
+        try {
+            SecretKey upgradedKek = Encryptor.deriveKEK(masterPassword, target);
+            String sql = "UPDATE users SET kdf_algorithm = ?, kdf_iterations = ?, encrypted_dek = ? WHERE id = ?";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, target.algorithm());
+                pstmt.setInt(2, target.iterations());
+                pstmt.setString(3, Encryptor.encryptDEK(dek, upgradedKek));
+                pstmt.setInt(4, currentUserId);
+                pstmt.executeUpdate();
+            }
+            System.out.println("Key derivation upgraded from " + kdfParameters.iterations()
+                + " to " + target.iterations() + " iterations");
+            SecureWiper.wipeKey(kek);
+            kek = upgradedKek;
+            kdfParameters = target;
+        } catch (Exception e) {
+            // The old parameters still work, so try again on the next login
+            System.err.println("Failed to upgrade key derivation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the maintenance that does not need to hold up a login, currently
+     * salt rotation, on a background thread.
+     */
+    private void startMaintenance(String masterPassword, SecretKey dek) {
+        int userId = currentUserId;
+        if (previousEncryptor != null) {
+            // Salt rotation waits until the key rotation has finished, since it only re-wraps one DEK
+            maintenance = CompletableFuture.runAsync(() -> {
+                try {
+                    resumeDataKeyRotation();
+                } catch (SQLException e) {
+                    System.err.println("Failed to resume key rotation: " + e.getMessage());
+                }
+            });
+            return;
+        }
+        if (masterPassword == null) {
+            // Salt rotation re-derives the password KEK, which a recovery login does not have
+            return;
+        }
+        maintenance = CompletableFuture.runAsync(() -> rotateSaltIfNeeded(userId, masterPassword, dek));
+    }
+
+    /**
+     * Waits for background maintenance, such as salt or key rotation, to finish
+     */
+    public void awaitMaintenance() {
+        maintenance.handle((result, error) -> null).join();
+    }
+
+    /**
+     * Rotates the user's salt if it is due. The DEK unwrapped at login is
+     * re-wrapped, so only the new KEK is derived, outside the lock.
+     *
+     * This runs on a background thread, so it uses a connection of its own
+     * rather than the session's, which is not thread-safe. An in-memory
+     * working copy cannot be opened twice; then the session's connection is
+     * used, and only while holding the write lock. Either way the reads and
+     * the commit hold the write lock, so no entry change is queued meanwhile.
+     */
+    private void rotateSaltIfNeeded(int userId, String masterPassword, SecretKey dek) {
+        long start = System.nanoTime();
+        SaltManager.Rotation rotation = null;
+        Connection maintenanceConnection = null;
+        try {
+            maintenanceConnection = openMaintenanceConnection();
+            SaltManager saltManager = new SaltManager(
+                maintenanceConnection != null ? maintenanceConnection : connection, userId, masterPassword);
+            KdfParameters current;
+            accessLock.writeLock().lock();
+            try {
+                if (userId != currentUserId || !saltManager.shouldRotateSalt()) {
+                    return;
+                }
+                current = saltManager.getCurrentParameters();
+            } finally {
+                accessLock.writeLock().unlock();
+            }
+            rotation = saltManager.prepareRotation(current, dek);
+
+            accessLock.writeLock().lock();
+            try {
+                if (userId != currentUserId || previousEncryptor != null || !saltManager.commitRotation(rotation)) {
+                    System.out.println("Salt changed during rotation; will retry on next login");
+                    return;
+                }
+                SecureWiper.wipeKey(kek);
+                kek = rotation.kek();
+                kdfParameters = rotation.parameters();
+                rotation = null;
+            } finally {
+                accessLock.writeLock().unlock();
+            }
+            System.out.println("Salt rotated in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            // The old salt is still in place, so the rotation is retried on the next login
+            System.err.println("Failed to rotate salt: " + e.getMessage());
+        } finally {
+            if (rotation != null) {
+                SecureWiper.wipeKey(rotation.kek());
+            }
+            if (maintenanceConnection != null) {
+                try {
+                    maintenanceConnection.close();
+                } catch (SQLException e) {
+                    System.err.println("Failed to close maintenance connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a second connection to the database file the session works on
+     * @return The connection, or null if the database only exists in memory
+     */
+    private Connection openMaintenanceConnection() throws SQLException {
+        String url = connection.getMetaData().getURL();
+        if (url.contains(":memory:")) {
+            return null;
+        }
+        Connection maintenanceConnection = DriverManager.getConnection(url);
+        try (Statement stmt = maintenanceConnection.createStatement()) {
+            // The session may be reading the file as the rotation commits
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        return maintenanceConnection;
+    }
+
+    /**
+     * Replaces the DEK, for example after a key file was exposed. The new DEK
+     * is stored wrapped next to the old one, and from then on new writes use
+     * it. Existing entries are re-encrypted in the background; the vault stays
+     * readable throughout because every row records the key version it was
+     * written with. If the application stops before the rotation finishes, it
+     * resumes at the next login.
+     *
+     * Backups encrypted with the old DEK cannot be restored afterwards.
+     * @return Completes when every entry has been re-encrypted
+     * @throws SQLException if not logged in or the new key cannot be stored
+     */
+    public CompletableFuture<Void> rotateDataKey() throws SQLException {
+        awaitMaintenance();
+        beginDataKeyRotation();
+        maintenance = CompletableFuture.runAsync(() -> {
+            try {
+                resumeDataKeyRotation();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+        return maintenance;
+    }
+
+    /**
+     * Generates a new DEK and stores it wrapped with the current KEK as the
+     * pending key. Nothing is re-encrypted yet; see {@link #resumeDataKeyRotation()}.
+     * @throws SQLException if not logged in, a rotation is already running, or the key cannot be stored
+     */
+    public void beginDataKeyRotation() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        if (kek == null) {
+            throw new SQLException("Log in with your master password to rotate the encryption key");
+        }
+        if (loginSlot == null && new KeySlotManager(connection, currentUserId).hasSlot(KeySlot.PASSWORD_KEY_FILE)) {
+            throw new SQLException("Log in with your key file to rotate the encryption key");
+        }
+
+        accessLock.writeLock().lock();
+        try {
+            if (previousEncryptor != null) {
+                throw new SQLException("A key rotation is already in progress");
+            }
+            SecretKey newDek = Encryptor.generateDEK();
+            String sql = "UPDATE users SET pending_dek = ? WHERE id = ? AND pending_dek IS NULL";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, Encryptor.encryptDEK(newDek, kek));
+                pstmt.setInt(2, currentUserId);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new SQLException("A key rotation is already in progress");
+                }
+            }
+            previousEncryptor = encryptor;
+            encryptor = new Encryptor(newDek, cipherSuite);
+            keyVersion++;
+            System.out.println("Started rotation to key version " + keyVersion);
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Failed to start key rotation: " + e.getMessage(), e);
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-encrypts every entry still on the previous key and then retires it.
+     * Entries are processed in batches: each batch is decrypted and
+     * re-encrypted in parallel without holding the lock, then written in its
+     * own transaction, so an interruption loses at most one batch of work.
+     * Does nothing if no rotation is in progress.
+     * @throws SQLException if an entry cannot be re-encrypted or stored
+     */
+    public void resumeDataKeyRotation() throws SQLException {
+        Encryptor previous = previousEncryptor;
+        Encryptor current = encryptor;
+        int version = keyVersion;
+        if (previous == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int done = 0;
+        List<StoredEntry> batch;
+        while (!(batch = entryStore.listOnOtherVersion(version, KEY_ROTATION_BATCH_SIZE)).isEmpty()) {
+            List<StoredEntry> reencrypted;
+            try {
+                reencrypted = batch.parallelStream().map(row -> row.reencrypt(previous, current, version)).toList();
+            } catch (CompletionException e) {
+                throw new SQLException("Failed to re-encrypt entries: " + e.getCause().getMessage(), e.getCause());
+            }
+            done += storeReencryptedRows(reencrypted, version);
+            System.out.println("Re-encrypted " + done + " entries");
+        }
+        reencryptAttachments(previous, current, version);
+        reencryptHistory(previous, current, version);
+        reencryptAuditJournal(previous, current, version);
+        finishDataKeyRotation(version);
+        System.out.println("Key rotation finished in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Checks whether a key rotation has been started but not yet finished
+     */
+    public boolean isDataKeyRotationPending() {
+        return previousEncryptor != null;
+    }
+
+    private boolean hasEntriesOnPreviousKey(int version) throws SQLException {
+        return !entryStore.listOnOtherVersion(version, 1).isEmpty();
+    }
+
+    private int storeReencryptedRows(List<StoredEntry> rows, int version) throws SQLException {
+        // Rows rewritten by an update since they were read already carry the new version and are skipped
+        accessLock.writeLock().lock();
+        try {
+            entryStore.replaceOnOtherVersion(rows, version);
+            return rows.size();
+        } catch (SQLException e) {
+            throw new SQLException("Failed to store re-encrypted entries: " + e.getMessage(), e);
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-encrypts attachment names, then attachment chunks, in batches like
+     * {@link #resumeDataKeyRotation()} does for entries.
+     */
+    private void reencryptAttachments(Encryptor previous, Encryptor current, int version) throws SQLException {
+        String namesSql = "SELECT id, name FROM attachments WHERE user_id = ? AND key_version != ? LIMIT ?";
+        String updateNameSql = "UPDATE attachments SET name = ?, key_version = ? WHERE id = ? AND key_version != ?";
+        while (true) {
+            List<Object[]> names = new ArrayList<>();
+            accessLock.readLock().lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(namesSql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, version);
+                pstmt.setInt(3, KEY_ROTATION_BATCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        names.add(new Object[] {rs.getInt("id"), previous.reencrypt(rs.getString("name"), current)});
+                    }
+                }
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Failed to re-encrypt attachment names: " + e.getMessage(), e);
+            } finally {
+                accessLock.readLock().unlock();
+            }
+            if (names.isEmpty()) {
+                break;
+            }
+            accessLock.writeLock().lock();
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement pstmt = connection.prepareStatement(updateNameSql)) {
+                    for (Object[] name : names) {
+                        pstmt.setString(1, (String) name[1]);
+                        pstmt.setInt(2, version);
+                        pstmt.setInt(3, (Integer) name[0]);
+                        pstmt.setInt(4, version);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Failed to store re-encrypted attachment names: " + e.getMessage(), e);
+                }
+            } finally {
+                connection.setAutoCommit(true);
+                accessLock.writeLock().unlock();
+            }
+        }
+
+        String chunksSql = """
+            SELECT c.attachment_id, c.chunk_index, c.data, a.chunk_count
+            FROM attachment_chunks c JOIN attachments a ON a.id = c.attachment_id
+            WHERE a.user_id = ? AND a.chunk_count IS NOT NULL AND c.key_version != ?
+            LIMIT ?
+        """;
+        String updateChunkSql = """
+            UPDATE attachment_chunks SET data = ?, key_version = ?
+            WHERE attachment_id = ? AND chunk_index = ? AND key_version != ?
+        """;
+        int done = 0;
+        while (true) {
+            List<Object[]> chunks = new ArrayList<>(CHUNK_ROTATION_BATCH_SIZE);
+            accessLock.readLock().lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(chunksSql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, version);
+                pstmt.setInt(3, CHUNK_ROTATION_BATCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int attachmentId = rs.getInt("attachment_id");
+                        int index = rs.getInt("chunk_index");
+                        byte[] aad = chunkAssociatedData(attachmentId, index, rs.getInt("chunk_count"));
+                        chunks.add(new Object[] {attachmentId, index, previous.reencryptBytes(rs.getBytes("data"), aad, current)});
+                    }
+                }
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Failed to re-encrypt attachments: " + e.getMessage(), e);
+            } finally {
+                accessLock.readLock().unlock();
+            }
+            if (chunks.isEmpty()) {
+                break;
+            }
+            accessLock.writeLock().lock();
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement pstmt = connection.prepareStatement(updateChunkSql)) {
+                    for (Object[] chunk : chunks) {
+                        pstmt.setBytes(1, (byte[]) chunk[2]);
+                        pstmt.setInt(2, version);
+                        pstmt.setInt(3, (Integer) chunk[0]);
+                        pstmt.setInt(4, (Integer) chunk[1]);
+                        pstmt.setInt(5, version);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Failed to store re-encrypted attachments: " + e.getMessage(), e);
+                }
+            } finally {
+                connection.setAutoCommit(true);
+                accessLock.writeLock().unlock();
+            }
+            done += chunks.size();
+            System.out.println("Re-encrypted " + done + " attachment chunks");
+        }
+    }
+
+    /**
+     * Re-encrypts the stored fields of prior entry versions, in batches like
+     * {@link #resumeDataKeyRotation()} does for entries.
+     */
+    private void reencryptHistory(Encryptor previous, Encryptor current, int version) throws SQLException {
+        String selectSql = """
+            SELECT id, title, username, password, url, notes, category FROM password_history
+            WHERE user_id = ? AND key_version != ? LIMIT ?
+        """;
+        String updateSql = """
+            UPDATE password_history
+            SET title = ?, username = ?, password = ?, url = ?, notes = ?, category = ?, key_version = ?
+            WHERE id = ? AND key_version != ?
+        """;
+        int done = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            accessLock.readLock().lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(selectSql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, version);
+                pstmt.setInt(3, KEY_ROTATION_BATCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Object[] row = new Object[HISTORY_FIELDS.length + 1];
+                        row[0] = rs.getInt("id");
+                        for (int i = 0; i < HISTORY_FIELDS.length; i++) {
+                            row[i + 1] = previous.reencrypt(rs.getString(HISTORY_FIELDS[i]), current);
+                        }
+                        rows.add(row);
+                    }
+                }
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Failed to re-encrypt password history: " + e.getMessage(), e);
+            } finally {
+                accessLock.readLock().unlock();
+            }
+            if (rows.isEmpty()) {
+                break;
+            }
+            accessLock.writeLock().lock();
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
+                    for (Object[] row : rows) {
+                        for (int i = 0; i < HISTORY_FIELDS.length; i++) {
+                            pstmt.setString(i + 1, (String) row[i + 1]);
+                        }
+                        pstmt.setInt(7, version);
+                        pstmt.setInt(8, (Integer) row[0]);
+                        pstmt.setInt(9, version);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Failed to store re-encrypted password history: " + e.getMessage(), e);
+                }
+            } finally {
+                connection.setAutoCommit(true);
+                accessLock.writeLock().unlock();
+            }
+            done += rows.size();
+            System.out.println("Re-encrypted " + done + " prior entry versions");
+        }
+    }
+
+    /**
+     * Re-encrypts audit batches, in batches like {@link #resumeDataKeyRotation()} does for entries
+     */
+    private void reencryptAuditJournal(Encryptor previous, Encryptor current, int version) throws SQLException {
+        String selectSql = "SELECT id, data FROM audit_journal WHERE user_id = ? AND key_version != ? LIMIT ?";
+        String updateSql = "UPDATE audit_journal SET data = ?, key_version = ? WHERE id = ? AND key_version != ?";
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            accessLock.readLock().lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(selectSql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, version);
+                pstmt.setInt(3, KEY_ROTATION_BATCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Object[] {rs.getInt("id"), previous.reencrypt(rs.getString("data"), current)});
+                    }
+                }
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Failed to re-encrypt the audit journal: " + e.getMessage(), e);
+            } finally {
+                accessLock.readLock().unlock();
+            }
+            if (rows.isEmpty()) {
+                break;
+            }
+            accessLock.writeLock().lock();
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
+                    for (Object[] row : rows) {
+                        pstmt.setString(1, (String) row[1]);
+                        pstmt.setInt(2, version);
+                        pstmt.setInt(3, (Integer) row[0]);
+                        pstmt.setInt(4, version);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Failed to store the re-encrypted audit journal: " + e.getMessage(), e);
+                }
+            } finally {
+                connection.setAutoCommit(true);
+                accessLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private int countOtherRowsOnPreviousKey(int version) throws SQLException {
+        String sql = """
+            SELECT (SELECT COUNT(*) FROM attachments WHERE user_id = ? AND key_version != ?)
+                 + (SELECT COUNT(*) FROM attachment_chunks c JOIN attachments a ON a.id = c.attachment_id
+                    WHERE a.user_id = ? AND a.chunk_count IS NOT NULL AND c.key_version != ?)
+                 + (SELECT COUNT(*) FROM password_history WHERE user_id = ? AND key_version != ?)
+                 + (SELECT COUNT(*) FROM audit_journal WHERE user_id = ? AND key_version != ?)
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, currentUserId);
+            pstmt.setInt(2, version);
+            pstmt.setInt(3, currentUserId);
+            pstmt.setInt(4, version);
+            pstmt.setInt(5, currentUserId);
+            pstmt.setInt(6, version);
+            pstmt.setInt(7, currentUserId);
+            pstmt.setInt(8, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void finishDataKeyRotation(int version) throws SQLException {
+        accessLock.writeLock().lock();
+        try {
+            if (hasEntriesOnPreviousKey(version) || countOtherRowsOnPreviousKey(version) > 0) {
+                throw new SQLException("Entries are still encrypted with the previous key");
+            }
+            connection.setAutoCommit(false);
+            try {
+                String sql = "UPDATE users SET encrypted_dek = pending_dek, pending_dek = NULL, key_version = ? WHERE id = ? AND pending_dek IS NOT NULL";
+                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                    pstmt.setInt(1, version);
+                    pstmt.setInt(2, currentUserId);
+                    pstmt.executeUpdate();
+                }
+                // Only the slot used to log in has a known KEK; the others still wrap the old DEK
+                new KeySlotManager(connection, currentUserId).rewrapAndRevokeOthers(loginSlot, loginSlotKek, encryptor.getDEK());
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            // A vault loaded during the rotation still decrypts its older rows with this key
+            retiredEncryptor = previousEncryptor;
+            previousEncryptor = null;
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Wipes the key that a finished rotation replaced. Until then a
+     * {@link ColumnarVault} loaded during the rotation can still read its
+     * rows; call this once every such vault has been reloaded.
+     */
+    public void wipeRetiredKey() {
+        accessLock.writeLock().lock();
+        try {
+            if (retiredEncryptor != null) {
+                retiredEncryptor.secureWipeKeys();
+                retiredEncryptor = null;
+            }
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return A future completed once the background maintenance running now,
+     *         such as a resumed key rotation, has finished, successfully or not
+     */
+    public CompletableFuture<Void> whenMaintenanceDone() {
+        return maintenance.handle((result, error) -> null);
+    }
+
+    private boolean usesPreviousKey(int rowKeyVersion) {
+        return previousEncryptor != null && rowKeyVersion != keyVersion;
+    }
+
+    /**
+     * Gets the encryptor for a row. Outside a key rotation every row uses the
+     * current key, whatever version it records.
+     */
+    private Encryptor encryptorFor(int rowKeyVersion) {
+        return usesPreviousKey(rowKeyVersion) ? previousEncryptor : encryptor;
+    }
+
+    /**
+     * Wipes every entry handed out so far and starts a new session
+     */
+    public void closeSession() {
+        session.close();
+        session = new VaultSession();
+    }
+
+    /**
+     * Lets the vault be unlocked with a PIN after it is locked, until the
+     * ticket expires or the PIN is entered wrong too many times.
+     * @param pin A PIN of 4 to 12 digits
+     * @throws ValidationException if the PIN is not valid
+     * @throws SQLException if not logged in, a key rotation is pending, or the DEK cannot be wrapped
+     */
+    public void enableQuickUnlock(String pin) throws SQLException, ValidationException {
+        if (!InputValidator.isValidPin(pin)) {
+            throw new ValidationException("The PIN must be 4 to 12 digits.");
+        }
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        if (isDataKeyRotationPending()) {
+            throw new SQLException("Quick unlock is not available while the data key is being rotated.");
+        }
+        try {
+            SessionTicket ticket = SessionTicket.issue(encryptor.getDEK(), pin, SessionTicket.DEFAULT_LIFETIME);
+            discardSessionTicket();
+            sessionTicket = ticket;
+        } catch (Exception e) {
+            throw new SQLException("Failed to set up quick unlock: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs {@link #lock()} on a background thread once maintenance has
+     * finished, so that a caller on the FX thread does not wait for it
+     * @return Completes when the vault is locked
+     */
+    public CompletableFuture<Void> lockInBackground() {
+        return whenMaintenanceDone().thenRunAsync(this::lock);
+    }
+
+    /**
+     * Locks the vault: wipes every entry handed out, the DEK and the KEKs, but
+     * keeps the connection and the session ticket, if there is one. Waits for
+     * background maintenance first; see {@link #lockInBackground()}.
+     */
+    public void lock() {
+        awaitMaintenance();
+        flushEntryChangesQuietly();
+        flushAuditJournalQuietly();
+        accessLock.writeLock().lock();
+        try {
+            closeSession();
+            wipeRetiredKey();
+            if (previousEncryptor != null) {
+                // The ticket only holds the new key of an unfinished rotation
+                previousEncryptor.secureWipeKeys();
+                previousEncryptor = null;
+                discardSessionTicket();
+            }
+            if (encryptor != null) {
+                encryptor.secureWipeKeys();
+                encryptor = null;
+            }
+            if (kek != null) {
+                SecureWiper.wipeKey(kek);
+                kek = null;
+            }
+            if (loginSlotKek != null) {
+                SecureWiper.wipeKey(loginSlotKek);
+                loginSlotKek = null;
+            }
+            loginSlot = null;
+            locked = currentUserId != -1;
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+        writeBackQuietly();
+        System.out.println("Vault locked.");
+    }
+
+    /**
+     * Unlocks a locked vault with the session ticket's PIN
+     * @param pin The PIN given to {@link #enableQuickUnlock(String)}
+     * @return true if the vault was unlocked; false if the PIN is wrong or the
+     *         ticket is no longer usable, see {@link #canQuickUnlock()}
+     */
+    public boolean quickUnlock(String pin) {
+        if (!locked || sessionTicket == null) {
+            return false;
+        }
+        SecretKey dek = sessionTicket.redeem(pin);
+        if (dek == null) {
+            if (!sessionTicket.isUsable()) {
+                discardSessionTicket();
+            }
+            return false;
+        }
+        accessLock.writeLock().lock();
+        try {
+            encryptor = new Encryptor(dek, cipherSuite);
+            locked = false;
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * @return true if the vault is locked and a PIN can still unlock it
+     */
+    public boolean canQuickUnlock() {
+        return locked && sessionTicket != null && sessionTicket.isUsable();
+    }
+
+    public boolean hasQuickUnlock() {
+        return sessionTicket != null && sessionTicket.isUsable();
+    }
+
+    public int getQuickUnlockAttemptsLeft() {
+        return sessionTicket == null ? 0 : sessionTicket.getAttemptsLeft();
+    }
+
+    private void discardSessionTicket() {
+        if (sessionTicket != null) {
+            sessionTicket.wipe();
+            sessionTicket = null;
+        }
+    }
+
+    public void closeConnection() {
+        awaitMaintenance();
+        closeSession();
+        wipeRetiredKey();
+        discardSessionTicket();
+        if (writeBackTimer != null) {
+            writeBackTimer.shutdownNow();
+        }
+        if (trashPurger != null) {
+            trashPurger.shutdownNow();
+        }
+        closeAuditJournal();
+        closeEntryStore();
+        try {
+            if (connection != null && !connection.isClosed()) {
+                cleanupTempFiles();
+                
+                if (kek != null) {
+                    SecureWiper.wipeKey(kek);
+                    kek = null;
+                }
+                if (loginSlotKek != null) {
+                    SecureWiper.wipeKey(loginSlotKek);
+                    loginSlotKek = null;
+                }
+                // A copy that could not be written back is kept for recovery at the next start
+                boolean writtenBack = workingCopy == null || writeBackQuietly();
+                connection.close();
+                if (workingCopy != null && writtenBack) {
+                    workingCopy.discard();
+                }
+                System.out.println("Database connection closed.");
+            }
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Commits queued entry changes, then writes the working copy back to
+     * {@code passwords.db} if it changed. Without a working copy only the
+     * queued changes are committed.
+     * @throws SQLException if the write-back fails; the working copy keeps the changes
+     */
+    public void writeBack() throws SQLException {
+        flushEntryChanges();
+        if (workingCopy == null) {
+            return;
+        }
+        accessLock.writeLock().lock();
+        try {
+            workingCopy.writeBack(connection);
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Commits entry changes still waiting in the queue now, in one transaction.
+     * Changes are otherwise committed within
+     * {@value GroupCommitEntryStore#COMMIT_WINDOW_MILLIS} ms.
+     * @throws SQLException if the commit fails; the changes stay queued unless
+     *         the store gave up on them with a {@link GroupCommitEntryStore.ChangesSetAsideException}
+     */
+    public void flushEntryChanges() throws SQLException {
+        if (entryStore != null) {
+            entryStore.flush();
+        }
+    }
+
+    /**
+     * @return A future completed once every entry change made so far is
+     *         committed, or completed exceptionally if committing fails
+     */
+    public CompletableFuture<Void> whenEntryChangesDurable() {
+        return entryStore == null ? CompletableFuture.completedFuture(null) : entryStore.whenDurable();
+    }
+
+    /**
+     * @return Batch size and commit latency counters of the entry change queue, or null if not logged in
+     */
+    public GroupCommitEntryStore.Stats getEntryCommitStats() {
+        return entryStore == null ? null : entryStore.getStats();
+    }
+
+    private void flushEntryChangesQuietly() {
+        try {
+            flushEntryChanges();
+        } catch (SQLException e) {
+            System.err.println("Failed to commit queued entry changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a new entry queue for the current user, committing the old one's changes first
+     */
+    private void openEntryStore() {
+        closeEntryStore();
+        entryStore = new GroupCommitEntryStore(new SqliteEntryStore(connection, currentUserId), accessLock);
+    }
+
+    private void closeEntryStore() {
+        if (entryStore == null) {
+            return;
+        }
+        try {
+            entryStore.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to commit queued entry changes: " + e.getMessage());
+        }
+        entryStore = null;
+    }
+
+    private boolean writeBackQuietly() {
+        try {
+            writeBack();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Failed to write back working copy: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return The working copy the vault runs from, or null if it uses the file directly
+     */
+    public WorkingCopy getWorkingCopy() {
+        return workingCopy;
+    }
+
+    private void cleanupTempFiles() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        File tempFolder = new File(tempDir, "passwordmanager_temp");
+        
+        if (tempFolder.exists()) {
+            SecureWiper.secureTempCleanup(tempFolder);
+        }
+    }
+
+    public boolean createUser(String masterPassword) throws ValidationException {
+        return createUser(masterPassword, KdfParameters.PBKDF2_SHA256);
+    }
+
+    /**
+     * Creates a user whose KEK is derived with the given algorithm
+     * @param masterPassword The master password
+     * @param kdfAlgorithm {@link KdfParameters#PBKDF2_SHA256} or {@link KdfParameters#SCRYPT}
+     * @return true if the user was created
+     * @throws ValidationException if the master password is too weak
+     */
+    public boolean createUser(String masterPassword, String kdfAlgorithm) throws ValidationException {
+        return createUser(masterPassword, kdfAlgorithm, null);
+    }
+
+    /**
+     * Creates a user and, if a path is given, a version 2 key file enrolled
+     * as a password and key file slot. The file is written before the user is
+     * inserted and deleted again if the user cannot be created.
+     * @param masterPassword The master password
+     * @param kdfAlgorithm {@link KdfParameters#PBKDF2_SHA256} or {@link KdfParameters#SCRYPT}
+     * @param keyFilePath Where to write the key file, or null for none
+     * @return true if the user was created
+     * @throws ValidationException if the master password is too weak
+     */
+    public boolean createUser(String masterPassword, String kdfAlgorithm, String keyFilePath) throws ValidationException {
+        if (!InputValidator.isValidMasterPassword(masterPassword)) {
+            throw new ValidationException("Invalid master password format. Password must be at least 12 characters long and contain uppercase, lowercase, numbers, and special characters.");
+        }
+
+        KeyFile keyFile = null;
+        boolean created = false;
+        try {
+            masterPassword = InputValidator.sanitizeInput(masterPassword);
+            
+            SaltManager saltManager = new SaltManager(connection, -1, masterPassword);
+            String salt = saltManager.generateNewSalt();
+            
+            SecretKey dek = Encryptor.generateDEK();
+            
+            KdfParameters params = KdfParameters.SCRYPT.equals(kdfAlgorithm)
+                ? Scrypt.recommended(salt)
+                : KdfCalibrator.recommended(salt);
+            SecretKey kek = Encryptor.deriveKEK(masterPassword, params);
+            
+            String encryptedDEK = Encryptor.encryptDEK(dek, kek);
+
+            if (keyFilePath != null) {
+                keyFile = KeyFile.generate(params);
+                keyFile.write(Path.of(keyFilePath));
+            }
+            
+            String sql = """
+                INSERT INTO users (master_password_hash, current_salt, encrypted_dek,
+                                   kdf_algorithm, kdf_iterations, kdf_block_size, kdf_parallelism, cipher_suite)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+            String passwordHash = PasswordHasher.hashPassword(masterPassword, salt);
+            // The user, its salt and its key slot are stored together, so a failure leaves no half-made account
+            try {
+                connection.setAutoCommit(false);
+                try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setString(1, passwordHash);
+                    pstmt.setString(2, salt);
+                    pstmt.setString(3, encryptedDEK);
+                    pstmt.setString(4, params.algorithm());
+                    pstmt.setInt(5, params.iterations());
+                    pstmt.setInt(6, params.blockSize());
+                    pstmt.setInt(7, params.parallelism());
+                    pstmt.setString(8, CipherSuite.fastest().displayName());
+                    pstmt.executeUpdate();
+
+                    int userId;
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        if (!rs.next()) {
+                            throw new SQLException("The new user was not assigned an id");
+                        }
+                        userId = rs.getInt(1);
+                    }
+                    String historySql = "INSERT INTO salt_history (user_id, salt, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+                    try (PreparedStatement historyStmt = connection.prepareStatement(historySql)) {
+                        historyStmt.setInt(1, userId);
+                        historyStmt.setString(2, salt);
+                        historyStmt.executeUpdate();
+                    }
+                    if (keyFile != null) {
+                        new KeySlotManager(connection, userId).add(KeySlot.PASSWORD_KEY_FILE,
+                            keyFile.lookupId(), params, keyFile.slotKek(kek), dek);
+                    }
+                    connection.commit();
+                } catch (Exception e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            System.out.println("User created successfully!");
+            created = true;
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error creating user: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (keyFile != null) {
+                keyFile.wipe();
+                if (!created) {
+                    try {
+                        Files.deleteIfExists(Path.of(keyFilePath));
+                    } catch (IOException e) {
+                        System.err.println("Error deleting key file: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean verifyMasterPassword(String masterPassword) {
+        try {
+            String sql = "SELECT master_password_hash, encrypted_dek, " + KdfParameters.COLUMNS + " FROM users";
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                
+                while (rs.next()) {
+                    String storedHash = rs.getString("master_password_hash");
+                    KdfParameters params = KdfParameters.fromResultSet(rs);
+                    String encryptedDEK = rs.getString("encrypted_dek");
+
+                    String calculatedHash = PasswordHasher.hashPassword(masterPassword, params.salt());
+                    if (storedHash.equals(calculatedHash)) {
+                        try {
+                            SecretKey kek = deriveKEK(masterPassword, params);
+                            Encryptor.decryptDEK(encryptedDEK, kek);
+                            return true;
+                        } catch (Exception e) {
+                            continue;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error verifying master password: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Starts deriving the KEK of every user for a password in the background,
+     * so that a login with that password finds it ready. Any KEKs derived for
+     * a different password are wiped.
+     * @param masterPassword The password typed so far
+     */
+    public void speculateKEK(String masterPassword) {
+        if (masterPassword == null || masterPassword.isEmpty()) {
+            return;
+        }
+        String sql = "SELECT " + KdfParameters.COLUMNS + " FROM users UNION "
+            + "SELECT salt, kdf_algorithm, kdf_iterations, kdf_block_size, kdf_parallelism FROM keyslots WHERE slot_type = '"
+            + KeySlot.PASSWORD_KEY_FILE + "'";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                kekCache.derive(masterPassword, KdfParameters.fromResultSet(rs));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error starting key derivation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wipes all KEKs derived by {@link #speculateKEK(String)}
+     */
+    public void discardSpeculativeKEKs() {
+        kekCache.clear();
+    }
+
+    /**
+     * Gets the cache of speculatively derived KEKs, which other KEK consumers
+     * such as key file verification can share.
+     */
+    public KekCache getKekCache() {
+        return kekCache;
+    }
+
+    private SecretKey deriveKEK(String masterPassword, KdfParameters params) throws Exception {
+        SecretKey cached = kekCache.get(masterPassword, params);
+        return cached != null ? cached : Encryptor.deriveKEK(masterPassword, params);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public int getCurrentUserId() {
+        return currentUserId;
+    }
+
+    public void addPasswordEntry(PasswordEntry entry) throws SQLException, ValidationException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        validateAndSanitize(entry);
+
+        accessLock.readLock().lock();
+        try {
+            entry.setId(entryStore.insert(encryptEntry(entry, 0).withId(0)));
+        } catch (Exception e) {
+            throw new SQLException("Error encrypting data", e);
+        } finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Validates and sanitizes an entry before it is stored. Usernames,
+     * passwords and notes are checked and rewritten in their buffers, so
+     * saving an entry creates no Strings of them.
+     */
+    private static void validateAndSanitize(PasswordEntry entry) throws ValidationException {
+        InputValidator.validatePasswordEntry(entry.getTitle(), entry.getUsernameSecret(), entry.getPasswordSecret());
+
+        entry.setTitle(InputValidator.sanitizeInput(entry.getTitle()));
+        entry.setUsernameSecret(InputValidator.sanitizeSecret(entry.getUsernameSecret()));
+        entry.setPasswordSecret(InputValidator.sanitizeSecret(entry.getPasswordSecret()));
+        entry.setUrl(InputValidator.sanitizeInput(entry.getUrl()));
+        entry.setNotesSecret(InputValidator.sanitizeSecret(entry.getNotesSecret()));
+        entry.setCategory(InputValidator.sanitizeInput(entry.getCategory()));
+    }
+
+    public List<PasswordEntry> getAllPasswords() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        List<PasswordEntry> passwords = new ArrayList<>();
+        try {
+            for (StoredEntry row : entryStore.list()) {
+                passwords.add(session.track(decryptEntry(row)));
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error decrypting data", e);
+        }
+        return passwords;
+    }
+
+    /**
+     * Encrypts an entry with the current key
+     * @param lastModified The modification time to store, or 0 for the time of the write
+     */
+    private StoredEntry encryptEntry(PasswordEntry entry, long lastModified) throws Exception {
+        return new StoredEntry(
+            entry.getId(),
+            encryptor.encrypt(entry.getTitle()),
+            encryptor.encrypt(entry.getUsernameSecret()),
+            encryptor.encrypt(entry.getPasswordSecret()),
+            encryptor.encrypt(entry.getUrl()),
+            encryptor.encryptCompressed(entry.getNotesSecret()),
+            encryptor.encrypt(entry.getCategory()),
+            lastModified,
+            keyVersion
+        );
+    }
+
+    private PasswordEntry decryptEntry(StoredEntry row) throws Exception {
+        Encryptor encryptor = encryptorFor(row.keyVersion());
+        PasswordEntry entry = new PasswordEntry();
+        entry.setId(row.id());
+        entry.setTitle(encryptor.decrypt(row.title()));
+        entry.setUsernameSecret(encryptor.decryptSecret(row.username()));
+        entry.setPasswordSecret(encryptor.decryptSecret(row.password()));
+        entry.setUrl(row.url() != null ? encryptor.decrypt(row.url()) : "");
+        entry.setNotesSecret(encryptor.decryptSecret(row.notes()));
+        entry.setCategory(row.category() != null ? encryptor.decrypt(row.category()) : "");
+        entry.setLastModified(row.lastModified());
+        return entry;
+    }
+
+    /**
+     * Loads the current user's entries into a columnar vault. Only titles, URLs
+     * and categories are decrypted; usernames, passwords and notes stay
+     * encrypted until a row asks for them.
+     * @return The vault, sorted by title
+     * @throws SQLException if not logged in or the entries cannot be decrypted
+     */
+    public ColumnarVault loadVault() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        ColumnarVault.Builder builder = ColumnarVault.builder(encryptor, previousEncryptor);
+        try {
+            for (StoredEntry row : entryStore.list()) {
+                boolean previousKey = usesPreviousKey(row.keyVersion());
+                Encryptor encryptor = previousKey ? previousEncryptor : this.encryptor;
+                builder.add(
+                    row.id(),
+                    encryptor.decrypt(row.title()),
+                    row.url() != null ? encryptor.decrypt(row.url()) : "",
+                    row.category() != null ? encryptor.decrypt(row.category()) : "",
+                    row.lastModified(),
+                    row.username(),
+                    row.password(),
+                    row.notes(),
+                    previousKey
+                );
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error decrypting data", e);
+        }
+        return builder.build();
+    }
+
+    public void updatePasswordEntry(PasswordEntry entry) throws SQLException, ValidationException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        validateAndSanitize(entry);
+
+        accessLock.readLock().lock();
+        try {
+            StoredEntry previous = entryStore.get(entry.getId());
+            if (previous != null) {
+                // The history goes in the entry's batch, so a version is only stored once the entry is
+                entryStore.apply(List.of(EntryMutation.update(encryptEntry(entry, entry.getLastModified()))
+                    .withRelated(historyWrite(previous, entry))));
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error encrypting data", e);
+        } finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prepares the history rows for an update: the fields of the entry's
+     * previous version that differ from its new version, after which versions
+     * beyond {@value #PASSWORD_HISTORY_LIMIT} are dropped. The old ciphertext
+     * is stored as it is, unless it is still on the previous key of a rotation.
+     * @return The rows to write with the update, or null if nothing changed
+     */
+    private EntryMutation.RelatedWrite historyWrite(StoredEntry previous, PasswordEntry current) throws Exception {
+        int changed;
+        PasswordEntry old = decryptEntry(previous);
+        try {
+            changed = changedFields(old, current);
+        } finally {
+            old.secureClear();
+        }
+        if (changed == 0) {
+            return null;
+        }
+
+        // Encrypted now, with the keys the update itself is encrypted with
+        String[] values = historyFields(previous);
+        boolean previousKey = usesPreviousKey(previous.keyVersion());
+        for (int i = 0; i < values.length; i++) {
+            boolean kept = (changed & (1 << i)) != 0;
+            values[i] = !kept ? null : previousKey ? previousEncryptor.reencrypt(values[i], encryptor) : values[i];
+        }
+        int userId = currentUserId;
+        int historyKeyVersion = keyVersion;
+
+        return tx -> {
+            String sql = """
+                INSERT INTO password_history (user_id, entry_id, changed_fields, title, username, password,
+                                              url, notes, category, last_modified, key_version)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+            try (PreparedStatement pstmt = tx.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, previous.id());
+                pstmt.setInt(3, changed);
+                for (int i = 0; i < values.length; i++) {
+                    pstmt.setString(4 + i, values[i]);
+                }
+                pstmt.setLong(10, previous.lastModified());
+                pstmt.setInt(11, historyKeyVersion);
+                pstmt.executeUpdate();
+            }
+
+            capHistory(tx, previous.id(), userId);
+        };
+    }
+
+    /**
+     * Drops an entry's versions beyond {@value #PASSWORD_HISTORY_LIMIT}. Each
+     * version only holds what differs from the next newer one, so the oldest
+     * can go without breaking the rest.
+     */
+    private static void capHistory(Connection tx, int entryId, int userId) throws SQLException {
+        String sql = """
+            DELETE FROM password_history
+            WHERE entry_id = ? AND user_id = ? AND id NOT IN (
+                SELECT id FROM password_history WHERE entry_id = ? AND user_id = ? ORDER BY id DESC LIMIT ?)
+        """;
+        try (PreparedStatement pstmt = tx.prepareStatement(sql)) {
+            pstmt.setInt(1, entryId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, entryId);
+            pstmt.setInt(4, userId);
+            pstmt.setInt(5, PASSWORD_HISTORY_LIMIT);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return A bit per field, in the order of {@link #HISTORY_FIELDS}, set if the field differs
+     */
+    private static int changedFields(PasswordEntry old, PasswordEntry current) {
+        int changed = 0;
+        if (!sameText(old.getTitle(), current.getTitle())) changed |= 1;
+        if (!sameSecret(old.getUsernameSecret(), current.getUsernameSecret())) changed |= 1 << 1;
+        if (!sameSecret(old.getPasswordSecret(), current.getPasswordSecret())) changed |= 1 << 2;
+        if (!sameText(old.getUrl(), current.getUrl())) changed |= 1 << 3;
+        if (!sameSecret(old.getNotesSecret(), current.getNotesSecret())) changed |= 1 << 4;
+        if (!sameText(old.getCategory(), current.getCategory())) changed |= 1 << 5;
+        return changed;
+    }
+
+    private static boolean sameText(String a, String b) {
+        return (a == null ? "" : a).equals(b == null ? "" : b);
+    }
+
+    private static boolean sameSecret(SecretBuffer a, SecretBuffer b) {
+        boolean aEmpty = a == null || a.isEmpty();
+        boolean bEmpty = b == null || b.isEmpty();
+        return aEmpty || bEmpty ? aEmpty == bEmpty : SecretBuffer.contentEquals(a, b);
+    }
+
+    private static String[] historyFields(StoredEntry row) {
+        return new String[] {row.title(), row.username(), row.password(), row.url(), row.notes(), row.category()};
+    }
+
+    /**
+     * Loads the prior versions of an entry. Each is rebuilt by applying the
+     * stored changes to the newer version, starting from the current one.
+     * History is only read here, never when the vault is listed or unlocked.
+     * @param entryId The id of the entry
+     * @return The versions, newest first, each with the time it was saved;
+     *         empty if the entry does not exist
+     * @throws SQLException if not logged in or a version cannot be decrypted
+     */
+    public List<PasswordEntry> getPasswordHistory(int entryId) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        // Versions are rebuilt from the current row, so a queued update and its history have to land first
+        entryStore.flush();
+        StoredEntry row = entryStore.get(entryId);
+        if (row == null) {
+            return List.of();
+        }
+        String[] values = historyFields(row);
+        int[] versions = new int[values.length];
+        Arrays.fill(versions, row.keyVersion());
+
+        List<PasswordEntry> history = new ArrayList<>();
+        String sql = "SELECT * FROM password_history WHERE entry_id = ? AND user_id = ? ORDER BY id DESC";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, entryId);
+            pstmt.setInt(2, currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int changed = rs.getInt("changed_fields");
+                    for (int i = 0; i < values.length; i++) {
+                        if ((changed & (1 << i)) != 0) {
+                            values[i] = rs.getString(HISTORY_FIELDS[i]);
+                            versions[i] = rs.getInt("key_version");
+                        }
+                    }
+                    PasswordEntry version = new PasswordEntry();
+                    version.setId(entryId);
+                    version.setTitle(decryptHistoryField(values[0], versions[0]));
+                    version.setUsernameSecret(decryptHistorySecret(values[1], versions[1]));
+                    version.setPasswordSecret(decryptHistorySecret(values[2], versions[2]));
+                    version.setUrl(decryptHistoryField(values[3], versions[3]));
+                    version.setNotesSecret(decryptHistorySecret(values[4], versions[4]));
+                    version.setCategory(decryptHistoryField(values[5], versions[5]));
+                    version.setLastModified(rs.getLong("last_modified"));
+                    history.add(session.track(version));
+                }
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Failed to decrypt password history: " + e.getMessage(), e);
+        }
+        return history;
+    }
+
+    private String decryptHistoryField(String value, int rowKeyVersion) throws Exception {
+        return value != null ? encryptorFor(rowKeyVersion).decrypt(value) : "";
+    }
+
+    private SecretBuffer decryptHistorySecret(String value, int rowKeyVersion) throws Exception {
+        return value != null ? encryptorFor(rowKeyVersion).decryptSecret(value) : SecretBuffer.of("");
+    }
+
+    private void deleteHistoryRows(String condition, int value) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM password_history WHERE " + condition)) {
+            pstmt.setInt(1, value);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Replaces the contents of the live database with a restored database file
+     * while staying logged in. Writers are paused for the duration of the swap,
+     * which is done through SQLite's online backup API on the open connection.
+     * The DEK is unwrapped again from the restored user record with the KEK that
+     * was derived at login, so no key derivation is needed.
+     * @param restoredDb The database file to load
+     * @throws SQLException if not logged in or the file does not belong to the current user
+     */
+    public void replaceDatabase(Path restoredDb) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        if (previousEncryptor != null) {
+            throw new SQLException("The encryption key is being rotated. Please try again when it has finished.");
+        }
+
+        SecretKey restoredDek = unwrapRestoredDEK(restoredDb);
+
+        accessLock.writeLock().lock();
+        try {
+            // Queued changes belong to the database being replaced
+            flushEntryChanges();
+            SqliteBackup.restore(connection, restoredDb);
+            migrateSchema();
+            // The queue numbers new entries from the replaced database's highest id
+            openEntryStore();
+            try (PreparedStatement pstmt = connection.prepareStatement("SELECT key_version, cipher_suite FROM users WHERE id = ?")) {
+                pstmt.setInt(1, currentUserId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    keyVersion = rs.getInt("key_version");
+                    cipherSuite = CipherSuite.forName(rs.getString("cipher_suite"));
+                }
+            }
+            if (restoredDek != null) {
+                encryptor = new Encryptor(restoredDek, cipherSuite);
+            }
+            if (workingCopy != null) {
+                workingCopy.markChanged();
+            }
+            System.out.println("Database restored from " + restoredDb.getFileName());
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    private SecretKey unwrapRestoredDEK(Path restoredDb) throws SQLException {
+        // Backups made before the kdf columns existed lack them, so select everything
+        String sql = "SELECT * FROM users WHERE id = ?";
+        try (Connection restored = DriverManager.getConnection("jdbc:sqlite:" + restoredDb.toAbsolutePath());
+             PreparedStatement pstmt = restored.prepareStatement(sql)) {
+            pstmt.setInt(1, currentUserId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("The backup does not contain the current user");
+            }
+
+            KdfParameters params = KdfParameters.fromResultSet(rs);
+            if (kek == null || !params.equals(kdfParameters)) {
+                // The salt was rotated or the key derivation upgraded since the backup
+                // was taken. The backup itself was decrypted with the current DEK, so
+                // keep using it.
+                return null;
+            }
+            try {
+                return Encryptor.decryptDEK(rs.getString("encrypted_dek"), kek);
+            } catch (Exception e) {
+                throw new SQLException("The backup was not created with the current key", e);
+            }
+        }
+    }
+
+    /**
+     * Lists the entries of the current user without decrypting their secrets.
+     * Only title and category are decrypted; use {@link #getPasswordEntry(int)}
+     * to load a complete entry.
+     * @return Summaries of all entries, ordered by id
+     * @throws SQLException if not logged in or decryption fails
+     */
+    public List<EntrySummary> getEntrySummaries() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        List<EntrySummary> summaries = new ArrayList<>();
+        try {
+            for (StoredEntry row : entryStore.listSummaries()) {
+                Encryptor encryptor = encryptorFor(row.keyVersion());
+                summaries.add(new EntrySummary(
+                    row.id(),
+                    encryptor.decrypt(row.title()),
+                    encryptor.decrypt(row.category())
+                ));
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Error decrypting data", e);
+        }
+        return summaries;
+    }
+
+    /**
+     * Copies entries from another database, such as an opened backup, into this one.
+     * All entries are inserted in one transaction, so either all or none are copied.
+     * @param source The database to copy from
+     * @param entryIds The ids of the entries in the source database
+     * @return The number of entries copied
+     * @throws SQLException if not logged in or the copy fails
+     */
+    public int copyEntriesFrom(DatabaseManager source, List<Integer> entryIds) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        List<StoredEntry> copies = new ArrayList<>(entryIds.size());
+        accessLock.writeLock().lock();
+        try {
+            for (int entryId : entryIds) {
+                PasswordEntry entry = source.getPasswordEntry(entryId);
+                if (entry == null) {
+                    continue;
+                }
+                try {
+                    copies.add(encryptEntry(entry, 0).withId(0));
+                } finally {
+                    entry.secureClear();
+                }
+            }
+            entryStore.insertAll(copies);
+        } catch (Exception e) {
+            throw new SQLException("Failed to copy entries: " + e.getMessage(), e);
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+        return copies.size();
+    }
+
+    /**
+     * Lists every entry of the current user for {@link VaultSync}, including
+     * those in the trash, which carry their deletion time
+     * @return The entries, ordered by id
+     */
+    List<SyncEntry> listEntriesForSync() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        accessLock.writeLock().lock();
+        try {
+            // Queued entries get their sync id when they are committed
+            entryStore.flush();
+            List<TrashedEntry> entries = new ArrayList<>();
+            for (StoredEntry row : entryStore.list()) {
+                entries.add(new TrashedEntry(row, 0));
+            }
+            entries.addAll(entryStore.listTrash());
+            entries.sort(Comparator.comparingInt(trashed -> trashed.entry().id()));
+
+            Map<Integer, String> syncIds = new HashMap<>();
+            try (PreparedStatement pstmt = connection.prepareStatement("SELECT id, sync_id FROM passwords WHERE user_id = ?")) {
+                pstmt.setInt(1, currentUserId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        syncIds.put(rs.getInt("id"), rs.getString("sync_id"));
+                    }
+                }
+            }
+            Map<Integer, List<String>> attachments = new HashMap<>();
+            String sql = "SELECT entry_id, sync_id FROM attachments WHERE user_id = ? AND chunk_count IS NOT NULL ORDER BY sync_id";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, currentUserId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        attachments.computeIfAbsent(rs.getInt("entry_id"), id -> new ArrayList<>()).add(rs.getString("sync_id"));
+                    }
+                }
+            }
+
+            List<SyncEntry> synced = new ArrayList<>(entries.size());
+            for (TrashedEntry trashed : entries) {
+                int id = trashed.entry().id();
+                synced.add(new SyncEntry(syncIds.get(id), trashed.entry(), trashed.deletedAt(),
+                    attachments.getOrDefault(id, List.of())));
+            }
+            return synced;
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores entries from another copy of the vault as they are, keeping
+     * their sync ids, modification times and trash state, along with their
+     * attachments and history. A new entry gets the next free id here; a
+     * replaced one keeps its id, takes the other copy's history and adds the
+     * version it replaces as the newest prior version. Each entry is written
+     * in one transaction with its attachments and history.
+     * @param source The copy the entries come from
+     * @param copies What to take from it, see {@link VaultSync}
+     */
+    void storeSyncedEntries(DatabaseManager source, List<VaultSync.Copy> copies) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        accessLock.writeLock().lock();
+        try {
+            List<EntryMutation> mutations = new ArrayList<>(copies.size() * 2);
+            List<VaultSync.Copy> attachmentsOnly = new ArrayList<>();
+            int nextId = entryStore.nextId();
+            for (VaultSync.Copy copy : copies) {
+                SyncEntry from = copy.from();
+                SyncEntry replaced = copy.replaced();
+                StoredEntry row = from.entry();
+                if (!copy.replaceRow()) {
+                    attachmentsOnly.add(copy);
+                    continue;
+                }
+
+                int id = replaced != null ? replaced.entry().id() : nextId++;
+                boolean newVersion = false;
+                if (replaced != null) {
+                    PasswordEntry incoming = decryptEntry(row);
+                    PasswordEntry current = decryptEntry(replaced.entry());
+                    try {
+                        newVersion = changedFields(current, incoming) != 0;
+                    } finally {
+                        incoming.secureClear();
+                        current.secureClear();
+                    }
+                    mutations.add(EntryMutation.delete(id));
+                }
+                StoredEntry previous = replaced != null && newVersion ? replaced.entry() : null;
+                boolean copyHistory = replaced == null || newVersion;
+                mutations.add(EntryMutation.insert(new StoredEntry(id, row.title(), row.username(),
+                    row.password(), row.url(), row.notes(), row.category(), row.lastModified(), keyVersion))
+                    .withRelated(tx -> {
+                        try (PreparedStatement pstmt = tx.prepareStatement("UPDATE passwords SET sync_id = ? WHERE id = ?")) {
+                            pstmt.setString(1, from.syncId());
+                            pstmt.setInt(2, id);
+                            pstmt.executeUpdate();
+                        }
+                        if (copyHistory) {
+                            copyHistory(source, tx, row, id, previous);
+                        }
+                        copyAttachments(source, tx, row.id(), id, copy.attachmentSyncIds());
+                    }));
+                if (from.deletedAt() > 0) {
+                    mutations.add(EntryMutation.trash(id, from.deletedAt()));
+                }
+            }
+            entryStore.apply(mutations);
+            entryStore.flush();
+
+            if (!attachmentsOnly.isEmpty()) {
+                // These entries stay as they are, so their missing attachments go in a transaction of their own
+                try {
+                    connection.setAutoCommit(false);
+                    try {
+                        for (VaultSync.Copy copy : attachmentsOnly) {
+                            copyAttachments(source, connection, copy.from().entry().id(),
+                                copy.replaced().entry().id(), copy.attachmentSyncIds());
+                        }
+                        connection.commit();
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        throw e;
+                    }
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Failed to store synchronized entries: " + e.getMessage(), e);
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces an entry's history with its history in another copy. The rows
+     * only hold what differs from the next newer version, which in the other
+     * copy is {@code row} itself.
+     * @param row The entry in the other copy
+     * @param previous The version being replaced here, added as the newest
+     *        prior version unless the other copy's history already starts with it; null for none
+     */
+    private void copyHistory(DatabaseManager source, Connection tx, StoredEntry row, int entryId, StoredEntry previous)
+            throws SQLException {
+        List<String[]> versions = new ArrayList<>();
+        List<long[]> meta = new ArrayList<>();
+        String selectSql = "SELECT * FROM password_history WHERE entry_id = ? AND user_id = ? ORDER BY id";
+        source.accessLock.readLock().lock();
+        try (PreparedStatement pstmt = source.connection.prepareStatement(selectSql)) {
+            pstmt.setInt(1, row.id());
+            pstmt.setInt(2, source.currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String[] values = new String[HISTORY_FIELDS.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = rs.getString(HISTORY_FIELDS[i]);
+                    }
+                    versions.add(values);
+                    meta.add(new long[] {rs.getInt("changed_fields"), rs.getLong("last_modified")});
+                }
+            }
+        } finally {
+            source.accessLock.readLock().unlock();
+        }
+
+        int allFields = (1 << HISTORY_FIELDS.length) - 1;
+        if (previous != null) {
+            String[] current = historyFields(row);
+            if (!versions.isEmpty()) {
+                // The replaced version goes in between, so the newest copied version has to stand on its own
+                int newest = versions.size() - 1;
+                String[] values = versions.get(newest);
+                for (int i = 0; i < values.length; i++) {
+                    if (((int) meta.get(newest)[0] & (1 << i)) == 0) {
+                        values[i] = current[i];
+                    }
+                }
+                meta.get(newest)[0] = allFields;
+            }
+            String[] replaced = historyFields(previous);
+            // The fields are encrypted anew at every save, so versions are compared by their plaintext
+            boolean alreadyThere = !versions.isEmpty() && sameVersion(versions.get(versions.size() - 1), replaced);
+            if (!alreadyThere) {
+                versions.add(replaced);
+                meta.add(new long[] {allFields, previous.lastModified()});
+            }
+        }
+
+        try (PreparedStatement pstmt = tx.prepareStatement("DELETE FROM password_history WHERE entry_id = ? AND user_id = ?")) {
+            pstmt.setInt(1, entryId);
+            pstmt.setInt(2, currentUserId);
+            pstmt.executeUpdate();
+        }
+        String insertSql = """
+            INSERT INTO password_history (user_id, entry_id, changed_fields, title, username, password,
+                                          url, notes, category, last_modified, key_version)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+        try (PreparedStatement pstmt = tx.prepareStatement(insertSql)) {
+            for (int v = 0; v < versions.size(); v++) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, entryId);
+                pstmt.setInt(3, (int) meta.get(v)[0]);
+                for (int i = 0; i < HISTORY_FIELDS.length; i++) {
+                    pstmt.setString(4 + i, versions.get(v)[i]);
+                }
+                pstmt.setLong(10, meta.get(v)[1]);
+                pstmt.setInt(11, keyVersion);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        capHistory(tx, entryId, currentUserId);
+    }
+
+    private boolean sameVersion(String[] a, String[] b) throws SQLException {
+        PasswordEntry first = null;
+        PasswordEntry second = null;
+        try {
+            first = decryptEntry(new StoredEntry(0, a[0], a[1], a[2], a[3], a[4], a[5], 0, keyVersion));
+            second = decryptEntry(new StoredEntry(0, b[0], b[1], b[2], b[3], b[4], b[5], 0, keyVersion));
+            return changedFields(first, second) == 0;
+        } catch (Exception e) {
+            throw new SQLException("Failed to compare versions: " + e.getMessage(), e);
+        } finally {
+            if (first != null) {
+                first.secureClear();
+            }
+            if (second != null) {
+                second.secureClear();
+            }
+        }
+    }
+
+    /**
+     * Copies attachments from another copy. Each chunk is decrypted and
+     * encrypted again, because its associated data names the attachment's row id.
+     * @param attachmentSyncIds The attachments of the entry in the other copy to copy
+     */
+    private void copyAttachments(DatabaseManager source, Connection tx, int sourceEntryId, int entryId,
+                                 List<String> attachmentSyncIds) throws SQLException {
+        if (attachmentSyncIds.isEmpty()) {
+            return;
+        }
+        String selectSql = """
+            SELECT id, name, size, chunk_count, sync_id FROM attachments
+            WHERE entry_id = ? AND user_id = ? AND chunk_count IS NOT NULL
+        """;
+        String insertSql = """
+            INSERT INTO attachments (user_id, entry_id, name, size, chunk_count, key_version, sync_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+        """;
+        String chunkSql = "SELECT chunk_index, data, key_version FROM attachment_chunks WHERE attachment_id = ? ORDER BY chunk_index";
+        String insertChunkSql = "INSERT INTO attachment_chunks (attachment_id, chunk_index, data, key_version) VALUES (?, ?, ?, ?)";
+        source.accessLock.readLock().lock();
+        try (PreparedStatement select = source.connection.prepareStatement(selectSql);
+             PreparedStatement chunks = source.connection.prepareStatement(chunkSql);
+             PreparedStatement insert = tx.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement insertChunk = tx.prepareStatement(insertChunkSql)) {
+            select.setInt(1, sourceEntryId);
+            select.setInt(2, source.currentUserId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    if (!attachmentSyncIds.contains(rs.getString("sync_id"))) {
+                        continue;
+                    }
+                    int sourceId = rs.getInt("id");
+                    int chunkCount = rs.getInt("chunk_count");
+                    insert.setInt(1, currentUserId);
+                    insert.setInt(2, entryId);
+                    insert.setString(3, rs.getString("name"));
+                    insert.setLong(4, rs.getLong("size"));
+                    insert.setInt(5, chunkCount);
+                    insert.setInt(6, keyVersion);
+                    insert.setString(7, rs.getString("sync_id"));
+                    insert.executeUpdate();
+                    int attachmentId;
+                    try (ResultSet keys = insert.getGeneratedKeys()) {
+                        keys.next();
+                        attachmentId = keys.getInt(1);
+                    }
+
+                    chunks.setInt(1, sourceId);
+                    try (ResultSet chunkRows = chunks.executeQuery()) {
+                        while (chunkRows.next()) {
+                            int index = chunkRows.getInt("chunk_index");
+                            byte[] plaintext = source.encryptorFor(chunkRows.getInt("key_version")).decryptBytes(
+                                chunkRows.getBytes("data"), chunkAssociatedData(sourceId, index, chunkCount));
+                            try {
+                                insertChunk.setInt(1, attachmentId);
+                                insertChunk.setInt(2, index);
+                                insertChunk.setBytes(3, encryptor.encryptBytes(plaintext,
+                                    chunkAssociatedData(attachmentId, index, chunkCount)));
+                                insertChunk.setInt(4, keyVersion);
+                                insertChunk.executeUpdate();
+                            } finally {
+                                SecureWiper.wipeByteArray(plaintext);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new SQLException("Failed to copy an attachment: " + e.getMessage(), e);
+        } finally {
+            source.accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Derives the key rows are hashed with for {@link VaultSync}. Every copy
+     * of a vault with the same DEK derives the same key.
+     * @return The key bytes, which the caller wipes
+     */
+    byte[] deriveSyncKey() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        byte[] dek = encryptor.getDEK().getEncoded();
+        try {
+            return Hkdf.derive(dek, new byte[0], "passwordmanager-sync-row-hash".getBytes(StandardCharsets.UTF_8), 32);
+        } catch (GeneralSecurityException e) {
+            throw new SQLException("Failed to derive the sync key: " + e.getMessage(), e);
+        } finally {
+            SecureWiper.wipeByteArray(dek);
+        }
+    }
+
+    /**
+     * @return When this copy was last synchronized, in milliseconds since the epoch; 0 if never
+     */
+    long getLastSyncTime() throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT last_synced_at FROM users WHERE id = ?")) {
+            pstmt.setInt(1, currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    void setLastSyncTime(long time) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("UPDATE users SET last_synced_at = ? WHERE id = ?")) {
+            pstmt.setLong(1, time);
+            pstmt.setInt(2, currentUserId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds events to this vault's audit journal: through the background
+     * journal when this is the vault logged in to, or straight to the table otherwise
+     */
+    void recordAuditEvents(List<AuditEvent> events) throws SQLException {
+        if (auditJournal == null) {
+            writeAuditBatch(events);
+            return;
+        }
+        for (AuditEvent event : events) {
+            auditJournal.append(event);
+        }
+    }
+
+    /**
+     * Moves an entry and its attachments to the trash. Nothing is decrypted or
+     * erased; the entry can be restored until it is purged
+     * {@value #TRASH_RETENTION_DAYS} days later.
+     * @param entryId The id of the entry
+     */
+    public void deletePasswordEntry(int entryId) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        accessLock.readLock().lock();
+        try {
+            entryStore.trash(entryId, System.currentTimeMillis());
+        } finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the entries in the trash, decrypting only their titles and categories
+     * @return The entries, most recently deleted first
+     * @throws SQLException if not logged in or decryption fails
+     */
+    public List<DeletedEntrySummary> getTrash() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+
+        List<DeletedEntrySummary> summaries = new ArrayList<>();
+        try {
+            for (TrashedEntry trashed : entryStore.listTrash()) {
+                StoredEntry row = trashed.entry();
+                Encryptor encryptor = encryptorFor(row.keyVersion());
+                summaries.add(new DeletedEntrySummary(row.id(), encryptor.decrypt(row.title()),
+                    encryptor.decrypt(row.category()), trashed.deletedAt()));
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Error decrypting data", e);
+        }
+        return summaries;
+    }
+
+    /**
+     * Moves an entry out of the trash, with its attachments
+     * @return false if the entry is not in the trash
+     */
+    public boolean restoreFromTrash(int entryId) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        return entryStore.restore(entryId);
+    }
+
+    /**
+     * Erases an entry in the trash for good, without waiting for it to expire
+     * @return false if the entry is not in the trash
+     */
+    public boolean deleteFromTrash(int entryId) throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        accessLock.writeLock().lock();
+        try {
+            // A delete erases live entries too, so only go ahead for one in the trash
+            if (!entryStore.isInTrash(entryId)) {
+                return false;
+            }
+            purgeEntries(List.of(entryId));
+            return true;
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Erases every entry in the trash for good
+     * @return The number of entries erased
+     */
+    public int emptyTrash() throws SQLException {
+        return purgeTrashedBefore(Long.MAX_VALUE);
+    }
+
+    /**
+     * Erases entries that have been in the trash for more than
+     * {@value #TRASH_RETENTION_DAYS} days. Runs in the background every
+     * {@value #TRASH_PURGE_INTERVAL_MINUTES} minutes while logged in.
+     * @return The number of entries erased
+     */
+    public int purgeExpiredTrash() throws SQLException {
+        return purgeTrashedBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(TRASH_RETENTION_DAYS));
+    }
+
+    private int purgeTrashedBefore(long cutoff) throws SQLException {
+        int purged = 0;
+        List<Integer> batch;
+        while (!(batch = entryStore.listTrashedBefore(cutoff, TRASH_PURGE_BATCH_SIZE)).isEmpty()) {
+            purgeEntries(batch);
+            purged += batch.size();
+        }
+        if (purged > 0) {
+            System.out.println("Erased " + purged + " entries from the trash");
+        }
+        return purged;
+    }
+
+    /**
+     * Deletes entries, their attachments and their history in one transaction
+     * with SQLite's secure_delete on, so the freed pages are overwritten
+     * instead of left in the file
+     */
+    private void purgeEntries(List<Integer> entryIds) throws SQLException {
+        accessLock.writeLock().lock();
+        try (Statement stmt = connection.createStatement()) {
+            int secureDelete;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA secure_delete")) {
+                secureDelete = rs.getInt(1);
+            }
+            stmt.execute("PRAGMA secure_delete = ON");
+            try {
+                int userId = currentUserId;
+                List<EntryMutation> deletes = new ArrayList<>(entryIds.size());
+                for (int entryId : entryIds) {
+                    deletes.add(EntryMutation.delete(entryId).withRelated(tx -> deleteEntryRows(tx, entryId, userId)));
+                }
+                entryStore.apply(deletes);
+                entryStore.flush();
+            } finally {
+                stmt.execute("PRAGMA secure_delete = " + secureDelete);
+            }
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes an entry's attachments and history on the given connection
+     */
+    private static void deleteEntryRows(Connection tx, int entryId, int userId) throws SQLException {
+        String[] sqls = {
+            "DELETE FROM attachment_chunks WHERE attachment_id IN (SELECT id FROM attachments WHERE entry_id = ? AND user_id = ?)",
+            "DELETE FROM attachments WHERE entry_id = ? AND user_id = ?",
+            "DELETE FROM password_history WHERE entry_id = ? AND user_id = ?"
+        };
+        for (String sql : sqls) {
+            try (PreparedStatement pstmt = tx.prepareStatement(sql)) {
+                pstmt.setInt(1, entryId);
+                pstmt.setInt(2, userId);
+                pstmt.executeUpdate();
             }
-        } catch (SQLException | IOException e) {
-            e.printStackTrace();
         }
     }
 
-    private void cleanupTempFiles() throws IOException {
-        String tempDir = System.getProperty("java.io.tmpdir");
-        File tempFolder = new File(tempDir, "passwordmanager_temp");
-        
-        if (tempFolder.exists()) {
-            SecureWiper.secureTempCleanup(tempFolder);
+    private void startTrashPurger() {
+        if (trashPurger != null) {
+            return;
         }
+        trashPurger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trash-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first run waits a minute so it does not compete with loading the vault
+        trashPurger.scheduleWithFixedDelay(this::purgeExpiredTrashQuietly,
+            1, TRASH_PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
-    public boolean createUser(String masterPassword) throws ValidationException {
-        if (!InputValidator.isValidMasterPassword(masterPassword)) {
-            throw new ValidationException("Invalid master password format. Password must be at least 12 characters long and contain uppercase, lowercase, numbers, and special characters.");
+    private void purgeExpiredTrashQuietly() {
+        if (entryStore == null) {
+            return;
         }
-
         try {
-            masterPassword = InputValidator.sanitizeInput(masterPassword);
-            
-            SaltManager saltManager = new SaltManager(connection, -1, masterPassword);
-            String salt = saltManager.generateNewSalt();
-            
-            SecretKey dek = Encryptor.generateDEK();
-            
-            SecretKey kek = Encryptor.deriveKEK(masterPassword, salt);
-            
-            String encryptedDEK = Encryptor.encryptDEK(dek, kek);
-            
-            String sql = "INSERT INTO users (master_password_hash, current_salt, encrypted_dek) VALUES (?, ?, ?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                String passwordHash = PasswordHasher.hashPassword(masterPassword, salt);
-                pstmt.setString(1, passwordHash);
-                pstmt.setString(2, salt);
-                pstmt.setString(3, encryptedDEK);
-                
-                int result = pstmt.executeUpdate();
-                
-                if (result > 0) {
-                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                        if (rs.next()) {
-                            int userId = rs.getInt(1);
-                            String historySql = "INSERT INTO salt_history (user_id, salt, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
-                            try (PreparedStatement historyStmt = connection.prepareStatement(historySql)) {
-                                historyStmt.setInt(1, userId);
-                                historyStmt.setString(2, salt);
-                                historyStmt.executeUpdate();
-                            }
-                        }
+            purgeExpiredTrash();
+        } catch (SQLException e) {
+            // Retried at the next interval
+            System.err.println("Failed to purge the trash: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes audit events recorded so far to the journal now instead of at
+     * the next background flush
+     * @throws SQLException if the batch cannot be stored
+     */
+    public void flushAuditJournal() throws SQLException {
+        if (auditJournal != null) {
+            auditJournal.flush();
+        }
+    }
+
+    /**
+     * Reads and decrypts the current user's audit journal. Events recorded
+     * but not yet written are written first.
+     * @return The events, most recent first
+     * @throws SQLException if not logged in or a batch cannot be decrypted
+     */
+    public List<AuditEvent> getAuditEvents() throws SQLException {
+        if (encryptor == null || currentUserId == -1) {
+            throw new SQLException("Not logged in. Please log in first.");
+        }
+        flushAuditJournal();
+
+        List<AuditEvent> events = new ArrayList<>();
+        String sql = "SELECT data, key_version FROM audit_journal WHERE user_id = ? ORDER BY id DESC";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    List<AuditEvent> batch;
+                    try (SecretBuffer text = encryptorFor(rs.getInt("key_version")).decryptSecret(rs.getString("data"))) {
+                        batch = AuditEvent.decodeAll(text.asString());
+                    }
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        events.add(batch.get(i));
                     }
-                    
-                    System.out.println("User created successfully!");
-                    return true;
                 }
             }
+        } catch (SQLException e) {
+            throw e;
         } catch (Exception e) {
-            System.err.println("Error creating user: " + e.getMessage());
-            e.printStackTrace();
+            throw new SQLException("Failed to read the audit journal: " + e.getMessage(), e);
         }
-        return false;
+        return events;
     }
 
-    public boolean verifyMasterPassword(String masterPassword) {
+    /**
+     * Stores a batch of audit events as one encrypted row, then rotates the
+     * journal: the oldest batches are dropped once the user's journal holds
+     * more than {@value #AUDIT_JOURNAL_MAX_BYTES} bytes.
+     * @return false while the vault is locked
+     */
+    private boolean writeAuditBatch(List<AuditEvent> events) throws SQLException {
+        accessLock.readLock().lock();
         try {
-            String sql = "SELECT master_password_hash, current_salt, encrypted_dek FROM users";
-            try (Statement stmt = connection.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
-                
-                while (rs.next()) {
-                    String storedHash = rs.getString("master_password_hash");
-                    String salt = rs.getString("current_salt");
-                    String encryptedDEK = rs.getString("encrypted_dek");
+            if (encryptor == null || currentUserId == -1) {
+                return false;
+            }
+            String data;
+            try (SecretBuffer text = SecretBuffer.of(AuditEvent.encodeAll(events))) {
+                data = encryptor.encryptCompressed(text);
+            } catch (Exception e) {
+                throw new SQLException("Failed to encrypt audit events: " + e.getMessage(), e);
+            }
 
-                    String calculatedHash = PasswordHasher.hashPassword(masterPassword, salt);
-                    if (storedHash.equals(calculatedHash)) {
-                        try {
-                            SecretKey kek = Encryptor.deriveKEK(masterPassword, salt);
-                            Encryptor.decryptDEK(encryptedDEK, kek);
-                            return true;
-                        } catch (Exception e) {
-                            continue;
-                        }
-                    }
+            String sql = "INSERT INTO audit_journal (user_id, first_event_at, event_count, data, key_version) VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setLong(2, events.get(0).time());
+                pstmt.setInt(3, events.size());
+                pstmt.setString(4, data);
+                pstmt.setInt(5, keyVersion);
+                pstmt.executeUpdate();
+            }
+
+            sql = """
+                DELETE FROM audit_journal WHERE id IN (
+                    SELECT id FROM (
+                        SELECT id, SUM(LENGTH(data)) OVER (ORDER BY id DESC) AS newer_bytes
+                        FROM audit_journal WHERE user_id = ?)
+                    WHERE newer_bytes > ?)
+            """;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, currentUserId);
+                pstmt.setInt(2, AUDIT_JOURNAL_MAX_BYTES);
+                int rotated = pstmt.executeUpdate();
+                if (rotated > 0) {
+                    System.out.println("Rotated " + rotated + " batches out of the audit journal");
                 }
             }
+            return true;
+        } finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    private void startAuditJournal() {
+        if (auditJournal == null) {
+            auditJournal = new AuditJournal(this::writeAuditBatch);
+        }
+        AuditJournal.setActive(auditJournal);
+    }
+
+    private void flushAuditJournalQuietly() {
+        try {
+            flushAuditJournal();
         } catch (SQLException e) {
-            System.err.println("Error verifying master password: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Failed to write audit events: " + e.getMessage());
         }
-        return false;
     }
 
-    public Connection getConnection() {
-        return connection;
+    private void closeAuditJournal() {
+        if (auditJournal == null) {
+            return;
+        }
+        try {
+            auditJournal.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to write audit events: " + e.getMessage());
+        }
+        auditJournal = null;
     }
 
-    public void addPasswordEntry(PasswordEntry entry) throws SQLException, ValidationException {
+    /**
+     * Attaches a file to an entry. The stream is read and encrypted one chunk
+     * at a time, so the file is never held in memory as a whole. Each chunk is
+     * bound to its attachment, its position and whether it is the last one, so
+     * chunks cannot be reordered, swapped between files or dropped.
+     *
+     * The whole file is stored in one transaction, so it costs one sync
+     * rather than one per chunk, and a failure leaves nothing behind. The
+     * write lock is held throughout, since the transaction runs on the shared
+     * connection; it also keeps the DEK from changing halfway through a file.
+     * @param entryId The entry to attach the file to
+     * @param name The file name to show
+     * @param content The file content; not closed
+     * @return The id of the new attachment
+     * @throws SQLException if not logged in, the entry does not exist, or the chunks cannot be stored
+     * @throws IOException if the content cannot be read
+     */
+    public int addAttachment(int entryId, String name, InputStream content) throws SQLException, IOException {
         if (encryptor == null || currentUserId == -1) {
             throw new SQLException("Not logged in. Please log in first.");
         }
 
-        InputValidator.validatePasswordEntry(
-            entry.getTitle(),
-            entry.getUsername(),
-            entry.getPassword(),
-            entry.getUrl(),
-            entry.getNotes(),
-            entry.getCategory()
-        );
+        accessLock.writeLock().lock();
+        byte[] chunk = new byte[ATTACHMENT_CHUNK_SIZE];
+        byte[] next = new byte[ATTACHMENT_CHUNK_SIZE];
+        try {
+            // A new entry may still be queued; its row has to exist for the insert below to find it
+            entryStore.flush();
+            try {
+                connection.setAutoCommit(false);
+                int attachmentId;
+                // Checks that the entry exists, outside the trash, in the statement that attaches to it
+                String sql = """
+                    INSERT INTO attachments (user_id, entry_id, name, key_version)
+                    SELECT user_id, id, ?, ? FROM passwords WHERE id = ? AND user_id = ? AND deleted_at IS NULL
+                """;
+                try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setString(1, encryptor.encrypt(name));
+                    pstmt.setInt(2, keyVersion);
+                    pstmt.setInt(3, entryId);
+                    pstmt.setInt(4, currentUserId);
+                    if (pstmt.executeUpdate() == 0) {
+                        throw new SQLException("Entry " + entryId + " does not exist");
+                    }
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        rs.next();
+                        attachmentId = rs.getInt(1);
+                    }
+                }
 
-        entry.setTitle(InputValidator.sanitizeInput(entry.getTitle()));
-        entry.setUsername(InputValidator.sanitizeInput(entry.getUsername()));
-        entry.setPassword(InputValidator.sanitizeInput(entry.getPassword()));
-        entry.setUrl(InputValidator.sanitizeInput(entry.getUrl()));
-        entry.setNotes(InputValidator.sanitizeInput(entry.getNotes()));
-        entry.setCategory(InputValidator.sanitizeInput(entry.getCategory()));
+                // Read one chunk ahead to know which chunk is the last; an empty file is one empty chunk
+                String chunkSql = "INSERT INTO attachment_chunks (attachment_id, chunk_index, data, key_version) VALUES (?, ?, ?, ?)";
+                long size = 0;
+                int index = 0;
+                int length = content.readNBytes(chunk, 0, chunk.length);
+                try (PreparedStatement pstmt = connection.prepareStatement(chunkSql)) {
+                    while (true) {
+                        int nextLength = length == chunk.length ? content.readNBytes(next, 0, next.length) : 0;
+                        boolean last = nextLength == 0;
+                        byte[] plaintext = Arrays.copyOf(chunk, length);
+                        try {
+                            pstmt.setInt(1, attachmentId);
+                            pstmt.setInt(2, index);
+                            pstmt.setBytes(3, encryptor.encryptBytes(plaintext,
+                                chunkAssociatedData(attachmentId, index, last ? index + 1 : index + 2)));
+                            pstmt.setInt(4, keyVersion);
+                            pstmt.executeUpdate();
+                        } finally {
+                            SecureWiper.wipeByteArray(plaintext);
+                        }
+                        size += length;
+                        index++;
+                        if (last) {
+                            break;
+                        }
+                        byte[] swap = chunk;
+                        chunk = next;
+                        next = swap;
+                        length = nextLength;
+                    }
+                }
 
-        try {
-            String sql = """
-                INSERT INTO passwords (user_id, title, username, password, url, notes, category)
-                VALUES (?, ?, ?, ?, ?, ?, ?)
-            """;
-            
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setInt(1, currentUserId);
-                pstmt.setString(2, encryptor.encrypt(entry.getTitle()));
-                pstmt.setString(3, encryptor.encrypt(entry.getUsername()));
-                pstmt.setString(4, encryptor.encrypt(entry.getPassword()));
-                pstmt.setString(5, encryptor.encrypt(entry.getUrl()));
-                pstmt.setString(6, encryptor.encrypt(entry.getNotes()));
-                pstmt.setString(7, encryptor.encrypt(entry.getCategory()));
-                pstmt.executeUpdate();
+                try (PreparedStatement pstmt = connection.prepareStatement("UPDATE attachments SET size = ?, chunk_count = ? WHERE id = ?")) {
+                    pstmt.setLong(1, size);
+                    pstmt.setInt(2, index);
+                    pstmt.setInt(3, attachmentId);
+                    pstmt.executeUpdate();
+                }
+                connection.commit();
+                return attachmentId;
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
+        } catch (SQLException | IOException e) {
+            throw e;
         } catch (Exception e) {
-            throw new SQLException("Error encrypting data", e);
+            throw new SQLException("Failed to encrypt attachment: " + e.getMessage(), e);
+        } finally {
+            SecureWiper.wipeByteArray(chunk);
+            SecureWiper.wipeByteArray(next);
+            accessLock.writeLock().unlock();
         }
     }
 
-    public List<PasswordEntry> getAllPasswords() throws SQLException {
+    /**
+     * Lists an entry's attachments. Only the metadata is read.
+     * @param entryId The entry
+     * @return The attachments, oldest first
+     * @throws SQLException if not logged in or a name cannot be decrypted
+     */
+    public List<Attachment> getAttachments(int entryId) throws SQLException {
         if (encryptor == null || currentUserId == -1) {
             throw new SQLException("Not logged in. Please log in first.");
         }
 
-        List<PasswordEntry> passwords = new ArrayList<>();
-        String sql = "SELECT * FROM passwords WHERE user_id = ? ORDER BY title";
-        
-        try {
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setInt(1, currentUserId);
-                ResultSet rs = pstmt.executeQuery();
-                
+        List<Attachment> attachments = new ArrayList<>();
+        String sql = """
+            SELECT id, name, size, key_version FROM attachments
+            WHERE entry_id = ? AND user_id = ? AND chunk_count IS NOT NULL
+            ORDER BY id
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, entryId);
+            pstmt.setInt(2, currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    PasswordEntry entry = new PasswordEntry();
-                    entry.setId(rs.getInt("id"));
-                    entry.setTitle(encryptor.decrypt(rs.getString("title")));
-                    
-                    String encryptedUsername = rs.getString("username");
-                    String encryptedPassword = rs.getString("password");
-                    
-                    entry.setUsername(encryptedUsername != null ? encryptor.decrypt(encryptedUsername) : "");
-                    entry.setPassword(encryptedPassword != null ? encryptor.decrypt(encryptedPassword) : "");
-                    entry.setUrl(rs.getString("url") != null ? encryptor.decrypt(rs.getString("url")) : "");
-                    entry.setNotes(rs.getString("notes") != null ? encryptor.decrypt(rs.getString("notes")) : "");
-                    entry.setCategory(rs.getString("category") != null ? encryptor.decrypt(rs.getString("category")) : "");
-                    entry.setLastModified(rs.getLong("last_modified"));
-                    passwords.add(entry);
+                    Encryptor encryptor = encryptorFor(rs.getInt("key_version"));
+                    attachments.add(new Attachment(rs.getInt("id"), entryId,
+                        encryptor.decrypt(rs.getString("name")), rs.getLong("size")));
                 }
             }
+        } catch (SQLException e) {
+            throw e;
         } catch (Exception e) {
             throw new SQLException("Error decrypting data", e);
         }
-        return passwords;
+        return attachments;
     }
 
-    public void updatePasswordEntry(PasswordEntry entry) throws SQLException, ValidationException {
+    /**
+     * Opens an attachment for reading. Chunks are fetched and decrypted one at
+     * a time as the stream is read, and wiped when the stream moves past them
+     * or is closed.
+     * @param attachmentId The attachment
+     * @return The decrypted content; the caller must close it
+     * @throws SQLException if not logged in or the attachment does not exist
+     */
+    public InputStream openAttachment(int attachmentId) throws SQLException {
         if (encryptor == null || currentUserId == -1) {
             throw new SQLException("Not logged in. Please log in first.");
         }
 
-        InputValidator.validatePasswordEntry(
-            entry.getTitle(),
-            entry.getUsername(),
-            entry.getPassword(),
-            entry.getUrl(),
-            entry.getNotes(),
-            entry.getCategory()
-        );
+        String sql = "SELECT chunk_count FROM attachments WHERE id = ? AND user_id = ? AND chunk_count IS NOT NULL";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, attachmentId);
+            pstmt.setInt(2, currentUserId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Attachment " + attachmentId + " does not exist");
+                }
+                return new AttachmentInputStream(attachmentId, rs.getInt("chunk_count"));
+            }
+        }
+    }
 
-        entry.setTitle(InputValidator.sanitizeInput(entry.getTitle()));
-        entry.setUsername(InputValidator.sanitizeInput(entry.getUsername()));
-        entry.setPassword(InputValidator.sanitizeInput(entry.getPassword()));
-        entry.setUrl(InputValidator.sanitizeInput(entry.getUrl()));
-        entry.setNotes(InputValidator.sanitizeInput(entry.getNotes()));
-        entry.setCategory(InputValidator.sanitizeInput(entry.getCategory()));
+    public boolean deleteAttachment(int attachmentId) throws SQLException {
+        return deleteAttachmentRows("attachments.id = ? AND attachments.user_id = " + currentUserId, attachmentId) > 0;
+    }
 
+    /**
+     * Deletes the attachments matching a condition on the attachments table, with their chunks
+     * @return The number of attachments deleted
+     */
+    private int deleteAttachmentRows(String condition, int value) throws SQLException {
+        accessLock.readLock().lock();
         try {
-            String sql = """
-                UPDATE passwords 
-                SET title = ?, username = ?, password = ?, url = ?, notes = ?, 
-                    category = ?, last_modified = ? 
-                WHERE id = ? AND user_id = ?
-            """;
-            
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, encryptor.encrypt(entry.getTitle()));
-                pstmt.setString(2, encryptor.encrypt(entry.getUsername()));
-                pstmt.setString(3, encryptor.encrypt(entry.getPassword()));
-                pstmt.setString(4, encryptor.encrypt(entry.getUrl()));
-                pstmt.setString(5, encryptor.encrypt(entry.getNotes()));
-                pstmt.setString(6, encryptor.encrypt(entry.getCategory()));
-                pstmt.setLong(7, entry.getLastModified());
-                pstmt.setInt(8, entry.getId());
-                pstmt.setInt(9, currentUserId);
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "DELETE FROM attachment_chunks WHERE attachment_id IN (SELECT id FROM attachments WHERE " + condition + ")")) {
+                pstmt.setInt(1, value);
                 pstmt.executeUpdate();
             }
-        } catch (Exception e) {
-            throw new SQLException("Error encrypting data", e);
+            try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM attachments WHERE " + condition)) {
+                pstmt.setInt(1, value);
+                return pstmt.executeUpdate();
+            }
+        } finally {
+            accessLock.readLock().unlock();
         }
     }
 
-    public void deletePasswordEntry(int entryId) throws SQLException {
-        PasswordEntry entry = getPasswordEntry(entryId);
-        if (entry != null) {
-            entry.secureClear();
+    /**
+     * Removes attachments left behind by an upload that never finished
+     */
+    private void deleteIncompleteAttachments() throws SQLException {
+        if (!tableExists("attachments")) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM attachment_chunks WHERE attachment_id IN (SELECT id FROM attachments WHERE chunk_count IS NULL)");
+            stmt.executeUpdate("DELETE FROM attachments WHERE chunk_count IS NULL");
+        }
+    }
+
+    /**
+     * The associated data of a chunk: its attachment, its index and whether it is the last
+     */
+    private static byte[] chunkAssociatedData(int attachmentId, int index, int chunkCount) {
+        return ByteBuffer.allocate(9)
+            .putInt(attachmentId)
+            .putInt(index)
+            .put((byte) (index == chunkCount - 1 ? 1 : 0))
+            .array();
+    }
+
+    /**
+     * Streams an attachment, holding at most one decrypted chunk
+     */
+    private class AttachmentInputStream extends InputStream {
+        private final int attachmentId;
+        private final int chunkCount;
+        private int nextChunk;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        AttachmentInputStream(int attachmentId, int chunkCount) {
+            this.attachmentId = attachmentId;
+            this.chunkCount = chunkCount;
         }
 
-        String sql = "DELETE FROM passwords WHERE id = ? AND user_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, entryId);
-            pstmt.setInt(2, currentUserId);
-            pstmt.executeUpdate();
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == chunk.length) {
+                if (nextChunk == chunkCount) {
+                    return -1;
+                }
+                loadChunk();
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private void loadChunk() throws IOException {
+            String sql = "SELECT data, key_version FROM attachment_chunks WHERE attachment_id = ? AND chunk_index = ?";
+            accessLock.readLock().lock();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                if (encryptor == null) {
+                    throw new IOException("The vault is locked");
+                }
+                pstmt.setInt(1, attachmentId);
+                pstmt.setInt(2, nextChunk);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new IOException("Attachment " + attachmentId + " is missing chunk " + nextChunk);
+                    }
+                    byte[] decrypted = encryptorFor(rs.getInt("key_version")).decryptBytes(rs.getBytes("data"),
+                        chunkAssociatedData(attachmentId, nextChunk, chunkCount));
+                    SecureWiper.wipeByteArray(chunk);
+                    chunk = decrypted;
+                    position = 0;
+                    nextChunk++;
+                }
+            } catch (SQLException | GeneralSecurityException e) {
+                throw new IOException("Failed to read attachment: " + e.getMessage(), e);
+            } finally {
+                accessLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            SecureWiper.wipeByteArray(chunk);
+            chunk = new byte[0];
+            position = 0;
+            nextChunk = chunkCount;
         }
     }
 
@@ -421,10 +3399,10 @@ public class DatabaseManager {
             
             for (PasswordEntry entry : entries) {
                 try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
-                    pstmt.setString(1, encryptor.encrypt(entry.getUsername()));
-                    pstmt.setString(2, encryptor.encrypt(entry.getPassword()));
+                    pstmt.setString(1, encryptor.encrypt(entry.getUsernameSecret()));
+                    pstmt.setString(2, encryptor.encrypt(entry.getPasswordSecret()));
                     pstmt.setString(3, encryptor.encrypt(entry.getUrl()));
-                    pstmt.setString(4, encryptor.encrypt(entry.getNotes()));
+                    pstmt.setString(4, encryptor.encryptCompressed(entry.getNotesSecret()));
                     pstmt.setInt(5, entry.getId());
                     pstmt.executeUpdate();
                 }
@@ -438,34 +3416,48 @@ public class DatabaseManager {
     }
 
     public void deleteUser() throws SQLException {
+        flushEntryChanges();
+        closeAuditJournal();
         try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM attachment_chunks");
+            stmt.execute("DELETE FROM attachments");
+            stmt.execute("DELETE FROM password_history");
+            stmt.execute("DELETE FROM audit_journal");
             stmt.execute("DELETE FROM passwords");
+            stmt.execute("DELETE FROM keyslots");
             stmt.execute("DELETE FROM users");
             System.out.println("User and all associated data deleted.");
         }
     }
 
     public void wipeDatabase() throws SQLException {
-        String sql = "SELECT id FROM passwords";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                deletePasswordEntry(rs.getInt("id"));
-            }
-        }
+        flushEntryChanges();
+        closeAuditJournal();
 
         try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM attachment_chunks");
+            stmt.executeUpdate("DELETE FROM attachments");
+            stmt.executeUpdate("DELETE FROM password_history");
+            stmt.executeUpdate("DELETE FROM audit_journal");
             stmt.executeUpdate("DELETE FROM passwords");
             stmt.executeUpdate("DELETE FROM users");
             stmt.executeUpdate("DELETE FROM salt_history");
+            stmt.executeUpdate("DELETE FROM keyslots");
         }
 
         try {
             connection.close();
+            if (workingCopy != null) {
+                // The wiped database is used directly from now on
+                writeBackTimer.shutdownNow();
+                workingCopy.discard();
+                workingCopy = null;
+            }
             File dbFile = new File(DB_NAME);
-            SecureWiper.secureDeleteFile(dbFile);
+            SecureWiper.secureDeleteFile(dbFile, WipePolicy.SINGLE_PASS);
             
             connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);
+            openEntryStore();
             createTables();
         } catch (IOException e) {
             throw new SQLException("Failed to securely wipe database file", e);
@@ -478,7 +3470,17 @@ public class DatabaseManager {
             entry.secureClear();
         }
 
-        String sql = "DELETE FROM passwords WHERE user_id = ?";
+        deleteAttachmentRows("attachments.user_id = ?", currentUserId);
+        deleteHistoryRows("user_id = ?", currentUserId);
+        closeAuditJournal();
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM audit_journal WHERE user_id = ?")) {
+            pstmt.setInt(1, currentUserId);
+            pstmt.executeUpdate();
+        }
+
+        entryStore.deleteAll();
+
+        String sql = "DELETE FROM keyslots WHERE user_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setInt(1, currentUserId);
             pstmt.executeUpdate();
@@ -490,6 +3492,7 @@ public class DatabaseManager {
             pstmt.executeUpdate();
         }
 
+        closeSession();
         if (encryptor != null) {
             encryptor.secureWipeKeys();
         }
@@ -500,55 +3503,40 @@ public class DatabaseManager {
             throw new SQLException("Not logged in. Please log in first.");
         }
 
-        List<String> categories = new ArrayList<>();
-        String sql = "SELECT DISTINCT category FROM passwords WHERE user_id = ? AND category IS NOT NULL AND category != '' ORDER BY category";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, currentUserId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                String encryptedCategory = rs.getString("category");
-                if (encryptedCategory != null && !encryptedCategory.isEmpty()) {
-                    try {
-                        String decryptedCategory = encryptor.decrypt(encryptedCategory);
-                        if (decryptedCategory != null && !decryptedCategory.isEmpty()) {
-                            categories.add(decryptedCategory);
-                        }
-                    } catch (Exception e) {
-                        categories.add(encryptedCategory);
+        // Every row encrypts its category with its own IV, so duplicates only show after decrypting
+        Set<String> categories = new LinkedHashSet<>();
+        for (StoredEntry row : entryStore.listSummaries()) {
+            String encryptedCategory = row.category();
+            if (encryptedCategory != null && !encryptedCategory.isEmpty()) {
+                try {
+                    String decryptedCategory = encryptorFor(row.keyVersion()).decrypt(encryptedCategory);
+                    if (decryptedCategory != null && !decryptedCategory.isEmpty()) {
+                        categories.add(decryptedCategory);
                     }
+                } catch (Exception e) {
+                    categories.add(encryptedCategory);
                 }
             }
         }
-        return categories;
+        return new ArrayList<>(categories);
     }
 
-    private PasswordEntry getPasswordEntry(int entryId) throws SQLException {
-        String sql = "SELECT title, username, password, url, notes, category FROM passwords WHERE id = ? AND user_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, entryId);
-            pstmt.setInt(2, currentUserId);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    try {
-                        PasswordEntry entry = new PasswordEntry();
-                        entry.setId(entryId);
-                        entry.setTitle(encryptor.decrypt(rs.getString("title")));
-                        entry.setUsername(encryptor.decrypt(rs.getString("username")));
-                        entry.setPassword(encryptor.decrypt(rs.getString("password")));
-                        entry.setUrl(encryptor.decrypt(rs.getString("url")));
-                        entry.setNotes(encryptor.decrypt(rs.getString("notes")));
-                        entry.setCategory(encryptor.decrypt(rs.getString("category")));
-                        return entry;
-                    } catch (Exception e) {
-                        throw new SQLException("Failed to decrypt password entry: " + e.getMessage(), e);
-                    }
-                }
-            }
+    /**
+     * Loads and decrypts a single entry of the current user
+     * @param entryId The id of the entry
+     * @return The entry, or null if it does not exist
+     * @throws SQLException if the entry cannot be decrypted
+     */
+    public PasswordEntry getPasswordEntry(int entryId) throws SQLException {
+        StoredEntry row = entryStore.get(entryId);
+        if (row == null) {
+            return null;
+        }
+        try {
+            return session.track(decryptEntry(row));
+        } catch (Exception e) {
+            throw new SQLException("Failed to decrypt password entry: " + e.getMessage(), e);
         }
-        return null;
     }
 
     /**
@@ -560,11 +3548,17 @@ public class DatabaseManager {
         if (encryptor == null) {
             throw new SQLException("Not logged in. Please log in first.");
         }
+        if (previousEncryptor != null) {
+            // Entries are split across two keys until the rotation finishes
+            throw new SQLException("The encryption key is being rotated. Please try again when it has finished.");
+        }
         return encryptor.getDEK();
     }
 
     /**
-     * Gets the path to the current database file
+     * Gets the path to the current database file. The file only holds the
+     * latest changes after {@link #writeBack()}; call it before reading the
+     * file itself.
      * @return The database file path
      */
     public String getDatabasePath() {
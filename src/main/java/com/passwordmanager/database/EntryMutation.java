@@ -0,0 +1,62 @@
+package com.passwordmanager.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One change in a batch passed to {@link EntryStore#apply(java.util.List)}
+ * @param entry The new state of the entry; null for a deletion or a move to the trash
+ * @param deletedAt When a {@link Type#TRASH} change moved the entry to the trash; 0 otherwise
+ * @param related Rows of other tables that belong with the change; null if there are none
+ */
+public record EntryMutation(Type type, int id, StoredEntry entry, long deletedAt, RelatedWrite related) {
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE,
+        TRASH
+    }
+
+    /**
+     * Writes rows that belong with an entry change, such as its history or its
+     * attachments, on the store's connection and inside the transaction that
+     * applies the change. Only runs if the change applies.
+     */
+    @FunctionalInterface
+    public interface RelatedWrite {
+        void write(Connection connection) throws SQLException;
+    }
+
+    public static EntryMutation insert(StoredEntry entry) {
+        return new EntryMutation(Type.INSERT, entry.id(), entry, 0, null);
+    }
+
+    public static EntryMutation update(StoredEntry entry) {
+        return new EntryMutation(Type.UPDATE, entry.id(), entry, 0, null);
+    }
+
+    /**
+     * Deletes an entry for good, whether or not it is in the trash
+     */
+    public static EntryMutation delete(int id) {
+        return new EntryMutation(Type.DELETE, id, null, 0, null);
+    }
+
+    public static EntryMutation trash(int id, long deletedAt) {
+        return new EntryMutation(Type.TRASH, id, null, deletedAt, null);
+    }
+
+    /**
+     * @return This change, also writing the given related rows
+     */
+    public EntryMutation withRelated(RelatedWrite related) {
+        return new EntryMutation(type, id, entry, deletedAt, related);
+    }
+
+    /**
+     * @return This change for another entry, such as a new entry numbered by the store
+     */
+    EntryMutation withEntry(StoredEntry entry) {
+        return new EntryMutation(type, entry.id(), entry, deletedAt, related);
+    }
+}
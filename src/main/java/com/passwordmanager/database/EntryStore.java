@@ -0,0 +1,125 @@
+package com.passwordmanager.database;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Where one user's encrypted entries are kept. {@link DatabaseManager} does
+ * all encryption and locking; a store only persists {@link StoredEntry}
+ * values as they are given and returns them unchanged.
+ *
+ * Every method reports failures as {@link SQLException}, whatever the store
+ * is backed by, so callers handle all stores the same way.
+ */
+public interface EntryStore extends AutoCloseable {
+
+    /**
+     * Stores a new entry. A positive id is kept; otherwise one is assigned.
+     * @return The id of the entry
+     */
+    int insert(StoredEntry entry) throws SQLException;
+
+    /**
+     * Stores several new entries, all or none. Ids are handled as by {@link #insert(StoredEntry)}.
+     */
+    void insertAll(List<StoredEntry> entries) throws SQLException;
+
+    /**
+     * Applies changes in order, all or none. Changes to entries that do not
+     * exist are skipped, as are updates and moves to the trash of entries
+     * already in the trash. The related rows of a change are written in the
+     * same transaction; stores without one reject such changes.
+     */
+    void apply(List<EntryMutation> mutations) throws SQLException;
+
+    /**
+     * @return An id no entry has, nor any entry had that could still be referenced
+     */
+    int nextId() throws SQLException;
+
+    /**
+     * Replaces an existing entry
+     * @return false if there is no entry with that id, or it is in the trash
+     */
+    boolean update(StoredEntry entry) throws SQLException;
+
+    /**
+     * Deletes an entry for good, whether or not it is in the trash
+     * @return false if there is no entry with that id
+     */
+    boolean delete(int id) throws SQLException;
+
+    /**
+     * @return The entry, or null if it does not exist or is in the trash
+     */
+    StoredEntry get(int id) throws SQLException;
+
+    /**
+     * @return Every entry not in the trash, ordered by id
+     */
+    List<StoredEntry> list() throws SQLException;
+
+    /**
+     * Like {@link #list()}, but the username, password and notes are null,
+     * for callers that only show or look up entries. Stores that can skip
+     * reading those fields should.
+     * @return Every entry not in the trash, ordered by id
+     */
+    default List<StoredEntry> listSummaries() throws SQLException {
+        return list().stream().map(StoredEntry::summary).toList();
+    }
+
+    /**
+     * Moves an entry to the trash. It keeps its id and is hidden from
+     * {@link #get(int)}, {@link #list()} and {@link #update(StoredEntry)}
+     * until it is restored or deleted.
+     * @return false if there is no entry with that id outside the trash
+     */
+    boolean trash(int id, long deletedAt) throws SQLException;
+
+    /**
+     * Moves an entry out of the trash
+     * @return false if the entry is not in the trash
+     */
+    boolean restore(int id) throws SQLException;
+
+    /**
+     * @return Every entry in the trash, most recently deleted first
+     */
+    List<TrashedEntry> listTrash() throws SQLException;
+
+    /**
+     * @return true if the entry is in the trash
+     */
+    boolean isInTrash(int id) throws SQLException;
+
+    /**
+     * @param cutoff Milliseconds since the epoch
+     * @param limit The most ids to return
+     * @return Ids of entries moved to the trash before the cutoff, oldest first
+     */
+    List<Integer> listTrashedBefore(long cutoff, int limit) throws SQLException;
+
+    /**
+     * Finds entries still encrypted with an older key, including those in the trash
+     * @param keyVersion The current key version
+     * @param limit The most entries to return
+     * @return Entries whose key version differs, ordered by id
+     */
+    List<StoredEntry> listOnOtherVersion(int keyVersion, int limit) throws SQLException;
+
+    /**
+     * Stores re-encrypted entries, all or none. Entries that were rewritten
+     * on {@code keyVersion} since they were listed, or deleted, are skipped.
+     * @return The number of entries replaced
+     */
+    int replaceOnOtherVersion(List<StoredEntry> entries, int keyVersion) throws SQLException;
+
+    /**
+     * Deletes every entry, including those in the trash
+     */
+    void deleteAll() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,465 @@
+package com.passwordmanager.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Queues inserts, updates, deletions and moves to the trash in memory and commits them to another
+ * store in one transaction, so a burst of edits costs one sync instead of one
+ * per edit.
+ *
+ * A batch is committed {@value #COMMIT_WINDOW_MILLIS} ms after its first
+ * change, as soon as it holds {@value #MAX_BATCH_SIZE} changes, or when
+ * {@link #flush()} is called. Reads see queued changes as if they were already
+ * stored. Ids of new entries are handed out here, so they are known before the
+ * entry is committed.
+ *
+ * Commits take the write lock of the given lock, which callers hold as a read
+ * lock around single changes. A change made while holding the read lock is
+ * only queued; the bulk and trash methods ({@link #listOnOtherVersion(int, int)},
+ * {@link #replaceOnOtherVersion(List, int)}, {@link #deleteAll()},
+ * {@link #restore(int)}, {@link #listTrash()}, {@link #listTrashedBefore(long, int)})
+ * commit the queue first and must not be called while holding the read lock.
+ *
+ * A failed commit keeps its changes queued and retries them with the next
+ * batch. After {@value #MAX_COMMIT_ATTEMPTS} failed attempts in a row each
+ * change is committed on its own, and those that still fail are set aside so
+ * they cannot hold up later changes; see {@link #getSetAside()}.
+ */
+public class GroupCommitEntryStore implements EntryStore {
+    public static final int COMMIT_WINDOW_MILLIS = 200;
+    public static final int MAX_BATCH_SIZE = 64;
+    public static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    private final EntryStore store;
+    private final ReadWriteLock lock;
+    private final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "entry-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<EntryMutation> queue = new ArrayList<>();
+    /** The newest queued version of each changed entry */
+    private final TreeMap<Integer, StoredEntry> queuedEntries = new TreeMap<>();
+    private final Set<Integer> queuedDeletes = new HashSet<>();
+    private final Set<Integer> queuedTrash = new HashSet<>();
+    private final List<EntryMutation> setAside = new ArrayList<>();
+    private CompletableFuture<Void> queueDurable = new CompletableFuture<>();
+    private boolean commitScheduled;
+    private int nextId;
+    private int failedAttempts;
+
+    private long batches;
+    private long committedChanges;
+    private int largestBatch;
+    private long totalCommitNanos;
+    private long slowestCommitNanos;
+    private long failedCommits;
+
+    /**
+     * Reports changes that failed on their own after the batch holding them
+     * failed {@value #MAX_COMMIT_ATTEMPTS} times. They are no longer queued.
+     */
+    public static class ChangesSetAsideException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<EntryMutation> changes;
+
+        public ChangesSetAsideException(List<EntryMutation> changes, SQLException cause) {
+            super(changes.size() + " change(s) could not be saved: " + cause.getMessage(), cause);
+            this.changes = List.copyOf(changes);
+        }
+
+        public List<EntryMutation> getChanges() {
+            return changes;
+        }
+    }
+
+    /**
+     * Counters since the store was opened
+     */
+    public record Stats(long batches, long changes, int largestBatch, long totalCommitNanos,
+                        long slowestCommitNanos, long failedCommits) {
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) changes / batches;
+        }
+
+        public double averageCommitMillis() {
+            return batches == 0 ? 0 : totalCommitNanos / 1_000_000.0 / batches;
+        }
+    }
+
+    /**
+     * @param store Where the changes are committed; closed with this store
+     * @param lock Whose write lock is held while a batch is committed
+     */
+    public GroupCommitEntryStore(EntryStore store, ReadWriteLock lock) {
+        this.store = store;
+        this.lock = lock;
+    }
+
+    @Override
+    public synchronized int insert(StoredEntry entry) throws SQLException {
+        return insert(EntryMutation.insert(entry));
+    }
+
+    private int insert(EntryMutation mutation) throws SQLException {
+        StoredEntry entry = mutation.entry();
+        if (entry.lastModified() == 0) {
+            // Stamped now, so reads of the queued entry see the time it will be stored with
+            entry = new StoredEntry(entry.id(), entry.title(), entry.username(), entry.password(), entry.url(),
+                entry.notes(), entry.category(), System.currentTimeMillis(), entry.keyVersion());
+        }
+        StoredEntry numbered = entry.id() > 0 ? entry : entry.withId(nextId());
+        nextId = Math.max(nextId, numbered.id() + 1);
+        enqueue(mutation.withEntry(numbered));
+        return numbered.id();
+    }
+
+    @Override
+    public synchronized void insertAll(List<StoredEntry> entries) throws SQLException {
+        // All of them are queued before the committer can run, so they share a batch
+        for (StoredEntry entry : entries) {
+            insert(entry);
+        }
+    }
+
+    @Override
+    public synchronized void apply(List<EntryMutation> mutations) throws SQLException {
+        for (EntryMutation mutation : mutations) {
+            switch (mutation.type()) {
+                case INSERT -> insert(mutation);
+                // Deletions also cover entries in the trash, which this store cannot see cheaply; the store skips missing ones
+                case DELETE -> enqueue(mutation);
+                case UPDATE, TRASH -> {
+                    if (get(mutation.id()) != null) {
+                        enqueue(mutation);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int nextId() throws SQLException {
+        if (nextId == 0) {
+            nextId = store.nextId();
+        }
+        return nextId;
+    }
+
+    @Override
+    public synchronized boolean update(StoredEntry entry) throws SQLException {
+        if (get(entry.id()) == null) {
+            return false;
+        }
+        enqueue(EntryMutation.update(entry));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(int id) throws SQLException {
+        if (get(id) == null && !isInTrash(id)) {
+            return false;
+        }
+        enqueue(EntryMutation.delete(id));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean trash(int id, long deletedAt) throws SQLException {
+        if (get(id) == null) {
+            return false;
+        }
+        enqueue(EntryMutation.trash(id, deletedAt));
+        return true;
+    }
+
+    @Override
+    public boolean restore(int id) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            flush();
+            return store.restore(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TrashedEntry> listTrash() throws SQLException {
+        flush();
+        return store.listTrash();
+    }
+
+    @Override
+    public synchronized boolean isInTrash(int id) throws SQLException {
+        if (queuedTrash.contains(id)) {
+            return true;
+        }
+        if (queuedDeletes.contains(id)) {
+            return false;
+        }
+        return store.isInTrash(id);
+    }
+
+    @Override
+    public List<Integer> listTrashedBefore(long cutoff, int limit) throws SQLException {
+        flush();
+        return store.listTrashedBefore(cutoff, limit);
+    }
+
+    @Override
+    public synchronized StoredEntry get(int id) throws SQLException {
+        if (queuedDeletes.contains(id) || queuedTrash.contains(id)) {
+            return null;
+        }
+        StoredEntry queued = queuedEntries.get(id);
+        return queued != null ? queued : store.get(id);
+    }
+
+    @Override
+    public synchronized List<StoredEntry> list() throws SQLException {
+        if (queue.isEmpty()) {
+            return store.list();
+        }
+        TreeMap<Integer, StoredEntry> entries = new TreeMap<>();
+        for (StoredEntry entry : store.list()) {
+            entries.put(entry.id(), entry);
+        }
+        entries.keySet().removeAll(queuedDeletes);
+        entries.keySet().removeAll(queuedTrash);
+        entries.putAll(queuedEntries);
+        return new ArrayList<>(entries.values());
+    }
+
+    @Override
+    public synchronized List<StoredEntry> listSummaries() throws SQLException {
+        if (queue.isEmpty()) {
+            return store.listSummaries();
+        }
+        TreeMap<Integer, StoredEntry> entries = new TreeMap<>();
+        for (StoredEntry entry : store.listSummaries()) {
+            entries.put(entry.id(), entry);
+        }
+        entries.keySet().removeAll(queuedDeletes);
+        entries.keySet().removeAll(queuedTrash);
+        for (StoredEntry entry : queuedEntries.values()) {
+            entries.put(entry.id(), entry.summary());
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    @Override
+    public List<StoredEntry> listOnOtherVersion(int keyVersion, int limit) throws SQLException {
+        flush();
+        return store.listOnOtherVersion(keyVersion, limit);
+    }
+
+    @Override
+    public int replaceOnOtherVersion(List<StoredEntry> entries, int keyVersion) throws SQLException {
+        flush();
+        return store.replaceOnOtherVersion(entries, keyVersion);
+    }
+
+    @Override
+    public void deleteAll() throws SQLException {
+        flush();
+        store.deleteAll();
+    }
+
+    /**
+     * @return A future completed once every change queued so far is
+     *         committed, or completed exceptionally if its commit fails
+     */
+    public synchronized CompletableFuture<Void> whenDurable() {
+        return queue.isEmpty() ? CompletableFuture.completedFuture(null) : queueDurable;
+    }
+
+    /**
+     * @return How many changes are waiting to be committed
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return The changes given up on since the store was opened, oldest first
+     */
+    public synchronized List<EntryMutation> getSetAside() {
+        return new ArrayList<>(setAside);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(batches, committedChanges, largestBatch, totalCommitNanos, slowestCommitNanos, failedCommits);
+    }
+
+    /**
+     * Commits every queued change now, in one transaction
+     * @throws SQLException if the commit fails; the changes stay queued, unless
+     *         it is a {@link ChangesSetAsideException}
+     */
+    public void flush() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            List<EntryMutation> batch;
+            CompletableFuture<Void> durable;
+            synchronized (this) {
+                commitScheduled = false;
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                durable = queueDurable;
+                queueDurable = new CompletableFuture<>();
+            }
+
+            long start = System.nanoTime();
+            try {
+                store.apply(batch);
+            } catch (SQLException e) {
+                boolean giveUp;
+                synchronized (this) {
+                    failedCommits++;
+                    giveUp = ++failedAttempts >= MAX_COMMIT_ATTEMPTS;
+                    if (!giveUp) {
+                        // The next batch retries these changes; its future covers them again
+                        scheduleCommit((long) COMMIT_WINDOW_MILLIS * failedAttempts);
+                    }
+                }
+                SQLException error = giveUp ? commitEachAlone(batch, e) : e;
+                if (error == null) {
+                    durable.complete(null);
+                    return;
+                }
+                durable.completeExceptionally(error);
+                throw error;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                failedAttempts = 0;
+                // Nothing can be queued meanwhile, since queuing needs the read lock
+                queue.subList(0, batch.size()).clear();
+                rebuildQueuedState();
+                batches++;
+                committedChanges += batch.size();
+                largestBatch = Math.max(largestBatch, batch.size());
+                totalCommitNanos += elapsed;
+                slowestCommitNanos = Math.max(slowestCommitNanos, elapsed);
+            }
+            durable.complete(null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Commits what is queued and closes the underlying store
+     */
+    @Override
+    public void close() throws SQLException {
+        committer.shutdown();
+        try {
+            flush();
+        } finally {
+            store.close();
+        }
+    }
+
+    private void enqueue(EntryMutation mutation) {
+        queue.add(mutation);
+        track(mutation);
+        if (queue.size() >= MAX_BATCH_SIZE) {
+            scheduleCommit(0);
+        } else if (queue.size() == 1) {
+            scheduleCommit(COMMIT_WINDOW_MILLIS);
+        }
+    }
+
+    private void scheduleCommit(long delayMillis) {
+        if (committer.isShutdown() || (commitScheduled && delayMillis > 0)) {
+            return;
+        }
+        commitScheduled = true;
+        committer.schedule(this::commitQuietly, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void commitQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("Failed to commit queued entry changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Commits the changes of a batch that keeps failing one at a time and sets
+     * aside those that fail alone, so one bad change cannot block the rest.
+     * Runs under the write lock.
+     * @return The error to report for the batch, or null if every change went through
+     */
+    private SQLException commitEachAlone(List<EntryMutation> batch, SQLException batchError) {
+        List<EntryMutation> failed = new ArrayList<>();
+        SQLException lastError = batchError;
+        for (EntryMutation mutation : batch) {
+            try {
+                store.apply(List.of(mutation));
+            } catch (SQLException e) {
+                failed.add(mutation);
+                lastError = e;
+                System.err.println("Setting aside " + mutation.type() + " of entry " + mutation.id()
+                    + " after " + MAX_COMMIT_ATTEMPTS + " failed commits: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            failedAttempts = 0;
+            setAside.addAll(failed);
+            queue.subList(0, batch.size()).clear();
+            rebuildQueuedState();
+            batches++;
+            committedChanges += batch.size() - failed.size();
+        }
+        return failed.isEmpty() ? null : new ChangesSetAsideException(failed, lastError);
+    }
+
+    private void rebuildQueuedState() {
+        queuedEntries.clear();
+        queuedDeletes.clear();
+        queuedTrash.clear();
+        for (EntryMutation mutation : queue) {
+            track(mutation);
+        }
+    }
+
+    private void track(EntryMutation mutation) {
+        int id = mutation.id();
+        switch (mutation.type()) {
+            case INSERT -> {
+                // An id deleted earlier in the queue may be inserted again, as synchronization does
+                queuedDeletes.remove(id);
+                queuedTrash.remove(id);
+                queuedEntries.put(id, mutation.entry());
+            }
+            case UPDATE -> queuedEntries.put(id, mutation.entry());
+            case DELETE -> {
+                queuedEntries.remove(id);
+                queuedTrash.remove(id);
+                queuedDeletes.add(id);
+            }
+            case TRASH -> {
+                queuedEntries.remove(id);
+                queuedTrash.add(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,804 @@
+package com.passwordmanager.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps entries in an append-only log, for vaults on flash drives where
+ * SQLite's in-place page writes are slow and wear the medium.
+ *
+ * Every write appends one frame to the end of the log and syncs it once, so
+ * the device only ever sees sequential writes. A frame holds one or more
+ * entry versions or deletions behind a length and a CRC-32; a frame cut short
+ * by a crash fails its check and is dropped when the log is next opened, so
+ * multi-entry writes are all or none.
+ *
+ * Moving an entry to the trash or back appends a small record that the newest
+ * version of the entry is read with; the entry itself is not rewritten.
+ *
+ * Where the newest version of each entry lives is kept in memory. It is saved
+ * to a checkpoint file on close and after compaction, and rebuilt at open from
+ * the checkpoint plus whatever was appended after it. Once more than half of
+ * the log is superseded versions, live entries are copied to a new log in the
+ * background and it replaces the old one.
+ *
+ * The values are stored as given; entries are already encrypted by the caller.
+ *
+ * The application does not use this store. Attachments and password history
+ * refer to rows of the {@code passwords} table, and are checked against and
+ * deleted with them in the same SQLite transactions, so entries have to live
+ * in that database. Vaults on flash drives are served by {@link WorkingCopy}
+ * instead, which batches the drive's writes for every table. This store is
+ * kept as a second implementation of the {@link EntryStore} contract, which
+ * {@code EntryStoreTest} runs against both stores, and for
+ * {@code EntryStoreBenchmark}.
+ */
+public class LogStructuredEntryStore implements EntryStore {
+    private static final int LOG_MAGIC = 0x504D4C47;
+    /** Changed whenever the checkpoint layout changes, so older checkpoints are ignored and the log replayed */
+    private static final int CHECKPOINT_MAGIC = 0x504D4359;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 1 + 8 + 4;
+    private static final int FRAME_HEADER_LENGTH = 8;
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    /** Compacted logs are written in frames of about this size. */
+    private static final int COMPACTION_FRAME_LENGTH = 256 * 1024;
+    /** Logs with less garbage than this are never compacted. */
+    private static final long MIN_COMPACTION_GARBAGE = 64 * 1024;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte TRASH = 3;
+    private static final byte RESTORE = 4;
+    private static final int TRASH_RECORD_LENGTH = 1 + 4 + 8;
+
+    private final Path logFile;
+    private final Path checkpointFile;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "entry-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel channel;
+    private TreeMap<Integer, Location> index = new TreeMap<>();
+    private long generation;
+    private int nextId = 1;
+    private long liveBytes;
+    private boolean compacting;
+    private int compactions;
+
+    /**
+     * Where the newest version of an entry is in the log
+     * @param deletedAt When the entry was moved to the trash, or 0
+     */
+    private record Location(long offset, int length, int keyVersion, long deletedAt) {
+        Location withDeletedAt(long deletedAt) {
+            return new Location(offset, length, keyVersion, deletedAt);
+        }
+
+        boolean trashed() {
+            return deletedAt != 0;
+        }
+    }
+
+    private LogStructuredEntryStore(Path logFile) {
+        this.logFile = logFile;
+        this.checkpointFile = logFile.resolveSibling(logFile.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens a log, creating it if it does not exist
+     * @param logFile The log file; its checkpoint is kept next to it
+     * @return The store
+     * @throws SQLException if the file cannot be read or is not an entry log
+     */
+    public static LogStructuredEntryStore open(Path logFile) throws SQLException {
+        LogStructuredEntryStore store = new LogStructuredEntryStore(logFile);
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.compactor.shutdown();
+            store.closeChannel();
+            throw new SQLException("Failed to open entry log " + logFile + ": " + e.getMessage(), e);
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_LENGTH) {
+            // New, or its creation never finished, so nothing can have been written to it
+            channel.truncate(0);
+            writeHeader(channel, 0, 1);
+            channel.force(true);
+            syncDirectory();
+        }
+
+        ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+        if (header.getInt() != LOG_MAGIC || header.get() != FORMAT_VERSION) {
+            throw new IOException("Not an entry log");
+        }
+        generation = header.getLong();
+        nextId = header.getInt();
+
+        long replayFrom = loadCheckpoint();
+        long end = replay(channel, replayFrom, index);
+        if (end < channel.size()) {
+            System.out.println("Dropping " + (channel.size() - end) + " bytes of an unfinished write from " + logFile.getFileName());
+            channel.truncate(end);
+            channel.force(true);
+        }
+        liveBytes = index.values().stream().mapToLong(Location::length).sum();
+    }
+
+    /**
+     * Reads the checkpoint if it belongs to this log
+     * @return The log offset the checkpoint covers, or the start of the log without one
+     */
+    private long loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return HEADER_LENGTH;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.limit() - 4);
+            if (buffer.getInt(buffer.limit() - 4) != (int) crc.getValue()
+                    || buffer.getInt() != CHECKPOINT_MAGIC
+                    || buffer.getLong() != generation) {
+                return HEADER_LENGTH;
+            }
+            long covered = buffer.getLong();
+            int checkpointNextId = buffer.getInt();
+            int count = buffer.getInt();
+            if (covered > channel.size()) {
+                return HEADER_LENGTH;
+            }
+            TreeMap<Integer, Location> loaded = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                loaded.put(buffer.getInt(), new Location(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getLong()));
+            }
+            index = loaded;
+            nextId = Math.max(nextId, checkpointNextId);
+            return covered;
+        } catch (RuntimeException e) {
+            // Truncated or garbled; the log alone is enough
+            index = new TreeMap<>();
+            return HEADER_LENGTH;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + 4 + 4 + index.size() * 28 + 4);
+        buffer.putInt(CHECKPOINT_MAGIC).putLong(generation).putLong(channel.size()).putInt(nextId).putInt(index.size());
+        for (Map.Entry<Integer, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            buffer.putInt(entry.getKey()).putLong(location.offset()).putInt(location.length())
+                .putInt(location.keyVersion()).putLong(location.deletedAt());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Applies the frames of a log from an offset on
+     * @return The offset after the last intact frame
+     */
+    private long replay(FileChannel log, long offset, TreeMap<Integer, Location> target) throws IOException {
+        long size = log.size();
+        while (size - offset >= FRAME_HEADER_LENGTH) {
+            ByteBuffer frameHeader = readFully(log, offset, FRAME_HEADER_LENGTH);
+            int length = frameHeader.getInt();
+            int checksum = frameHeader.getInt();
+            if (length <= 0 || length > MAX_FRAME_LENGTH || length > size - offset - FRAME_HEADER_LENGTH) {
+                break;
+            }
+            ByteBuffer payload = readFully(log, offset + FRAME_HEADER_LENGTH, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long payloadOffset = offset + FRAME_HEADER_LENGTH;
+            while (payload.hasRemaining()) {
+                int start = payload.position();
+                byte type = payload.get();
+                int id = payload.getInt();
+                nextId = Math.max(nextId, id + 1);
+                if (type == PUT) {
+                    int keyVersion = payload.getInt();
+                    skipFields(payload);
+                    // A new version of an entry in the trash, written by a key rotation, stays in the trash
+                    Location previous = target.get(id);
+                    target.put(id, new Location(payloadOffset + start, payload.position() - start, keyVersion,
+                        previous == null ? 0 : previous.deletedAt()));
+                } else if (type == DELETE) {
+                    target.remove(id);
+                } else if (type == TRASH) {
+                    long deletedAt = payload.getLong();
+                    target.computeIfPresent(id, (key, location) -> location.withDeletedAt(deletedAt));
+                } else if (type == RESTORE) {
+                    target.computeIfPresent(id, (key, location) -> location.withDeletedAt(0));
+                } else {
+                    throw new IOException("Unknown record type " + type + " at offset " + (payloadOffset + start));
+                }
+            }
+            offset += FRAME_HEADER_LENGTH + length;
+        }
+        return offset;
+    }
+
+    @Override
+    public synchronized int insert(StoredEntry entry) throws SQLException {
+        int id = entry.id() > 0 ? entry.id() : nextId;
+        append(List.of(EntryMutation.insert(entry.withId(id))));
+        return id;
+    }
+
+    @Override
+    public synchronized void insertAll(List<StoredEntry> entries) throws SQLException {
+        List<EntryMutation> inserts = new ArrayList<>(entries.size());
+        int id = nextId;
+        for (StoredEntry entry : entries) {
+            if (entry.id() > 0) {
+                inserts.add(EntryMutation.insert(entry));
+                id = Math.max(id, entry.id() + 1);
+            } else {
+                inserts.add(EntryMutation.insert(entry.withId(id++)));
+            }
+        }
+        append(inserts);
+    }
+
+    @Override
+    public synchronized void apply(List<EntryMutation> mutations) throws SQLException {
+        for (EntryMutation mutation : mutations) {
+            if (mutation.related() != null) {
+                // There is no SQL transaction here for the related rows to join
+                throw new SQLException("The log-structured store cannot write rows related to a change");
+            }
+        }
+        Set<Integer> live = new HashSet<>();
+        Set<Integer> trashed = new HashSet<>();
+        for (Map.Entry<Integer, Location> entry : index.entrySet()) {
+            (entry.getValue().trashed() ? trashed : live).add(entry.getKey());
+        }
+        List<EntryMutation> effective = new ArrayList<>(mutations.size());
+        for (EntryMutation mutation : mutations) {
+            boolean applies = switch (mutation.type()) {
+                case INSERT -> live.add(mutation.id());
+                case UPDATE -> live.contains(mutation.id());
+                case DELETE -> live.remove(mutation.id()) | trashed.remove(mutation.id());
+                case TRASH -> live.remove(mutation.id()) && trashed.add(mutation.id());
+            };
+            if (applies) {
+                effective.add(mutation);
+            }
+        }
+        append(effective);
+    }
+
+    @Override
+    public synchronized int nextId() {
+        return nextId;
+    }
+
+    @Override
+    public synchronized boolean update(StoredEntry entry) throws SQLException {
+        Location location = index.get(entry.id());
+        if (location == null || location.trashed()) {
+            return false;
+        }
+        append(List.of(EntryMutation.update(entry)));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(int id) throws SQLException {
+        if (!index.containsKey(id)) {
+            return false;
+        }
+        append(List.of(EntryMutation.delete(id)));
+        return true;
+    }
+
+    @Override
+    public synchronized StoredEntry get(int id) throws SQLException {
+        Location location = index.get(id);
+        return location == null || location.trashed() ? null : read(location);
+    }
+
+    @Override
+    public synchronized List<StoredEntry> list() throws SQLException {
+        List<StoredEntry> entries = new ArrayList<>(index.size());
+        for (Location location : index.values()) {
+            if (!location.trashed()) {
+                entries.add(read(location));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized boolean trash(int id, long deletedAt) throws SQLException {
+        Location location = index.get(id);
+        if (location == null || location.trashed()) {
+            return false;
+        }
+        append(List.of(EntryMutation.trash(id, deletedAt)));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean restore(int id) throws SQLException {
+        Location location = index.get(id);
+        if (location == null || !location.trashed()) {
+            return false;
+        }
+        writeFrame(List.of(ByteBuffer.allocate(5).put(RESTORE).putInt(id).array()));
+        index.put(id, location.withDeletedAt(0));
+        return true;
+    }
+
+    @Override
+    public synchronized List<TrashedEntry> listTrash() throws SQLException {
+        List<TrashedEntry> entries = new ArrayList<>();
+        for (Location location : index.values()) {
+            if (location.trashed()) {
+                entries.add(new TrashedEntry(read(location), location.deletedAt()));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.deletedAt(), a.deletedAt()));
+        return entries;
+    }
+
+    @Override
+    public synchronized boolean isInTrash(int id) {
+        Location location = index.get(id);
+        return location != null && location.trashed();
+    }
+
+    @Override
+    public synchronized List<Integer> listTrashedBefore(long cutoff, int limit) {
+        return index.entrySet().stream()
+            .filter(entry -> entry.getValue().trashed() && entry.getValue().deletedAt() < cutoff)
+            .sorted(Map.Entry.comparingByValue((a, b) -> Long.compare(a.deletedAt(), b.deletedAt())))
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    @Override
+    public synchronized List<StoredEntry> listOnOtherVersion(int keyVersion, int limit) throws SQLException {
+        List<StoredEntry> entries = new ArrayList<>();
+        for (Location location : index.values()) {
+            if (entries.size() == limit) {
+                break;
+            }
+            if (location.keyVersion() != keyVersion) {
+                entries.add(read(location));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized int replaceOnOtherVersion(List<StoredEntry> entries, int keyVersion) throws SQLException {
+        List<EntryMutation> stale = new ArrayList<>(entries.size());
+        for (StoredEntry entry : entries) {
+            Location location = index.get(entry.id());
+            if (location != null && location.keyVersion() != keyVersion) {
+                stale.add(EntryMutation.update(entry));
+            }
+        }
+        append(stale);
+        return stale.size();
+    }
+
+    @Override
+    public synchronized void deleteAll() throws SQLException {
+        List<EntryMutation> deletes = new ArrayList<>(index.size());
+        for (int id : index.keySet()) {
+            deletes.add(EntryMutation.delete(id));
+        }
+        append(deletes);
+    }
+
+    /**
+     * Writes changes as one frame, in order, and syncs it
+     */
+    private void append(List<EntryMutation> mutations) throws SQLException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(mutations.size());
+        for (EntryMutation mutation : mutations) {
+            records.add(switch (mutation.type()) {
+                case INSERT, UPDATE -> encodePut(mutation.entry());
+                case DELETE -> ByteBuffer.allocate(5).put(DELETE).putInt(mutation.id()).array();
+                case TRASH -> ByteBuffer.allocate(TRASH_RECORD_LENGTH).put(TRASH).putInt(mutation.id())
+                    .putLong(mutation.deletedAt()).array();
+            });
+        }
+        long offset = writeFrame(records);
+
+        for (int i = 0; i < mutations.size(); i++) {
+            EntryMutation mutation = mutations.get(i);
+            int recordLength = records.get(i).length;
+            Location previous = index.get(mutation.id());
+            switch (mutation.type()) {
+                case INSERT, UPDATE -> {
+                    index.put(mutation.id(), new Location(offset, recordLength, mutation.entry().keyVersion(),
+                        previous == null ? 0 : previous.deletedAt()));
+                    liveBytes += recordLength - (previous == null ? 0 : previous.length());
+                }
+                case DELETE -> {
+                    if (previous != null) {
+                        index.remove(mutation.id());
+                        liveBytes -= previous.length();
+                    }
+                }
+                case TRASH -> {
+                    if (previous != null) {
+                        index.put(mutation.id(), previous.withDeletedAt(mutation.deletedAt()));
+                    }
+                }
+            }
+            nextId = Math.max(nextId, mutation.id() + 1);
+            offset += recordLength;
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Writes records as one frame at the end of the log and syncs it
+     * @return The offset of the first record
+     */
+    private long writeFrame(List<byte[]> records) throws SQLException {
+        int length = 0;
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        if (length > MAX_FRAME_LENGTH) {
+            throw new SQLException("Write of " + length + " bytes is too large for one log frame");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + length);
+        frame.putInt(length).putInt(0);
+        for (byte[] record : records) {
+            frame.put(record);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_LENGTH, length);
+        frame.putInt(4, (int) crc.getValue());
+        frame.flip();
+
+        long frameOffset = -1;
+        try {
+            frameOffset = channel.size();
+            channel.position(frameOffset);
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(false);
+            return frameOffset + FRAME_HEADER_LENGTH;
+        } catch (IOException e) {
+            // The frame may be partly written; drop it so the next append does not follow garbage
+            try {
+                if (frameOffset >= HEADER_LENGTH) {
+                    channel.truncate(frameOffset);
+                }
+            } catch (IOException ignored) {
+                // Replay drops it at the next open
+            }
+            throw new SQLException("Failed to append to entry log: " + e.getMessage(), e);
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        try {
+            long garbage = channel.size() - HEADER_LENGTH - liveBytes;
+            if (!compacting && garbage > MIN_COMPACTION_GARBAGE && garbage > liveBytes) {
+                compacting = true;
+                compactor.execute(this::compact);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not check entry log size: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the live entries to a new log and swaps it in. The copy is made
+     * without holding the store's lock; only what was appended meanwhile is
+     * copied with it held.
+     */
+    private void compact() {
+        Path compacted = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        try {
+            TreeMap<Integer, Location> snapshot;
+            long snapshotEnd;
+            long newGeneration;
+            int baseNextId;
+            synchronized (this) {
+                snapshot = new TreeMap<>(index);
+                snapshotEnd = channel.size();
+                newGeneration = generation + 1;
+                baseNextId = nextId;
+            }
+
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(out, newGeneration, baseNextId);
+                TreeMap<Integer, Location> newIndex = new TreeMap<>();
+                ByteBuffer frame = ByteBuffer.allocate(COMPACTION_FRAME_LENGTH);
+                List<Map.Entry<Integer, Location>> pending = new ArrayList<>();
+                for (Map.Entry<Integer, Location> entry : snapshot.entrySet()) {
+                    int length = entry.getValue().length() + (entry.getValue().trashed() ? TRASH_RECORD_LENGTH : 0);
+                    if (frame.position() + length > frame.capacity() && !pending.isEmpty()) {
+                        writeCompactionFrame(out, frame, pending, newIndex);
+                    }
+                    if (length > frame.capacity()) {
+                        frame = ByteBuffer.allocate(length);
+                    }
+                    frame.put(readFully(channel, entry.getValue().offset(), entry.getValue().length()));
+                    if (entry.getValue().trashed()) {
+                        frame.put(TRASH).putInt(entry.getKey()).putLong(entry.getValue().deletedAt());
+                    }
+                    pending.add(entry);
+                }
+                if (!pending.isEmpty()) {
+                    writeCompactionFrame(out, frame, pending, newIndex);
+                }
+
+                synchronized (this) {
+                    if (!channel.isOpen()) {
+                        return;
+                    }
+                    // Frames appended since the snapshot are carried over as they are
+                    long tailStart = out.size();
+                    long tailEnd = channel.size();
+                    out.position(tailStart);
+                    for (long copied = snapshotEnd; copied < tailEnd; ) {
+                        copied += channel.transferTo(copied, tailEnd - copied, out);
+                    }
+                    replay(out, tailStart, newIndex);
+                    out.force(true);
+
+                    channel.close();
+                    Files.move(compacted, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    syncDirectory();
+                    channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    index = newIndex;
+                    generation = newGeneration;
+                    liveBytes = newIndex.values().stream().mapToLong(Location::length).sum();
+                    compactions++;
+                    writeCheckpoint();
+                }
+            }
+            System.out.println("Compacted entry log " + logFile.getFileName() + " to " + Files.size(logFile) + " bytes");
+        } catch (IOException e) {
+            System.err.println("Entry log compaction failed: " + e.getMessage());
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException ignored) {
+                // Overwritten by the next compaction
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private static void writeCompactionFrame(FileChannel out, ByteBuffer frame,
+                                             List<Map.Entry<Integer, Location>> records,
+                                             TreeMap<Integer, Location> newIndex) throws IOException {
+        int length = frame.position();
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, length);
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_LENGTH).putInt(length).putInt((int) crc.getValue());
+        frameHeader.flip();
+        long offset = out.size();
+        out.position(offset);
+        while (frameHeader.hasRemaining()) {
+            out.write(frameHeader);
+        }
+        frame.flip();
+        while (frame.hasRemaining()) {
+            out.write(frame);
+        }
+        long recordOffset = offset + FRAME_HEADER_LENGTH;
+        for (Map.Entry<Integer, Location> record : records) {
+            Location old = record.getValue();
+            newIndex.put(record.getKey(), new Location(recordOffset, old.length(), old.keyVersion(), old.deletedAt()));
+            recordOffset += old.length() + (old.trashed() ? TRASH_RECORD_LENGTH : 0);
+        }
+        records.clear();
+        frame.clear();
+    }
+
+    /**
+     * Waits for a running compaction to finish
+     */
+    public void awaitCompaction() {
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (Exception e) {
+            System.err.println("Waiting for compaction failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return How many times the log has been compacted since it was opened
+     */
+    public synchronized int getCompactionCount() {
+        return compactions;
+    }
+
+    /**
+     * @return The current size of the log file in bytes
+     */
+    public synchronized long getLogSize() throws SQLException {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new SQLException("Failed to read entry log size", e);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            try {
+                writeCheckpoint();
+            } catch (IOException e) {
+                // The log is complete without it; the next open replays it all
+                System.err.println("Failed to write entry log checkpoint: " + e.getMessage());
+            } finally {
+                closeChannel();
+            }
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to close entry log: " + e.getMessage());
+        }
+    }
+
+    private StoredEntry read(Location location) throws SQLException {
+        try {
+            ByteBuffer record = readFully(channel, location.offset(), location.length());
+            record.get();
+            int id = record.getInt();
+            int keyVersion = record.getInt();
+            long lastModified = record.getLong();
+            return new StoredEntry(id, readString(record), readString(record), readString(record),
+                readString(record), readString(record), readString(record), lastModified, keyVersion);
+        } catch (IOException | RuntimeException e) {
+            throw new SQLException("Failed to read entry log at offset " + location.offset(), e);
+        }
+    }
+
+    private static byte[] encodePut(StoredEntry entry) {
+        byte[][] fields = {
+            bytes(entry.title()), bytes(entry.username()), bytes(entry.password()),
+            bytes(entry.url()), bytes(entry.notes()), bytes(entry.category())
+        };
+        int length = 1 + 4 + 4 + 8;
+        for (byte[] field : fields) {
+            length += 4 + (field == null ? 0 : field.length);
+        }
+        long lastModified = entry.lastModified() == 0 ? System.currentTimeMillis() : entry.lastModified();
+        ByteBuffer record = ByteBuffer.allocate(length)
+            .put(PUT).putInt(entry.id()).putInt(entry.keyVersion()).putLong(lastModified);
+        for (byte[] field : fields) {
+            if (field == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(field.length).put(field);
+            }
+        }
+        return record.array();
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void skipFields(ByteBuffer record) {
+        record.getLong();
+        for (int i = 0; i < 6; i++) {
+            int length = record.getInt();
+            if (length > 0) {
+                record.position(record.position() + length);
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static void writeHeader(FileChannel log, long generation, int nextId) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+            .putInt(LOG_MAGIC).put(FORMAT_VERSION).putLong(generation).putInt(nextId);
+        header.flip();
+        log.position(0);
+        while (header.hasRemaining()) {
+            log.write(header);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel log, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of entry log at offset " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Makes a created or renamed file's directory entry durable. Not every
+     * platform can open a directory, so this is best effort.
+     */
+    private void syncDirectory() {
+        Path directory = logFile.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Windows cannot open directories
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.passwordmanager.database;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+
+/**
+ * Copies whole databases with SQLite's online backup API. The file name is
+ * handed to SQLite as it is, rather than spliced into a {@code backup to} or
+ * {@code restore from} statement, so any path works, quotes included.
+ */
+final class SqliteBackup {
+
+    private SqliteBackup() {
+    }
+
+    /**
+     * Replaces the connection's main database with the contents of a file
+     */
+    static void restore(Connection connection, Path source) throws SQLException {
+        int result = connection.unwrap(SQLiteConnection.class).getDatabase()
+            .restore("main", source.toAbsolutePath().toString(), null);
+        if (result != SQLiteErrorCode.SQLITE_OK.code) {
+            throw new SQLException("Failed to restore from " + source + ": " + SQLiteErrorCode.getErrorCode(result));
+        }
+    }
+
+    /**
+     * Replaces a file with the contents of the connection's main database
+     */
+    static void backup(Connection connection, Path target) throws SQLException {
+        int result = connection.unwrap(SQLiteConnection.class).getDatabase()
+            .backup("main", target.toAbsolutePath().toString(), null);
+        if (result != SQLiteErrorCode.SQLITE_OK.code) {
+            throw new SQLException("Failed to back up to " + target + ": " + SQLiteErrorCode.getErrorCode(result));
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.passwordmanager.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps entries in the {@code passwords} table of the vault database. The
+ * connection belongs to the caller and is not closed by this store.
+ *
+ * Entries in the trash carry their deletion time in {@code deleted_at};
+ * moving one there or back is a single indexed update.
+ */
+public class SqliteEntryStore implements EntryStore {
+    private static final String COLUMNS = "id, title, username, password, url, notes, category, last_modified, key_version";
+    private static final String SUMMARY_COLUMNS = "id, title, url, category, last_modified, key_version";
+    private static final String INSERT_SQL = """
+        INSERT INTO passwords (id, user_id, title, username, password, url, notes, category, last_modified, key_version)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+    private static final String UPDATE_SQL = """
+        UPDATE passwords
+        SET title = ?, username = ?, password = ?, url = ?, notes = ?,
+            category = ?, last_modified = ?, key_version = ?
+        WHERE id = ? AND user_id = ? AND deleted_at IS NULL
+    """;
+    private static final String TRASH_SQL =
+        "UPDATE passwords SET deleted_at = ? WHERE id = ? AND user_id = ? AND deleted_at IS NULL";
+
+    private final Connection connection;
+    private final int userId;
+
+    public SqliteEntryStore(Connection connection, int userId) {
+        this.connection = connection;
+        this.userId = userId;
+    }
+
+    @Override
+    public int insert(StoredEntry entry) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(pstmt, entry);
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @Override
+    public void insertAll(List<StoredEntry> entries) throws SQLException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(INSERT_SQL)) {
+                for (StoredEntry entry : entries) {
+                    bindInsert(pstmt, entry);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void apply(List<EntryMutation> mutations) throws SQLException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_SQL);
+                 PreparedStatement delete = connection.prepareStatement("DELETE FROM passwords WHERE id = ? AND user_id = ?");
+                 PreparedStatement trash = connection.prepareStatement(TRASH_SQL)) {
+                for (EntryMutation mutation : mutations) {
+                    int changed = switch (mutation.type()) {
+                        case INSERT -> {
+                            bindInsert(insert, mutation.entry());
+                            yield insert.executeUpdate();
+                        }
+                        case UPDATE -> {
+                            bindUpdate(update, mutation.entry());
+                            yield update.executeUpdate();
+                        }
+                        case DELETE -> {
+                            delete.setInt(1, mutation.id());
+                            delete.setInt(2, userId);
+                            yield delete.executeUpdate();
+                        }
+                        case TRASH -> {
+                            trash.setLong(1, mutation.deletedAt());
+                            trash.setInt(2, mutation.id());
+                            trash.setInt(3, userId);
+                            yield trash.executeUpdate();
+                        }
+                    };
+                    if (changed > 0 && mutation.related() != null) {
+                        mutation.related().write(connection);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public int nextId() throws SQLException {
+        // Ids are shared by all users of the table
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM passwords")) {
+            return rs.getInt(1);
+        }
+    }
+
+    @Override
+    public boolean update(StoredEntry entry) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_SQL)) {
+            bindUpdate(pstmt, entry);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM passwords WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, id);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public StoredEntry get(int id) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM passwords WHERE id = ? AND user_id = ? AND deleted_at IS NULL";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public List<StoredEntry> list() throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM passwords WHERE user_id = ? AND deleted_at IS NULL ORDER BY id";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            return readAll(pstmt);
+        }
+    }
+
+    /**
+     * Reads only the columns a summary needs, so no secret ciphertext is loaded
+     */
+    @Override
+    public List<StoredEntry> listSummaries() throws SQLException {
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM passwords WHERE user_id = ? AND deleted_at IS NULL ORDER BY id";
+        List<StoredEntry> entries = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new StoredEntry(rs.getInt("id"), rs.getString("title"), null, null,
+                        rs.getString("url"), null, rs.getString("category"), rs.getLong("last_modified"),
+                        rs.getInt("key_version")));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean trash(int id, long deletedAt) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(TRASH_SQL)) {
+            pstmt.setLong(1, deletedAt);
+            pstmt.setInt(2, id);
+            pstmt.setInt(3, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean restore(int id) throws SQLException {
+        String sql = "UPDATE passwords SET deleted_at = NULL WHERE id = ? AND user_id = ? AND deleted_at IS NOT NULL";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public List<TrashedEntry> listTrash() throws SQLException {
+        String sql = "SELECT " + COLUMNS + ", deleted_at FROM passwords WHERE user_id = ? AND deleted_at IS NOT NULL "
+            + "ORDER BY deleted_at DESC";
+        List<TrashedEntry> entries = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new TrashedEntry(read(rs), rs.getLong("deleted_at")));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean isInTrash(int id) throws SQLException {
+        String sql = "SELECT 1 FROM passwords WHERE id = ? AND user_id = ? AND deleted_at IS NOT NULL";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public List<Integer> listTrashedBefore(long cutoff, int limit) throws SQLException {
+        String sql = "SELECT id FROM passwords WHERE user_id = ? AND deleted_at < ? ORDER BY deleted_at LIMIT ?";
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setLong(2, cutoff);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public List<StoredEntry> listOnOtherVersion(int keyVersion, int limit) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM passwords WHERE user_id = ? AND key_version != ? ORDER BY id LIMIT ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, keyVersion);
+            pstmt.setInt(3, limit);
+            return readAll(pstmt);
+        }
+    }
+
+    @Override
+    public int replaceOnOtherVersion(List<StoredEntry> entries, int keyVersion) throws SQLException {
+        String sql = """
+            UPDATE passwords
+            SET title = ?, username = ?, password = ?, url = ?, notes = ?, category = ?, key_version = ?
+            WHERE id = ? AND user_id = ? AND key_version != ?
+        """;
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (StoredEntry entry : entries) {
+                    bindFields(pstmt, entry);
+                    pstmt.setInt(7, entry.keyVersion());
+                    pstmt.setInt(8, entry.id());
+                    pstmt.setInt(9, userId);
+                    pstmt.setInt(10, keyVersion);
+                    pstmt.addBatch();
+                }
+                int replaced = 0;
+                for (int count : pstmt.executeBatch()) {
+                    replaced += Math.max(count, 0);
+                }
+                connection.commit();
+                return replaced;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void deleteAll() throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM passwords WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void bindInsert(PreparedStatement pstmt, StoredEntry entry) throws SQLException {
+        if (entry.id() > 0) {
+            pstmt.setInt(1, entry.id());
+        } else {
+            pstmt.setNull(1, Types.INTEGER);
+        }
+        pstmt.setInt(2, userId);
+        pstmt.setString(3, entry.title());
+        pstmt.setString(4, entry.username());
+        pstmt.setString(5, entry.password());
+        pstmt.setString(6, entry.url());
+        pstmt.setString(7, entry.notes());
+        pstmt.setString(8, entry.category());
+        pstmt.setLong(9, entry.lastModified() == 0 ? System.currentTimeMillis() : entry.lastModified());
+        pstmt.setInt(10, entry.keyVersion());
+    }
+
+    private void bindUpdate(PreparedStatement pstmt, StoredEntry entry) throws SQLException {
+        bindFields(pstmt, entry);
+        pstmt.setLong(7, entry.lastModified());
+        pstmt.setInt(8, entry.keyVersion());
+        pstmt.setInt(9, entry.id());
+        pstmt.setInt(10, userId);
+    }
+
+    private static void bindFields(PreparedStatement pstmt, StoredEntry entry) throws SQLException {
+        pstmt.setString(1, entry.title());
+        pstmt.setString(2, entry.username());
+        pstmt.setString(3, entry.password());
+        pstmt.setString(4, entry.url());
+        pstmt.setString(5, entry.notes());
+        pstmt.setString(6, entry.category());
+    }
+
+    private static List<StoredEntry> readAll(PreparedStatement pstmt) throws SQLException {
+        List<StoredEntry> entries = new ArrayList<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                entries.add(read(rs));
+            }
+        }
+        return entries;
+    }
+
+    private static StoredEntry read(ResultSet rs) throws SQLException {
+        return new StoredEntry(rs.getInt("id"), rs.getString("title"), rs.getString("username"),
+            rs.getString("password"), rs.getString("url"), rs.getString("notes"), rs.getString("category"),
+            rs.getLong("last_modified"), rs.getInt("key_version"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.security.Encryptor;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A password entry as an {@link EntryStore} keeps it: every text field is
+ * ciphertext, and {@code keyVersion} records the DEK it was encrypted with.
+ * @param lastModified Milliseconds since the epoch, or 0 to let the store use the time of the write
+ */
+public record StoredEntry(int id, String title, String username, String password, String url,
+                          String notes, String category, long lastModified, int keyVersion) {
+
+    /**
+     * Re-encrypts every field under another key
+     * @param version The key version of {@code to}
+     */
+    public StoredEntry reencrypt(Encryptor from, Encryptor to, int version) {
+        try {
+            return new StoredEntry(id, from.reencrypt(title, to), from.reencrypt(username, to),
+                from.reencrypt(password, to), from.reencrypt(url, to), from.reencrypt(notes, to),
+                from.reencrypt(category, to), lastModified, version);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * @return This entry without its username, password and notes
+     */
+    public StoredEntry summary() {
+        return new StoredEntry(id, title, null, null, url, null, category, lastModified, keyVersion);
+    }
+
+    public StoredEntry withId(int id) {
+        return new StoredEntry(id, title, username, password, url, notes, category, lastModified, keyVersion);
+    }
+}
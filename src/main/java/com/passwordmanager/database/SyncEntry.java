@@ -0,0 +1,12 @@
+package com.passwordmanager.database;
+
+import java.util.List;
+
+/**
+ * An entry as {@link VaultSync} compares it
+ * @param syncId The id the entry has in every copy of the vault; its row id is only valid in one copy
+ * @param deletedAt When it was moved to the trash; 0 if it is not in the trash
+ * @param attachmentSyncIds The sync ids of its complete attachments, sorted
+ */
+record SyncEntry(String syncId, StoredEntry entry, long deletedAt, List<String> attachmentSyncIds) {
+}
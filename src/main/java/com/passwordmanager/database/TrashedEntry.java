@@ -0,0 +1,8 @@
+package com.passwordmanager.database;
+
+/**
+ * An entry in the trash, as an {@link EntryStore} keeps it
+ * @param deletedAt Milliseconds since the epoch when it was moved to the trash
+ */
+public record TrashedEntry(StoredEntry entry, long deletedAt) {
+}
@@ -0,0 +1,64 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.model.PasswordEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Tracks every decrypted entry handed out while the vault is unlocked, so they
+ * can all be wiped at once on logout or close. Entries are held weakly: an
+ * entry the UI has dropped can still be collected, and its secrets are then
+ * wiped by the {@link com.passwordmanager.security.SecretBuffer} cleaner.
+ */
+public class VaultSession implements AutoCloseable {
+    private final Set<PasswordEntry> entries = Collections.newSetFromMap(new WeakHashMap<>());
+    private boolean closed;
+
+    /**
+     * Registers an entry with this session
+     * @param entry The decrypted entry
+     * @return The same entry
+     */
+    public synchronized PasswordEntry track(PasswordEntry entry) {
+        if (closed) {
+            entry.secureClear();
+            throw new IllegalStateException("Vault session has been closed");
+        }
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Gets the number of entries that are still reachable
+     * @return The number of tracked entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Wipes every entry handed out during this session
+     */
+    @Override
+    public void close() {
+        List<PasswordEntry> toClear;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClear = new ArrayList<>(entries);
+            entries.clear();
+        }
+        for (PasswordEntry entry : toClear) {
+            entry.secureClear();
+        }
+    }
+}
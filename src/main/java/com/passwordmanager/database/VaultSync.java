@@ -0,0 +1,351 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.security.SecureWiper;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Brings two copies of a vault back in line, such as the one on a USB stick
+ * and the one on a workstation. Both copies must be encrypted with the same
+ * DEK, so entries are copied between them as ciphertext and never decrypted,
+ * except to add a replaced version to the password history.
+ *
+ * Entries are matched by their sync id, which is random and travels with the
+ * entry, since each copy numbers its rows on its own. Each entry, including
+ * those in the trash, is hashed with a key derived from the DEK over its sync
+ * id, modification time, deletion time and ciphertext, and over the sync ids
+ * of its attachments. Entries are spread over leaves of about
+ * {@value #LEAF_SIZE} by their sync id, and the leaves form a binary Merkle
+ * tree. The two trees are walked from the root, skipping every subtree whose
+ * hashes match, so only the leaves that hold changes are compared entry by
+ * entry and only differing entries are written.
+ *
+ * An entry present in only one copy is copied to the other with its
+ * attachments and history, under the next free row id there. An entry that
+ * differs is resolved by its modification time, or its deletion time if
+ * later; the newer version wins and takes its history along, with the older
+ * version added as the newest prior version in the copy it is replaced in.
+ * When both versions were changed since the last synchronization, the
+ * difference is reported as a conflict and recorded in the audit journal of
+ * both copies. Attachments are merged: each copy gets the ones it lacks.
+ *
+ * An entry erased from the trash of one copy is copied back from the other if
+ * that still has it.
+ */
+public final class VaultSync {
+    /** Average entries per leaf of the tree */
+    public static final int LEAF_SIZE = 64;
+    private static final byte[] EMPTY = new byte[32];
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    /**
+     * An entry changed in both copies since they were last synchronized
+     * @param entryId The id of the entry in the local copy
+     * @param remoteEntryId The id of the entry in the other copy
+     * @param keptLocal Whether the version in the local copy was kept
+     */
+    public record Conflict(int entryId, int remoteEntryId, long keptModified, long replacedModified, boolean keptLocal) {
+    }
+
+    /**
+     * What a synchronization did
+     * @param attachmentsCopied How many attachments were copied, in either direction
+     * @param leavesCompared How many leaves of the tree differed and were compared entry by entry
+     */
+    public record Report(int copiedToLocal, int copiedToRemote, int attachmentsCopied, List<Conflict> conflicts,
+                         int leavesCompared) {
+        public boolean changedAnything() {
+            return copiedToLocal > 0 || copiedToRemote > 0 || attachmentsCopied > 0;
+        }
+    }
+
+    /**
+     * What one copy takes from the other for an entry
+     * @param from The entry in the copy it comes from
+     * @param replaced The entry in the copy it goes to; null if that copy lacks it
+     * @param replaceRow Whether the entry itself is replaced; if not, only missing attachments are copied
+     * @param attachmentSyncIds The attachments of {@code from} to copy
+     */
+    record Copy(SyncEntry from, SyncEntry replaced, boolean replaceRow, List<String> attachmentSyncIds) {
+    }
+
+    /** The hash of an entry's row and the hash that also covers its attachments */
+    private record EntryHash(byte[] row, byte[] all) {
+    }
+
+    private VaultSync() {
+    }
+
+    /**
+     * Synchronizes two copies of the same user's vault in both directions
+     * @param local The copy logged in to, whose version wins ties
+     * @param remote The other copy, see {@link DatabaseManager#openForSync}
+     * @return What was copied and which entries conflicted
+     * @throws SQLException if either copy is not logged in, has a key rotation
+     *         in progress, uses a different key, or cannot be written
+     */
+    public static Report synchronize(DatabaseManager local, DatabaseManager remote) throws SQLException {
+        if (local.isDataKeyRotationPending() || remote.isDataKeyRotationPending()) {
+            throw new SQLException("Finish the key rotation before synchronizing");
+        }
+        long start = System.nanoTime();
+        long syncTime = System.currentTimeMillis();
+
+        byte[] key = local.deriveSyncKey();
+        byte[] remoteKey = remote.deriveSyncKey();
+        Map<String, SyncEntry> localRows = new HashMap<>();
+        Map<String, SyncEntry> remoteRows = new HashMap<>();
+        Map<String, EntryHash> localHashes;
+        Map<String, EntryHash> remoteHashes;
+        try {
+            if (!MessageDigest.isEqual(key, remoteKey)) {
+                throw new SQLException("The vaults are encrypted with different keys");
+            }
+            localHashes = hashRows(local.listEntriesForSync(), localRows, key);
+            remoteHashes = hashRows(remote.listEntriesForSync(), remoteRows, key);
+        } finally {
+            SecureWiper.wipeByteArray(key);
+            SecureWiper.wipeByteArray(remoteKey);
+        }
+
+        int leafCount = (Math.max(localRows.size(), remoteRows.size()) + LEAF_SIZE - 1) / LEAF_SIZE;
+        int leaves = Integer.highestOneBit(Math.max(1, leafCount) * 2 - 1);
+        byte[][] localTree = buildTree(localHashes, leaves);
+        byte[][] remoteTree = buildTree(remoteHashes, leaves);
+        Set<Integer> changedLeaves = new HashSet<>(diffLeaves(localTree, remoteTree, leaves));
+
+        Set<String> changed = new TreeSet<>();
+        for (Set<String> syncIds : List.of(localRows.keySet(), remoteRows.keySet())) {
+            for (String syncId : syncIds) {
+                if (changedLeaves.contains(leafOf(syncId, leaves))) {
+                    changed.add(syncId);
+                }
+            }
+        }
+
+        long lastSync = Math.min(local.getLastSyncTime(), remote.getLastSyncTime());
+        List<Copy> toLocal = new ArrayList<>();
+        List<Copy> toRemote = new ArrayList<>();
+        List<Conflict> conflicts = new ArrayList<>();
+        for (String syncId : changed) {
+            SyncEntry mine = localRows.get(syncId);
+            SyncEntry theirs = remoteRows.get(syncId);
+            if (theirs == null) {
+                toRemote.add(new Copy(mine, null, true, mine.attachmentSyncIds()));
+            } else if (mine == null) {
+                toLocal.add(new Copy(theirs, null, true, theirs.attachmentSyncIds()));
+            } else if (!Arrays.equals(localHashes.get(syncId).all(), remoteHashes.get(syncId).all())) {
+                boolean replaceMine = false;
+                boolean replaceTheirs = false;
+                if (!Arrays.equals(localHashes.get(syncId).row(), remoteHashes.get(syncId).row())) {
+                    long mineChanged = changedAt(mine);
+                    long theirsChanged = changedAt(theirs);
+                    replaceTheirs = mineChanged >= theirsChanged;
+                    replaceMine = !replaceTheirs;
+                    if (mineChanged > lastSync && theirsChanged > lastSync) {
+                        conflicts.add(new Conflict(mine.entry().id(), theirs.entry().id(),
+                            Math.max(mineChanged, theirsChanged), Math.min(mineChanged, theirsChanged), replaceTheirs));
+                    }
+                }
+                addCopy(toLocal, theirs, mine, replaceMine);
+                addCopy(toRemote, mine, theirs, replaceTheirs);
+            }
+        }
+
+        local.storeSyncedEntries(remote, toLocal);
+        remote.storeSyncedEntries(local, toRemote);
+        local.setLastSyncTime(syncTime);
+        remote.setLastSyncTime(syncTime);
+
+        int attachmentsCopied = 0;
+        for (List<Copy> copies : List.of(toLocal, toRemote)) {
+            for (Copy copy : copies) {
+                attachmentsCopied += copy.attachmentSyncIds().size();
+            }
+        }
+        Report report = new Report(countRows(toLocal), countRows(toRemote), attachmentsCopied, conflicts,
+            changedLeaves.size());
+        local.recordAuditEvents(auditEvents(report, syncTime, true));
+        remote.recordAuditEvents(auditEvents(report, syncTime, false));
+        System.out.println("Synchronized vaults in " + (System.nanoTime() - start) / 1_000_000 + " ms: "
+            + report.copiedToLocal() + " entries in, " + report.copiedToRemote() + " out, "
+            + attachmentsCopied + " attachments, " + conflicts.size() + " conflicts, "
+            + changedLeaves.size() + " of " + leaves + " leaves compared");
+        return report;
+    }
+
+    /**
+     * Adds what {@code to} takes from {@code from}: the whole entry if it is
+     * replaced, otherwise only the attachments it lacks, if any
+     */
+    private static void addCopy(List<Copy> copies, SyncEntry from, SyncEntry to, boolean replaceRow) {
+        List<String> missing = new ArrayList<>(from.attachmentSyncIds());
+        missing.removeAll(to.attachmentSyncIds());
+        if (replaceRow || !missing.isEmpty()) {
+            copies.add(new Copy(from, to, replaceRow, missing));
+        }
+    }
+
+    private static int countRows(List<Copy> copies) {
+        return (int) copies.stream().filter(Copy::replaceRow).count();
+    }
+
+    /**
+     * Hashes each entry with the sync key
+     * @param bySyncId Filled with the entries, by sync id
+     * @return The hashes, by sync id
+     */
+    private static Map<String, EntryHash> hashRows(List<SyncEntry> rows, Map<String, SyncEntry> bySyncId, byte[] key)
+            throws SQLException {
+        Map<String, EntryHash> hashes = new HashMap<>(rows.size() * 2);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            ByteBuffer header = ByteBuffer.allocate(16);
+            for (SyncEntry synced : rows) {
+                StoredEntry row = synced.entry();
+                updateField(mac, header, synced.syncId());
+                header.clear();
+                header.putLong(row.lastModified()).putLong(synced.deletedAt());
+                mac.update(header.array());
+                for (String field : new String[] {row.title(), row.username(), row.password(),
+                                                  row.url(), row.notes(), row.category()}) {
+                    updateField(mac, header, field);
+                }
+                byte[] rowHash = mac.doFinal();
+
+                mac.update(rowHash);
+                for (String attachment : synced.attachmentSyncIds()) {
+                    updateField(mac, header, attachment);
+                }
+                hashes.put(synced.syncId(), new EntryHash(rowHash, mac.doFinal()));
+                bySyncId.put(synced.syncId(), synced);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new SQLException("Failed to hash entries: " + e.getMessage(), e);
+        }
+        return hashes;
+    }
+
+    private static void updateField(Mac mac, ByteBuffer header, String field) {
+        byte[] bytes = field == null ? new byte[0] : field.getBytes(StandardCharsets.UTF_8);
+        // The length keeps field boundaries apart, and -1 tells NULL from empty
+        header.clear();
+        header.putInt(field == null ? -1 : bytes.length);
+        mac.update(header.array(), 0, 4);
+        mac.update(bytes);
+    }
+
+    /**
+     * @return The leaf an entry belongs to; both copies place it alike
+     */
+    private static int leafOf(String syncId, int leaves) {
+        return Math.floorMod(syncId.hashCode(), leaves);
+    }
+
+    /**
+     * Builds the tree as an array with the root at 1 and the children of
+     * node n at 2n and 2n + 1. Empty subtrees hash to zeros, so they match
+     * without hashing anything.
+     * @param leaves The number of leaves, a power of two
+     */
+    private static byte[][] buildTree(Map<String, EntryHash> hashes, int leaves) throws SQLException {
+        byte[][] tree = new byte[2 * leaves][];
+        Arrays.fill(tree, EMPTY);
+        try {
+            MessageDigest[] leafDigests = new MessageDigest[leaves];
+            // Sync ids are added in order, so a leaf's hash does not depend on how the map iterates
+            for (String syncId : new TreeSet<>(hashes.keySet())) {
+                int leaf = leafOf(syncId, leaves);
+                if (leafDigests[leaf] == null) {
+                    leafDigests[leaf] = MessageDigest.getInstance("SHA-256");
+                }
+                leafDigests[leaf].update(hashes.get(syncId).all());
+            }
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                if (leafDigests[leaf] != null) {
+                    tree[leaves + leaf] = leafDigests[leaf].digest();
+                }
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int node = leaves - 1; node >= 1; node--) {
+                byte[] left = tree[2 * node];
+                byte[] right = tree[2 * node + 1];
+                if (left != EMPTY || right != EMPTY) {
+                    digest.update(left);
+                    digest.update(right);
+                    tree[node] = digest.digest();
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new SQLException("Failed to build the sync tree: " + e.getMessage(), e);
+        }
+        return tree;
+    }
+
+    /**
+     * @return The leaves whose hashes differ, in order
+     */
+    private static List<Integer> diffLeaves(byte[][] a, byte[][] b, int leaves) {
+        List<Integer> changed = new ArrayList<>();
+        Deque<Integer> nodes = new ArrayDeque<>();
+        nodes.push(1);
+        while (!nodes.isEmpty()) {
+            int node = nodes.pop();
+            if (Arrays.equals(a[node], b[node])) {
+                continue;
+            }
+            if (node >= leaves) {
+                changed.add(node - leaves);
+            } else {
+                nodes.push(2 * node + 1);
+                nodes.push(2 * node);
+            }
+        }
+        return changed;
+    }
+
+    private static long changedAt(SyncEntry synced) {
+        return Math.max(synced.entry().lastModified(), synced.deletedAt());
+    }
+
+    /**
+     * @param forLocal Whether the events go to the local copy, which decides the entry ids they name
+     */
+    private static List<AuditEvent> auditEvents(Report report, long syncTime, boolean forLocal) {
+        List<AuditEvent> events = new ArrayList<>();
+        events.add(new AuditEvent(syncTime, AuditEvent.Type.SYNCED, 0,
+            report.copiedToLocal() + " entries in, " + report.copiedToRemote() + " out, "
+            + report.attachmentsCopied() + " attachments, " + report.conflicts().size() + " conflicts"));
+        for (Conflict conflict : report.conflicts()) {
+            events.add(new AuditEvent(syncTime, AuditEvent.Type.SYNC_CONFLICT,
+                forLocal ? conflict.entryId() : conflict.remoteEntryId(),
+                "kept the version of " + format(conflict.keptModified()) + ", the version of "
+                + format(conflict.replacedModified()) + " is in the password history"));
+        }
+        return events;
+    }
+
+    private static String format(long time) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+    }
+}
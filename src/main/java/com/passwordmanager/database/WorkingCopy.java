@@ -0,0 +1,283 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.security.SecureWiper;
+import com.passwordmanager.security.WipePolicy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Runs the vault from a copy on fast storage and writes it back to the
+ * original, typically on a USB stick, in occasional whole-database batches
+ * instead of one slow flash write per change.
+ *
+ * The copy is either a file in the system temp directory or an in-memory
+ * database. Its entries are encrypted exactly as on the stick. Write-back uses
+ * SQLite's backup API, which replaces the stick's pages in one transaction, so
+ * the stick always holds either the previous or the new version.
+ *
+ * A file copy keeps every change durable between write-backs. A state file
+ * next to it records SQLite's change counter of both files at the last
+ * write-back. When the copy is found on disk at the next start, the
+ * application did not exit cleanly, and the counters tell what happened:
+ * <ul>
+ *   <li>the copy is unchanged: nothing was lost, and it is discarded</li>
+ *   <li>only the copy changed: it is written back to the stick</li>
+ *   <li>both changed, say on another computer: the stick is kept, and the copy
+ *       is set aside next to it so nothing is silently dropped</li>
+ * </ul>
+ * An in-memory copy has no such recovery; changes since the last write-back
+ * are lost if the application is killed.
+ */
+public class WorkingCopy {
+    public enum Mode {
+        /** The copy is a file in the system temp directory */
+        LOCAL_FILE,
+        /** The copy is only in memory */
+        MEMORY
+    }
+
+    private static final String WORK_DIR = "passwordmanager_work";
+    /** Offset of SQLite's file change counter in the database header */
+    private static final int CHANGE_COUNTER_OFFSET = 24;
+
+    private final Path stick;
+    private final Mode mode;
+    private final Path workFile;
+    private final Path stateFile;
+    private long syncedChanges;
+    private boolean forceWriteBack;
+    private int writeBacks;
+
+    public WorkingCopy(Path stick, Mode mode) {
+        this.stick = stick.toAbsolutePath();
+        this.mode = mode;
+        String name = "vault-" + fingerprintOf(this.stick.toString());
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), WORK_DIR);
+        this.workFile = mode == Mode.LOCAL_FILE ? dir.resolve(name + ".db") : null;
+        this.stateFile = mode == Mode.LOCAL_FILE ? dir.resolve(name + ".state") : null;
+    }
+
+    /**
+     * Recovers a copy left by a crash, then opens a fresh copy of the stick
+     * @return A connection to the copy
+     * @throws SQLException if the stick cannot be copied
+     */
+    public Connection open() throws SQLException {
+        Connection connection;
+        if (mode == Mode.MEMORY) {
+            connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        } else {
+            try {
+                Files.createDirectories(workFile.getParent());
+                recover();
+            } catch (IOException e) {
+                throw new SQLException("Failed to prepare working copy: " + e.getMessage(), e);
+            }
+            connection = DriverManager.getConnection("jdbc:sqlite:" + workFile);
+        }
+
+        try {
+            if (Files.exists(stick)) {
+                SqliteBackup.restore(connection, stick);
+            } else {
+                // A new vault; the stick gets its first version at the first write-back
+                forceWriteBack = true;
+            }
+            syncedChanges = totalChanges(connection);
+            saveState();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        System.out.println("Working on a " + (mode == Mode.MEMORY ? "memory" : "local") + " copy of " + stick);
+        return connection;
+    }
+
+    /**
+     * Writes the copy back to the stick if it changed since the last time.
+     * The caller must keep other writers off the connection meanwhile.
+     * @param connection The connection returned by {@link #open()}
+     * @return true if anything was written
+     * @throws SQLException if the stick cannot be written; the copy is left as it is
+     */
+    public boolean writeBack(Connection connection) throws SQLException {
+        long changes = totalChanges(connection);
+        if (!forceWriteBack && changes == syncedChanges) {
+            return false;
+        }
+        long start = System.nanoTime();
+        SqliteBackup.backup(connection, stick);
+        syncedChanges = changes;
+        forceWriteBack = false;
+        writeBacks++;
+        saveState();
+        System.out.println("Wrote working copy back to " + stick.getFileName()
+            + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return true;
+    }
+
+    /**
+     * Makes the next {@link #writeBack(Connection)} write even if no row
+     * changed, such as after a restore that replaced the whole database
+     */
+    public void markChanged() {
+        forceWriteBack = true;
+    }
+
+    /**
+     * Deletes the local copy. Call after the connection is closed and the
+     * last write-back succeeded.
+     */
+    public void discard() {
+        if (mode != Mode.LOCAL_FILE) {
+            return;
+        }
+        try {
+            if (Files.exists(workFile)) {
+                SecureWiper.secureDeleteFile(workFile.toFile(), WipePolicy.SINGLE_PASS);
+            }
+            Files.deleteIfExists(workFile.resolveSibling(workFile.getFileName() + "-journal"));
+            Files.deleteIfExists(stateFile);
+        } catch (IOException e) {
+            System.err.println("Failed to delete working copy: " + e.getMessage());
+        }
+    }
+
+    public Path getStickPath() {
+        return stick;
+    }
+
+    /**
+     * @return The local copy, or null for an in-memory copy
+     */
+    public Path getLocalPath() {
+        return workFile;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return How many times the copy was written back since it was opened
+     */
+    public int getWriteBackCount() {
+        return writeBacks;
+    }
+
+    private void recover() throws IOException, SQLException {
+        if (!Files.exists(workFile)) {
+            Files.deleteIfExists(stateFile);
+            return;
+        }
+        Properties state = loadState();
+        if (state == null) {
+            // The copy was never fully set up, so it holds nothing the stick lacks
+            discard();
+            return;
+        }
+
+        // Let SQLite roll back a transaction the crash interrupted before the copy is judged
+        try (Connection work = DriverManager.getConnection("jdbc:sqlite:" + workFile);
+             Statement stmt = work.createStatement()) {
+            stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master").close();
+        }
+        if (changeCounter(workFile) == Long.parseLong(state.getProperty("work", "-1"))) {
+            discard();
+            return;
+        }
+
+        boolean stickUnchanged = !Files.exists(stick)
+            || changeCounter(stick) == Long.parseLong(state.getProperty("stick", "-1"));
+        if (stickUnchanged) {
+            try (Connection work = DriverManager.getConnection("jdbc:sqlite:" + workFile)) {
+                SqliteBackup.backup(work, stick);
+            }
+            System.out.println("Recovered changes that were not written back to " + stick.getFileName());
+            discard();
+        } else {
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+            Path aside = stick.resolveSibling("passwords-unsynced-" + timestamp + ".db");
+            Files.move(workFile, aside, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(stateFile);
+            System.err.println("Both the working copy and " + stick.getFileName() + " changed since the last "
+                + "write-back. Kept " + stick.getFileName() + "; the working copy was saved as " + aside);
+        }
+    }
+
+    private Properties loadState() throws IOException {
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        }
+        return stick.toString().equals(state.getProperty("path")) ? state : null;
+    }
+
+    private void saveState() throws SQLException {
+        if (mode != Mode.LOCAL_FILE) {
+            return;
+        }
+        Properties state = new Properties();
+        state.setProperty("path", stick.toString());
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try {
+            state.setProperty("work", Long.toString(changeCounter(workFile)));
+            state.setProperty("stick", Long.toString(Files.exists(stick) ? changeCounter(stick) : -1));
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                state.store(out, "Working copy of " + stick);
+            }
+            Files.move(temp, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new SQLException("Failed to record working copy state: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the counter SQLite increments in the database header on every
+     * committed transaction
+     */
+    private static long changeCounter(Path database) throws IOException {
+        try (InputStream in = Files.newInputStream(database)) {
+            byte[] header = in.readNBytes(CHANGE_COUNTER_OFFSET + 4);
+            if (header.length < CHANGE_COUNTER_OFFSET + 4) {
+                return 0;
+            }
+            return ((header[24] & 0xFFL) << 24) | ((header[25] & 0xFFL) << 16)
+                 | ((header[26] & 0xFFL) << 8) | (header[27] & 0xFFL);
+        }
+    }
+
+    private static long totalChanges(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT total_changes()")) {
+            return rs.getLong(1);
+        }
+    }
+
+    private static String fingerprintOf(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (Exception e) {
+            return Integer.toHexString(path.hashCode());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.passwordmanager.model;
+
+/**
+ * A file attached to a password entry. Only the metadata is held here; the
+ * content is read through {@code DatabaseManager.openAttachment}.
+ */
+public class Attachment {
+    private final int id;
+    private final int entryId;
+    private final String name;
+    private final long size;
+
+    public Attachment(int id, int entryId, String name, long size) {
+        this.id = id;
+        this.entryId = entryId;
+        this.name = name;
+        this.size = size;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getEntryId() {
+        return entryId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        if (size < 1024) {
+            return name + " (" + size + " bytes)";
+        }
+        if (size < 1024 * 1024) {
+            return name + " (" + size / 1024 + " KB)";
+        }
+        return name + " (" + size / (1024 * 1024) + " MB)";
+    }
+}
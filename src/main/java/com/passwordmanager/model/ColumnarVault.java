@@ -0,0 +1,320 @@
+package com.passwordmanager.model;
+
+import com.passwordmanager.security.Encryptor;
+import com.passwordmanager.security.SecretBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, column-oriented copy of an unlocked vault.
+ *
+ * Ids and timestamps are kept in primitive arrays, categories and URL hosts are
+ * dictionary encoded so that each distinct value is stored once, and usernames,
+ * passwords and notes stay as ciphertext until a caller asks for them. Rows are
+ * sorted by title.
+ *
+ * While the DEK is being rotated some rows are still encrypted with the
+ * previous key; those rows are marked in a bit set.
+ *
+ * Use {@link #row(int)} to get a lightweight view of a single row.
+ */
+public final class ColumnarVault {
+    private final Encryptor encryptor;
+    private final Encryptor previousEncryptor;
+    private final BitSet previousKeyRows = new BitSet();
+    private final int size;
+    private final int[] ids;
+    private final long[] lastModified;
+    private final String[] titles;
+    private final int[] categoryCodes;
+    private final List<String> categories;
+    private final int[] hostCodes;
+    private final List<String> hosts;
+    private final String[] urlPaths;
+    private final String[] encryptedUsernames;
+    private final String[] encryptedPasswords;
+    private final String[] encryptedNotes;
+
+    private ColumnarVault(Builder builder, int[] order) {
+        this.encryptor = builder.encryptor;
+        this.previousEncryptor = builder.previousEncryptor;
+        this.size = order.length;
+        this.ids = new int[size];
+        this.lastModified = new long[size];
+        this.titles = new String[size];
+        this.categoryCodes = new int[size];
+        this.hostCodes = new int[size];
+        this.urlPaths = new String[size];
+        this.encryptedUsernames = new String[size];
+        this.encryptedPasswords = new String[size];
+        this.encryptedNotes = new String[size];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            ids[i] = builder.ids[from];
+            lastModified[i] = builder.lastModified[from];
+            titles[i] = builder.titles[from];
+            categoryCodes[i] = builder.categoryCodes[from];
+            hostCodes[i] = builder.hostCodes[from];
+            urlPaths[i] = builder.urlPaths[from];
+            encryptedUsernames[i] = builder.encryptedUsernames[from];
+            encryptedPasswords[i] = builder.encryptedPasswords[from];
+            encryptedNotes[i] = builder.encryptedNotes[from];
+            if (builder.previousKeyRows.get(from)) {
+                previousKeyRows.set(i);
+            }
+        }
+        this.categories = builder.categories.values();
+        this.hosts = builder.hosts.values();
+    }
+
+    /**
+     * Creates a builder for a vault whose secrets are encrypted with the given encryptor
+     * @param encryptor Used to decrypt usernames, passwords and notes on access
+     * @return A new builder
+     */
+    public static Builder builder(Encryptor encryptor) {
+        return new Builder(encryptor, null);
+    }
+
+    /**
+     * Creates a builder for a vault in the middle of a key rotation
+     * @param encryptor Used for rows on the current key
+     * @param previousEncryptor Used for rows on the previous key, may be null
+     * @return A new builder
+     */
+    public static Builder builder(Encryptor encryptor, Encryptor previousEncryptor) {
+        return new Builder(encryptor, previousEncryptor);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public VaultRow row(int index) {
+        return new VaultRow(this, index);
+    }
+
+    /**
+     * Finds the row holding an entry
+     * @param id The entry id
+     * @return The row index, or -1 if the entry is not in the vault
+     */
+    public int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public String getTitle(int index) {
+        return titles[index];
+    }
+
+    public long getLastModified(int index) {
+        return lastModified[index];
+    }
+
+    public String getCategory(int index) {
+        return categories.get(categoryCodes[index]);
+    }
+
+    public String getUrl(int index) {
+        String path = urlPaths[index];
+        String host = hosts.get(hostCodes[index]);
+        return path.isEmpty() ? host : host + path;
+    }
+
+    /**
+     * Gets the distinct non-empty categories in the vault
+     * @return The categories, in no particular order
+     */
+    public List<String> getCategories() {
+        List<String> result = new ArrayList<>(categories.size());
+        for (String category : categories) {
+            if (!category.isEmpty()) {
+                result.add(category);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decrypts the username of a row. The caller owns the returned buffer.
+     * @throws Exception if decryption fails
+     */
+    public SecretBuffer decryptUsername(int index) throws Exception {
+        return encryptorFor(index).decryptSecret(encryptedUsernames[index]);
+    }
+
+    /**
+     * Decrypts the password of a row. The caller owns the returned buffer.
+     * @throws Exception if decryption fails
+     */
+    public SecretBuffer decryptPassword(int index) throws Exception {
+        return encryptorFor(index).decryptSecret(encryptedPasswords[index]);
+    }
+
+    /**
+     * Decrypts the notes of a row. The caller owns the returned buffer.
+     * @throws Exception if decryption fails
+     */
+    public SecretBuffer decryptNotes(int index) throws Exception {
+        return encryptorFor(index).decryptSecret(encryptedNotes[index]);
+    }
+
+    private Encryptor encryptorFor(int index) {
+        return previousKeyRows.get(index) ? previousEncryptor : encryptor;
+    }
+
+    /**
+     * Splits a URL into the scheme and host, which repeat across entries, and
+     * the rest of the URL.
+     */
+    static int hostEnd(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = url.indexOf('/', start);
+        return end < 0 ? url.length() : end;
+    }
+
+    /**
+     * Collects rows one at a time. Plain columns are decrypted by the caller;
+     * secret columns are passed in as they are stored.
+     */
+    public static final class Builder {
+        private final Encryptor encryptor;
+        private final Encryptor previousEncryptor;
+        private final BitSet previousKeyRows = new BitSet();
+        private final Dictionary categories = new Dictionary();
+        private final Dictionary hosts = new Dictionary();
+        private int size;
+        private int[] ids = new int[16];
+        private long[] lastModified = new long[16];
+        private String[] titles = new String[16];
+        private int[] categoryCodes = new int[16];
+        private int[] hostCodes = new int[16];
+        private String[] urlPaths = new String[16];
+        private String[] encryptedUsernames = new String[16];
+        private String[] encryptedPasswords = new String[16];
+        private String[] encryptedNotes = new String[16];
+
+        private Builder(Encryptor encryptor, Encryptor previousEncryptor) {
+            this.encryptor = encryptor;
+            this.previousEncryptor = previousEncryptor;
+        }
+
+        /**
+         * Adds a row
+         * @param id The entry id
+         * @param title The decrypted title
+         * @param url The decrypted URL, may be null
+         * @param category The decrypted category, may be null
+         * @param lastModified The last modification time
+         * @param encryptedUsername The username ciphertext as stored
+         * @param encryptedPassword The password ciphertext as stored
+         * @param encryptedNotes The notes ciphertext as stored
+         * @return This builder
+         */
+        public Builder add(int id, String title, String url, String category, long lastModified,
+                           String encryptedUsername, String encryptedPassword, String encryptedNotes) {
+            return add(id, title, url, category, lastModified, encryptedUsername, encryptedPassword, encryptedNotes, false);
+        }
+
+        /**
+         * Adds a row whose secrets may still be encrypted with the previous key
+         * @param previousKey true if the row is encrypted with the previous key
+         * @return This builder
+         * @see #add(int, String, String, String, long, String, String, String)
+         */
+        public Builder add(int id, String title, String url, String category, long lastModified,
+                           String encryptedUsername, String encryptedPassword, String encryptedNotes,
+                           boolean previousKey) {
+            if (previousKey && previousEncryptor == null) {
+                throw new IllegalArgumentException("The vault has no previous key");
+            }
+            if (size == ids.length) {
+                grow();
+            }
+            String fullUrl = url != null ? url : "";
+            int hostEnd = hostEnd(fullUrl);
+
+            this.ids[size] = id;
+            this.lastModified[size] = lastModified;
+            this.titles[size] = title != null ? title : "";
+            this.categoryCodes[size] = categories.encode(category != null ? category : "");
+            this.hostCodes[size] = hosts.encode(fullUrl.substring(0, hostEnd));
+            this.urlPaths[size] = hostEnd == fullUrl.length() ? "" : fullUrl.substring(hostEnd);
+            this.encryptedUsernames[size] = encryptedUsername;
+            this.encryptedPasswords[size] = encryptedPassword;
+            this.encryptedNotes[size] = encryptedNotes;
+            previousKeyRows.set(size, previousKey);
+            size++;
+            return this;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            hostCodes = Arrays.copyOf(hostCodes, capacity);
+            urlPaths = Arrays.copyOf(urlPaths, capacity);
+            encryptedUsernames = Arrays.copyOf(encryptedUsernames, capacity);
+            encryptedPasswords = Arrays.copyOf(encryptedPasswords, capacity);
+            encryptedNotes = Arrays.copyOf(encryptedNotes, capacity);
+        }
+
+        /**
+         * Builds the vault with its rows sorted by title. The builder should
+         * not be used afterwards.
+         */
+        public ColumnarVault build() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> titles[i]));
+
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = order[i];
+            }
+            return new ColumnarVault(this, sorted);
+        }
+    }
+
+    /**
+     * Maps each distinct string to a small integer code.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        List<String> values() {
+            return Collections.unmodifiableList(new ArrayList<>(values));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.passwordmanager.model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class DeletedEntrySummary extends EntrySummary {
+    private static final DateTimeFormatter DELETED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private final long deletedAt;
+
+    public DeletedEntrySummary(int id, String title, String category, long deletedAt) {
+        super(id, title, category);
+        this.deletedAt = deletedAt;
+    }
+
+    /**
+     * @return Milliseconds since the epoch when the entry was moved to the trash
+     */
+    public long getDeletedAt() {
+        return deletedAt;
+    }
+
+    @Override
+    public String toString() {
+        String deleted = DELETED_FORMAT.format(Instant.ofEpochMilli(deletedAt).atZone(ZoneId.systemDefault()));
+        return super.toString() + " - deleted " + deleted;
+    }
+}
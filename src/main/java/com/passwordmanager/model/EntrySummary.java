@@ -0,0 +1,33 @@
+package com.passwordmanager.model;
+
+public class EntrySummary {
+    private final int id;
+    private final String title;
+    private final String category;
+
+    public EntrySummary(int id, String title, String category) {
+        this.id = id;
+        this.title = title;
+        this.category = category;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public String toString() {
+        if (category == null || category.isEmpty()) {
+            return title;
+        }
+        return title + " (" + category + ")";
+    }
+}
@@ -1,15 +1,14 @@
 package com.passwordmanager.model;
 
-import javafx.beans.property.SimpleStringProperty;
-import com.passwordmanager.security.SecureWiper;
+import com.passwordmanager.security.SecretBuffer;
 
 public class PasswordEntry {
     private int id;
     private String title;
-    private String username;
-    private String password;
+    private SecretBuffer username;
+    private SecretBuffer password;
     private String url;
-    private String notes;
+    private SecretBuffer notes;
     private String category;
     private long lastModified;
 
@@ -18,10 +17,10 @@ public class PasswordEntry {
 
     public PasswordEntry(String title, String username, String password, String url, String notes, String category) {
         this.title = title;
-        this.username = username;
-        this.password = password;
+        this.username = SecretBuffer.of(username);
+        this.password = SecretBuffer.of(password);
         this.url = url;
-        this.notes = notes;
+        this.notes = SecretBuffer.of(notes);
         this.category = category;
         this.lastModified = System.currentTimeMillis();
     }
@@ -42,21 +41,71 @@ public class PasswordEntry {
         this.title = title;
     }
 
+    /**
+     * Copies the username into a new String, which cannot be wiped. Only for
+     * APIs that need a String, such as text controls; code that only reads
+     * the username should use {@link #getUsernameSecret()} or {@link #getUsernameChars()}.
+     */
     public String getUsername() {
-        return username;
+        return username != null ? username.asString() : null;
+    }
+
+    /**
+     * Copies the username into a new array, which the caller wipes with
+     * {@link com.passwordmanager.security.SecureWiper#wipeCharArray(char[])}
+     */
+    public char[] getUsernameChars() {
+        return username != null ? username.toCharArray() : null;
     }
 
     public void setUsername(String username) {
-        SecureWiper.wipeString(this.username);
+        setUsernameSecret(SecretBuffer.of(username));
+    }
+
+    public SecretBuffer getUsernameSecret() {
+        return username;
+    }
+
+    /**
+     * Replaces the username, closing the previous buffer. The entry takes
+     * ownership of the given buffer.
+     */
+    public void setUsernameSecret(SecretBuffer username) {
+        close(this.username, username);
         this.username = username;
     }
 
+    /**
+     * Copies the password into a new String, which cannot be wiped. Only for
+     * APIs that need a String, such as text controls; code that only reads
+     * the password should use {@link #getPasswordSecret()} or {@link #getPasswordChars()}.
+     */
     public String getPassword() {
-        return password;
+        return password != null ? password.asString() : null;
+    }
+
+    /**
+     * Copies the password into a new array, which the caller wipes with
+     * {@link com.passwordmanager.security.SecureWiper#wipeCharArray(char[])}
+     */
+    public char[] getPasswordChars() {
+        return password != null ? password.toCharArray() : null;
     }
 
     public void setPassword(String password) {
-        SecureWiper.wipeString(this.password);
+        setPasswordSecret(SecretBuffer.of(password));
+    }
+
+    public SecretBuffer getPasswordSecret() {
+        return password;
+    }
+
+    /**
+     * Replaces the password, closing the previous buffer. The entry takes
+     * ownership of the given buffer.
+     */
+    public void setPasswordSecret(SecretBuffer password) {
+        close(this.password, password);
         this.password = password;
     }
 
@@ -68,12 +117,37 @@ public class PasswordEntry {
         this.url = url;
     }
 
+    /**
+     * Copies the notes into a new String, which cannot be wiped. Only for
+     * APIs that need a String, such as text controls; code that only reads
+     * the notes should use {@link #getNotesSecret()} or {@link #getNotesChars()}.
+     */
     public String getNotes() {
-        return notes;
+        return notes != null ? notes.asString() : null;
+    }
+
+    /**
+     * Copies the notes into a new array, which the caller wipes with
+     * {@link com.passwordmanager.security.SecureWiper#wipeCharArray(char[])}
+     */
+    public char[] getNotesChars() {
+        return notes != null ? notes.toCharArray() : null;
     }
 
     public void setNotes(String notes) {
-        SecureWiper.wipeString(this.notes);
+        setNotesSecret(SecretBuffer.of(notes));
+    }
+
+    public SecretBuffer getNotesSecret() {
+        return notes;
+    }
+
+    /**
+     * Replaces the notes, closing the previous buffer. The entry takes
+     * ownership of the given buffer.
+     */
+    public void setNotesSecret(SecretBuffer notes) {
+        close(this.notes, notes);
         this.notes = notes;
     }
 
@@ -97,10 +171,16 @@ public class PasswordEntry {
         this.lastModified = System.currentTimeMillis();
     }
 
+    private static void close(SecretBuffer previous, SecretBuffer replacement) {
+        if (previous != null && previous != replacement) {
+            previous.close();
+        }
+    }
+
     public void secureClear() {
-        SecureWiper.wipeString(username);
-        SecureWiper.wipeString(password);
-        SecureWiper.wipeString(notes);
+        close(username, null);
+        close(password, null);
+        close(notes, null);
         username = null;
         password = null;
         notes = null;
@@ -109,13 +189,4 @@ public class PasswordEntry {
         url = null;
         category = null;
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            secureClear();
-        } finally {
-            super.finalize();
-        }
-    }
-} 
\ No newline at end of file
+}
\ No newline at end of file
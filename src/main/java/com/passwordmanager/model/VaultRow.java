@@ -0,0 +1,68 @@
+package com.passwordmanager.model;
+
+import com.passwordmanager.security.SecretBuffer;
+
+/**
+ * A view of one row of a {@link ColumnarVault}. Rows hold no data of their own
+ * and are cheap to create; two rows are equal if they show the same entry.
+ */
+public final class VaultRow {
+    private final ColumnarVault vault;
+    private final int index;
+
+    VaultRow(ColumnarVault vault, int index) {
+        this.vault = vault;
+        this.index = index;
+    }
+
+    public int getId() {
+        return vault.getId(index);
+    }
+
+    public String getTitle() {
+        return vault.getTitle(index);
+    }
+
+    public String getUrl() {
+        return vault.getUrl(index);
+    }
+
+    public String getCategory() {
+        return vault.getCategory(index);
+    }
+
+    public long getLastModified() {
+        return vault.getLastModified(index);
+    }
+
+    /**
+     * Decrypts the username for display. The returned String cannot be wiped,
+     * so only call this for rows that are actually shown.
+     * @return The username, or an empty string if it cannot be decrypted
+     */
+    public String getUsername() {
+        try (SecretBuffer username = vault.decryptUsername(index)) {
+            return username.asString();
+        } catch (Exception e) {
+            System.err.println("Failed to decrypt username: " + e.getMessage());
+            return "";
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VaultRow)) return false;
+        return getId() == ((VaultRow) o).getId();
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return getTitle();
+    }
+}
@@ -0,0 +1,181 @@
+package com.passwordmanager.security;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.concurrent.CompletableFuture;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The AEAD ciphers values can be encrypted with. Both take a 256-bit key and
+ * a 96-bit nonce and add a 128-bit tag, so only the suite id in the
+ * ciphertext header differs between them.
+ *
+ * AES-GCM is fast wherever the CPU has AES instructions; ChaCha20-Poly1305
+ * is faster on machines without them. Both are measured once per run, started
+ * in the background with {@link #startProbeInBackground()}, so new vaults get
+ * the better one for this machine.
+ */
+public enum CipherSuite {
+    AES_GCM(1, "AES-GCM", "AES/GCM/NoPadding", "AES"),
+    CHACHA20_POLY1305(2, "ChaCha20-Poly1305", "ChaCha20-Poly1305", "ChaCha20");
+
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+    private static final int PROBE_BYTES = 4 * 1024;
+    private static final int PROBE_ROUNDS = 256;
+    private static final long PROBE_BUDGET_NANOS = 150_000_000L;
+    private static CompletableFuture<CipherSuite> probe;
+
+    private final int id;
+    private final String displayName;
+    private final String transformation;
+    private final String keyAlgorithm;
+
+    CipherSuite(int id, String displayName, String transformation, String keyAlgorithm) {
+        this.id = id;
+        this.displayName = displayName;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    /**
+     * @return The id stored in ciphertext headers
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return The name stored in the users table
+     */
+    public String displayName() {
+        return displayName;
+    }
+
+    public static CipherSuite fromId(int id) throws GeneralSecurityException {
+        for (CipherSuite suite : values()) {
+            if (suite.id == id) {
+                return suite;
+            }
+        }
+        throw new GeneralSecurityException("Unknown cipher suite " + id);
+    }
+
+    /**
+     * Gets a suite by its stored name. Vaults that predate cipher suites use AES-GCM.
+     * @param name The stored name, may be null
+     * @return The suite
+     */
+    public static CipherSuite forName(String name) {
+        for (CipherSuite suite : values()) {
+            if (suite.displayName.equals(name)) {
+                return suite;
+            }
+        }
+        return AES_GCM;
+    }
+
+    /**
+     * Creates a cipher for this suite
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key A key for this suite, see {@link #adaptKey(SecretKey)}
+     * @param nonce The 12-byte nonce
+     */
+    Cipher init(int mode, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(transformation);
+        AlgorithmParameterSpec spec = this == AES_GCM
+            ? new GCMParameterSpec(TAG_LENGTH * 8, nonce)
+            : new IvParameterSpec(nonce);
+        cipher.init(mode, key, spec);
+        return cipher;
+    }
+
+    /**
+     * Gets a key this suite's cipher accepts. The JDK's ChaCha20 refuses keys
+     * labelled AES, so the key bytes are copied under the right algorithm.
+     * @param key A 256-bit key
+     * @return The key itself if it already fits, otherwise a copy the caller must wipe
+     */
+    SecretKey adaptKey(SecretKey key) {
+        if (keyAlgorithm.equalsIgnoreCase(key.getAlgorithm())) {
+            return key;
+        }
+        byte[] encoded = key.getEncoded();
+        try {
+            return new SecretKeySpec(encoded, keyAlgorithm);
+        } finally {
+            SecureWiper.wipeByteArray(encoded);
+        }
+    }
+
+    /**
+     * Starts measuring both suites on a background thread, unless that has
+     * already happened.
+     */
+    public static synchronized void startProbeInBackground() {
+        if (probe == null) {
+            probe = CompletableFuture.supplyAsync(CipherSuite::probe);
+        }
+    }
+
+    /**
+     * Gets the suite that encrypts fastest on this machine, waiting for the
+     * probe to finish. The probe encrypts a few hundred 4 KB values with each
+     * suite, for at most 150 ms per suite.
+     * @return The faster suite, or AES-GCM if the probe fails
+     */
+    public static CipherSuite fastest() {
+        startProbeInBackground();
+        return probe.join();
+    }
+
+    private static CipherSuite probe() {
+        try {
+            byte[] keyBytes = new byte[32];
+            SecureRandom random = new SecureRandom();
+            random.nextBytes(keyBytes);
+            byte[] data = new byte[PROBE_BYTES];
+            byte[] nonce = new byte[NONCE_LENGTH];
+
+            CipherSuite best = AES_GCM;
+            long bestNanos = Long.MAX_VALUE;
+            StringBuilder report = new StringBuilder("Cipher probe:");
+            for (CipherSuite suite : values()) {
+                SecretKey key = new SecretKeySpec(keyBytes, suite.keyAlgorithm);
+                // The first rounds run before the JIT has compiled the cipher, so keep the fastest
+                long nanos = fastestRound(suite, key, data, nonce);
+                SecureWiper.wipeKey(key);
+                report.append(String.format(" %s %d MB/s", suite.displayName,
+                    (long) PROBE_BYTES * 1000 / Math.max(1, nanos)));
+                if (nanos < bestNanos) {
+                    bestNanos = nanos;
+                    best = suite;
+                }
+            }
+            SecureWiper.wipeByteArray(keyBytes);
+            System.out.println(report);
+            return best;
+        } catch (GeneralSecurityException e) {
+            System.err.println("Cipher probe failed, using AES-GCM: " + e.getMessage());
+            return AES_GCM;
+        }
+    }
+
+    private static long fastestRound(CipherSuite suite, SecretKey key, byte[] data, byte[] nonce)
+            throws GeneralSecurityException {
+        long fastest = Long.MAX_VALUE;
+        long deadline = System.nanoTime() + PROBE_BUDGET_NANOS;
+        for (int i = 0; i < PROBE_ROUNDS && System.nanoTime() < deadline; i++) {
+            nonce[0] = (byte) i;
+            long start = System.nanoTime();
+            suite.init(Cipher.ENCRYPT_MODE, key, nonce).doFinal(data);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return fastest;
+    }
+}
@@ -3,6 +3,8 @@ package com.passwordmanager.security;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.application.Platform;
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.audit.AuditJournal;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -21,6 +23,18 @@ public class ClipboardManager {
         }
     }
 
+    /**
+     * Copies a secret to the clipboard. The system clipboard only accepts
+     * Strings, so this is the single place where the secret leaves off-heap
+     * memory; the String is created right before handing it over.
+     */
+    public static void copyToClipboard(SecretBuffer secret, boolean isSensitive) {
+        if (secret == null) {
+            return;
+        }
+        copyToClipboard(secret.asString(), isSensitive);
+    }
+
     private static void scheduleClearClipboard() {
         if (clearTimer != null) {
             clearTimer.cancel();
@@ -33,6 +47,7 @@ public class ClipboardManager {
                 Platform.runLater(() -> {
                     Clipboard clipboard = Clipboard.getSystemClipboard();
                     clipboard.clear();
+                    AuditJournal.record(AuditEvent.Type.CLIPBOARD_CLEARED, 0, "after " + DEFAULT_CLEAR_DELAY + " seconds");
                 });
             }
         }, DEFAULT_CLEAR_DELAY * 1000);     
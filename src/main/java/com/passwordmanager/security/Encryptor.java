@@ -2,45 +2,94 @@ package com.passwordmanager.security;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
+/**
+ * Encrypts vault values with the DEK.
+ *
+ * Values are stored as a 3-byte header (magic, format version, cipher suite
+ * id), a 12-byte nonce and the ciphertext with its tag; the header is
+ * authenticated as associated data. The top bit of the suite byte marks a
+ * plaintext that was compressed with {@link NoteCompressor}. Values written before the header existed
+ * are a bare AES-GCM nonce and ciphertext, and still decrypt.
+ */
 public class Encryptor {
     private static final String ALGORITHM = "AES/GCM/NoPadding";
     private static final int KEY_LENGTH = 256;
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
-    private static final int ITERATION_COUNT = 65536;
+    private static final byte HEADER_MAGIC = (byte) 0xCE;
+    private static final byte HEADER_VERSION = 1;
+    private static final int HEADER_LENGTH = 3;
+    private static final int FLAG_COMPRESSED = 0x80;
+    // Text has always been encoded with the platform charset; keep that so old rows decrypt.
+    private static final Charset TEXT_CHARSET = Charset.defaultCharset();
 
     private volatile SecretKey dek;
+    private final CipherSuite suite;
+    // The DEK relabelled for suites whose cipher will not take an AES key, by ordinal
+    private final SecretKey[] suiteKeys = new SecretKey[CipherSuite.values().length];
     private final SecureRandom secureRandom;
 
     public Encryptor(SecretKey dek) {
+        this(dek, CipherSuite.AES_GCM);
+    }
+
+    /**
+     * @param dek The data encryption key
+     * @param suite The suite new values are encrypted with; any suite can be decrypted
+     */
+    public Encryptor(SecretKey dek, CipherSuite suite) {
         this.dek = dek;
+        this.suite = suite;
         this.secureRandom = new SecureRandom();
     }
 
+    public CipherSuite getCipherSuite() {
+        return suite;
+    }
+
     public static SecretKey generateDEK() throws Exception {
         KeyGenerator keyGen = KeyGenerator.getInstance("AES");
         keyGen.init(KEY_LENGTH);
         return keyGen.generateKey();
     }
 
+    /**
+     * Derives a KEK with the parameters every vault used before they were
+     * stored per user
+     */
     public static SecretKey deriveKEK(String masterPassword, String salt) throws Exception {
-        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-        PBEKeySpec spec = new PBEKeySpec(
-            masterPassword.toCharArray(),
-            Base64.getDecoder().decode(salt),
-            ITERATION_COUNT,
-            KEY_LENGTH
-        );
-        SecretKey tmp = factory.generateSecret(spec);
-        return new SecretKeySpec(tmp.getEncoded(), "AES");
+        return deriveKEK(masterPassword, KdfParameters.legacy(salt));
+    }
+
+    /**
+     * Derives a KEK from the master password
+     * @param masterPassword The master password
+     * @param params The user's key derivation parameters
+     * @return A 256-bit AES key
+     * @throws Exception if the algorithm is not available
+     */
+    public static SecretKey deriveKEK(String masterPassword, KdfParameters params) throws Exception {
+        KeyDerivationFunction kdf = KeyDerivationFunction.forAlgorithm(params.algorithm());
+        char[] password = masterPassword.toCharArray();
+        byte[] key = null;
+        try {
+            key = kdf.derive(password, Base64.getDecoder().decode(params.salt()), params, KEY_LENGTH / 8);
+            return new SecretKeySpec(key, "AES");
+        } finally {
+            SecureWiper.wipeCharArray(password);
+            if (key != null) {
+                SecureWiper.wipeByteArray(key);
+            }
+        }
     }
 
     public static String encryptDEK(SecretKey dek, SecretKey kek) throws Exception {
@@ -81,20 +130,7 @@ public class Encryptor {
             return "";
         }
         
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        secureRandom.nextBytes(iv);
-
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, dek, parameterSpec);
-
-        byte[] ciphertext = cipher.doFinal(plaintext.getBytes());
-
-        byte[] encrypted = new byte[iv.length + ciphertext.length];
-        System.arraycopy(iv, 0, encrypted, 0, iv.length);
-        System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
-
-        return Base64.getEncoder().encodeToString(encrypted);
+        return Base64.getEncoder().encodeToString(encryptBytes(plaintext.getBytes(TEXT_CHARSET)));
     }
 
     public String decrypt(String ciphertext) throws Exception {
@@ -109,26 +145,127 @@ public class Encryptor {
                 return ciphertext;
             }
 
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            System.arraycopy(decoded, 0, iv, 0, iv.length);
+            return new String(decryptBytes(decoded), TEXT_CHARSET);
+        } catch (IllegalArgumentException e) {
+            return ciphertext;
+        }
+    }
+
+    /**
+     * Encrypts a secret without copying it into a String
+     * @param secret The secret to encrypt, may be null
+     * @return The Base64 encoded ciphertext, or an empty string for an empty secret
+     * @throws Exception if encryption fails
+     */
+    public String encrypt(SecretBuffer secret) throws Exception {
+        if (secret == null || secret.isEmpty()) {
+            return "";
+        }
+
+        byte[] plaintext = secret.toBytes(TEXT_CHARSET);
+        try {
+            return Base64.getEncoder().encodeToString(encryptBytes(plaintext));
+        } finally {
+            SecureWiper.wipeByteArray(plaintext);
+        }
+    }
+
+    /**
+     * Encrypts a secret like {@link #encrypt(SecretBuffer)}, compressing it
+     * first if it is long enough for that to pay off. Used for notes.
+     * @param secret The secret to encrypt, may be null
+     * @return The Base64 encoded ciphertext, or an empty string for an empty secret
+     * @throws Exception if encryption fails
+     */
+    public String encryptCompressed(SecretBuffer secret) throws Exception {
+        if (secret == null || secret.isEmpty()) {
+            return "";
+        }
 
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, dek, parameterSpec);
+        byte[] plaintext = secret.toBytes(TEXT_CHARSET);
+        byte[] compressed = NoteCompressor.compress(plaintext);
+        try {
+            byte[] encrypted = compressed != null ? seal(compressed, true, null) : seal(plaintext, false, null);
+            return Base64.getEncoder().encodeToString(encrypted);
+        } finally {
+            SecureWiper.wipeByteArray(plaintext);
+            SecureWiper.wipeByteArray(compressed);
+        }
+    }
 
-            byte[] plaintext = cipher.doFinal(
-                decoded, 
-                GCM_IV_LENGTH, 
-                decoded.length - GCM_IV_LENGTH
-            );
+    /**
+     * Decrypts a value straight into off-heap memory, so the plaintext never
+     * exists as a String. Values that are not valid ciphertext are returned
+     * as they are, like {@link #decrypt(String)} does.
+     * @param ciphertext The Base64 encoded ciphertext, may be null
+     * @return The decrypted secret; empty if the ciphertext is null or empty
+     * @throws Exception if decryption fails
+     */
+    public SecretBuffer decryptSecret(String ciphertext) throws Exception {
+        if (ciphertext == null || ciphertext.isEmpty()) {
+            return SecretBuffer.of("");
+        }
+
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(ciphertext);
+        } catch (IllegalArgumentException e) {
+            return SecretBuffer.of(ciphertext);
+        }
+        if (decoded.length < GCM_IV_LENGTH) {
+            return SecretBuffer.of(ciphertext);
+        }
+
+        byte[] plaintext = decryptBytes(decoded);
+        try {
+            return SecretBuffer.fromBytes(plaintext, TEXT_CHARSET);
+        } finally {
+            SecureWiper.wipeByteArray(plaintext);
+        }
+    }
+
+    /**
+     * Decrypts a stored value with this encryptor's key and encrypts it with
+     * another's, without going through a String. Empty values and values that
+     * are not ciphertext are returned as they are.
+     * @param ciphertext The Base64 encoded ciphertext, may be null
+     * @param target The encryptor holding the new key
+     * @return The value encrypted with the target key
+     * @throws Exception if decryption or encryption fails
+     */
+    public String reencrypt(String ciphertext, Encryptor target) throws Exception {
+        if (ciphertext == null || ciphertext.isEmpty()) {
+            return ciphertext;
+        }
 
-            return new String(plaintext);
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(ciphertext);
         } catch (IllegalArgumentException e) {
             return ciphertext;
         }
+        if (decoded.length < GCM_IV_LENGTH) {
+            return ciphertext;
+        }
+
+        // Compressed values stay compressed, so they are never inflated here
+        Plaintext plaintext = open(decoded, null);
+        try {
+            return Base64.getEncoder().encodeToString(target.seal(plaintext.bytes(), plaintext.compressed(), null));
+        } finally {
+            SecureWiper.wipeByteArray(plaintext.bytes());
+        }
     }
 
     public void secureWipeKeys() {
+        synchronized (suiteKeys) {
+            for (int i = 0; i < suiteKeys.length; i++) {
+                if (suiteKeys[i] != null && suiteKeys[i] != dek) {
+                    SecureWiper.wipeKey(suiteKeys[i]);
+                }
+                suiteKeys[i] = null;
+            }
+        }
         if (dek != null) {
             SecureWiper.wipeKey(dek);
             dek = null;
@@ -144,34 +281,67 @@ public class Encryptor {
     }
 
     /**
-     * Encrypts a byte array using the DEK
+     * Encrypts a byte array using the DEK and this encryptor's cipher suite
      * @param data The data to encrypt
-     * @return The encrypted data
+     * @return The header, nonce and ciphertext
      * @throws Exception if encryption fails
      */
     public byte[] encryptBytes(byte[] data) throws Exception {
         if (data == null || data.length == 0) {
             return new byte[0];
         }
-        
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        secureRandom.nextBytes(iv);
-
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, dek, parameterSpec);
+        return seal(data, false, null);
+    }
 
-        byte[] ciphertext = cipher.doFinal(data);
+    /**
+     * Encrypts a byte array bound to associated data, such as a chunk's
+     * position in a file. Unlike {@link #encryptBytes(byte[])}, empty input
+     * still produces a ciphertext, so its absence can be detected.
+     * @param data The data to encrypt
+     * @param associatedData Authenticated but not encrypted; decryption needs the same bytes
+     * @return The header, nonce and ciphertext
+     * @throws GeneralSecurityException if encryption fails
+     */
+    public byte[] encryptBytes(byte[] data, byte[] associatedData) throws GeneralSecurityException {
+        return seal(data, false, associatedData);
+    }
 
-        byte[] encrypted = new byte[iv.length + ciphertext.length];
-        System.arraycopy(iv, 0, encrypted, 0, iv.length);
-        System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
+    /**
+     * Decrypts a byte array encrypted by {@link #encryptBytes(byte[], byte[])}
+     * @param data The data to decrypt
+     * @param associatedData The associated data it was encrypted with
+     * @return The decrypted data
+     * @throws GeneralSecurityException if the data or associated data does not authenticate
+     */
+    public byte[] decryptBytes(byte[] data, byte[] associatedData) throws GeneralSecurityException {
+        if (!hasHeader(data)) {
+            throw new GeneralSecurityException("Invalid encrypted data");
+        }
+        return open(data, associatedData).bytes();
+    }
 
-        return encrypted;
+    /**
+     * Re-encrypts a byte array encrypted by {@link #encryptBytes(byte[], byte[])}
+     * with another encryptor's key, keeping its associated data
+     * @param data The data to re-encrypt
+     * @param associatedData The associated data it was encrypted with
+     * @param target The encryptor holding the new key
+     * @return The data encrypted with the target key
+     * @throws GeneralSecurityException if the data does not authenticate
+     */
+    public byte[] reencryptBytes(byte[] data, byte[] associatedData, Encryptor target) throws GeneralSecurityException {
+        byte[] plaintext = decryptBytes(data, associatedData);
+        try {
+            return target.seal(plaintext, false, associatedData);
+        } finally {
+            SecureWiper.wipeByteArray(plaintext);
+        }
     }
 
     /**
-     * Decrypts a byte array using the DEK
+     * Decrypts a byte array using the DEK, with the cipher suite named in its
+     * header, or AES-GCM for values written before headers existed.
+     * Compressed values are inflated.
      * @param data The data to decrypt
      * @return The decrypted data
      * @throws Exception if decryption fails
@@ -185,17 +355,103 @@ public class Encryptor {
             throw new Exception("Invalid encrypted data");
         }
 
+        Plaintext plaintext = open(data, null);
+        if (!plaintext.compressed()) {
+            return plaintext.bytes();
+        }
+        try {
+            return NoteCompressor.decompress(plaintext.bytes());
+        } finally {
+            SecureWiper.wipeByteArray(plaintext.bytes());
+        }
+    }
+
+    /**
+     * Decrypted bytes as stored, before any decompression
+     */
+    private record Plaintext(byte[] bytes, boolean compressed) {
+    }
+
+    private byte[] seal(byte[] data, boolean compressed, byte[] associatedData) throws GeneralSecurityException {
+        byte[] encrypted = new byte[HEADER_LENGTH + CipherSuite.NONCE_LENGTH + data.length + CipherSuite.TAG_LENGTH];
+        encrypted[0] = HEADER_MAGIC;
+        encrypted[1] = HEADER_VERSION;
+        encrypted[2] = (byte) (suite.id() | (compressed ? FLAG_COMPRESSED : 0));
+        byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        System.arraycopy(nonce, 0, encrypted, HEADER_LENGTH, nonce.length);
+
+        Cipher cipher = suite.init(Cipher.ENCRYPT_MODE, keyFor(suite), nonce);
+        cipher.updateAAD(encrypted, 0, HEADER_LENGTH);
+        if (associatedData != null) {
+            cipher.updateAAD(associatedData);
+        }
+        cipher.doFinal(data, 0, data.length, encrypted, HEADER_LENGTH + nonce.length);
+        return encrypted;
+    }
+
+    /**
+     * Decrypts a value. Values with associated data always have a header, so
+     * only values without any can be legacy.
+     */
+    private Plaintext open(byte[] data, byte[] associatedData) throws GeneralSecurityException {
+        if (hasHeader(data)) {
+            try {
+                CipherSuite dataSuite = CipherSuite.fromId(data[2] & ~FLAG_COMPRESSED & 0xFF);
+                byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+                System.arraycopy(data, HEADER_LENGTH, nonce, 0, nonce.length);
+                Cipher cipher = dataSuite.init(Cipher.DECRYPT_MODE, keyFor(dataSuite), nonce);
+                cipher.updateAAD(data, 0, HEADER_LENGTH);
+                if (associatedData != null) {
+                    cipher.updateAAD(associatedData);
+                }
+                int offset = HEADER_LENGTH + nonce.length;
+                return new Plaintext(cipher.doFinal(data, offset, data.length - offset),
+                    (data[2] & FLAG_COMPRESSED) != 0);
+            } catch (GeneralSecurityException e) {
+                if (associatedData != null) {
+                    throw e;
+                }
+                // A legacy value whose random nonce happens to start like a header
+                try {
+                    return new Plaintext(decryptLegacy(data), false);
+                } catch (GeneralSecurityException legacyFailure) {
+                    throw e;
+                }
+            }
+        }
+        return new Plaintext(decryptLegacy(data), false);
+    }
+
+    private static boolean hasHeader(byte[] data) {
+        return data.length >= HEADER_LENGTH + CipherSuite.NONCE_LENGTH + CipherSuite.TAG_LENGTH
+            && data[0] == HEADER_MAGIC && data[1] == HEADER_VERSION;
+    }
+
+    private byte[] decryptLegacy(byte[] data) throws GeneralSecurityException {
         byte[] iv = new byte[GCM_IV_LENGTH];
         System.arraycopy(data, 0, iv, 0, iv.length);
 
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.DECRYPT_MODE, dek, parameterSpec);
-
+        Cipher cipher = CipherSuite.AES_GCM.init(Cipher.DECRYPT_MODE, keyFor(CipherSuite.AES_GCM), iv);
         return cipher.doFinal(
             data, 
             GCM_IV_LENGTH, 
             data.length - GCM_IV_LENGTH
         );
     }
-} 
\ No newline at end of file
+
+    private SecretKey keyFor(CipherSuite target) throws InvalidKeyException {
+        SecretKey key = dek;
+        if (key == null) {
+            throw new InvalidKeyException("The key has been wiped");
+        }
+        synchronized (suiteKeys) {
+            SecretKey adapted = suiteKeys[target.ordinal()];
+            if (adapted == null) {
+                adapted = target.adaptKey(key);
+                suiteKeys[target.ordinal()] = adapted;
+            }
+            return adapted;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.passwordmanager.security;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HKDF with HMAC-SHA256 (RFC 5869).
+ */
+public final class Hkdf {
+    private static final int HASH_LENGTH = 32;
+
+    private Hkdf() {
+    }
+
+    /**
+     * Derives key material from input keying material
+     * @param ikm The input keying material
+     * @param salt The salt, may be empty
+     * @param info Context that binds the output to its use
+     * @param length The number of bytes to derive, at most 8160
+     * @return The derived bytes
+     * @throws GeneralSecurityException if HMAC-SHA256 is not available
+     */
+    public static byte[] derive(byte[] ikm, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        if (length < 0 || length > 255 * HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid HKDF output length: " + length);
+        }
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(salt.length > 0 ? salt : new byte[HASH_LENGTH], "HmacSHA256"));
+        byte[] prk = mac.doFinal(ikm);
+
+        byte[] output = new byte[length];
+        byte[] block = new byte[0];
+        try {
+            mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+            for (int counter = 1, offset = 0; offset < length; counter++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) counter);
+                SecureWiper.wipeByteArray(block);
+                block = mac.doFinal();
+                System.arraycopy(block, 0, output, offset, Math.min(block.length, length - offset));
+                offset += block.length;
+            }
+            return output;
+        } finally {
+            SecureWiper.wipeByteArray(prk);
+            SecureWiper.wipeByteArray(block);
+        }
+    }
+}
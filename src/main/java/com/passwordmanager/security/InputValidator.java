@@ -8,7 +8,10 @@ public class InputValidator {
     private static final Pattern CATEGORY_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\s._-]{1,50}$");
     private static final Pattern URL_PATTERN = Pattern.compile("^(https?://)?[\\w.-]+\\.[\\w]{2,}[\\w\\-._~:/?#\\[\\]@!$&'()*+,;=]*$");
     private static final Pattern PASSWORD_PATTERN = Pattern.compile("^.+$"); // Any non-empty string
-    private static final Pattern NOTES_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\s\\p{P}]{0,1000}$");
+    private static final Pattern PIN_PATTERN = Pattern.compile("^[0-9]{4,12}$");
+    /** Long enough for SSH configs and key material; long notes are compressed before encryption. */
+    public static final int MAX_NOTES_LENGTH = 64 * 1024;
+    private static final Pattern NOTES_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\s\\p{P}\\p{S}]{0," + MAX_NOTES_LENGTH + "}$");
     
     public static String sanitizeInput(String input) {
         if (input == null) {
@@ -20,11 +23,59 @@ public class InputValidator {
                    .replace("\n", " ")
                    .replace("\r", " ");
     }
+
+    /**
+     * Sanitizes a secret like {@link #sanitizeInput(String)} without creating
+     * a String. Working copies are wiped before returning.
+     * @return The input itself if nothing needed replacing, otherwise a new buffer
+     */
+    public static SecretBuffer sanitizeSecret(SecretBuffer input) {
+        if (input == null || input.isEmpty()) {
+            return input;
+        }
+        char[] chars = input.toCharArray();
+        try {
+            int escaped = 0;
+            boolean changed = false;
+            for (char c : chars) {
+                if (c == '\'' || c == '\\') {
+                    escaped++;
+                }
+                changed |= c == '\'' || c == '\\' || c == '\u0000' || c == '\n' || c == '\r';
+            }
+            if (!changed) {
+                return input;
+            }
+            char[] sanitized = new char[chars.length + escaped];
+            int length = 0;
+            for (char c : chars) {
+                switch (c) {
+                    case '\'', '\\' -> {
+                        sanitized[length++] = c;
+                        sanitized[length++] = c;
+                    }
+                    case '\u0000', '\n', '\r' -> sanitized[length++] = ' ';
+                    default -> sanitized[length++] = c;
+                }
+            }
+            try {
+                return SecretBuffer.of(sanitized);
+            } finally {
+                SecureWiper.wipeCharArray(sanitized);
+            }
+        } finally {
+            SecureWiper.wipeCharArray(chars);
+        }
+    }
     
     public static boolean isValidInput(String input) {
         return input != null && !input.trim().isEmpty();
     }
     
+    public static boolean isValidSecret(SecretBuffer input) {
+        return input != null && !input.isBlank();
+    }
+    
     public static boolean isValidUsername(String username) {
         return username != null && USERNAME_PATTERN.matcher(username).matches();
     }
@@ -53,6 +104,10 @@ public class InputValidator {
         return masterPassword != null && !masterPassword.trim().isEmpty();
     }
     
+    public static boolean isValidPin(String pin) {
+        return pin != null && PIN_PATTERN.matcher(pin).matches();
+    }
+    
     public static class ValidationException extends Exception {
         public ValidationException(String message) {
             super(message);
@@ -72,4 +127,22 @@ public class InputValidator {
             throw new ValidationException("Password is required");
         }
     }
+
+    /**
+     * Checks the required fields of an entry like
+     * {@link #validatePasswordEntry(String, String, String, String, String, String)},
+     * reading the username and password where they are, off the heap
+     */
+    public static void validatePasswordEntry(String title, SecretBuffer username, SecretBuffer password)
+            throws ValidationException {
+        if (!isValidInput(title)) {
+            throw new ValidationException("Title is required");
+        }
+        if (!isValidSecret(username)) {
+            throw new ValidationException("Username is required");
+        }
+        if (!isValidSecret(password)) {
+            throw new ValidationException("Password is required");
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.passwordmanager.security;
+
+import java.util.Base64;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Picks the PBKDF2 iteration count that makes one key derivation take about a
+ * target time on the current machine.
+ *
+ * The result is measured once per run of the application. It never goes below
+ * {@link KdfParameters#LEGACY_ITERATIONS}. Calibration takes up to a couple of
+ * seconds while the JIT warms up, so the application starts it in the background
+ * with {@link #startInBackground()} while the user types their password.
+ */
+public class KdfCalibrator {
+    public static final long DEFAULT_TARGET_MILLIS = 500;
+    private static final int PROBE_ITERATIONS = 20_000;
+    private static final int MIN_PROBE_ROUNDS = 3;
+    private static final int MAX_PROBE_ROUNDS = 30;
+    private static final long PROBE_BUDGET_NANOS = 1_500_000_000L;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int ROUNDING = 10_000;
+
+    private static CompletableFuture<Integer> calibration;
+
+    /**
+     * Starts calibrating for the default target on a background thread, unless
+     * that has already happened.
+     */
+    public static synchronized void startInBackground() {
+        if (calibration == null) {
+            calibration = CompletableFuture.supplyAsync(() -> calibrate(DEFAULT_TARGET_MILLIS));
+        }
+    }
+
+    /**
+     * Gets the iteration count for the default target, waiting for calibration to finish
+     * @return The calibrated iteration count
+     */
+    public static int calibratedIterations() {
+        startInBackground();
+        return calibration.join();
+    }
+
+    /**
+     * Gets the iteration count for the default target without waiting
+     * @return The calibrated iteration count, or empty if calibration has not finished
+     */
+    public static synchronized OptionalInt calibratedIterationsIfReady() {
+        if (calibration == null || !calibration.isDone()) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(calibration.join());
+    }
+
+    /**
+     * Gets the parameters a new or upgraded vault should use on this machine
+     * @param salt The salt to use
+     * @return PBKDF2-HMAC-SHA256 with the calibrated iteration count
+     */
+    public static KdfParameters recommended(String salt) {
+        return new KdfParameters(KdfParameters.PBKDF2_SHA256, calibratedIterations(), salt);
+    }
+
+    /**
+     * Measures PBKDF2 on this machine and scales the iteration count to a target time
+     * @param targetMillis How long one derivation should take
+     * @return The iteration count, rounded to a multiple of 10,000
+     */
+    public static int calibrate(long targetMillis) {
+        String salt = Base64.getEncoder().encodeToString(new byte[32]);
+        KdfParameters probe = new KdfParameters(KdfParameters.PBKDF2_SHA256, PROBE_ITERATIONS, salt);
+
+        try {
+            // Early rounds run before the JIT has compiled the HMAC; keep the fastest round
+            long best = Long.MAX_VALUE;
+            long deadline = System.nanoTime() + PROBE_BUDGET_NANOS;
+            for (int i = 0; i < MAX_PROBE_ROUNDS; i++) {
+                long start = System.nanoTime();
+                Encryptor.deriveKEK("calibration", probe);
+                long end = System.nanoTime();
+                best = Math.min(best, end - start);
+                if (i + 1 >= MIN_PROBE_ROUNDS && end > deadline) {
+                    break;
+                }
+            }
+
+            double perIteration = (double) best / PROBE_ITERATIONS;
+            long iterations = (long) (targetMillis * 1_000_000L / perIteration);
+            iterations = (iterations / ROUNDING) * ROUNDING;
+            int result = (int) Math.max(KdfParameters.LEGACY_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+            System.out.println("Calibrated key derivation: " + result + " iterations for " + targetMillis + " ms");
+            return result;
+        } catch (Exception e) {
+            System.err.println("Key derivation calibration failed: " + e.getMessage());
+            return KdfParameters.LEGACY_ITERATIONS;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.passwordmanager.security;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Parameters used to derive a user's key encryption key from the master
+ * password. They are stored per user so that the work factor can be raised
+ * without breaking existing vaults.
+ *
+ * For PBKDF2 only the iteration count matters. For scrypt the iteration count
+ * is the CPU/memory cost N, and block size and parallelism are r and p.
+ *
+ * @param algorithm The key derivation algorithm, see {@link KeyDerivationFunction#forAlgorithm(String)}
+ * @param iterations The iteration count, or scrypt's cost parameter N
+ * @param blockSize scrypt's block size r; 1 for PBKDF2
+ * @param parallelism scrypt's parallelism p; 1 for PBKDF2
+ * @param salt The Base64 encoded salt
+ */
+public record KdfParameters(String algorithm, int iterations, int blockSize, int parallelism, String salt) {
+    public static final String PBKDF2_SHA256 = "PBKDF2WithHmacSHA256";
+    public static final String SCRYPT = "scrypt";
+    /** The users columns read by {@link #fromResultSet(ResultSet)}. */
+    public static final String COLUMNS = "current_salt, kdf_algorithm, kdf_iterations, kdf_block_size, kdf_parallelism";
+    /** The iteration count every vault used before it was stored per user. */
+    public static final int LEGACY_ITERATIONS = 65536;
+
+    public KdfParameters {
+        if (algorithm == null || salt == null) {
+            throw new IllegalArgumentException("Algorithm and salt are required");
+        }
+        if (iterations < 1 || blockSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Cost parameters must be positive");
+        }
+    }
+
+    public KdfParameters(String algorithm, int iterations, String salt) {
+        this(algorithm, iterations, 1, 1, salt);
+    }
+
+    /**
+     * Gets the parameters of a vault created before they were stored per user
+     * @param salt The user's salt
+     * @return PBKDF2-HMAC-SHA256 with the legacy iteration count
+     */
+    public static KdfParameters legacy(String salt) {
+        return new KdfParameters(PBKDF2_SHA256, LEGACY_ITERATIONS, salt);
+    }
+
+    /**
+     * Reads the parameters from a users row. Rows from databases that predate
+     * the kdf columns, such as old backups, get the legacy parameters.
+     * @param rs A result set positioned on a row with a current_salt column
+     * @return The parameters of that row
+     * @throws SQLException if the row cannot be read
+     */
+    public static KdfParameters fromResultSet(ResultSet rs) throws SQLException {
+        String salt = rs.getString("current_salt");
+        if (!hasColumn(rs.getMetaData(), "kdf_algorithm")) {
+            return legacy(salt);
+        }
+        if (!hasColumn(rs.getMetaData(), "kdf_parallelism")) {
+            return new KdfParameters(rs.getString("kdf_algorithm"), rs.getInt("kdf_iterations"), salt);
+        }
+        return new KdfParameters(rs.getString("kdf_algorithm"), rs.getInt("kdf_iterations"),
+            rs.getInt("kdf_block_size"), rs.getInt("kdf_parallelism"), salt);
+    }
+
+    private static boolean hasColumn(ResultSetMetaData metaData, String column) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public KdfParameters withSalt(String newSalt) {
+        return new KdfParameters(algorithm, iterations, blockSize, parallelism, newSalt);
+    }
+
+    public KdfParameters withIterations(int newIterations) {
+        return new KdfParameters(algorithm, newIterations, blockSize, parallelism, salt);
+    }
+
+    /**
+     * Checks whether these parameters are weaker than a target of the same
+     * algorithm. Parameters of a different algorithm are never considered
+     * weaker, so a user's choice of algorithm is kept.
+     * @param target The parameters new vaults would get on this machine
+     * @return true if the algorithm is the same and the iteration count is lower
+     */
+    public boolean isWeakerThan(KdfParameters target) {
+        return algorithm.equals(target.algorithm) && iterations < target.iterations;
+    }
+}
@@ -0,0 +1,112 @@
+package com.passwordmanager.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Derives KEKs in the background before they are needed, so that key
+ * derivation overlaps with the user still filling in the login dialog.
+ *
+ * All cached keys belong to a single password. The password itself is not
+ * kept; entries are matched on a keyed hash of it. Starting a derivation for
+ * a different password, or calling {@link #clear()}, wipes every cached key.
+ */
+public class KekCache {
+    private final byte[] tagKey = new byte[32];
+    private final Map<KdfParameters, CompletableFuture<SecretKey>> derivations = new HashMap<>();
+    private byte[] passwordTag;
+
+    public KekCache() {
+        new SecureRandom().nextBytes(tagKey);
+    }
+
+    /**
+     * Starts deriving the KEK for a password and parameters unless it is
+     * already cached or being derived.
+     * @param password The master password
+     * @param params The key derivation parameters
+     */
+    public synchronized void derive(String password, KdfParameters params) {
+        byte[] tag = tag(password);
+        if (passwordTag != null && !MessageDigest.isEqual(tag, passwordTag)) {
+            clear();
+        }
+        passwordTag = tag;
+        derivations.computeIfAbsent(params, p -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return Encryptor.deriveKEK(password, p);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }));
+    }
+
+    /**
+     * Gets a cached KEK, waiting for its derivation to finish if it is still running
+     * @param password The master password
+     * @param params The key derivation parameters
+     * @return A copy of the KEK that the caller owns, or null if none was started
+     *         for this password and these parameters
+     */
+    public SecretKey get(String password, KdfParameters params) {
+        CompletableFuture<SecretKey> derivation;
+        synchronized (this) {
+            if (passwordTag == null || !MessageDigest.isEqual(tag(password), passwordTag)) {
+                return null;
+            }
+            derivation = derivations.get(params);
+        }
+        if (derivation == null) {
+            return null;
+        }
+
+        try {
+            byte[] encoded = derivation.join().getEncoded();
+            try {
+                return new SecretKeySpec(encoded, "AES");
+            } finally {
+                SecureWiper.wipeByteArray(encoded);
+            }
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wipes every cached KEK. Derivations that are still running are wiped as
+     * soon as they finish.
+     */
+    public synchronized void clear() {
+        for (CompletableFuture<SecretKey> derivation : derivations.values()) {
+            derivation.thenAccept(SecureWiper::wipeKey);
+        }
+        derivations.clear();
+        if (passwordTag != null) {
+            SecureWiper.wipeByteArray(passwordTag);
+            passwordTag = null;
+        }
+    }
+
+    public synchronized int size() {
+        return derivations.size();
+    }
+
+    private byte[] tag(String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(tagKey, "HmacSHA256"));
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
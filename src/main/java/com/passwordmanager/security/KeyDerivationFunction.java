@@ -0,0 +1,36 @@
+package com.passwordmanager.security;
+
+/**
+ * Derives key material from a password. Implementations are selected per user
+ * by the algorithm stored in their {@link KdfParameters}.
+ */
+public interface KeyDerivationFunction {
+
+    /**
+     * Derives key material. The password array is not modified.
+     * @param password The password
+     * @param salt The salt
+     * @param params The cost parameters
+     * @param keyLength The number of bytes to derive
+     * @return The derived bytes; the caller should wipe them when done
+     * @throws Exception if the derivation fails
+     */
+    byte[] derive(char[] password, byte[] salt, KdfParameters params, int keyLength) throws Exception;
+
+    /**
+     * Gets the implementation of an algorithm
+     * @param algorithm {@link KdfParameters#PBKDF2_SHA256} or {@link KdfParameters#SCRYPT}
+     * @return The key derivation function
+     * @throws IllegalArgumentException if the algorithm is unknown
+     */
+    static KeyDerivationFunction forAlgorithm(String algorithm) {
+        switch (algorithm) {
+            case KdfParameters.PBKDF2_SHA256:
+                return new Pbkdf2();
+            case KdfParameters.SCRYPT:
+                return new Scrypt();
+            default:
+                throw new IllegalArgumentException("Unknown key derivation algorithm: " + algorithm);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.passwordmanager.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Binary key file, version 2.
+ *
+ * <pre>
+ * magic        4 bytes  "PMKF"
+ * version      1 byte   2
+ * key id       16 bytes
+ * algorithm    1 byte   1 = PBKDF2-HMAC-SHA256, 2 = scrypt
+ * iterations   4 bytes
+ * block size   4 bytes
+ * parallelism  4 bytes
+ * salt         1 byte length, then the salt
+ * key material 1 byte length, then the key material
+ * mac          32 bytes HMAC-SHA256 of everything above
+ * </pre>
+ *
+ * The MAC is keyed from the key material, so it only detects accidental
+ * damage, in microseconds and before any key derivation. Anyone who can edit
+ * the file can recompute it. A deliberately edited file is rejected later,
+ * because its slot KEK no longer unwraps the DEK. The key material never
+ * unlocks anything on its own; it is combined with the password-derived key
+ * through HKDF to form the key slot's KEK.
+ */
+public final class KeyFile implements KeyFileSecret {
+    private static final byte[] MAGIC = "PMKF".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+    private static final int KEY_ID_LENGTH = 16;
+    private static final int MATERIAL_LENGTH = 32;
+    private static final int MAC_LENGTH = 32;
+    private static final byte ALGORITHM_PBKDF2 = 1;
+    private static final byte ALGORITHM_SCRYPT = 2;
+    private static final byte[] MAC_INFO = "passwordmanager key file mac".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SLOT_INFO = "passwordmanager keyslot v2".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] keyId;
+    private final KdfParameters params;
+    private final byte[] material;
+
+    private KeyFile(byte[] keyId, KdfParameters params, byte[] material) {
+        this.keyId = keyId;
+        this.params = params;
+        this.material = material;
+    }
+
+    /**
+     * Creates a key file with a random id and key material
+     * @param params The parameters the password key of the file's slot is derived with
+     * @return The new key file
+     */
+    public static KeyFile generate(KdfParameters params) {
+        SecureRandom random = new SecureRandom();
+        byte[] keyId = new byte[KEY_ID_LENGTH];
+        byte[] material = new byte[MATERIAL_LENGTH];
+        random.nextBytes(keyId);
+        random.nextBytes(material);
+        return new KeyFile(keyId, params, material);
+    }
+
+    /**
+     * Checks whether a file starts like a version 2 key file
+     * @param path The file
+     * @return true if the file has the key file magic
+     */
+    public static boolean isKeyFile(Path path) {
+        try (var in = Files.newInputStream(path)) {
+            return Arrays.equals(MAGIC, in.readNBytes(MAGIC.length));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and verifies a key file
+     * @param path The file
+     * @return The key file
+     * @throws IOException if the file cannot be read, is not a version 2 key file or fails verification
+     */
+    public static KeyFile read(Path path) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        byte[] material = null;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a key file");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported key file version " + version);
+            }
+            byte[] keyId = new byte[KEY_ID_LENGTH];
+            in.get(keyId);
+            String algorithm = switch (in.get()) {
+                case ALGORITHM_PBKDF2 -> KdfParameters.PBKDF2_SHA256;
+                case ALGORITHM_SCRYPT -> KdfParameters.SCRYPT;
+                default -> throw new IOException("Unknown key derivation algorithm");
+            };
+            int iterations = in.getInt();
+            int blockSize = in.getInt();
+            int parallelism = in.getInt();
+            byte[] salt = new byte[in.get() & 0xff];
+            in.get(salt);
+            material = new byte[in.get() & 0xff];
+            in.get(material);
+            int macOffset = in.position();
+            byte[] storedMac = new byte[MAC_LENGTH];
+            in.get(storedMac);
+            if (in.hasRemaining()) {
+                throw new IOException("Trailing data in key file");
+            }
+
+            if (!MessageDigest.isEqual(storedMac, mac(material, data, macOffset))) {
+                throw new IOException("Key file is damaged");
+            }
+            KdfParameters params = new KdfParameters(algorithm, iterations, blockSize, parallelism,
+                Base64.getEncoder().encodeToString(salt));
+            KeyFile keyFile = new KeyFile(keyId, params, material);
+            material = null;
+            return keyFile;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Key file is truncated or malformed", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to verify key file", e);
+        } finally {
+            if (material != null) {
+                SecureWiper.wipeByteArray(material);
+            }
+        }
+    }
+
+    /**
+     * Writes the key file. An existing file is replaced only once the new one is complete.
+     * @param path Where to write the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        byte[] salt = Base64.getDecoder().decode(params.salt());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.write(keyId);
+            out.writeByte(KdfParameters.SCRYPT.equals(params.algorithm()) ? ALGORITHM_SCRYPT : ALGORITHM_PBKDF2);
+            out.writeInt(params.iterations());
+            out.writeInt(params.blockSize());
+            out.writeInt(params.parallelism());
+            out.writeByte(salt.length);
+            out.write(salt);
+            out.writeByte(material.length);
+            out.write(material);
+        }
+        byte[] body = bytes.toByteArray();
+        try {
+            bytes.write(mac(material, body, body.length));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to sign key file", e);
+        }
+
+        Path absolute = path.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), ".keyfile", ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+            SecureWiper.wipeByteArray(body);
+        }
+    }
+
+    @Override
+    public String lookupId() {
+        return "kf2-" + HexFormat.of().formatHex(keyId);
+    }
+
+    public KdfParameters getParameters() {
+        return params;
+    }
+
+    /**
+     * Combines the password-derived key with this file's key material through HKDF
+     */
+    @Override
+    public SecretKey slotKek(SecretKey passwordKek) throws GeneralSecurityException {
+        byte[] password = passwordKek.getEncoded();
+        byte[] ikm = new byte[password.length + material.length];
+        byte[] kek = null;
+        try {
+            System.arraycopy(password, 0, ikm, 0, password.length);
+            System.arraycopy(material, 0, ikm, password.length, material.length);
+            kek = Hkdf.derive(ikm, keyId, SLOT_INFO, 32);
+            return new SecretKeySpec(kek, "AES");
+        } finally {
+            SecureWiper.wipeByteArray(password);
+            SecureWiper.wipeByteArray(ikm);
+            if (kek != null) {
+                SecureWiper.wipeByteArray(kek);
+            }
+        }
+    }
+
+    @Override
+    public void wipe() {
+        SecureWiper.wipeByteArray(material);
+    }
+
+    private static byte[] mac(byte[] material, byte[] data, int length) throws GeneralSecurityException {
+        byte[] macKey = Hkdf.derive(material, new byte[0], MAC_INFO, 32);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } finally {
+            SecureWiper.wipeByteArray(macKey);
+        }
+    }
+}
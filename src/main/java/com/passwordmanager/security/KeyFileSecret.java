@@ -0,0 +1,28 @@
+package com.passwordmanager.security;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.SecretKey;
+
+/**
+ * What a key file contributes to unlocking its key slot.
+ */
+public interface KeyFileSecret {
+    /**
+     * Gets the lookup id of the key slot the key file unlocks
+     */
+    String lookupId();
+
+    /**
+     * Combines the password-derived key with the key file's secret. Neither
+     * alone yields the slot's KEK.
+     * @param passwordKek The key derived from the master password with the slot's parameters
+     * @return The slot's KEK
+     * @throws GeneralSecurityException if the combination fails
+     */
+    SecretKey slotKek(SecretKey passwordKek) throws GeneralSecurityException;
+
+    /**
+     * Wipes the secret from memory
+     */
+    void wipe();
+}
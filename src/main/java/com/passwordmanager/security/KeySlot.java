@@ -0,0 +1,63 @@
+package com.passwordmanager.security;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * One wrapped copy of a user's DEK. Every slot wraps the same DEK under a
+ * KEK from a different source, so a source can be added or revoked without
+ * re-encrypting any data.
+ *
+ * @param id The slot's row id
+ * @param userId The user the slot belongs to
+ * @param type {@link #PASSWORD_KEY_FILE} or {@link #RECOVERY_CODE}
+ * @param lookupId Identifies the slot from the unlock material alone, so unlocking tries one slot
+ * @param params The key derivation parameters of the slot
+ * @param wrappedDek The DEK wrapped with the slot's KEK
+ */
+public record KeySlot(int id, int userId, String type, String lookupId, KdfParameters params, String wrappedDek) {
+    /** The master password combined with a key file. */
+    public static final String PASSWORD_KEY_FILE = "password+keyfile";
+    /** A one-time printed recovery code. */
+    public static final String RECOVERY_CODE = "recovery";
+
+    /**
+     * Reads a slot from a row selected with {@link KeySlotManager#COLUMNS}
+     * @param rs A result set positioned on a keyslots row
+     * @return The slot
+     * @throws SQLException if the row cannot be read
+     */
+    static KeySlot fromResultSet(ResultSet rs) throws SQLException {
+        return new KeySlot(rs.getInt("id"), rs.getInt("user_id"), rs.getString("slot_type"),
+            rs.getString("lookup_id"), KdfParameters.fromResultSet(rs), rs.getString("wrapped_dek"));
+    }
+
+    /**
+     * Combines a password-derived key with a version 1 key file's key. Neither
+     * alone yields the slot's KEK. Version 2 key files use HKDF instead, see
+     * {@link KeyFile#slotKek(SecretKey)}.
+     * @param passwordKek The key derived from the master password with the slot's parameters
+     * @param keyFileKey The key read from the key file
+     * @return The KEK of a {@link #PASSWORD_KEY_FILE} slot
+     */
+    public static SecretKey combine(SecretKey passwordKek, byte[] keyFileKey) {
+        byte[] password = passwordKek.getEncoded();
+        byte[] combined = null;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(keyFileKey, "HmacSHA256"));
+            combined = mac.doFinal(password);
+            return new SecretKeySpec(combined, "AES");
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        } finally {
+            SecureWiper.wipeByteArray(password);
+            if (combined != null) {
+                SecureWiper.wipeByteArray(combined);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.passwordmanager.security;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import javax.crypto.SecretKey;
+
+/**
+ * Stores a user's key slots. Adding or revoking a slot touches a single row.
+ */
+public class KeySlotManager {
+    /** The keyslots columns read by {@link KeySlot}, with the salt named like the users column. */
+    public static final String COLUMNS =
+        "id, user_id, slot_type, lookup_id, wrapped_dek, salt AS current_salt, kdf_algorithm, kdf_iterations, kdf_block_size, kdf_parallelism";
+    private final Connection connection;
+    private final int userId;
+
+    public KeySlotManager(Connection connection, int userId) {
+        this.connection = connection;
+        this.userId = userId;
+    }
+
+    /**
+     * Finds the slot an unlock attempt should try
+     * @param connection The database connection
+     * @param lookupId The lookup id read from the key file or recovery code
+     * @return The slot, or null if there is none
+     * @throws SQLException if the slot cannot be read
+     */
+    public static KeySlot find(Connection connection, String lookupId) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM keyslots WHERE lookup_id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, lookupId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? KeySlot.fromResultSet(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Adds a slot wrapping the DEK with a KEK
+     * @param type The slot type
+     * @param lookupId The slot's lookup id
+     * @param params The parameters the KEK was derived with
+     * @param kek The slot's KEK
+     * @param dek The user's DEK
+     * @return The new slot
+     * @throws SQLException if the slot cannot be stored
+     */
+    public KeySlot add(String type, String lookupId, KdfParameters params, SecretKey kek, SecretKey dek)
+            throws SQLException {
+        String wrappedDek;
+        try {
+            wrappedDek = Encryptor.encryptDEK(dek, kek);
+        } catch (Exception e) {
+            throw new SQLException("Failed to wrap key: " + e.getMessage(), e);
+        }
+
+        String sql = """
+            INSERT INTO keyslots (user_id, slot_type, lookup_id, wrapped_dek, salt,
+                                  kdf_algorithm, kdf_iterations, kdf_block_size, kdf_parallelism)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, type);
+            pstmt.setString(3, lookupId);
+            pstmt.setString(4, wrappedDek);
+            pstmt.setString(5, params.salt());
+            pstmt.setString(6, params.algorithm());
+            pstmt.setInt(7, params.iterations());
+            pstmt.setInt(8, params.blockSize());
+            pstmt.setInt(9, params.parallelism());
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                rs.next();
+                return new KeySlot(rs.getInt(1), userId, type, lookupId, params, wrappedDek);
+            }
+        }
+    }
+
+    /**
+     * Gets the user's slots
+     * @return The slots, oldest first
+     * @throws SQLException if the slots cannot be read
+     */
+    public List<KeySlot> list() throws SQLException {
+        List<KeySlot> slots = new ArrayList<>();
+        String sql = "SELECT " + COLUMNS + " FROM keyslots WHERE user_id = ? ORDER BY id";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    slots.add(KeySlot.fromResultSet(rs));
+                }
+            }
+        }
+        return slots;
+    }
+
+    public boolean hasSlot(String type) throws SQLException {
+        String sql = "SELECT 1 FROM keyslots WHERE user_id = ? AND slot_type = ? LIMIT 1";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, type);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Revokes a slot. The DEK and all data stay as they are.
+     * @param slotId The slot's id
+     * @return true if the slot existed
+     * @throws SQLException if the slot cannot be deleted
+     */
+    public boolean revoke(int slotId) throws SQLException {
+        String sql = "DELETE FROM keyslots WHERE id = ? AND user_id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, slotId);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Replaces the DEK in one slot and revokes all others, for when the DEK
+     * itself is rotated and only one slot's KEK is known
+     * @param slot The slot to keep, or null to revoke all slots
+     * @param kek The KEK of the slot to keep
+     * @param newDek The new DEK
+     * @throws SQLException if the slots cannot be updated, or no slot is kept
+     *         while the user has a key file slot, which would lock them out
+     */
+    public void rewrapAndRevokeOthers(KeySlot slot, SecretKey kek, SecretKey newDek) throws SQLException {
+        if (slot == null && hasSlot(KeySlot.PASSWORD_KEY_FILE)) {
+            throw new SQLException("Log in with your key file to finish the key rotation");
+        }
+        int keep = slot != null ? slot.id() : -1;
+        if (slot != null) {
+            String sql = "UPDATE keyslots SET wrapped_dek = ? WHERE id = ?";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, Encryptor.encryptDEK(newDek, kek));
+                pstmt.setInt(2, keep);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Failed to wrap key: " + e.getMessage(), e);
+            }
+        }
+        String sql = "DELETE FROM keyslots WHERE user_id = ? AND id != ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, keep);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.passwordmanager.security;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2 through the JCE provider. The algorithm name in the parameters is
+ * passed to {@link SecretKeyFactory} as it is.
+ */
+public class Pbkdf2 implements KeyDerivationFunction {
+
+    @Override
+    public byte[] derive(char[] password, byte[] salt, KdfParameters params, int keyLength) throws Exception {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(params.algorithm());
+        PBEKeySpec spec = new PBEKeySpec(password, salt, params.iterations(), keyLength * 8);
+        try {
+            SecretKey key = factory.generateSecret(spec);
+            return key.getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
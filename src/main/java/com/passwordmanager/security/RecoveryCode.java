@@ -0,0 +1,79 @@
+package com.passwordmanager.security;
+
+import java.security.SecureRandom;
+
+/**
+ * A recovery code such as {@code ABCD-EFGH-IJKL-MNOP-QRST-UVWX-YZ23-4567-AB}.
+ *
+ * The first 8 characters identify the key slot and the remaining 26 carry
+ * 130 bits of secret, so the code needs no key stretching.
+ *
+ * @param lookupId The slot lookup id
+ * @param secret The secret part
+ */
+public record RecoveryCode(String lookupId, String secret) {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+    private static final int ID_LENGTH = 8;
+    private static final int SECRET_LENGTH = 26;
+    private static final String ID_PREFIX = "rc-";
+
+    /**
+     * The key derivation parameters of recovery slots. The code already has
+     * more entropy than the DEK it protects, so one iteration is enough.
+     * @param salt The slot's salt
+     * @return PBKDF2 with a single iteration
+     */
+    public static KdfParameters parameters(String salt) {
+        return new KdfParameters(KdfParameters.PBKDF2_SHA256, 1, salt);
+    }
+
+    public static RecoveryCode generate() {
+        SecureRandom random = new SecureRandom();
+        return new RecoveryCode(ID_PREFIX + randomChars(random, ID_LENGTH), randomChars(random, SECRET_LENGTH));
+    }
+
+    /**
+     * Parses a code as the user typed it. Dashes, spaces and case are ignored.
+     * @param code The code
+     * @return The parsed code, or null if it is not a valid recovery code
+     */
+    public static RecoveryCode parse(String code) {
+        if (code == null) {
+            return null;
+        }
+        String normalized = code.replaceAll("[\\s-]", "").toUpperCase();
+        if (normalized.length() != ID_LENGTH + SECRET_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < normalized.length(); i++) {
+            if (ALPHABET.indexOf(normalized.charAt(i)) < 0) {
+                return null;
+            }
+        }
+        return new RecoveryCode(ID_PREFIX + normalized.substring(0, ID_LENGTH), normalized.substring(ID_LENGTH));
+    }
+
+    /**
+     * Formats the code in groups of four for printing
+     */
+    @Override
+    public String toString() {
+        String plain = lookupId.substring(ID_PREFIX.length()) + secret;
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < plain.length(); i += 4) {
+            if (i > 0) {
+                formatted.append('-');
+            }
+            formatted.append(plain, i, Math.min(plain.length(), i + 4));
+        }
+        return formatted.toString();
+    }
+
+    private static String randomChars(SecureRandom random, int length) {
+        StringBuilder chars = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            chars.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return chars.toString();
+    }
+}
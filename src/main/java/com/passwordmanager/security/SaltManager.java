@@ -2,7 +2,6 @@ package com.passwordmanager.security;
 
 import java.security.SecureRandom;
 import java.sql.*;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
@@ -29,15 +28,92 @@ public class SaltManager {
         return Base64.getEncoder().encodeToString(salt);
     }
 
-    public void rotateSaltIfNeeded() throws SQLException {
-        String currentSalt = getCurrentSalt();
-        if (shouldRotateSalt()) {
-            String newSalt = generateNewSalt();
-            updateSalt(currentSalt, newSalt);
+    /**
+     * A rotated salt whose wrapped DEK is ready but not yet stored. Preparing
+     * does the slow key derivation without touching the database, so the
+     * commit only needs a short transaction.
+     * @param parameters The key derivation parameters with the new salt
+     * @param kek The KEK derived from the new salt
+     * @param encryptedDEK The DEK wrapped with the new KEK
+     * @param passwordHash The master password hash for the new salt
+     * @param previousSalt The salt being replaced
+     */
+    public record Rotation(KdfParameters parameters, SecretKey kek, String encryptedDEK,
+                           String passwordHash, String previousSalt) {
+    }
+
+    /**
+     * Prepares a salt rotation using a DEK that was already unwrapped at login,
+     * so only the new KEK has to be derived.
+     * @param current The user's current key derivation parameters
+     * @param dek The user's data encryption key
+     * @return The rotation to pass to {@link #commitRotation(Rotation)}
+     * @throws Exception if key derivation or wrapping fails
+     */
+    public Rotation prepareRotation(KdfParameters current, SecretKey dek) throws Exception {
+        String newSalt = generateNewSalt();
+        KdfParameters next = current.withSalt(newSalt);
+        SecretKey newKEK = Encryptor.deriveKEK(masterPassword, next);
+        return new Rotation(next, newKEK, Encryptor.encryptDEK(dek, newKEK),
+            PasswordHasher.hashPassword(masterPassword, newSalt), current.salt());
+    }
+
+    /**
+     * Stores a prepared rotation in one transaction. Until it commits the old
+     * salt and wrapped DEK stay in place, so an interrupted rotation leaves a
+     * vault that still opens with the old salt. History entries retired longer
+     * than a rotation period ago are pruned in the same transaction.
+     * @param rotation The prepared rotation
+     * @return false if the salt changed since the rotation was prepared
+     * @throws SQLException if the rotation could not be stored
+     */
+    public boolean commitRotation(Rotation rotation) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            String updateSql = "UPDATE users SET current_salt = ?, master_password_hash = ?, encrypted_dek = ? WHERE id = ? AND current_salt = ?";
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
+                pstmt.setString(1, rotation.parameters().salt());
+                pstmt.setString(2, rotation.passwordHash());
+                pstmt.setString(3, rotation.encryptedDEK());
+                pstmt.setInt(4, userId);
+                pstmt.setString(5, rotation.previousSalt());
+                if (pstmt.executeUpdate() == 0) {
+                    connection.rollback();
+                    return false;
+                }
+            }
+
+            String retireSql = "UPDATE salt_history SET retired_at = CURRENT_TIMESTAMP WHERE user_id = ? AND retired_at IS NULL";
+            try (PreparedStatement pstmt = connection.prepareStatement(retireSql)) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+
+            String historySql = "INSERT INTO salt_history (user_id, salt, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+            try (PreparedStatement pstmt = connection.prepareStatement(historySql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, rotation.parameters().salt());
+                pstmt.executeUpdate();
+            }
+
+            String pruneSql = "DELETE FROM salt_history WHERE user_id = ? AND retired_at < datetime('now', ?)";
+            try (PreparedStatement pstmt = connection.prepareStatement(pruneSql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, retentionModifier());
+                pstmt.executeUpdate();
+            }
+
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Failed to update salt: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(true);
         }
     }
 
-    private boolean shouldRotateSalt() throws SQLException {
+    public boolean shouldRotateSalt() throws SQLException {
         String sql = "SELECT created_at FROM salt_history WHERE user_id = ? ORDER BY created_at DESC LIMIT 1";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
@@ -51,66 +127,23 @@ public class SaltManager {
     }
 
     private String getCurrentSalt() throws SQLException {
-        String sql = "SELECT current_salt FROM users WHERE id = ?";
+        return getCurrentParameters().salt();
+    }
+
+    public KdfParameters getCurrentParameters() throws SQLException {
+        String sql = "SELECT " + KdfParameters.COLUMNS + " FROM users WHERE id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                return rs.getString("current_salt");
+                return KdfParameters.fromResultSet(rs);
             }
             throw new SQLException("User not found");
         }
     }
 
-    private void updateSalt(String oldSalt, String newSalt) throws SQLException {
-        connection.setAutoCommit(false);
-        try {
-            String sql = "SELECT encrypted_dek FROM users WHERE id = ?";
-            String encryptedDEK;
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setInt(1, userId);
-                ResultSet rs = pstmt.executeQuery();
-                if (!rs.next()) {
-                    throw new SQLException("User not found");
-                }
-                encryptedDEK = rs.getString("encrypted_dek");
-            }
-
-            SecretKey oldKEK = Encryptor.deriveKEK(masterPassword, oldSalt);
-            SecretKey dek = Encryptor.decryptDEK(encryptedDEK, oldKEK);
-
-            SecretKey newKEK = Encryptor.deriveKEK(masterPassword, newSalt);
-            String newEncryptedDEK = Encryptor.encryptDEK(dek, newKEK);
-
-            String historySql = """
-                INSERT INTO salt_history (user_id, salt, created_at, retired_at)
-                VALUES (?, ?, (SELECT created_at FROM users WHERE id = ?), CURRENT_TIMESTAMP)
-            """;
-            try (PreparedStatement pstmt = connection.prepareStatement(historySql)) {
-                pstmt.setInt(1, userId);
-                pstmt.setString(2, oldSalt);
-                pstmt.setInt(3, userId);
-                pstmt.executeUpdate();
-            }
-
-            String newPasswordHash = PasswordHasher.hashPassword(masterPassword, newSalt);
-
-            String updateSql = "UPDATE users SET current_salt = ?, master_password_hash = ?, encrypted_dek = ? WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
-                pstmt.setString(1, newSalt);
-                pstmt.setString(2, newPasswordHash);
-                pstmt.setString(3, newEncryptedDEK);
-                pstmt.setInt(4, userId);
-                pstmt.executeUpdate();
-            }
-
-            connection.commit();
-        } catch (Exception e) {
-            connection.rollback();
-            throw new SQLException("Failed to update salt: " + e.getMessage(), e);
-        } finally {
-            connection.setAutoCommit(true);
-        }
+    private static String retentionModifier() {
+        return "-" + SALT_ROTATION_PERIOD / 1000 + " seconds";
     }
 
     public List<String> getActiveSalts() throws SQLException {
@@ -121,15 +154,13 @@ public class SaltManager {
         
         String sql = """
             SELECT salt FROM salt_history 
-            WHERE user_id = ? AND retired_at >= ? 
+            WHERE user_id = ? AND retired_at >= datetime('now', ?)
             ORDER BY created_at DESC
         """;
         
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setInt(1, userId);
-            pstmt.setTimestamp(2, Timestamp.from(
-                Instant.now().minusMillis(SALT_ROTATION_PERIOD)
-            ));
+            pstmt.setString(2, retentionModifier());
             
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
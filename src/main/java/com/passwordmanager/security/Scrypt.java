@@ -0,0 +1,245 @@
+package com.passwordmanager.security;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Pure-Java scrypt (RFC 7914).
+ *
+ * scrypt is memory-hard: each of its p lanes fills and randomly reads a table
+ * of 128 * r * N bytes, which makes guessing on GPUs and ASICs expensive. The
+ * lanes are independent, so they run in parallel on the common fork-join pool,
+ * but never more at once than fit in {@value #MAX_MEMORY_BYTES} bytes, so
+ * deriving a key cannot exhaust an ordinary heap whatever p a vault uses.
+ */
+public class Scrypt implements KeyDerivationFunction {
+    /** N = 2^15 with r = 8 uses 32 MB per lane. */
+    public static final int DEFAULT_COST = 1 << 15;
+    public static final int DEFAULT_BLOCK_SIZE = 8;
+    /** The most memory the lanes' tables take at once; lanes beyond it wait for earlier ones. */
+    public static final int MAX_MEMORY_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Gets the scrypt parameters a new vault should use on this machine
+     * @param salt The salt to use
+     * @return N = 2^15, r = 8 and one lane per core, as many as run at once
+     *         within {@value #MAX_MEMORY_BYTES} bytes
+     */
+    public static KdfParameters recommended(String salt) {
+        int lanes = Math.max(1, Math.min(concurrentLanes(DEFAULT_COST, DEFAULT_BLOCK_SIZE),
+            Runtime.getRuntime().availableProcessors()));
+        return new KdfParameters(KdfParameters.SCRYPT, DEFAULT_COST, DEFAULT_BLOCK_SIZE, lanes, salt);
+    }
+
+    /**
+     * @return How many lanes of the given cost fit in {@value #MAX_MEMORY_BYTES} bytes, at least one
+     */
+    static int concurrentLanes(int n, int r) {
+        return (int) Math.max(1, MAX_MEMORY_BYTES / (128L * r * n));
+    }
+
+    @Override
+    public byte[] derive(char[] password, byte[] salt, KdfParameters params, int keyLength) throws Exception {
+        ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(password));
+        byte[] passwordBytes = new byte[encoded.remaining()];
+        encoded.get(passwordBytes);
+        SecureWiper.wipeBuffer(encoded);
+        try {
+            return scrypt(passwordBytes, salt, params.iterations(), params.blockSize(), params.parallelism(), keyLength);
+        } finally {
+            SecureWiper.wipeByteArray(passwordBytes);
+        }
+    }
+
+    /**
+     * Computes scrypt
+     * @param password The password bytes, must not be empty
+     * @param salt The salt
+     * @param n The CPU/memory cost, a power of two greater than 1
+     * @param r The block size
+     * @param p The parallelism
+     * @param keyLength The number of bytes to derive
+     * @return The derived key
+     * @throws GeneralSecurityException if HMAC-SHA256 is not available
+     */
+    public static byte[] scrypt(byte[] password, byte[] salt, int n, int r, int p, int keyLength)
+            throws GeneralSecurityException {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("N must be a power of two greater than 1");
+        }
+        if (r < 1 || p < 1 || (long) r * p >= 1 << 30) {
+            throw new IllegalArgumentException("r and p must be positive and r * p < 2^30");
+        }
+        if ((long) n * r * 32 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("N * r is too large");
+        }
+
+        int laneLength = 128 * r;
+        byte[] lanes = pbkdf2Sha256(password, salt, p * laneLength);
+        try {
+            int wave = concurrentLanes(n, r);
+            for (int from = 0; from < p; from += wave) {
+                ForkJoinPool.commonPool().invoke(new Lanes(lanes, laneLength, n, r, from, Math.min(p, from + wave)));
+            }
+            return pbkdf2Sha256(password, lanes, keyLength);
+        } finally {
+            SecureWiper.wipeByteArray(lanes);
+        }
+    }
+
+    /**
+     * Runs ROMix on a range of lanes, splitting the range until each task has one lane.
+     */
+    private static final class Lanes extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] lanes;
+        private final int laneLength;
+        private final int n;
+        private final int r;
+        private final int from;
+        private final int to;
+
+        Lanes(byte[] lanes, int laneLength, int n, int r, int from, int to) {
+            this.lanes = lanes;
+            this.laneLength = laneLength;
+            this.n = n;
+            this.r = r;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                roMix(lanes, from * laneLength, n, r);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Lanes(lanes, laneLength, n, r, from, middle),
+                      new Lanes(lanes, laneLength, n, r, middle, to));
+        }
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 with a single iteration, which is all scrypt needs.
+     */
+    private static byte[] pbkdf2Sha256(byte[] password, byte[] salt, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(password, "HmacSHA256"));
+
+        byte[] output = new byte[length];
+        byte[] counter = new byte[4];
+        for (int block = 1, offset = 0; offset < length; block++, offset += 32) {
+            counter[0] = (byte) (block >>> 24);
+            counter[1] = (byte) (block >>> 16);
+            counter[2] = (byte) (block >>> 8);
+            counter[3] = (byte) block;
+            mac.update(salt);
+            mac.update(counter);
+            byte[] u = mac.doFinal();
+            System.arraycopy(u, 0, output, offset, Math.min(32, length - offset));
+            SecureWiper.wipeByteArray(u);
+        }
+        return output;
+    }
+
+    private static void roMix(byte[] lanes, int offset, int n, int r) {
+        int blockInts = 32 * r;
+        int[] x = new int[blockInts];
+        int[] y = new int[blockInts];
+        int[] v = new int[blockInts * n];
+        int[] scratch = new int[16];
+
+        for (int i = 0; i < blockInts; i++) {
+            x[i] = littleEndian(lanes, offset + i * 4);
+        }
+
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(x, 0, v, i * blockInts, blockInts);
+            blockMix(x, y, scratch, r);
+        }
+        for (int i = 0; i < n; i++) {
+            int j = x[(2 * r - 1) * 16] & (n - 1);
+            int base = j * blockInts;
+            for (int k = 0; k < blockInts; k++) {
+                x[k] ^= v[base + k];
+            }
+            blockMix(x, y, scratch, r);
+        }
+
+        for (int i = 0; i < blockInts; i++) {
+            int value = x[i];
+            int at = offset + i * 4;
+            lanes[at] = (byte) value;
+            lanes[at + 1] = (byte) (value >>> 8);
+            lanes[at + 2] = (byte) (value >>> 16);
+            lanes[at + 3] = (byte) (value >>> 24);
+        }
+
+        Arrays.fill(v, 0);
+        Arrays.fill(x, 0);
+        Arrays.fill(y, 0);
+        Arrays.fill(scratch, 0);
+    }
+
+    private static void blockMix(int[] b, int[] y, int[] x, int r) {
+        System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+        for (int i = 0; i < 2 * r; i++) {
+            for (int k = 0; k < 16; k++) {
+                x[k] ^= b[i * 16 + k];
+            }
+            salsa20_8(x);
+            // Even blocks go to the first half of the output, odd blocks to the second
+            int target = ((i & 1) == 0 ? i / 2 : r + i / 2) * 16;
+            System.arraycopy(x, 0, y, target, 16);
+        }
+        System.arraycopy(y, 0, b, 0, 32 * r);
+    }
+
+    private static void salsa20_8(int[] b) {
+        int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3];
+        int x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+        int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11];
+        int x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+
+        for (int i = 0; i < 8; i += 2) {
+            x4 ^= Integer.rotateLeft(x0 + x12, 7);   x8 ^= Integer.rotateLeft(x4 + x0, 9);
+            x12 ^= Integer.rotateLeft(x8 + x4, 13);  x0 ^= Integer.rotateLeft(x12 + x8, 18);
+            x9 ^= Integer.rotateLeft(x5 + x1, 7);    x13 ^= Integer.rotateLeft(x9 + x5, 9);
+            x1 ^= Integer.rotateLeft(x13 + x9, 13);  x5 ^= Integer.rotateLeft(x1 + x13, 18);
+            x14 ^= Integer.rotateLeft(x10 + x6, 7);  x2 ^= Integer.rotateLeft(x14 + x10, 9);
+            x6 ^= Integer.rotateLeft(x2 + x14, 13);  x10 ^= Integer.rotateLeft(x6 + x2, 18);
+            x3 ^= Integer.rotateLeft(x15 + x11, 7);  x7 ^= Integer.rotateLeft(x3 + x15, 9);
+            x11 ^= Integer.rotateLeft(x7 + x3, 13);  x15 ^= Integer.rotateLeft(x11 + x7, 18);
+
+            x1 ^= Integer.rotateLeft(x0 + x3, 7);    x2 ^= Integer.rotateLeft(x1 + x0, 9);
+            x3 ^= Integer.rotateLeft(x2 + x1, 13);   x0 ^= Integer.rotateLeft(x3 + x2, 18);
+            x6 ^= Integer.rotateLeft(x5 + x4, 7);    x7 ^= Integer.rotateLeft(x6 + x5, 9);
+            x4 ^= Integer.rotateLeft(x7 + x6, 13);   x5 ^= Integer.rotateLeft(x4 + x7, 18);
+            x11 ^= Integer.rotateLeft(x10 + x9, 7);  x8 ^= Integer.rotateLeft(x11 + x10, 9);
+            x9 ^= Integer.rotateLeft(x8 + x11, 13);  x10 ^= Integer.rotateLeft(x9 + x8, 18);
+            x12 ^= Integer.rotateLeft(x15 + x14, 7); x13 ^= Integer.rotateLeft(x12 + x15, 9);
+            x14 ^= Integer.rotateLeft(x13 + x12, 13); x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        }
+
+        b[0] += x0;   b[1] += x1;   b[2] += x2;   b[3] += x3;
+        b[4] += x4;   b[5] += x5;   b[6] += x6;   b[7] += x7;
+        b[8] += x8;   b[9] += x9;   b[10] += x10; b[11] += x11;
+        b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+    }
+
+    private static int littleEndian(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+            | (bytes[offset + 1] & 0xff) << 8
+            | (bytes[offset + 2] & 0xff) << 16
+            | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
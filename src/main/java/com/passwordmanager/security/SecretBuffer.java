@@ -0,0 +1,232 @@
+package com.passwordmanager.security;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Holds a secret string in off-heap memory so that it never becomes a
+ * garbage-collected {@link String}. The memory is overwritten when the buffer
+ * is closed.
+ *
+ * Secrets only reach the heap when a caller explicitly asks for them through
+ * {@link #toCharArray()}, {@link #toBytes(Charset)} or {@link #asString()}.
+ *
+ * Buffers that are never closed are wiped by a {@link Cleaner} once they become
+ * unreachable. This is only a backstop; owners should close buffers explicitly.
+ */
+public final class SecretBuffer implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int SLAB_SIZE = 64 * 1024;
+    private static final int MAX_SLICE_SIZE = 4 * 1024;
+    private static final SecretBuffer EMPTY = new SecretBuffer(ByteBuffer.allocateDirect(0), 0);
+    private static ByteBuffer slab = ByteBuffer.allocateDirect(0);
+
+    private final ByteBuffer storage;
+    private final int length;
+    private final Cleaner.Cleanable cleanable;
+    private volatile boolean closed;
+
+    private SecretBuffer(ByteBuffer storage, int length) {
+        this.storage = storage;
+        this.length = length;
+        this.cleanable = CLEANER.register(this, new Wipe(storage));
+    }
+
+    // Must not reference the SecretBuffer itself, or it would never become unreachable.
+    private static final class Wipe implements Runnable {
+        private final ByteBuffer storage;
+
+        private Wipe(ByteBuffer storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void run() {
+            SecureWiper.wipeBuffer(storage);
+        }
+    }
+
+    /**
+     * Copies a string into off-heap memory.
+     *
+     * @param value The string to copy, may be null
+     * @return A new buffer, or null if value is null
+     */
+    public static SecretBuffer of(String value) {
+        if (value == null) return null;
+        return copyOf(CharBuffer.wrap(value));
+    }
+
+    /**
+     * Copies a char array into off-heap memory. The array is not modified.
+     *
+     * @param chars The characters to copy, may be null
+     * @return A new buffer, or null if chars is null
+     */
+    public static SecretBuffer of(char[] chars) {
+        if (chars == null) return null;
+        return copyOf(CharBuffer.wrap(chars));
+    }
+
+    /**
+     * Decodes bytes directly into off-heap memory without creating a String.
+     *
+     * @param bytes The encoded text
+     * @param charset The charset of the bytes
+     * @return A new buffer holding the decoded characters
+     */
+    public static SecretBuffer fromBytes(byte[] bytes, Charset charset) {
+        if (bytes == null) return null;
+        if (bytes.length == 0) return EMPTY;
+
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int maxChars = (int) Math.ceil(bytes.length * (double) decoder.maxCharsPerByte());
+        ByteBuffer storage = allocate(maxChars * Character.BYTES);
+        CharBuffer chars = storage.asCharBuffer();
+        decoder.decode(ByteBuffer.wrap(bytes), chars, true);
+        decoder.flush(chars);
+        return new SecretBuffer(storage, chars.position());
+    }
+
+    private static SecretBuffer copyOf(CharBuffer source) {
+        if (!source.hasRemaining()) return EMPTY;
+
+        ByteBuffer storage = allocate(source.remaining() * Character.BYTES);
+        storage.asCharBuffer().put(source);
+        return new SecretBuffer(storage, source.limit());
+    }
+
+    /**
+     * Hands out off-heap memory. Small secrets are sliced from shared 64 KB
+     * slabs because allocateDirect is expensive per call; a slab is released
+     * once every slice of it is unreachable.
+     */
+    private static synchronized ByteBuffer allocate(int size) {
+        if (size > MAX_SLICE_SIZE) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        if (slab.remaining() < size) {
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        }
+        ByteBuffer slice = slab.slice(slab.position(), size);
+        slab.position(slab.position() + size);
+        return slice;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Checks whether the secret is empty or only whitespace, as
+     * {@link String#trim()} defines it, without copying it to the heap
+     */
+    public boolean isBlank() {
+        CharBuffer chars = view();
+        while (chars.hasRemaining()) {
+            if (chars.get() > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Copies the secret into a new char array. The caller should wipe it
+     * with {@link SecureWiper#wipeCharArray(char[])} when done.
+     *
+     * @return The characters of the secret
+     */
+    public char[] toCharArray() {
+        char[] chars = new char[length];
+        view().get(chars);
+        return chars;
+    }
+
+    /**
+     * Encodes the secret into a new byte array. The caller should wipe it
+     * with {@link SecureWiper#wipeByteArray(byte[])} when done.
+     *
+     * @param charset The charset to encode with
+     * @return The encoded secret
+     */
+    public byte[] toBytes(Charset charset) {
+        if (length == 0) return new byte[0];
+
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            ByteBuffer encoded = encoder.encode(view());
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            SecureWiper.wipeBuffer(encoded);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("Failed to encode secret", e);
+        }
+    }
+
+    /**
+     * Creates a String holding the secret. Only use this where an API requires
+     * a String, such as JavaFX text controls and the clipboard; the String
+     * cannot be wiped.
+     *
+     * @return The secret as a String
+     */
+    public String asString() {
+        if (length == 0) return "";
+        return view().toString();
+    }
+
+    /**
+     * Compares two secrets without copying them to the heap.
+     *
+     * @return true if both are null or hold the same characters
+     */
+    public static boolean contentEquals(SecretBuffer a, SecretBuffer b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return a.view().equals(b.view());
+    }
+
+    private CharBuffer view() {
+        if (closed) {
+            throw new IllegalStateException("SecretBuffer has been closed");
+        }
+        CharBuffer chars = storage.asCharBuffer();
+        chars.limit(length);
+        return chars;
+    }
+
+    /**
+     * Overwrites the off-heap memory. The buffer cannot be read afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed || this == EMPTY) return;
+        closed = true;
+        cleanable.clean();
+    }
+
+    @Override
+    public String toString() {
+        return "SecretBuffer[length=" + length + "]";
+    }
+}
@@ -1,32 +1,44 @@
 package com.passwordmanager.security;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
-import java.security.SecureRandom;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 public class SecureWiper {
-    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
     private static final int WIPE_ITERATIONS = 3;
+    private static final int WIPE_BUFFER_SIZE = 1024 * 1024;
+    private static final int SCRATCH_SIZE = 4096;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+    private static final ThreadLocal<KeystreamGenerator> KEYSTREAM = ThreadLocal.withInitial(KeystreamGenerator::new);
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
     
     /**
      * Securely wipes a char array by overwriting it with random data multiple times
-     * before filling it with zeros.
+     * before filling it with zeros. Random data is taken in bulk from a per-thread
+     * keystream, so no SecureRandom call or allocation happens per pass.
      *
      * @param chars The char array to wipe
      */
     public static void wipeCharArray(char[] chars) {
         if (chars == null) return;
         
+        KeystreamGenerator keystream = KEYSTREAM.get();
+        byte[] scratch = SCRATCH.get();
         for (int i = 0; i < WIPE_ITERATIONS; i++) {
-            for (int j = 0; j < chars.length; j++) {
-                chars[j] = (char) SECURE_RANDOM.nextInt(Character.MAX_VALUE + 1);
+            for (int offset = 0; offset < chars.length; offset += scratch.length / 2) {
+                int count = Math.min(scratch.length / 2, chars.length - offset);
+                keystream.fill(scratch, 0, count * 2);
+                for (int j = 0; j < count; j++) {
+                    chars[offset + j] = (char) ((scratch[2 * j] << 8) | (scratch[2 * j + 1] & 0xFF));
+                }
             }
         }
         Arrays.fill(chars, '\u0000');
@@ -41,9 +53,10 @@ public class SecureWiper {
     public static void wipeByteArray(byte[] bytes) {
         if (bytes == null) return;
         
+        KeystreamGenerator keystream = KEYSTREAM.get();
         for (int i = 0; i < WIPE_ITERATIONS; i++) {
             // Overwrite with random data
-            SECURE_RANDOM.nextBytes(bytes);
+            keystream.fill(bytes, 0, bytes.length);
         }
         // Final overwrite with zeros
         Arrays.fill(bytes, (byte) 0);
@@ -88,6 +101,7 @@ public class SecureWiper {
     
     /**
      * Securely wipes a ByteBuffer by overwriting its contents multiple times.
+     * Works in place for both heap and direct buffers without allocating.
      *
      * @param buffer The ByteBuffer to wipe
      */
@@ -95,18 +109,32 @@ public class SecureWiper {
         if (buffer == null) return;
         
         try {
-            buffer.clear();
-            int size = buffer.capacity();
-            
+            KeystreamGenerator keystream = KEYSTREAM.get();
             for (int i = 0; i < WIPE_ITERATIONS; i++) {
                 buffer.clear();
-                byte[] randomData = new byte[size];
-                SECURE_RANDOM.nextBytes(randomData);
-                buffer.put(randomData);
+                if (buffer.hasArray()) {
+                    keystream.fill(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                } else {
+                    byte[] scratch = SCRATCH.get();
+                    while (buffer.hasRemaining()) {
+                        int count = Math.min(scratch.length, buffer.remaining());
+                        keystream.fill(scratch, 0, count);
+                        buffer.put(scratch, 0, count);
+                    }
+                }
             }
             
             buffer.clear();
-            buffer.put(new byte[size]);
+            if (buffer.hasArray()) {
+                Arrays.fill(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + buffer.capacity(), (byte) 0);
+            } else {
+                while (buffer.hasRemaining()) {
+                    ByteBuffer zeros = ZEROS.duplicate();
+                    zeros.limit(Math.min(zeros.capacity(), buffer.remaining()));
+                    buffer.put(zeros);
+                }
+            }
+            buffer.clear();
             
         } catch (Exception e) {
             System.err.println("Error wiping buffer: " + e.getMessage());
@@ -114,72 +142,148 @@ public class SecureWiper {
     }
     
     /**
-     * Securely deletes a file by overwriting its contents multiple times before deletion.
+     * Overwrites a byte array with zeros.
+     *
+     * @param bytes The byte array to clear
+     */
+    static void zero(byte[] bytes) {
+        if (bytes != null) {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Securely deletes a file using the default {@link WipePolicy#MULTI_PASS} policy.
      *
      * @param file The file to securely delete
      * @throws IOException If there's an error during the secure deletion process
      */
     public static void secureDeleteFile(File file) throws IOException {
+        secureDeleteFile(file, WipePolicy.MULTI_PASS);
+    }
+    
+    /**
+     * Securely deletes a file by overwriting its contents in place before deletion.
+     * Overwrite data comes from an AES-CTR keystream and is written with positional
+     * writes from a large direct buffer. The file is synced once per pass so that
+     * each pass reaches the device instead of being merged in the page cache.
+     *
+     * @param file The file to securely delete
+     * @param policy How many passes to write
+     * @throws IOException If there's an error during the secure deletion process
+     */
+    public static void secureDeleteFile(File file, WipePolicy policy) throws IOException {
         if (!file.exists()) return;
         
         long length = file.length();
         
-        try (FileOutputStream fos = new FileOutputStream(file);
-             FileChannel channel = fos.getChannel()) {
-            
-            ByteBuffer buffer = ByteBuffer.allocate(8192);
+        // Open without truncating so the passes overwrite the blocks the file occupies.
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(WIPE_BUFFER_SIZE, Math.max(length, 1)));
             
-            for (int i = 0; i < WIPE_ITERATIONS; i++) {
-                long position = 0;
-                while (position < length) {
-                    buffer.clear();
-                    SECURE_RANDOM.nextBytes(buffer.array());
-                    
-                    while (buffer.hasRemaining() && position < length) {
-                        position += channel.write(buffer);
-                    }
+            if (policy.randomPasses() > 0) {
+                KeystreamGenerator keystream = new KeystreamGenerator();
+                for (int i = 0; i < policy.randomPasses(); i++) {
+                    writePass(channel, buffer, length, keystream);
                 }
-                channel.force(true);
             }
             
-            buffer.clear();
-            Arrays.fill(buffer.array(), (byte) 0);
-            long position = 0;
-            while (position < length) {
-                buffer.clear();
-                position += channel.write(buffer);
+            if (policy.finalZeroPass()) {
+                writePass(channel, buffer, length, null);
             }
-            
-            channel.force(true);
         }
         
         if (!file.delete()) {
             throw new IOException("Failed to delete file after secure wipe: " + file.getPath());
         }
     }
+
+    private static void writePass(FileChannel channel, ByteBuffer buffer, long length,
+                                  KeystreamGenerator keystream) throws IOException {
+        if (keystream == null) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0);
+            }
+        }
+        
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            if (keystream != null) {
+                keystream.fill(buffer);
+                buffer.flip();
+            }
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        channel.force(false);
+    }
     
     /**
-     * Securely wipes a temporary directory and all its contents.
+     * Securely wipes a temporary directory and all its contents. Files are
+     * overwritten in parallel since each one is independent.
      *
      * @param directory The directory to wipe
      * @throws IOException If there's an error during the secure deletion process
      */
     public static void secureTempCleanup(File directory) throws IOException {
+        secureTempCleanup(directory, WipePolicy.MULTI_PASS);
+    }
+    
+    /**
+     * Securely wipes a directory and all its contents with the given policy.
+     *
+     * @param directory The directory to wipe
+     * @param policy How many passes to write
+     * @throws IOException If there's an error during the secure deletion process
+     */
+    public static void secureTempCleanup(File directory, WipePolicy policy) throws IOException {
         if (!directory.exists()) return;
         
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    secureDeleteFile(file);
-                } else if (file.isDirectory()) {
-                    secureTempCleanup(file);
-                }
+        List<File> files = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        collectFiles(directory, files, directories);
+        
+        List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+        files.parallelStream().forEach(file -> {
+            try {
+                secureDeleteFile(file, policy);
+            } catch (IOException e) {
+                failures.add(e);
+            }
+        });
+        
+        if (!failures.isEmpty()) {
+            IOException failure = failures.get(0);
+            for (int i = 1; i < failures.size(); i++) {
+                failure.addSuppressed(failures.get(i));
             }
+            throw failure;
         }
         
-        if (!directory.delete()) {
-            throw new IOException("Failed to delete directory: " + directory.getPath());
+        // Children were collected after their parents, so delete in reverse order.
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            File dir = directories.get(i);
+            if (!dir.delete()) {
+                throw new IOException("Failed to delete directory: " + dir.getPath());
+            }
+        }
+    }
+
+    private static void collectFiles(File directory, List<File> files, List<File> directories) {
+        directories.add(directory);
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isFile()) {
+                    files.add(child);
+                } else if (child.isDirectory()) {
+                    collectFiles(child, files, directories);
+                }
+            }
         }
     }
-} 
\ No newline at end of file
+}
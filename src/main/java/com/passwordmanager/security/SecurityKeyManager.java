@@ -11,13 +11,19 @@ import java.security.SecureRandom;
 import java.util.Base64;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
 
 public class SecurityKeyManager {
     private static final String ALGORITHM = "AES";
     private static final int KEY_SIZE = 256;
     private static final int ADDITIONAL_BYTES = 1024; 
-    private static final int ITERATIONS = 100000; 
     
+    /**
+     * Writes a version 1 key file. New key files are written with {@link KeyFile};
+     * this remains for reading and testing the migration of old ones.
+     */
     public static void generateKeyFile(String masterPassword, String filePath) throws Exception {
         SecretKey dek = Encryptor.generateDEK();
         
@@ -54,6 +60,99 @@ public class SecurityKeyManager {
     }
     
     public static boolean verifyKeyFile(String masterPassword, String filePath) throws Exception {
+        return verifyKeyFile(masterPassword, filePath, null);
+    }
+
+    /**
+     * Gets the key derivation parameters of a key file
+     * @param filePath The key file
+     * @return The parameters, or null if the file cannot be read
+     */
+    public static KdfParameters readKeyFileParameters(String filePath) {
+        if (KeyFile.isKeyFile(Paths.get(filePath))) {
+            try {
+                KeyFile keyFile = KeyFile.read(Paths.get(filePath));
+                keyFile.wipe();
+                return keyFile.getParameters();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        try {
+            String[] fileContent = new String(Files.readAllBytes(Paths.get(filePath))).split("\n");
+            return fileContent.length == 5 ? KdfParameters.legacy(fileContent[0]) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * The secret of a version 1 key file. Its wrapped key and payload are
+     * random, so they are hashed into the key; no key derivation is needed.
+     * @param lookupId Identifies the key file's slot
+     * @param key Combined with the password-derived key to form the slot's KEK
+     */
+    public record KeyFileKey(String lookupId, byte[] key) implements KeyFileSecret {
+        @Override
+        public SecretKey slotKek(SecretKey passwordKek) {
+            return KeySlot.combine(passwordKek, key);
+        }
+
+        @Override
+        public void wipe() {
+            SecureWiper.wipeByteArray(key);
+        }
+    }
+
+    /**
+     * Reads the secret a key file contributes to its key slot. Version 2 files
+     * are verified by their MAC; version 1 files by their stored digest.
+     * @param filePath The key file
+     * @return The secret, or null if the file cannot be read or is damaged
+     */
+    public static KeyFileSecret readKeyFileSecret(String filePath) {
+        if (KeyFile.isKeyFile(Paths.get(filePath))) {
+            try {
+                return KeyFile.read(Paths.get(filePath));
+            } catch (Exception e) {
+                System.err.println("Invalid key file: " + e.getMessage());
+                return null;
+            }
+        }
+        try {
+            String[] fileContent = new String(Files.readAllBytes(Paths.get(filePath))).split("\n");
+            if (fileContent.length != 5) {
+                return null;
+            }
+            String material = fileContent[2] + fileContent[3];
+            if (!PasswordHasher.hashPassword(material, fileContent[0]).equals(fileContent[4])) {
+                return null;
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] secret = digest.digest(material.getBytes(StandardCharsets.US_ASCII));
+            try {
+                digest.update("keyslot-id".getBytes(StandardCharsets.US_ASCII));
+                byte[] id = digest.digest(secret);
+                digest.update("keyslot-key".getBytes(StandardCharsets.US_ASCII));
+                byte[] key = digest.digest(secret);
+                return new KeyFileKey("kf-" + HexFormat.of().formatHex(id, 0, 8), key);
+            } finally {
+                SecureWiper.wipeByteArray(secret);
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Verifies a key file, using a KEK from the cache if one was derived ahead of time
+     * @param masterPassword The master password
+     * @param filePath The key file
+     * @param kekCache Speculatively derived KEKs, may be null
+     * @return true if the key file belongs to the master password
+     */
+    public static boolean verifyKeyFile(String masterPassword, String filePath, KekCache kekCache) throws Exception {
         if (!Files.exists(Paths.get(filePath))) {
             return false;
         }
@@ -78,7 +177,10 @@ public class SecurityKeyManager {
                 return false;
             }
             
-            SecretKey kek = Encryptor.deriveKEK(masterPassword, salt);
+            SecretKey kek = kekCache != null ? kekCache.get(masterPassword, KdfParameters.legacy(salt)) : null;
+            if (kek == null) {
+                kek = Encryptor.deriveKEK(masterPassword, salt);
+            }
             SecretKey dek = Encryptor.decryptDEK(encryptedDEK, kek);
             
             Encryptor encryptor = new Encryptor(dek);
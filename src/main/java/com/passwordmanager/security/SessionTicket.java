@@ -0,0 +1,141 @@
+package com.passwordmanager.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keeps the DEK of a locked vault wrapped under a short PIN, so that the
+ * vault can be reopened without repeating the master password KDF.
+ *
+ * The wrapping key is derived from the PIN and a random session key that
+ * only ever lives in memory, so a ticket is useless once the process ends.
+ * A short PIN can be guessed offline by anyone who can read this process's
+ * memory; the ticket therefore gives up after a few wrong PINs and expires
+ * a fixed time after it was issued, after which the master password is
+ * needed again.
+ */
+public class SessionTicket {
+    public static final int MAX_ATTEMPTS = 3;
+    public static final Duration DEFAULT_LIFETIME = Duration.ofHours(4);
+    /** Enough PBKDF2 work to slow down guessing without making unlocking noticeable. */
+    private static final int PIN_ITERATIONS = 10000;
+    private static final byte[] INFO = "passwordmanager session ticket".getBytes(StandardCharsets.UTF_8);
+
+    private byte[] sessionKey = new byte[32];
+    private final String salt;
+    private final Instant expiresAt;
+    private String wrappedDek;
+    private int attemptsLeft = MAX_ATTEMPTS;
+
+    private SessionTicket(String salt, Instant expiresAt) {
+        this.salt = salt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Wraps a DEK under a PIN
+     * @param dek The DEK to keep; the ticket stores only a wrapped copy
+     * @param pin The PIN that will unlock the ticket
+     * @param lifetime How long the ticket stays usable
+     * @return The ticket
+     * @throws Exception if the DEK cannot be wrapped
+     */
+    public static SessionTicket issue(SecretKey dek, String pin, Duration lifetime) throws Exception {
+        SecureRandom random = new SecureRandom();
+        byte[] saltBytes = new byte[16];
+        random.nextBytes(saltBytes);
+        SessionTicket ticket = new SessionTicket(Base64.getEncoder().encodeToString(saltBytes),
+            Instant.now().plus(lifetime));
+        random.nextBytes(ticket.sessionKey);
+
+        SecretKey wrappingKey = ticket.wrappingKey(pin);
+        try {
+            ticket.wrappedDek = Encryptor.encryptDEK(dek, wrappingKey);
+        } finally {
+            SecureWiper.wipeKey(wrappingKey);
+        }
+        return ticket;
+    }
+
+    /**
+     * Unwraps the DEK. Each wrong PIN uses up an attempt, and the ticket wipes
+     * itself when none are left.
+     * @param pin The PIN
+     * @return The DEK, or null if the PIN is wrong or the ticket is no longer usable
+     */
+    public synchronized SecretKey redeem(String pin) {
+        if (!isUsable()) {
+            wipe();
+            return null;
+        }
+        SecretKey wrappingKey = null;
+        try {
+            wrappingKey = wrappingKey(pin);
+            SecretKey dek = Encryptor.decryptDEK(wrappedDek, wrappingKey);
+            attemptsLeft = MAX_ATTEMPTS;
+            return dek;
+        } catch (Exception e) {
+            if (--attemptsLeft <= 0) {
+                wipe();
+            }
+            return null;
+        } finally {
+            if (wrappingKey != null) {
+                SecureWiper.wipeKey(wrappingKey);
+            }
+        }
+    }
+
+    /**
+     * @return true if the ticket has not expired, run out of attempts or been wiped
+     */
+    public synchronized boolean isUsable() {
+        return sessionKey != null && attemptsLeft > 0 && Instant.now().isBefore(expiresAt);
+    }
+
+    public synchronized int getAttemptsLeft() {
+        return isUsable() ? attemptsLeft : 0;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Wipes the session key, which makes the wrapped DEK unrecoverable
+     */
+    public synchronized void wipe() {
+        if (sessionKey != null) {
+            SecureWiper.wipeByteArray(sessionKey);
+            sessionKey = null;
+        }
+        wrappedDek = null;
+        attemptsLeft = 0;
+    }
+
+    private SecretKey wrappingKey(String pin) throws Exception {
+        SecretKey pinKey = Encryptor.deriveKEK(pin,
+            new KdfParameters(KdfParameters.PBKDF2_SHA256, PIN_ITERATIONS, salt));
+        byte[] pinBytes = pinKey.getEncoded();
+        byte[] ikm = new byte[sessionKey.length + pinBytes.length];
+        System.arraycopy(sessionKey, 0, ikm, 0, sessionKey.length);
+        System.arraycopy(pinBytes, 0, ikm, sessionKey.length, pinBytes.length);
+        byte[] key = null;
+        try {
+            key = Hkdf.derive(ikm, Base64.getDecoder().decode(salt), INFO, 32);
+            return new SecretKeySpec(key, "AES");
+        } finally {
+            SecureWiper.wipeKey(pinKey);
+            SecureWiper.wipeByteArray(pinBytes);
+            SecureWiper.wipeByteArray(ikm);
+            if (key != null) {
+                SecureWiper.wipeByteArray(key);
+            }
+        }
+    }
+}
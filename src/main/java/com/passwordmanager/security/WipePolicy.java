@@ -0,0 +1,33 @@
+package com.passwordmanager.security;
+
+/**
+ * Describes how a file is overwritten before it is deleted.
+ *
+ * @param randomPasses Number of passes with random data
+ * @param finalZeroPass Whether a last pass of zeros is written
+ */
+public record WipePolicy(int randomPasses, boolean finalZeroPass) {
+    /**
+     * One random pass. On flash media (USB sticks, SSDs) the controller remaps
+     * writes, so further passes only add wear without reaching more cells.
+     */
+    public static final WipePolicy SINGLE_PASS = new WipePolicy(1, false);
+
+    /**
+     * Three random passes followed by zeros, for magnetic disks.
+     */
+    public static final WipePolicy MULTI_PASS = new WipePolicy(3, true);
+
+    public WipePolicy {
+        if (randomPasses < 0) {
+            throw new IllegalArgumentException("randomPasses must not be negative");
+        }
+        if (randomPasses == 0 && !finalZeroPass) {
+            throw new IllegalArgumentException("A wipe policy needs at least one pass");
+        }
+    }
+
+    public int totalPasses() {
+        return randomPasses + (finalZeroPass ? 1 : 0);
+    }
+}
@@ -7,6 +7,8 @@ import javafx.geometry.Insets;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 import javafx.scene.Node;
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.security.KdfParameters;
 import com.passwordmanager.security.SecurityKeyManager;
 import java.io.File;
 
@@ -15,8 +17,10 @@ public class LoginDialog extends Dialog<LoginResult> {
     private TextField visiblePasswordField;
     private TextField keyFilePathField;
     private Button browseButton;
+    private final DatabaseManager dbManager;
 
-    public LoginDialog(Window owner) {
+    public LoginDialog(Window owner, DatabaseManager dbManager) {
+        this.dbManager = dbManager;
         setTitle("Login");
         setHeaderText("Enter your master password and select your key file");
         initOwner(owner);
@@ -39,7 +43,18 @@ public class LoginDialog extends Dialog<LoginResult> {
 
         passwordField.textProperty().bindBidirectional(visiblePasswordField.textProperty());
 
+        // Derive the KEKs while the user is busy with the key file
+        passwordField.focusedProperty().addListener((obs, wasFocused, isFocused) -> {
+            if (!isFocused) speculate();
+        });
+        visiblePasswordField.focusedProperty().addListener((obs, wasFocused, isFocused) -> {
+            if (!isFocused) speculate();
+        });
+        passwordField.textProperty().addListener((obs, oldVal, newVal) -> dbManager.discardSpeculativeKEKs());
+        keyFilePathField.textProperty().addListener((obs, oldVal, newVal) -> speculateKeyFile());
+
         browseButton.setOnAction(e -> {
+            speculate();
             FileChooser fileChooser = new FileChooser();
             fileChooser.setTitle("Select Key File");
             fileChooser.getExtensionFilters().add(
@@ -85,10 +100,27 @@ public class LoginDialog extends Dialog<LoginResult> {
                     keyFilePathField.getText()
                 );
             }
+            dbManager.discardSpeculativeKEKs();
             return null;
         });
     }
 
+    private void speculate() {
+        dbManager.speculateKEK(passwordField.getText());
+        speculateKeyFile();
+    }
+
+    private void speculateKeyFile() {
+        String password = passwordField.getText();
+        if (password.isEmpty() || keyFilePathField.getText().isEmpty()) {
+            return;
+        }
+        KdfParameters params = SecurityKeyManager.readKeyFileParameters(keyFilePathField.getText());
+        if (params != null) {
+            dbManager.getKekCache().derive(password, params);
+        }
+    }
+
     private void validateForm(Node loginButton) {
         boolean isValid = !passwordField.getText().isEmpty() &&
                          !keyFilePathField.getText().isEmpty();
@@ -11,9 +11,16 @@ import javafx.stage.Stage;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.scene.Node;
 import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.database.GroupCommitEntryStore;
+import com.passwordmanager.database.VaultSync;
 import com.passwordmanager.model.PasswordEntry;
+import com.passwordmanager.model.EntrySummary;
+import com.passwordmanager.model.VaultRow;
 import com.passwordmanager.App;
+import com.passwordmanager.security.ClipboardManager;
 import com.passwordmanager.security.InputValidator;
+import com.passwordmanager.security.KeySlot;
+import com.passwordmanager.security.SessionTicket;
 import com.passwordmanager.security.InputValidator.ValidationException;
 import java.sql.SQLException;
 import java.util.List;
@@ -21,6 +28,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.layout.Priority;
 import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.ArrayList;
@@ -31,18 +39,56 @@ import com.passwordmanager.controller.PasswordEntryController;
 import com.passwordmanager.backup.BackupManager;
 import javafx.stage.FileChooser;
 import javax.crypto.SecretKey;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import com.passwordmanager.model.Attachment;
+import com.passwordmanager.model.DeletedEntrySummary;
 import javafx.geometry.Pos;
+import javafx.application.Platform;
+import javafx.animation.PauseTransition;
+import javafx.scene.input.InputEvent;
+import javafx.event.EventHandler;
+import javafx.collections.ListChangeListener;
+import javafx.stage.Window;
+import javafx.util.Duration;
+import com.passwordmanager.model.ColumnarVault;
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.audit.AuditJournal;
+import java.util.concurrent.CompletableFuture;
 
 public class MainWindow {
     private DatabaseManager dbManager;
     private Stage stage;
-    private TableView<PasswordEntry> passwordTable;
+    private TableView<VaultRow> passwordTable;
     private ListView<String> categoryList;
-    private ObservableList<PasswordEntry> passwordList;
+    private VaultRowList passwordList;
     private ObservableList<String> categories;
+    private BorderPane mainLayout;
+    private PauseTransition idleTimer;
+    /** Set while the vault is being locked in the background */
+    private boolean locking;
+    /** Restarts the idle timer on input in any of the application's windows, dialogs included */
+    private final EventHandler<InputEvent> activityFilter = e -> {
+        if (!locking && !dbManager.isLocked()) {
+            idleTimer.playFromStart();
+        }
+    };
+    private final ListChangeListener<Window> windowWatcher = change -> {
+        while (change.next()) {
+            for (Window window : change.getAddedSubList()) {
+                window.addEventFilter(InputEvent.ANY, activityFilter);
+            }
+        }
+    };
+    private Label saveStatusLabel;
+    private CompletableFuture<Void> pendingSave;
+    private static final Duration IDLE_TIMEOUT = Duration.minutes(5);
     private static final String BUTTON_STYLE = """
         -fx-background-color: white;
         -fx-text-fill: #2C3E50;
@@ -90,11 +136,11 @@ public class MainWindow {
     public MainWindow(DatabaseManager dbManager, Stage stage) {
         this.dbManager = dbManager;
         this.stage = stage;
-        this.passwordList = FXCollections.observableArrayList();
+        this.passwordList = new VaultRowList();
     }
 
     public void show() {
-        BorderPane mainLayout = new BorderPane();
+        mainLayout = new BorderPane();
         mainLayout.setStyle("-fx-background-color: white;");
         mainLayout.setPadding(new Insets(15));
 
@@ -107,11 +153,33 @@ public class MainWindow {
         loadPasswords();
 
         Scene scene = new Scene(mainLayout, 1000, 600);
+        idleTimer = new PauseTransition(IDLE_TIMEOUT);
+        idleTimer.setOnFinished(e -> lockVault());
+        for (Window window : Window.getWindows()) {
+            window.addEventFilter(InputEvent.ANY, activityFilter);
+        }
+        Window.getWindows().addListener(windowWatcher);
         stage.setTitle("The Password Vault - Dashboard");
         stage.setScene(scene);
         stage.show();
+        idleTimer.play();
 
         categoryList.getSelectionModel().select(0);
+        if (dbManager.isDataKeyRotationPending()) {
+            // A rotation interrupted earlier is finishing in the background
+            dbManager.whenMaintenanceDone().thenRun(() -> Platform.runLater(this::reloadAfterKeyRotation));
+        }
+    }
+
+    /**
+     * Replaces the table's vault, which may still read rows with the key a
+     * finished rotation retired, and then wipes that key
+     */
+    private void reloadAfterKeyRotation() {
+        if (!locking && !dbManager.isLocked()) {
+            loadPasswords();
+        }
+        dbManager.wipeRetiredKey();
     }
 
     private VBox createSidebar() {
@@ -153,12 +221,30 @@ public class MainWindow {
         Button addButton = createStyledButton("+ New Password", false);
         Button backupButton = createStyledButton("Backup", false);
         Button restoreButton = createStyledButton("Restore", false);
+        Button restoreEntriesButton = createStyledButton("Restore Entries", false);
+        Button syncButton = createStyledButton("Sync", false);
+        Button trashButton = createStyledButton("Trash", false);
+        Button auditLogButton = createStyledButton("Audit Log", false);
+        Button rotateKeyButton = createStyledButton("Rotate Key", false);
+        Button recoveryCodeButton = createStyledButton("Recovery Code", false);
+        Button spareKeyFileButton = createStyledButton("Spare Key File", false);
+        Button quickUnlockButton = createStyledButton("Quick Unlock PIN", false);
+        Button lockButton = createStyledButton("Lock", false);
         Button logoutButton = createStyledButton("Logout", true);
         Button deleteAccountButton = createStyledButton("Delete Account", true);
 
         addButton.setOnAction(e -> handleAddPassword());
         backupButton.setOnAction(e -> handleBackup());
         restoreButton.setOnAction(e -> handleRestore());
+        restoreEntriesButton.setOnAction(e -> handleRestoreEntries());
+        syncButton.setOnAction(e -> handleSync());
+        trashButton.setOnAction(e -> handleTrash());
+        auditLogButton.setOnAction(e -> handleAuditLog());
+        rotateKeyButton.setOnAction(e -> handleRotateKey(rotateKeyButton));
+        recoveryCodeButton.setOnAction(e -> handleRecoveryCode());
+        spareKeyFileButton.setOnAction(e -> handleSpareKeyFile());
+        quickUnlockButton.setOnAction(e -> handleQuickUnlockPin());
+        lockButton.setOnAction(e -> lockVault());
         logoutButton.setOnAction(e -> handleLogout());
         deleteAccountButton.setOnAction(e -> handleDeleteAccount());
 
@@ -172,7 +258,16 @@ public class MainWindow {
             addButton,
             backupButton,
             restoreButton,
+            restoreEntriesButton,
+            syncButton,
+            trashButton,
+            auditLogButton,
+            rotateKeyButton,
+            recoveryCodeButton,
+            spareKeyFileButton,
+            quickUnlockButton,
             accountSeparator,
+            lockButton,
             deleteAccountButton,
             logoutButton
         );
@@ -187,23 +282,71 @@ public class MainWindow {
         HBox searchBox = createSearchBox();
 
         passwordTable = createPasswordTable();
+        showRows(passwordList);
         VBox.setVgrow(passwordTable, Priority.ALWAYS);
 
         HBox actionButtons = new HBox(10);
         Button editButton = createStyledButton("Edit", false);
+        Button attachmentsButton = createStyledButton("Attachments", false);
+        Button historyButton = createStyledButton("History", false);
         Button deleteButton = createStyledButton("Delete", true);
         Button deleteCategoryButton = createStyledButton("Delete Category", true);
 
         editButton.setOnAction(e -> handleEditButtonClick());
+        attachmentsButton.setOnAction(e -> handleAttachments());
+        historyButton.setOnAction(e -> handleHistory());
         deleteButton.setOnAction(e -> handleDeletePassword());
         deleteCategoryButton.setOnAction(e -> handleDeleteCategory());
 
-        actionButtons.getChildren().addAll(editButton, deleteButton, deleteCategoryButton);
+        saveStatusLabel = new Label();
+        saveStatusLabel.setStyle("-fx-text-fill: #7F8C8D;");
+        saveStatusLabel.setMaxHeight(Double.MAX_VALUE);
+
+        actionButtons.getChildren().addAll(editButton, attachmentsButton, historyButton, deleteButton, deleteCategoryButton, saveStatusLabel);
 
         contentArea.getChildren().addAll(searchBox, passwordTable, actionButtons);
         return contentArea;
     }
 
+    /**
+     * Shows that changes are being saved until the database has committed
+     * them. Changes are committed in batches shortly after they are made.
+     */
+    private void showSaveStatus() {
+        saveStatusLabel.setText("Saving...");
+        trackSave();
+    }
+
+    private void trackSave() {
+        CompletableFuture<Void> save = dbManager.whenEntryChangesDurable();
+        pendingSave = save;
+        save.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (save != pendingSave) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                saveStatusLabel.setStyle("-fx-text-fill: #E74C3C;");
+                if (cause instanceof GroupCommitEntryStore.ChangesSetAsideException) {
+                    // The store gave up on these changes, so there is nothing left to wait for
+                    saveStatusLabel.setText("Some changes were not saved");
+                    showError("Changes Not Saved", cause.getMessage()
+                        + "\n\nThe affected entries show their last saved state. Other changes were saved.");
+                    if (!locking && !dbManager.isLocked()) {
+                        loadPasswords();
+                    }
+                } else {
+                    saveStatusLabel.setText("Not saved yet, retrying: " + cause.getMessage());
+                    // Failed changes stay queued and are retried with the next batch
+                    trackSave();
+                }
+            } else {
+                saveStatusLabel.setText("All changes saved");
+                saveStatusLabel.setStyle("-fx-text-fill: #7F8C8D;");
+            }
+        }));
+    }
+
     private Button createStyledButton(String text, boolean isDanger) {
         Button button = new Button(text);
         button.setMaxWidth(Double.MAX_VALUE);
@@ -241,18 +384,18 @@ public class MainWindow {
         return searchBox;
     }
 
-    private TableView<PasswordEntry> createPasswordTable() {
-        TableView<PasswordEntry> table = new TableView<>();
+    private TableView<VaultRow> createPasswordTable() {
+        TableView<VaultRow> table = new TableView<>();
         table.setStyle("""
             -fx-background-color: white;
             -fx-border-color: #E0E0E0;
             -fx-border-radius: 4;
             """);
 
-        TableColumn<PasswordEntry, String> titleCol = new TableColumn<>("Title");
-        TableColumn<PasswordEntry, String> usernameCol = new TableColumn<>("Username");
-        TableColumn<PasswordEntry, String> urlCol = new TableColumn<>("URL");
-        TableColumn<PasswordEntry, String> categoryCol = new TableColumn<>("Category");
+        TableColumn<VaultRow, String> titleCol = new TableColumn<>("Title");
+        TableColumn<VaultRow, String> usernameCol = new TableColumn<>("Username");
+        TableColumn<VaultRow, String> urlCol = new TableColumn<>("URL");
+        TableColumn<VaultRow, String> categoryCol = new TableColumn<>("Category");
 
         String columnStyle = "-fx-alignment: CENTER-LEFT; -fx-padding: 10;";
         titleCol.setStyle(columnStyle);
@@ -266,15 +409,12 @@ public class MainWindow {
         categoryCol.setPrefWidth(150);
 
         titleCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getTitle()));
-        usernameCol.setCellValueFactory(cellData -> new SimpleStringProperty(
-            cellData.getValue().getUsername() != null ? cellData.getValue().getUsername() : ""));
-        urlCol.setCellValueFactory(cellData -> new SimpleStringProperty(
-            cellData.getValue().getUrl() != null ? cellData.getValue().getUrl() : ""));
-        categoryCol.setCellValueFactory(cellData -> new SimpleStringProperty(
-            cellData.getValue().getCategory() != null ? cellData.getValue().getCategory() : ""));
+        usernameCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getUsername()));
+        urlCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getUrl()));
+        categoryCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getCategory()));
 
         table.setRowFactory(tv -> {
-            TableRow<PasswordEntry> row = new TableRow<>();
+            TableRow<VaultRow> row = new TableRow<>();
             row.setOnMouseClicked(event -> {
                 if (event.getClickCount() == 2 && !row.isEmpty()) {
                     handleEditPassword(row.getItem());
@@ -284,33 +424,39 @@ public class MainWindow {
         });
 
         table.getColumns().addAll(titleCol, usernameCol, urlCol, categoryCol);
-        table.setItems(passwordList);
         return table;
     }
 
+    /**
+     * Shows the given rows in the table, sorted by the table's sort columns.
+     */
+    private void showRows(ObservableList<VaultRow> rows) {
+        SortedList<VaultRow> sorted = new SortedList<>(rows);
+        sorted.comparatorProperty().bind(passwordTable.comparatorProperty());
+        passwordTable.setItems(sorted);
+    }
+
     private void loadPasswords() {
         try {
-            List<PasswordEntry> passwords = dbManager.getAllPasswords();
-            passwordList.clear();
-            passwordList.addAll(passwords);
+            VaultRow selected = passwordTable.getSelectionModel().getSelectedItem();
+            passwordList.setVault(dbManager.loadVault());
             
-            Set<String> uniqueCategories = new HashSet<>();
+            Set<String> uniqueCategories = new HashSet<>(passwordList.getVault().getCategories());
             uniqueCategories.add("All");
-            for (PasswordEntry entry : passwords) {
-                if (entry.getCategory() != null && !entry.getCategory().isEmpty()) {
-                    uniqueCategories.add(entry.getCategory());
+            
+            if (!uniqueCategories.equals(new HashSet<>(categories))) {
+                categories.clear();
+                categories.addAll(uniqueCategories);
+                categories.sort(null);
+                
+                if (categories.remove("All")) {
+                    categories.add(0, "All");
                 }
             }
             
-            categories.clear();
-            categories.addAll(uniqueCategories);
-            categories.sort(null);
-            
-            if (categories.remove("All")) {
-                categories.add(0, "All");
+            if (selected != null) {
+                passwordTable.getSelectionModel().select(selected);
             }
-            
-            passwordTable.setItems(passwordList);
         } catch (SQLException e) {
             e.printStackTrace();
             showError("Error Loading Passwords", "Failed to load passwords from database.");
@@ -349,6 +495,8 @@ public class MainWindow {
                 if (entry != null) {
                     try {
                         dbManager.addPasswordEntry(entry);
+                        AuditJournal.record(AuditEvent.Type.CREATED, entry.getId(), entry.getTitle());
+                        showSaveStatus();
                         loadPasswords();
                     } catch (SQLException | ValidationException e) {
                         showError("Error", "Failed to add password entry: " + e.getMessage());
@@ -360,7 +508,20 @@ public class MainWindow {
         }
     }
 
-    private void handleEditPassword(PasswordEntry entry) {
+    private void handleEditPassword(VaultRow row) {
+        PasswordEntry entry;
+        try {
+            entry = dbManager.getPasswordEntry(row.getId());
+        } catch (SQLException e) {
+            showError("Error", "Failed to load password entry: " + e.getMessage());
+            return;
+        }
+        if (entry == null) {
+            loadPasswords();
+            return;
+        }
+        AuditJournal.record(AuditEvent.Type.VIEWED, entry.getId(), entry.getTitle());
+
         try {
             FXMLLoader loader = new FXMLLoader(PasswordEntryController.class.getResource("/fxml/password_entry.fxml"));
             PasswordEntryController controller = new PasswordEntryController(dbManager);
@@ -390,6 +551,8 @@ public class MainWindow {
                 if (updatedEntry != null) {
                     try {
                         dbManager.updatePasswordEntry(updatedEntry);
+                        AuditJournal.record(AuditEvent.Type.EDITED, updatedEntry.getId(), updatedEntry.getTitle());
+                        showSaveStatus();
                         loadPasswords();
                     } catch (SQLException | ValidationException e) {
                         showError("Error", "Failed to update password entry: " + e.getMessage());
@@ -398,11 +561,13 @@ public class MainWindow {
             });
         } catch (IOException e) {
             showError("Error", "Failed to load password entry dialog: " + e.getMessage());
+        } finally {
+            entry.secureClear();
         }
     }
 
     private void handleDeletePassword() {
-        PasswordEntry selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
+        VaultRow selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
         
         if (selectedEntry == null) {
             Alert alert = new Alert(Alert.AlertType.WARNING);
@@ -424,7 +589,7 @@ public class MainWindow {
         
         grid.add(new Label("Are you sure you want to delete this entry?"), 0, 0);
         grid.add(new Label("Title: " + selectedEntry.getTitle()), 0, 1);
-        grid.add(new Label("This action cannot be undone."), 0, 2);
+        grid.add(new Label("It stays in the trash for " + DatabaseManager.TRASH_RETENTION_DAYS + " days."), 0, 2);
         
         confirmDialog.getDialogPane().setContent(grid);
         
@@ -440,11 +605,9 @@ public class MainWindow {
                     int entryId = selectedEntry.getId();
                     String entryTitle = selectedEntry.getTitle();
                     
-                    selectedEntry.setPassword(null);
-                    selectedEntry.setUsername(null);
-                    selectedEntry.setNotes(null);
-                    
                     dbManager.deletePasswordEntry(entryId);
+                    AuditJournal.record(AuditEvent.Type.DELETED, entryId, entryTitle);
+                    showSaveStatus();
                     
                     passwordTable.getSelectionModel().clearSelection();
                     loadPasswords();
@@ -453,15 +616,319 @@ public class MainWindow {
                 } catch (SQLException e) {
                     showError("Error Deleting Password", "Failed to delete password entry: " + e.getMessage());
                     e.printStackTrace();
-                } finally {
-                    System.gc();
                 }
             }
         });
     }
 
+    private void handleAttachments() {
+        VaultRow selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
+
+        if (selectedEntry == null) {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("No Selection");
+            alert.setHeaderText("No Password Selected");
+            alert.setContentText("Please select a password entry to manage its attachments.");
+            alert.showAndWait();
+            return;
+        }
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Attachments");
+        dialog.setHeaderText("Files attached to " + selectedEntry.getTitle());
+
+        ListView<Attachment> attachmentList = new ListView<>();
+        attachmentList.setPrefSize(400, 200);
+        Runnable refresh = () -> {
+            try {
+                attachmentList.setItems(FXCollections.observableArrayList(
+                    dbManager.getAttachments(selectedEntry.getId())));
+            } catch (SQLException ex) {
+                showError("Error", "Failed to load attachments: " + ex.getMessage());
+            }
+        };
+        refresh.run();
+
+        Button addButton = createStyledButton("Add File", false);
+        Button saveButton = createStyledButton("Save As", false);
+        Button removeButton = createStyledButton("Remove", true);
+
+        addButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Choose File to Attach");
+            File file = fileChooser.showOpenDialog(stage);
+            if (file != null) {
+                try (FileInputStream in = new FileInputStream(file)) {
+                    dbManager.addAttachment(selectedEntry.getId(), file.getName(), in);
+                    refresh.run();
+                } catch (SQLException | IOException ex) {
+                    showError("Attachment Failed", "Failed to attach file: " + ex.getMessage());
+                    ex.printStackTrace();
+                }
+            }
+        });
+
+        saveButton.setOnAction(e -> {
+            Attachment attachment = attachmentList.getSelectionModel().getSelectedItem();
+            if (attachment == null) {
+                return;
+            }
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Save Attachment");
+            fileChooser.setInitialFileName(attachment.getName());
+            File file = fileChooser.showSaveDialog(stage);
+            if (file != null) {
+                try (InputStream in = dbManager.openAttachment(attachment.getId());
+                     FileOutputStream out = new FileOutputStream(file)) {
+                    in.transferTo(out);
+                    AuditJournal.record(AuditEvent.Type.EXPORTED, selectedEntry.getId(), "attachment " + attachment.getName());
+                } catch (SQLException | IOException ex) {
+                    showError("Save Failed", "Failed to save attachment: " + ex.getMessage());
+                    ex.printStackTrace();
+                }
+            }
+        });
+
+        removeButton.setOnAction(e -> {
+            Attachment attachment = attachmentList.getSelectionModel().getSelectedItem();
+            if (attachment == null) {
+                return;
+            }
+            try {
+                dbManager.deleteAttachment(attachment.getId());
+                refresh.run();
+            } catch (SQLException ex) {
+                showError("Error", "Failed to remove attachment: " + ex.getMessage());
+            }
+        });
+
+        VBox content = new VBox(10, attachmentList, new HBox(10, addButton, saveButton, removeButton));
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
+    private void handleHistory() {
+        VaultRow selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
+
+        if (selectedEntry == null) {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("No Selection");
+            alert.setHeaderText("No Password Selected");
+            alert.setContentText("Please select a password entry to see its history.");
+            alert.showAndWait();
+            return;
+        }
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("History");
+        dialog.setHeaderText("Earlier versions of " + selectedEntry.getTitle()
+            + " (the last " + DatabaseManager.PASSWORD_HISTORY_LIMIT + " are kept)");
+
+        DateTimeFormatter savedFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        ListView<PasswordEntry> historyList = new ListView<>();
+        historyList.setPrefSize(450, 250);
+        historyList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(PasswordEntry version, boolean empty) {
+                super.updateItem(version, empty);
+                if (empty || version == null) {
+                    setText(null);
+                } else {
+                    String saved = version.getLastModified() > 0
+                        ? savedFormat.format(Instant.ofEpochMilli(version.getLastModified()).atZone(ZoneId.systemDefault()))
+                        : "Unknown date";
+                    setText(saved + " - " + version.getTitle() + " (" + version.getUsername() + ")");
+                }
+            }
+        });
+        Runnable refresh = () -> {
+            try {
+                historyList.setItems(FXCollections.observableArrayList(
+                    dbManager.getPasswordHistory(selectedEntry.getId())));
+            } catch (SQLException ex) {
+                showError("Error", "Failed to load history: " + ex.getMessage());
+            }
+        };
+        refresh.run();
+
+        Button copyButton = createStyledButton("Copy Password", false);
+        Button restoreButton = createStyledButton("Restore Version", false);
+
+        copyButton.setOnAction(e -> {
+            PasswordEntry version = historyList.getSelectionModel().getSelectedItem();
+            if (version != null) {
+                ClipboardManager.copyToClipboard(version.getPasswordSecret(), true);
+                AuditJournal.record(AuditEvent.Type.COPIED, version.getId(), "password of an earlier version");
+            }
+        });
+
+        restoreButton.setOnAction(e -> {
+            PasswordEntry version = historyList.getSelectionModel().getSelectedItem();
+            if (version == null) {
+                return;
+            }
+            try {
+                // The current version becomes part of the history in turn
+                version.updateLastModified();
+                dbManager.updatePasswordEntry(version);
+                AuditJournal.record(AuditEvent.Type.EDITED, version.getId(), "restored an earlier version");
+                refresh.run();
+                loadPasswords();
+            } catch (SQLException | ValidationException ex) {
+                showError("Error", "Failed to restore version: " + ex.getMessage());
+            }
+        });
+
+        VBox content = new VBox(10, historyList, new HBox(10, copyButton, restoreButton));
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
+    private void handleTrash() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Trash");
+        dialog.setHeaderText("Deleted entries are erased for good after " + DatabaseManager.TRASH_RETENTION_DAYS + " days");
+
+        ListView<DeletedEntrySummary> trashList = new ListView<>();
+        trashList.setPrefSize(450, 250);
+        Runnable refresh = () -> {
+            try {
+                trashList.setItems(FXCollections.observableArrayList(dbManager.getTrash()));
+            } catch (SQLException ex) {
+                showError("Error", "Failed to load the trash: " + ex.getMessage());
+            }
+        };
+        refresh.run();
+
+        Button restoreButton = createStyledButton("Restore", false);
+        Button eraseButton = createStyledButton("Delete Forever", true);
+        Button emptyButton = createStyledButton("Empty Trash", true);
+
+        restoreButton.setOnAction(e -> {
+            DeletedEntrySummary entry = trashList.getSelectionModel().getSelectedItem();
+            if (entry == null) {
+                return;
+            }
+            try {
+                dbManager.restoreFromTrash(entry.getId());
+                AuditJournal.record(AuditEvent.Type.RESTORED, entry.getId(), entry.getTitle());
+                refresh.run();
+                loadPasswords();
+            } catch (SQLException ex) {
+                showError("Error", "Failed to restore entry: " + ex.getMessage());
+            }
+        });
+
+        eraseButton.setOnAction(e -> {
+            DeletedEntrySummary entry = trashList.getSelectionModel().getSelectedItem();
+            if (entry == null) {
+                return;
+            }
+            try {
+                dbManager.deleteFromTrash(entry.getId());
+                AuditJournal.record(AuditEvent.Type.DELETED, entry.getId(), "erased from the trash");
+                refresh.run();
+            } catch (SQLException ex) {
+                showError("Error", "Failed to delete entry: " + ex.getMessage());
+            }
+        });
+
+        emptyButton.setOnAction(e -> {
+            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
+                "Erase every entry in the trash? This cannot be undone.");
+            confirm.setHeaderText(null);
+            if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                return;
+            }
+            try {
+                int erased = dbManager.emptyTrash();
+                AuditJournal.record(AuditEvent.Type.DELETED, 0, "emptied the trash of " + erased + " entries");
+                refresh.run();
+            } catch (SQLException ex) {
+                showError("Error", "Failed to empty the trash: " + ex.getMessage());
+            }
+        });
+
+        VBox content = new VBox(10, trashList, new HBox(10, restoreButton, eraseButton, emptyButton));
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
+    private void handleSync() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Choose the Other Copy of the Vault");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Password Manager Vault", "*.db")
+        );
+        File file = fileChooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+        if (file.getAbsoluteFile().equals(new File(dbManager.getDatabasePath()))) {
+            showError("Sync Failed", "That is the vault you are using. Choose the other copy, such as the one on your USB stick.");
+            return;
+        }
+
+        DatabaseManager other = null;
+        try {
+            other = DatabaseManager.openForSync(file.toPath(), dbManager.getMasterKey(), dbManager.getCurrentUserId());
+            VaultSync.Report report = VaultSync.synchronize(dbManager, other);
+            if (report.changedAnything()) {
+                showSaveStatus();
+                loadPasswords();
+            }
+
+            StringBuilder message = new StringBuilder();
+            message.append(report.copiedToLocal()).append(" entries copied to this vault\n")
+                .append(report.copiedToRemote()).append(" entries copied to ").append(file.getName());
+            if (report.attachmentsCopied() > 0) {
+                message.append("\n").append(report.attachmentsCopied()).append(" attachments copied");
+            }
+            if (!report.conflicts().isEmpty()) {
+                message.append("\n\n").append(report.conflicts().size())
+                    .append(" entries were changed in both copies. The newer version was kept; ")
+                    .append("the other is in the entry's history and the conflicts are in the audit log.");
+            }
+            showInfo("Sync Complete", message.toString());
+        } catch (SQLException ex) {
+            showError("Sync Failed", "Failed to synchronize: " + ex.getMessage());
+            ex.printStackTrace();
+        } finally {
+            if (other != null) {
+                other.closeConnection();
+            }
+        }
+    }
+
+    private void handleAuditLog() {
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Audit Log");
+        dialog.setHeaderText("Entries viewed, copied, changed and exported, most recent first");
+
+        ListView<AuditEvent> eventList = new ListView<>();
+        eventList.setPrefSize(600, 350);
+        try {
+            eventList.setItems(FXCollections.observableArrayList(dbManager.getAuditEvents()));
+        } catch (SQLException ex) {
+            showError("Error", "Failed to load the audit log: " + ex.getMessage());
+            return;
+        }
+
+        VBox content = new VBox(10, eventList);
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
     private void handleEditButtonClick() {
-        PasswordEntry selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
+        VaultRow selectedEntry = passwordTable.getSelectionModel().getSelectedItem();
         
         if (selectedEntry == null) {
             Alert alert = new Alert(Alert.AlertType.WARNING);
@@ -477,29 +944,23 @@ public class MainWindow {
 
     private void filterTable(String searchText) {
         if (searchText == null || searchText.isEmpty()) {
-            passwordTable.setItems(passwordList);
+            showRows(passwordList);
         } else {
-            ObservableList<PasswordEntry> filteredList = FXCollections.observableArrayList();
             String lowerCaseFilter = searchText.toLowerCase();
-            
-            for (PasswordEntry entry : passwordList) {
-                if (entry.getTitle().toLowerCase().contains(lowerCaseFilter)) {
-                    filteredList.add(entry);
-                }
-            }
-            passwordTable.setItems(filteredList);
+            showRows(new FilteredList<>(passwordList,
+                row -> row.getTitle().toLowerCase().contains(lowerCaseFilter)));
         }
     }
 
     private void filterByCategory(String category) {
         if (category == null || category.equals("All")) {
-            passwordTable.setItems(passwordList);
+            showRows(passwordList);
         } else {
-            FilteredList<PasswordEntry> filteredData = new FilteredList<>(passwordList);
-            filteredData.setPredicate(entry -> 
-                category.equals(entry.getCategory())
+            FilteredList<VaultRow> filteredData = new FilteredList<>(passwordList);
+            filteredData.setPredicate(row -> 
+                category.equals(row.getCategory())
             );
-            passwordTable.setItems(filteredData);
+            showRows(filteredData);
         }
     }
 
@@ -526,7 +987,7 @@ public class MainWindow {
         
         grid.add(new Label("Are you sure you want to delete the category '" + selectedCategory + "'?"), 0, 0);
         grid.add(new Label("WARNING: This will delete ALL passwords in this category!"), 0, 1);
-        grid.add(new Label("This action cannot be undone."), 0, 2);
+        grid.add(new Label("They stay in the trash for " + DatabaseManager.TRASH_RETENTION_DAYS + " days."), 0, 2);
         
         confirmDialog.getDialogPane().setContent(grid);
         
@@ -539,22 +1000,20 @@ public class MainWindow {
         confirmDialog.showAndWait().ifPresent(confirmed -> {
             if (confirmed) {
                 try {
-                    List<PasswordEntry> toDelete = new ArrayList<>();
-                    for (PasswordEntry entry : passwordList) {
-                        if (selectedCategory.equals(entry.getCategory())) {
-                            toDelete.add(entry);
+                    List<Integer> toDelete = new ArrayList<>();
+                    for (VaultRow row : passwordList) {
+                        if (selectedCategory.equals(row.getCategory())) {
+                            toDelete.add(row.getId());
                         }
                     }
 
                     int deletedCount = 0;
-                    for (PasswordEntry entry : toDelete) {
-                        entry.setPassword(null);
-                        entry.setUsername(null);
-                        entry.setNotes(null);
-                        
-                        dbManager.deletePasswordEntry(entry.getId());
+                    for (int entryId : toDelete) {
+                        dbManager.deletePasswordEntry(entryId);
+                        AuditJournal.record(AuditEvent.Type.DELETED, entryId, "category " + selectedCategory);
                         deletedCount++;
                     }
+                    showSaveStatus();
 
                     categoryList.getSelectionModel().select("All");
                     loadPasswords();
@@ -572,8 +1031,6 @@ public class MainWindow {
                     showError("Error Deleting Category", 
                              "Failed to delete category and its passwords: " + e.getMessage());
                     e.printStackTrace();
-                } finally {
-                    System.gc();
                 }
             }
         });
@@ -587,18 +1044,120 @@ public class MainWindow {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                try {
-                    stage.close();
-                    showLoginScreen();
-                } catch (Exception ex) {
-                    showError("Logout Failed", 
-                        "Failed to log out: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+                returnToLogin();
             }
         });
     }
 
+    private void returnToLogin() {
+        try {
+            idleTimer.stop();
+            Window.getWindows().removeListener(windowWatcher);
+            for (Window window : Window.getWindows()) {
+                window.removeEventFilter(InputEvent.ANY, activityFilter);
+            }
+            dbManager.closeConnection();
+            stage.close();
+            showLoginScreen();
+        } catch (Exception ex) {
+            showError("Logout Failed", 
+                "Failed to log out: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    private void handleQuickUnlockPin() {
+        Dialog<String> pinDialog = new Dialog<>();
+        pinDialog.setTitle("Quick Unlock PIN");
+        pinDialog.setHeaderText("Choose a PIN of 4 to 12 digits");
+        PasswordField pinField = new PasswordField();
+        VBox content = new VBox(10,
+            new Label("When the vault locks, the PIN opens it again without your master password.\n" +
+                      "After " + SessionTicket.MAX_ATTEMPTS + " wrong PINs, or " +
+                      SessionTicket.DEFAULT_LIFETIME.toHours() + " hours, you will need to log in again."),
+            pinField);
+        pinDialog.getDialogPane().setContent(content);
+        pinDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        pinDialog.setResultConverter(button -> button == ButtonType.OK ? pinField.getText() : null);
+
+        pinDialog.showAndWait().ifPresent(pin -> {
+            try {
+                dbManager.enableQuickUnlock(pin);
+                showInfo("Quick Unlock Enabled", "The vault can now be unlocked with your PIN.");
+            } catch (ValidationException | SQLException ex) {
+                showError("Quick Unlock Failed", ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Locks the vault and clears the table. With a quick unlock PIN the window
+     * shows a lock screen; without one the user has to log in again.
+     */
+    private void lockVault() {
+        if (locking || dbManager.isLocked()) {
+            return;
+        }
+        locking = true;
+        idleTimer.stop();
+        passwordList.setVault(ColumnarVault.builder(null).build());
+        VBox lockScreen = createLockScreen();
+        lockScreen.setDisable(true);
+        stage.getScene().setRoot(lockScreen);
+        // Locking waits for background maintenance and writes the vault back, so it runs off the FX thread
+        dbManager.lockInBackground().whenComplete((result, error) -> Platform.runLater(() -> {
+            locking = false;
+            if (error != null || !dbManager.canQuickUnlock()) {
+                returnToLogin();
+                return;
+            }
+            lockScreen.setDisable(false);
+        }));
+    }
+
+    private VBox createLockScreen() {
+        VBox lockScreen = new VBox(15);
+        lockScreen.setAlignment(Pos.CENTER);
+        lockScreen.setPadding(new Insets(40));
+        lockScreen.setStyle("-fx-background-color: white;");
+
+        Label header = new Label("Vault Locked");
+        header.setStyle("""
+            -fx-font-size: 20px;
+            -fx-font-weight: bold;
+            -fx-text-fill: #2C3E50;
+            """);
+        PasswordField pinField = new PasswordField();
+        pinField.setPromptText("PIN");
+        pinField.setMaxWidth(200);
+        Label statusLabel = new Label();
+        statusLabel.setStyle("-fx-text-fill: #E74C3C;");
+        Button unlockButton = createStyledButton("Unlock", false);
+        unlockButton.setMaxWidth(200);
+        unlockButton.setDefaultButton(true);
+        Button loginButton = createStyledButton("Log In With Master Password", false);
+        loginButton.setMaxWidth(200);
+
+        unlockButton.setOnAction(e -> {
+            String pin = pinField.getText();
+            pinField.clear();
+            if (dbManager.quickUnlock(pin)) {
+                stage.getScene().setRoot(mainLayout);
+                loadPasswords();
+                idleTimer.playFromStart();
+            } else if (dbManager.canQuickUnlock()) {
+                statusLabel.setText("Wrong PIN. " + dbManager.getQuickUnlockAttemptsLeft() + " attempts left.");
+            } else {
+                showError("Vault Locked", "The PIN can no longer be used. Please log in with your master password.");
+                returnToLogin();
+            }
+        });
+        loginButton.setOnAction(e -> returnToLogin());
+
+        lockScreen.getChildren().addAll(header, pinField, unlockButton, statusLabel, loginButton);
+        return lockScreen;
+    }
+
     private void showLoginScreen() {
         try {
             Stage loginStage = new Stage();
@@ -635,6 +1194,8 @@ public class MainWindow {
         if (file != null) {
             try {
                 SecretKey masterKey = dbManager.getMasterKey();
+                // The backup copies the file, so it must hold every change first
+                dbManager.writeBack();
                 
                 BackupManager backupManager = new BackupManager(
                     dbManager.getDatabasePath(),
@@ -642,6 +1203,7 @@ public class MainWindow {
                 );
                 
                 backupManager.createBackup(file.getPath());
+                AuditJournal.record(AuditEvent.Type.EXPORTED, 0, "backup " + file.getName());
                 
                 showInfo("Backup Created", 
                     "Database backup has been created successfully!\n" +
@@ -683,18 +1245,12 @@ public class MainWindow {
                             masterKey
                         );
                         
-                        dbManager.closeConnection();
-                        
-                        backupManager.restoreBackup(
-                            file.getPath(),
-                            dbManager.getDatabasePath()
-                        );
+                        backupManager.restoreInto(file.getPath(), dbManager);
+                        AuditJournal.record(AuditEvent.Type.RESTORED, 0, "database from backup " + file.getName());
+                        loadPasswords();
                         
                         showInfo("Restore Successful", 
-                            "Database has been restored successfully!\n" +
-                            "The application will now restart.");
-                        
-                        restartApplication();
+                            "Database has been restored successfully!");
                         
                     } catch (Exception ex) {
                         showError("Restore Failed", 
@@ -706,17 +1262,176 @@ public class MainWindow {
         });
     }
 
-    private void restartApplication() {
-        stage.close();
-        
+    private void handleRotateKey(Button rotateKeyButton) {
+        // Only the key file or recovery code used to log in is kept; every other one is revoked
+        String revoked;
         try {
-            Stage loginStage = new Stage();
-            App app = new App();
-            app.start(loginStage);
-        } catch (Exception e) {
-            showError("Restart Failed", 
-                "Failed to restart application: " + e.getMessage());
-            e.printStackTrace();
+            List<KeySlot> slots = dbManager.getKeySlotsRevokedByRotation();
+            long recoveryCodes = slots.stream().filter(slot -> KeySlot.RECOVERY_CODE.equals(slot.type())).count();
+            revoked = slots.isEmpty()
+                ? "No recovery codes or spare key files are affected."
+                : recoveryCodes + " recovery code(s) and " + (slots.size() - recoveryCodes) +
+                  " key file(s) will stop working\nand must be created again.";
+        } catch (SQLException ex) {
+            revoked = "Recovery codes and spare key files stop working and must be created again.";
+        }
+
+        Alert confirm = new Alert(Alert.AlertType.WARNING);
+        confirm.setTitle("Rotate Encryption Key");
+        confirm.setHeaderText("Re-encrypt all passwords with a new key?");
+        confirm.setContentText(
+            "Your passwords stay available while they are re-encrypted in the background.\n" +
+            "Backups made before the rotation can no longer be restored afterwards,\n" +
+            "so create a new backup when it has finished.\n" +
+            revoked
+        );
+
+        confirm.showAndWait().ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                try {
+                    rotateKeyButton.setDisable(true);
+                    dbManager.rotateDataKey().whenComplete((result, error) -> Platform.runLater(() -> {
+                        rotateKeyButton.setDisable(false);
+                        reloadAfterKeyRotation();
+                        if (error != null) {
+                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                            showError("Key Rotation Failed",
+                                "Failed to re-encrypt passwords: " + cause.getMessage() +
+                                "\nThe rotation will continue the next time you log in.");
+                        } else {
+                            showInfo("Key Rotation Finished",
+                                "All passwords are now encrypted with the new key.");
+                        }
+                    }));
+                } catch (SQLException ex) {
+                    rotateKeyButton.setDisable(false);
+                    showError("Key Rotation Failed",
+                        "Failed to start key rotation: " + ex.getMessage());
+                    ex.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void handleRecoveryCode() {
+        try {
+            String code = dbManager.addRecoveryCode();
+
+            TextField codeField = new TextField(code);
+            codeField.setEditable(false);
+            codeField.setPrefColumnCount(code.length());
+
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Recovery Code");
+            alert.setHeaderText("Write this code down and keep it somewhere safe");
+            VBox content = new VBox(10,
+                new Label("It unlocks your vault without your master password or key file.\n" +
+                          "It will not be shown again."),
+                codeField);
+            alert.getDialogPane().setContent(content);
+            alert.showAndWait();
+        } catch (SQLException ex) {
+            showError("Recovery Code Failed",
+                "Failed to create recovery code: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    private void handleSpareKeyFile() {
+        Dialog<String> passwordDialog = new Dialog<>();
+        passwordDialog.setTitle("Spare Key File");
+        passwordDialog.setHeaderText("Enter your master password to create a spare key file");
+        PasswordField passwordField = new PasswordField();
+        passwordDialog.getDialogPane().setContent(passwordField);
+        passwordDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        passwordDialog.setResultConverter(button -> button == ButtonType.OK ? passwordField.getText() : null);
+
+        passwordDialog.showAndWait().ifPresent(masterPassword -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Choose Location to Save Spare Key File");
+            fileChooser.setInitialFileName("password_manager_spare.key");
+            fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Key Files", "*.key")
+            );
+            File file = fileChooser.showSaveDialog(stage);
+            if (file != null) {
+                try {
+                    dbManager.addSpareKeyFile(masterPassword, file.getAbsolutePath());
+                    showInfo("Spare Key File Created",
+                        "You can now log in with either key file.\n" +
+                        "Location: " + file.getAbsolutePath());
+                } catch (SQLException ex) {
+                    showError("Spare Key File Failed",
+                        "Failed to create spare key file: " + ex.getMessage());
+                    ex.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void handleRestoreEntries() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Backup File");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Password Manager Backup", "*.pmbackup")
+        );
+
+        File file = fileChooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        DatabaseManager backupDb = null;
+        try {
+            BackupManager backupManager = new BackupManager(
+                dbManager.getDatabasePath(),
+                dbManager.getMasterKey()
+            );
+            backupDb = backupManager.openBackup(file.getPath(), dbManager.getCurrentUserId());
+
+            ListView<EntrySummary> entryList = new ListView<>(
+                FXCollections.observableArrayList(backupDb.getEntrySummaries())
+            );
+            entryList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+            entryList.setPrefSize(400, 300);
+
+            Dialog<List<EntrySummary>> dialog = new Dialog<>();
+            dialog.setTitle("Restore Entries");
+            dialog.setHeaderText("Select the entries to copy from the backup");
+            dialog.getDialogPane().setContent(entryList);
+
+            ButtonType restoreButton = new ButtonType("Restore Selected", ButtonBar.ButtonData.OK_DONE);
+            dialog.getDialogPane().getButtonTypes().addAll(restoreButton, ButtonType.CANCEL);
+            dialog.setResultConverter(dialogButton -> dialogButton == restoreButton
+                ? new ArrayList<>(entryList.getSelectionModel().getSelectedItems())
+                : null);
+
+            DatabaseManager source = backupDb;
+            dialog.showAndWait().ifPresent(selected -> {
+                if (selected.isEmpty()) {
+                    return;
+                }
+                List<Integer> entryIds = new ArrayList<>();
+                for (EntrySummary summary : selected) {
+                    entryIds.add(summary.getId());
+                }
+                try {
+                    int copied = dbManager.copyEntriesFrom(source, entryIds);
+                    AuditJournal.record(AuditEvent.Type.RESTORED, 0, copied + " entries from backup " + file.getName());
+                    loadPasswords();
+                    showInfo("Entries Restored", copied + " password(s) were restored from the backup.");
+                } catch (SQLException ex) {
+                    showError("Restore Failed", "Failed to restore entries: " + ex.getMessage());
+                    ex.printStackTrace();
+                }
+            });
+        } catch (Exception ex) {
+            showError("Restore Failed", "Failed to open backup: " + ex.getMessage());
+            ex.printStackTrace();
+        } finally {
+            if (backupDb != null) {
+                backupDb.closeConnection();
+            }
         }
     }
 
@@ -776,6 +1491,7 @@ public class MainWindow {
             if (result.equals("delete")) {
                 try {
                     dbManager.deleteCurrentUser();
+                    dbManager.closeConnection();
                     stage.close();
                     showLoginScreen();
                 } catch (SQLException ex) {
@@ -10,6 +10,8 @@ import com.passwordmanager.model.PasswordEntry;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import com.passwordmanager.security.ClipboardManager;
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.audit.AuditJournal;
 import javafx.application.Platform;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -28,13 +30,16 @@ public class PasswordDetailDialog extends Dialog<PasswordEntry> {
         setTitle("Password Details");
         setHeaderText("View or Edit Password Entry");
         initOwner(owner);
+        AuditJournal.record(AuditEvent.Type.VIEWED, entry.getId(), entry.getTitle());
 
         titleField = new TextField(entry.getTitle());
         usernameField = new TextField(entry.getUsername());
         passwordField = new PasswordField();
         visiblePasswordField = new TextField();
-        passwordField.setText(entry.getPassword());
-        visiblePasswordField.setText(entry.getPassword());
+        // Text controls only take Strings; make one and let both fields share it
+        String password = entry.getPassword();
+        passwordField.setText(password);
+        visiblePasswordField.setText(password);
         urlField = new TextField(entry.getUrl());
         notesArea = new TextArea(entry.getNotes());
         categoryField = new TextField(entry.getCategory());
@@ -91,7 +96,7 @@ public class PasswordDetailDialog extends Dialog<PasswordEntry> {
         grid.add(notesArea, 1, row);
         notesArea.setPrefRowCount(3);
 
-        setupCopyButtons(copyUsernameButton, copyPasswordButton, copyUrlButton);
+        setupCopyButtons(entry, copyUsernameButton, copyPasswordButton, copyUrlButton);
 
         getDialogPane().setContent(grid);
 
@@ -131,19 +136,22 @@ public class PasswordDetailDialog extends Dialog<PasswordEntry> {
         });
     }
 
-    private void setupCopyButtons(Button copyUsernameButton, Button copyPasswordButton, Button copyUrlButton) {
+    private void setupCopyButtons(PasswordEntry entry, Button copyUsernameButton, Button copyPasswordButton, Button copyUrlButton) {
         copyUsernameButton.setOnAction(e -> {
-            ClipboardManager.copyToClipboard(usernameField.getText(), true);
+            ClipboardManager.copyToClipboard(entry.getUsernameSecret(), true);
+            AuditJournal.record(AuditEvent.Type.COPIED, entry.getId(), "username");
             showCopiedNotification("Username copied! Will be cleared in 30 seconds.");
         });
 
         copyPasswordButton.setOnAction(e -> {
-            ClipboardManager.copyToClipboard(passwordField.getText(), true);
+            ClipboardManager.copyToClipboard(entry.getPasswordSecret(), true);
+            AuditJournal.record(AuditEvent.Type.COPIED, entry.getId(), "password");
             showCopiedNotification("Password copied! Will be cleared in 30 seconds.");
         });
 
         copyUrlButton.setOnAction(e -> {
             ClipboardManager.copyToClipboard(urlField.getText(), false);
+            AuditJournal.record(AuditEvent.Type.COPIED, entry.getId(), "url");
             showCopiedNotification("URL copied!");
         });
     }
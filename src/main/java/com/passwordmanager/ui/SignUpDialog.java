@@ -8,6 +8,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Window;
 import javafx.scene.Node;
 import java.io.File;
+import com.passwordmanager.security.KdfParameters;
 
 public class SignUpDialog extends Dialog<SignUpResult> {
     private PasswordField passwordField;
@@ -16,6 +17,9 @@ public class SignUpDialog extends Dialog<SignUpResult> {
     private TextField visibleConfirmPasswordField;
     private TextField keyFilePathField;
     private Button browseButton;
+    private ComboBox<String> kdfComboBox;
+    private static final String KDF_PBKDF2 = "PBKDF2 (compatible)";
+    private static final String KDF_SCRYPT = "scrypt (memory-hard, uses all cores)";
 
     public SignUpDialog(Window owner) {
         setTitle("Create Account");
@@ -28,6 +32,9 @@ public class SignUpDialog extends Dialog<SignUpResult> {
         visibleConfirmPasswordField = new TextField();
         keyFilePathField = new TextField();
         browseButton = new Button("Choose Location");
+        kdfComboBox = new ComboBox<>();
+        kdfComboBox.getItems().addAll(KDF_PBKDF2, KDF_SCRYPT);
+        kdfComboBox.setValue(KDF_PBKDF2);
 
         CheckBox showPasswordsCheckBox = new CheckBox("Show Passwords");
         
@@ -85,13 +92,16 @@ public class SignUpDialog extends Dialog<SignUpResult> {
         grid.add(keyFilePathField, 1, 3);
         grid.add(browseButton, 2, 3);
 
+        grid.add(new Label("Key Derivation:"), 0, 4);
+        grid.add(kdfComboBox, 1, 4);
+
         Label explanationLabel = new Label(
             "A security key file will be generated and saved at the location you choose.\n" +
             "You will need both this file and your master password to log in.\n" +
             "Keep this file safe and secure!"
         );
         explanationLabel.setWrapText(true);
-        grid.add(explanationLabel, 0, 4, 3, 1);
+        grid.add(explanationLabel, 0, 5, 3, 1);
 
         getDialogPane().setContent(grid);
 
@@ -111,7 +121,8 @@ public class SignUpDialog extends Dialog<SignUpResult> {
             if (dialogButton == createButtonType) {
                 return new SignUpResult(
                     passwordField.getText(),
-                    keyFilePathField.getText()
+                    keyFilePathField.getText(),
+                    KDF_SCRYPT.equals(kdfComboBox.getValue()) ? KdfParameters.SCRYPT : KdfParameters.PBKDF2_SHA256
                 );
             }
             return null;
@@ -3,12 +3,15 @@ package com.passwordmanager.ui;
 public class SignUpResult {
     private final String masterPassword;
     private final String keyFilePath;
+    private final String kdfAlgorithm;
 
-    public SignUpResult(String masterPassword, String keyFilePath) {
+    public SignUpResult(String masterPassword, String keyFilePath, String kdfAlgorithm) {
         this.masterPassword = masterPassword;
         this.keyFilePath = keyFilePath;
+        this.kdfAlgorithm = kdfAlgorithm;
     }
 
     public String getMasterPassword() { return masterPassword; }
     public String getKeyFilePath() { return keyFilePath; }
+    public String getKdfAlgorithm() { return kdfAlgorithm; }
 } 
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.passwordmanager.ui;
+
+import com.passwordmanager.model.ColumnarVault;
+import com.passwordmanager.model.VaultRow;
+import java.util.AbstractList;
+import java.util.List;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Exposes the rows of a {@link ColumnarVault} to JavaFX controls. Rows are
+ * created on demand when the control asks for them, so the list itself holds
+ * nothing but the vault.
+ */
+class VaultRowList extends ObservableListBase<VaultRow> {
+    private ColumnarVault vault;
+
+    VaultRowList() {
+        this.vault = ColumnarVault.builder(null).build();
+    }
+
+    ColumnarVault getVault() {
+        return vault;
+    }
+
+    /**
+     * Replaces the displayed vault and notifies listeners that every row changed.
+     */
+    void setVault(ColumnarVault vault) {
+        List<VaultRow> removed = rowsOf(this.vault);
+        this.vault = vault;
+        if (removed.isEmpty() && vault.size() == 0) {
+            return;
+        }
+        beginChange();
+        nextReplace(0, vault.size(), removed);
+        endChange();
+    }
+
+    @Override
+    public VaultRow get(int index) {
+        return vault.row(index);
+    }
+
+    @Override
+    public int size() {
+        return vault.size();
+    }
+
+    private static List<VaultRow> rowsOf(ColumnarVault vault) {
+        return new AbstractList<>() {
+            @Override
+            public VaultRow get(int index) {
+                return vault.row(index);
+            }
+
+            @Override
+            public int size() {
+                return vault.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package com.passwordmanager.audit;
+
+import com.passwordmanager.database.DatabaseManager;
+import org.junit.jupiter.api.*;
+import java.io.File;
+import java.security.SecureRandom;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditJournalTest {
+
+    @Test
+    void testFullRingDropsEventsInsteadOfBlocking() throws Exception {
+        List<AuditEvent> written = Collections.synchronizedList(new ArrayList<>());
+        try (AuditJournal journal = new AuditJournal(events -> written.addAll(events))) {
+            for (int i = 0; i < AuditJournal.CAPACITY; i++) {
+                assertTrue(journal.append(event(i)));
+            }
+            assertFalse(journal.append(event(-1)));
+            assertEquals(1, journal.getDroppedCount());
+
+            journal.flush();
+            assertEquals(AuditJournal.CAPACITY, written.size());
+            assertEquals(0, written.get(0).entryId());
+            assertEquals(AuditJournal.CAPACITY - 1, written.get(written.size() - 1).entryId());
+            assertTrue(journal.append(event(1)), "Flushing should free the ring");
+        }
+        assertEquals(AuditJournal.CAPACITY + 1, written.size(), "Closing should write what is left");
+    }
+
+    @Test
+    void testConcurrentWritersLoseNothing() throws Exception {
+        List<AuditEvent> written = new ArrayList<>();
+        int threads = 4;
+        int perThread = AuditJournal.CAPACITY / threads;
+        try (AuditJournal journal = new AuditJournal(events -> written.addAll(events))) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                writers.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(event(base + i));
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            journal.flush();
+            assertEquals(0, journal.getDroppedCount());
+        }
+
+        assertEquals(threads * perThread, written.size());
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            List<Integer> ids = written.stream().map(AuditEvent::entryId)
+                .filter(id -> id >= base && id < base + perThread).toList();
+            assertEquals(perThread, ids.size());
+            for (int i = 1; i < ids.size(); i++) {
+                assertTrue(ids.get(i) > ids.get(i - 1), "Each writer's events should stay in order");
+            }
+        }
+    }
+
+    @Test
+    void testEventsAreStoredEncryptedPerUser() throws Exception {
+        DatabaseManager dbManager = openVault();
+        try {
+            AuditJournal.record(AuditEvent.Type.VIEWED, 7, "Mail");
+            AuditJournal.record(AuditEvent.Type.COPIED, 7, "password");
+            dbManager.flushAuditJournal();
+
+            assertEquals(1, countRows(dbManager, "SELECT COUNT(*) FROM audit_journal"), "One batch should be one row");
+            assertEquals(0, countRows(dbManager, "SELECT COUNT(*) FROM audit_journal WHERE data LIKE '%Mail%'"));
+
+            List<AuditEvent> events = dbManager.getAuditEvents();
+            assertEquals(List.of(AuditEvent.Type.COPIED, AuditEvent.Type.VIEWED),
+                events.stream().map(AuditEvent::type).toList());
+            assertEquals("Mail", events.get(1).detail());
+        } finally {
+            closeVault(dbManager);
+        }
+    }
+
+    @Test
+    void testJournalRotatesBySize() throws Exception {
+        DatabaseManager dbManager = openVault();
+        try {
+            SecureRandom random = new SecureRandom();
+            byte[] noise = new byte[150];
+            int batches = 30;
+            for (int batch = 0; batch < batches; batch++) {
+                for (int i = 0; i < 1000; i++) {
+                    random.nextBytes(noise);
+                    AuditJournal.record(AuditEvent.Type.VIEWED, batch, Base64.getEncoder().encodeToString(noise));
+                }
+                dbManager.flushAuditJournal();
+            }
+
+            assertTrue(countRows(dbManager, "SELECT SUM(LENGTH(data)) FROM audit_journal")
+                <= DatabaseManager.AUDIT_JOURNAL_MAX_BYTES);
+            assertTrue(countRows(dbManager, "SELECT COUNT(*) FROM audit_journal") < batches,
+                "The oldest batches should have been dropped");
+            assertEquals(batches - 1, dbManager.getAuditEvents().get(0).entryId());
+        } finally {
+            closeVault(dbManager);
+        }
+    }
+
+    private static AuditEvent event(int entryId) {
+        return new AuditEvent(System.currentTimeMillis(), AuditEvent.Type.VIEWED, entryId, "");
+    }
+
+    private static DatabaseManager openVault() throws Exception {
+        new File("passwords.db").delete();
+        DatabaseManager dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser("TestPassword123!"));
+        dbManager.initializeDatabase("TestPassword123!");
+        return dbManager;
+    }
+
+    private static void closeVault(DatabaseManager dbManager) {
+        dbManager.closeConnection();
+        new File("passwords.db").delete();
+    }
+
+    private static int countRows(DatabaseManager dbManager, String sql) throws Exception {
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.getInt(1);
+        }
+    }
+}
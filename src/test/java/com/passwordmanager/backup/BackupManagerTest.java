@@ -0,0 +1,158 @@
+package com.passwordmanager.backup;
+
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.model.EntrySummary;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackupManagerTest {
+    private DatabaseManager dbManager;
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        java.io.File dbFile = new java.io.File("passwords.db");
+        if (dbFile.exists()) {
+            dbFile.delete();
+        }
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        java.io.File dbFile = new java.io.File("passwords.db");
+        if (dbFile.exists()) {
+            dbFile.delete();
+        }
+    }
+
+    @Test
+    void testSelectiveRestore() throws Exception {
+        dbManager.addPasswordEntry(new PasswordEntry("Mail", "alice", "mailpass", "", "", "Work"));
+        dbManager.addPasswordEntry(new PasswordEntry("Bank", "alice", "bankpass", "", "", "Finance"));
+        dbManager.writeBack();
+
+        BackupManager backupManager = new BackupManager(dbManager.getDatabasePath(), dbManager.getMasterKey());
+        String backupPath = tempDir.resolve("backup").toString();
+        backupManager.createBackup(backupPath);
+
+        int bankId = dbManager.getAllPasswords().stream()
+            .filter(entry -> entry.getTitle().equals("Bank"))
+            .findFirst().orElseThrow().getId();
+        dbManager.deletePasswordEntry(bankId);
+        assertEquals(1, dbManager.getAllPasswords().size());
+
+        DatabaseManager backupDb = backupManager.openBackup(backupPath + ".pmbackup", dbManager.getCurrentUserId());
+        try {
+            List<EntrySummary> summaries = backupDb.getEntrySummaries();
+            assertEquals(2, summaries.size(), "Backup should list both entries");
+
+            EntrySummary bank = summaries.stream()
+                .filter(summary -> summary.getTitle().equals("Bank"))
+                .findFirst().orElseThrow();
+            assertEquals(1, dbManager.copyEntriesFrom(backupDb, List.of(bank.getId())));
+        } finally {
+            backupDb.closeConnection();
+        }
+
+        List<PasswordEntry> entries = dbManager.getAllPasswords();
+        assertEquals(2, entries.size(), "Deleted entry should be restored next to the live one");
+        PasswordEntry restored = entries.stream()
+            .filter(entry -> entry.getTitle().equals("Bank"))
+            .findFirst().orElseThrow();
+        assertEquals("bankpass", restored.getPassword());
+        assertEquals("Finance", restored.getCategory());
+    }
+
+    @Test
+    void testSnapshotPathWithQuotes() throws Exception {
+        dbManager.addPasswordEntry(new PasswordEntry("Mail", "alice", "mailpass", "", "", "Work"));
+        dbManager.writeBack();
+
+        Path copy = tempDir.resolve("say \"cheese\"; it's.db");
+        java.nio.file.Files.copy(Path.of(dbManager.getDatabasePath()), copy);
+        DatabaseManager snapshot = DatabaseManager.openSnapshot(copy, dbManager.getMasterKey(), dbManager.getCurrentUserId());
+        try {
+            assertEquals(1, snapshot.getEntrySummaries().size());
+        } finally {
+            snapshot.closeConnection();
+        }
+    }
+
+    @Test
+    void testFailedSnapshotLeavesNoCommitterThread() throws Exception {
+        Path notADatabase = tempDir.resolve("notes.db");
+        java.nio.file.Files.writeString(notADatabase, "not a vault");
+        long committers = countCommitterThreads();
+        assertThrows(java.sql.SQLException.class, () -> DatabaseManager.openSnapshot(notADatabase,
+            dbManager.getMasterKey(), dbManager.getCurrentUserId()));
+        Thread.sleep(100);
+        // Queues of earlier tests may still be shutting down, so the count can only be checked not to grow
+        assertTrue(countCommitterThreads() <= committers, "The snapshot's entry queue should be closed");
+    }
+
+    private static long countCommitterThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("entry-group-commit")).count();
+    }
+
+    @Test
+    void testLiveRestore() throws Exception {
+        dbManager.addPasswordEntry(new PasswordEntry("Mail", "alice", "mailpass", "", "", "Work"));
+        dbManager.writeBack();
+
+        BackupManager backupManager = new BackupManager(dbManager.getDatabasePath(), dbManager.getMasterKey());
+        String backupPath = tempDir.resolve("backup").toString();
+        backupManager.createBackup(backupPath);
+
+        dbManager.addPasswordEntry(new PasswordEntry("Added Later", "bob", "laterpass", "", "", ""));
+        assertEquals(2, dbManager.getAllPasswords().size());
+
+        backupManager.restoreInto(backupPath + ".pmbackup", dbManager);
+
+        List<PasswordEntry> entries = dbManager.getAllPasswords();
+        assertEquals(1, entries.size(), "Restore should replace the live contents");
+        assertEquals("mailpass", entries.get(0).getPassword());
+
+        dbManager.addPasswordEntry(new PasswordEntry("After Restore", "carol", "afterpass", "", "", ""));
+        assertEquals(2, dbManager.getAllPasswords().size(), "Session should stay usable after the restore");
+    }
+
+    @Test
+    void testEntryAddedAfterRestoreGetsAFreeId() throws Exception {
+        dbManager.addPasswordEntry(new PasswordEntry("Mail", "alice", "mailpass", "", "", ""));
+        dbManager.addPasswordEntry(new PasswordEntry("Bank", "alice", "bankpass", "", "", ""));
+        dbManager.writeBack();
+        BackupManager backupManager = new BackupManager(dbManager.getDatabasePath(), dbManager.getMasterKey());
+        String backupPath = tempDir.resolve("backup").toString();
+        backupManager.createBackup(backupPath);
+
+        for (PasswordEntry entry : dbManager.getAllPasswords()) {
+            dbManager.deletePasswordEntry(entry.getId());
+            dbManager.deleteFromTrash(entry.getId());
+        }
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Numbered from an empty vault", "bob", "pass", "", "", ""));
+
+        backupManager.restoreInto(backupPath + ".pmbackup", dbManager);
+        dbManager.addPasswordEntry(new PasswordEntry("After Restore", "carol", "afterpass", "", "", ""));
+        dbManager.flushEntryChanges();
+
+        assertEquals(List.of("After Restore", "Bank", "Mail"),
+            dbManager.getAllPasswords().stream().map(PasswordEntry::getTitle).sorted().toList());
+    }
+}
@@ -0,0 +1,111 @@
+package com.passwordmanager.benchmark;
+
+import com.passwordmanager.database.VaultSession;
+import com.passwordmanager.model.PasswordEntry;
+import com.passwordmanager.security.SecretBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and discards a vault of decrypted entries, comparing the previous
+ * finalizer-based entries with session-owned entries whose secrets are
+ * released deterministically. Both variants build the same entries from the
+ * same prepared field values, so only the entry lifecycle differs. Run with
+ * the GC profiler to compare GC counts and time spent in GC:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.passwordmanager.benchmark.EntryLifecycleBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx512m"})
+public class EntryLifecycleBenchmark {
+
+    @Param({"10000"})
+    private int entries;
+
+    private String[] titles;
+    private String[] usernames;
+    private String[] passwords;
+    private String[] notes;
+
+    @Setup
+    public void prepare() {
+        titles = new String[entries];
+        usernames = new String[entries];
+        passwords = new String[entries];
+        notes = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            titles[i] = "Title " + i;
+            usernames[i] = "user" + i;
+            passwords[i] = "password" + i;
+            notes[i] = "notes " + i;
+        }
+    }
+
+    @Benchmark
+    public int finalizableEntries() {
+        List<FinalizableEntry> vault = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            vault.add(new FinalizableEntry(titles[i], usernames[i], passwords[i], notes[i]));
+        }
+        return vault.size();
+    }
+
+    @Benchmark
+    public int sessionOwnedEntries() {
+        try (VaultSession session = new VaultSession()) {
+            for (int i = 0; i < entries; i++) {
+                PasswordEntry entry = new PasswordEntry();
+                entry.setTitle(titles[i]);
+                entry.setUsernameSecret(SecretBuffer.of(usernames[i]));
+                entry.setPasswordSecret(SecretBuffer.of(passwords[i]));
+                entry.setNotesSecret(SecretBuffer.of(notes[i]));
+                session.track(entry);
+            }
+            return session.size();
+        }
+    }
+
+    /**
+     * Shape of PasswordEntry before it dropped finalize().
+     */
+    static class FinalizableEntry {
+        private String title;
+        private String username;
+        private String password;
+        private String notes;
+
+        FinalizableEntry(String title, String username, String password, String notes) {
+            this.title = title;
+            this.username = username;
+            this.password = password;
+            this.notes = notes;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        protected void finalize() throws Throwable {
+            try {
+                title = null;
+                username = null;
+                password = null;
+                notes = null;
+            } finally {
+                super.finalize();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(EntryLifecycleBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
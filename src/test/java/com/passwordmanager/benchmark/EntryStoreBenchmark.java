@@ -0,0 +1,134 @@
+package com.passwordmanager.benchmark;
+
+import com.passwordmanager.database.EntryStore;
+import com.passwordmanager.database.LogStructuredEntryStore;
+import com.passwordmanager.database.SqliteEntryStore;
+import com.passwordmanager.database.StoredEntry;
+import com.passwordmanager.security.Encryptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Compares insert and update latency of the SQLite and the log-structured
+ * entry stores. Every write is synced, as in the application.
+ *
+ * The JVM cannot slow down SQLite's own file I/O, so to measure a slow device
+ * pass a directory on it, such as a USB stick or a device-mapper "delay"
+ * target. Without one a temporary directory is used. On Linux the bytes and
+ * write calls each store issues are reported as well, from /proc/self/io:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.passwordmanager.benchmark.EntryStoreBenchmark -Dexec.args=/media/stick
+ */
+public class EntryStoreBenchmark {
+    private static final int PREFILL = 1_000;
+    private static final int OPERATIONS = 300;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = args.length > 0 ? Files.createTempDirectory(Path.of(args[0]), "store-benchmark")
+                                   : Files.createTempDirectory("store-benchmark");
+        Encryptor encryptor = new Encryptor(Encryptor.generateDEK());
+        System.out.println("Directory: " + dir);
+
+        Path db = dir.resolve("benchmark.db");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE passwords (
+                        id INTEGER PRIMARY KEY, user_id INTEGER NOT NULL, title TEXT NOT NULL, username TEXT,
+                        password TEXT NOT NULL, url TEXT, notes TEXT, category TEXT,
+                        last_modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP, key_version INTEGER NOT NULL DEFAULT 0,
+                        deleted_at INTEGER)
+                """);
+            }
+            run("sqlite", new SqliteEntryStore(connection, 1), encryptor);
+        }
+        Path log = dir.resolve("benchmark.log");
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            run("log", store, encryptor);
+            store.awaitCompaction();
+            System.out.printf("log compactions: %d, final size %d KB%n", store.getCompactionCount(), store.getLogSize() / 1024);
+        }
+        System.out.printf("file sizes: sqlite %d KB, log %d KB%n", Files.size(db) / 1024, Files.size(log) / 1024);
+
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void run(String name, EntryStore store, Encryptor encryptor) throws Exception {
+        Random random = new Random(1);
+        store.insertAll(IntStream.range(0, PREFILL)
+            .mapToObj(i -> entry(encryptor, i, random)).toList());
+        List<StoredEntry> existing = store.list();
+
+        long[] io = readIo();
+        long[] inserts = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            StoredEntry entry = entry(encryptor, PREFILL + i, random);
+            long start = System.nanoTime();
+            store.insert(entry);
+            inserts[i] = System.nanoTime() - start;
+        }
+        long[] afterInserts = readIo();
+
+        long[] updates = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            int id = existing.get(random.nextInt(existing.size())).id();
+            StoredEntry entry = entry(encryptor, i, random).withId(id);
+            long start = System.nanoTime();
+            store.update(entry);
+            updates[i] = System.nanoTime() - start;
+        }
+        long[] afterUpdates = readIo();
+
+        report(name + " insert", inserts, io, afterInserts);
+        report(name + " update", updates, afterInserts, afterUpdates);
+    }
+
+    private static void report(String label, long[] nanos, long[] ioBefore, long[] ioAfter) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        String io = ioBefore == null ? "" : String.format(", %5.1f KB and %4.1f write calls per op",
+            (ioAfter[0] - ioBefore[0]) / 1024.0 / nanos.length, (ioAfter[1] - ioBefore[1]) / (double) nanos.length);
+        System.out.printf("%-14s p50 %7.2f ms, p99 %7.2f ms%s%n", label,
+            sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6, io);
+    }
+
+    /**
+     * @return Bytes written and write calls so far, or null where /proc/self/io is missing
+     */
+    private static long[] readIo() {
+        try {
+            long[] io = new long[2];
+            for (String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+                if (line.startsWith("wchar:")) {
+                    io[0] = Long.parseLong(line.substring(6).trim());
+                } else if (line.startsWith("syscw:")) {
+                    io[1] = Long.parseLong(line.substring(6).trim());
+                }
+            }
+            return io;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static StoredEntry entry(Encryptor encryptor, int i, Random random) {
+        try {
+            return new StoredEntry(0, encryptor.encrypt("Account " + i), encryptor.encrypt("user" + i + "@example.com"),
+                encryptor.encrypt(Long.toHexString(random.nextLong())), encryptor.encrypt("https://site" + i + ".example.com"),
+                encryptor.encrypt("note ".repeat(random.nextInt(40))), encryptor.encrypt("Work"), 0, 0);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.passwordmanager.benchmark;
+
+import com.passwordmanager.security.Encryptor;
+import com.passwordmanager.security.SecretBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Compares note-heavy vaults with notes stored as they are and compressed
+ * before encryption. Reports the database file size and the time to load and
+ * decrypt every note:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.passwordmanager.benchmark.NoteCompressionBenchmark
+ */
+public class NoteCompressionBenchmark {
+    private static final int LOAD_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Encryptor encryptor = new Encryptor(Encryptor.generateDEK());
+        Path dir = Files.createTempDirectory("note-benchmark");
+        for (int entries : new int[] {1_000, 10_000}) {
+            for (boolean compressed : new boolean[] {false, true}) {
+                Path db = dir.resolve(entries + (compressed ? "-compressed.db" : "-plain.db"));
+                write(db, entries, encryptor, compressed);
+                long bestNanos = Long.MAX_VALUE;
+                for (int round = 0; round < LOAD_ROUNDS; round++) {
+                    bestNanos = Math.min(bestNanos, load(db, encryptor));
+                }
+                System.out.printf("%-10s %6d entries: %8d KB, load %5d ms%n",
+                    compressed ? "compressed" : "plain", entries, Files.size(db) / 1024, bestNanos / 1_000_000);
+                Files.delete(db);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void write(Path db, int entries, Encryptor encryptor, boolean compressed) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE passwords (id INTEGER PRIMARY KEY, notes TEXT)");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO passwords (id, notes) VALUES (?, ?)")) {
+                for (int i = 0; i < entries; i++) {
+                    SecretBuffer note = SecretBuffer.of(note(i));
+                    pstmt.setInt(1, i);
+                    pstmt.setString(2, compressed ? encryptor.encryptCompressed(note) : encryptor.encrypt(note));
+                    pstmt.addBatch();
+                    note.close();
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    private static long load(Path db, Encryptor encryptor) throws Exception {
+        long start = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT notes FROM passwords")) {
+            while (rs.next()) {
+                encryptor.decryptSecret(rs.getString("notes")).close();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * An SSH config and a list of recovery codes, a couple of kilobytes that
+     * differ per entry like real notes would
+     */
+    private static String note(int i) {
+        StringBuilder note = new StringBuilder();
+        for (int host = 0; host < 8; host++) {
+            note.append("Host app").append(i).append('-').append(host).append('\n')
+                .append("    HostName 10.").append(i % 256).append('.').append(host).append(".12\n")
+                .append("    User deploy\n")
+                .append("    Port 22\n")
+                .append("    IdentityFile ~/.ssh/id_ed25519\n")
+                .append("    ProxyJump bastion\n");
+        }
+        note.append("recovery codes:\n");
+        for (int code = 0; code < 10; code++) {
+            note.append(String.format("%04x-%04x%n", (i * 31 + code * 7919) & 0xffff, (i * 17 + code * 104729) & 0xffff));
+        }
+        return note.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package com.passwordmanager.benchmark;
+
+import com.passwordmanager.model.ColumnarVault;
+import com.passwordmanager.model.PasswordEntry;
+import com.passwordmanager.security.Encryptor;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Measures the memory retained by an unlocked vault held as a list of decrypted
+ * PasswordEntry objects versus a ColumnarVault. Reports heap and off-heap
+ * (direct buffer) memory separately:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.passwordmanager.benchmark.VaultMemoryBenchmark
+ */
+public class VaultMemoryBenchmark {
+    private static final int CATEGORIES = 20;
+    private static final int HOSTS = 500;
+
+    public static void main(String[] args) throws Exception {
+        Encryptor encryptor = new Encryptor(Encryptor.generateDEK());
+        for (int entries : new int[] {10_000, 100_000}) {
+            List<String[]> rows = generate(entries, encryptor);
+
+            measure("entries  " + entries, () -> toEntries(rows, encryptor));
+            measure("columnar " + entries, () -> toVault(rows, encryptor));
+        }
+    }
+
+    /**
+     * Builds rows as they are stored: id, title, url, category, then the
+     * encrypted username, password and notes.
+     */
+    private static List<String[]> generate(int entries, Encryptor encryptor) throws Exception {
+        List<String[]> rows = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            rows.add(new String[] {
+                Integer.toString(i),
+                "Account " + i,
+                "https://host" + (i % HOSTS) + ".example.com/login",
+                "Category " + (i % CATEGORIES),
+                encryptor.encrypt("user" + i + "@example.com"),
+                encryptor.encrypt("P@ssw0rd-" + i + "-xyz"),
+                encryptor.encrypt(i % 4 == 0 ? "Security questions and recovery codes for account " + i : "")
+            });
+        }
+        return rows;
+    }
+
+    private static Object toEntries(List<String[]> rows, Encryptor encryptor) {
+        List<PasswordEntry> entries = new ArrayList<>(rows.size());
+        try {
+            for (String[] row : rows) {
+                PasswordEntry entry = new PasswordEntry();
+                entry.setId(Integer.parseInt(row[0]));
+                entry.setTitle(new String(row[1]));
+                entry.setUrl(new String(row[2]));
+                entry.setCategory(new String(row[3]));
+                entry.setUsernameSecret(encryptor.decryptSecret(row[4]));
+                entry.setPasswordSecret(encryptor.decryptSecret(row[5]));
+                entry.setNotesSecret(encryptor.decryptSecret(row[6]));
+                entry.setLastModified(System.currentTimeMillis());
+                entries.add(entry);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return entries;
+    }
+
+    private static Object toVault(List<String[]> rows, Encryptor encryptor) {
+        ColumnarVault.Builder builder = ColumnarVault.builder(encryptor);
+        for (String[] row : rows) {
+            // Copies stand in for the fresh Strings a ResultSet returns
+            builder.add(Integer.parseInt(row[0]), new String(row[1]), new String(row[2]), new String(row[3]),
+                System.currentTimeMillis(), new String(row[4]), new String(row[5]), new String(row[6]));
+        }
+        return builder.build();
+    }
+
+    private static void measure(String label, Supplier<Object> factory) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        Object vault = factory.get();
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%-16s heap %8.2f MB  direct %8.2f MB  (%s)%n",
+            label, heap / 1e6, direct / 1e6, vault.getClass().getSimpleName());
+        if (vault instanceof List<?> list) {
+            for (Object entry : list) {
+                ((PasswordEntry) entry).secureClear();
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                // Gives the Cleaner thread time to release direct buffers
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,193 @@
+package com.passwordmanager.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntryStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testBothStoresFollowTheRotationContract() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE passwords (
+                        id INTEGER PRIMARY KEY, user_id INTEGER NOT NULL, title TEXT NOT NULL, username TEXT,
+                        password TEXT NOT NULL, url TEXT, notes TEXT, category TEXT,
+                        last_modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP, key_version INTEGER NOT NULL DEFAULT 0,
+                        deleted_at INTEGER)
+                """);
+            }
+            for (EntryStore store : List.of(new SqliteEntryStore(connection, 1),
+                                            LogStructuredEntryStore.open(tempDir.resolve("contract.log")))) {
+                try (store) {
+                    long before = System.currentTimeMillis();
+                    int first = store.insert(entry("a", 0));
+                    store.insertAll(List.of(entry("b", 0), entry("c", 0)));
+                    assertEquals(3, store.list().size());
+                    assertTrue(store.get(first).lastModified() >= before,
+                        "An entry without a time should get the time of the write in milliseconds");
+                    StoredEntry summary = store.listSummaries().get(0);
+                    assertEquals("a", summary.title());
+                    assertEquals("Work", summary.category());
+                    assertNull(summary.password(), "Summaries should leave out the secrets");
+
+                    List<StoredEntry> stale = store.listOnOtherVersion(1, 10);
+                    assertEquals(3, stale.size());
+                    // An edit made during the rotation already uses the new key and must not be overwritten
+                    assertTrue(store.update(entry("edited", 1).withId(first)));
+                    store.replaceOnOtherVersion(stale.stream().map(e -> onVersion(e, 1)).toList(), 1);
+
+                    assertEquals("edited", store.get(first).title());
+                    assertTrue(store.listOnOtherVersion(1, 10).isEmpty());
+                    assertTrue(store.delete(first));
+                    assertFalse(store.delete(first));
+                    assertNull(store.get(first));
+                    assertFalse(store.update(entry("gone", 1).withId(first)));
+                    store.deleteAll();
+                    assertTrue(store.list().isEmpty());
+
+                    store.apply(List.of(EntryMutation.insert(entry("batched", 1).withId(100)),
+                                        EntryMutation.update(entry("batched v2", 1).withId(100)),
+                                        EntryMutation.delete(101)));
+                    assertEquals(List.of("batched v2"), store.list().stream().map(StoredEntry::title).toList());
+                    assertEquals(101, store.nextId());
+
+                    assertFalse(store.isInTrash(100));
+                    assertTrue(store.trash(100, 1000));
+                    assertFalse(store.trash(100, 2000));
+                    assertTrue(store.isInTrash(100));
+                    assertNull(store.get(100));
+                    assertTrue(store.list().isEmpty());
+                    assertFalse(store.update(entry("hidden", 1).withId(100)));
+                    assertEquals(List.of(100), store.listTrashedBefore(1001, 10));
+                    assertTrue(store.listTrashedBefore(1000, 10).isEmpty());
+                    assertEquals(1000, store.listTrash().get(0).deletedAt());
+                    // A rotation must re-encrypt entries in the trash too
+                    assertEquals(1, store.listOnOtherVersion(2, 10).size());
+                    assertTrue(store.restore(100));
+                    assertFalse(store.restore(100));
+                    assertFalse(store.isInTrash(100));
+                    assertEquals("batched v2", store.get(100).title());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testLogIsRebuiltWithAndWithoutCheckpoint() throws Exception {
+        Path log = tempDir.resolve("vault.log");
+        int kept;
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            kept = store.insert(entry("kept", 0));
+            int removed = store.insert(entry("removed", 0));
+            store.update(entry("kept v2", 0).withId(kept));
+            store.delete(removed);
+        }
+        assertTrue(Files.exists(log.resolveSibling("vault.log.idx")));
+
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            assertEquals(List.of("kept v2"), store.list().stream().map(StoredEntry::title).toList());
+            store.insert(entry("after checkpoint", 0));
+        }
+        Files.delete(log.resolveSibling("vault.log.idx"));
+
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            assertEquals(List.of("kept v2", "after checkpoint"), store.list().stream().map(StoredEntry::title).toList());
+            assertEquals(kept + 3, store.insert(entry("new", 0)), "Ids of deleted entries should not be reused");
+        }
+    }
+
+    @Test
+    void testTornWriteIsDropped() throws Exception {
+        Path log = tempDir.resolve("torn.log");
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            store.insert(entry("complete", 0));
+            store.insertAll(List.of(entry("half", 0), entry("written", 0)));
+        }
+        Files.delete(log.resolveSibling("torn.log.idx"));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            assertEquals(List.of("complete"), store.list().stream().map(StoredEntry::title).toList(),
+                "A batch cut short should be dropped as a whole");
+            store.insert(entry("next", 0));
+        }
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            assertEquals(2, store.list().size());
+        }
+    }
+
+    @Test
+    void testCompactionReclaimsSupersededVersions() throws Exception {
+        Path log = tempDir.resolve("compact.log");
+        String notes = "n".repeat(2000);
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            int id = store.insert(entry("edited", 0));
+            int other = store.insert(entry("untouched", 0));
+            int trashed = store.insert(entry("trashed", 0));
+            store.trash(trashed, 1000);
+            for (int i = 0; i < 200; i++) {
+                store.update(new StoredEntry(id, "edited " + i, "u", "p", "", notes, "", 1L, 0));
+                store.awaitCompaction();
+            }
+            assertTrue(store.getCompactionCount() > 0);
+            assertTrue(store.getLogSize() < 200 * notes.length() / 2, "The log should not keep every version");
+            assertEquals("edited 199", store.get(id).title());
+            assertEquals("untouched", store.get(other).title());
+            assertEquals(1000, store.listTrash().get(0).deletedAt(), "Compaction should keep the trash");
+        }
+        Files.delete(log.resolveSibling("compact.log.idx"));
+        try (LogStructuredEntryStore store = LogStructuredEntryStore.open(log)) {
+            assertEquals(List.of("edited 199", "untouched"), store.list().stream().map(StoredEntry::title).toList());
+            assertEquals(List.of("trashed"), store.listTrash().stream().map(t -> t.entry().title()).toList());
+        }
+    }
+
+    @Test
+    void testTextModificationTimesAreMigratedToMillis() throws Exception {
+        new java.io.File("passwords.db").delete();
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            assertTrue(dbManager.createUser("TestPassword123!"));
+            dbManager.initializeDatabase("TestPassword123!");
+            dbManager.addPasswordEntry(new com.passwordmanager.model.PasswordEntry("Old", "u", "p", "", "", ""));
+            dbManager.flushEntryChanges();
+            try (Statement stmt = dbManager.getConnection().createStatement()) {
+                // How earlier versions stamped entries that had never been edited
+                stmt.executeUpdate("UPDATE passwords SET last_modified = '2024-01-02 03:04:05'");
+            }
+            dbManager.closeConnection();
+
+            dbManager = new DatabaseManager();
+            dbManager.initializeDatabase("TestPassword123!");
+            assertEquals(java.time.Instant.parse("2024-01-02T03:04:05Z").toEpochMilli(),
+                dbManager.getAllPasswords().get(0).getLastModified());
+        } finally {
+            dbManager.closeConnection();
+            new java.io.File("passwords.db").delete();
+        }
+    }
+
+    private static StoredEntry onVersion(StoredEntry e, int keyVersion) {
+        return new StoredEntry(e.id(), e.title(), e.username(), e.password(), e.url(), e.notes(), e.category(),
+            e.lastModified(), keyVersion);
+    }
+
+    private static StoredEntry entry(String title, int keyVersion) {
+        return new StoredEntry(0, title, "user", "secret", "https://example.com", "notes", "Work", 0, keyVersion);
+    }
+}
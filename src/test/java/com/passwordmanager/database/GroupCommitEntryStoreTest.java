@@ -0,0 +1,181 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupCommitEntryStoreTest {
+    private Connection connection;
+    private SqliteEntryStore sqlite;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE passwords (
+                    id INTEGER PRIMARY KEY, user_id INTEGER NOT NULL, title TEXT NOT NULL, username TEXT,
+                    password TEXT NOT NULL, url TEXT, notes TEXT, category TEXT,
+                    last_modified TIMESTAMP DEFAULT CURRENT_TIMESTAMP, key_version INTEGER NOT NULL DEFAULT 0,
+                    deleted_at INTEGER)
+            """);
+        }
+        sqlite = new SqliteEntryStore(connection, 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void testBurstOfEditsIsCommittedAsOneBatch() throws Exception {
+        try (GroupCommitEntryStore store = new GroupCommitEntryStore(sqlite, lock)) {
+            List<Integer> ids = new ArrayList<>();
+            // Holding the read lock keeps the committer out, as an edit in progress does
+            lock.readLock().lock();
+            try {
+                for (int i = 0; i < 20; i++) {
+                    ids.add(store.insert(entry("entry " + i)));
+                }
+                for (int id : ids.subList(0, 5)) {
+                    assertTrue(store.update(entry("edited").withId(id)));
+                }
+                assertTrue(store.delete(ids.get(19)));
+            } finally {
+                lock.readLock().unlock();
+            }
+            assertTrue(sqlite.list().isEmpty(), "Nothing should be committed while the batch is open");
+
+            store.flush();
+            GroupCommitEntryStore.Stats stats = store.getStats();
+            assertEquals(1, stats.batches());
+            assertEquals(26, stats.changes());
+            assertEquals(26, stats.largestBatch());
+            assertEquals(19, sqlite.list().size());
+            assertEquals("edited", sqlite.get(ids.get(0)).title());
+        }
+    }
+
+    @Test
+    void testReadsSeeQueuedChanges() throws Exception {
+        int existing = sqlite.insert(entry("existing"));
+        try (GroupCommitEntryStore store = new GroupCommitEntryStore(sqlite, lock)) {
+            lock.readLock().lock();
+            try {
+                int added = store.insert(entry("added"));
+                assertTrue(added > existing, "New entries should get ids no stored entry has");
+                assertTrue(store.update(entry("added v2").withId(added)));
+                assertTrue(store.delete(existing));
+                assertFalse(store.delete(existing));
+                assertFalse(store.update(entry("missing").withId(added + 1)));
+
+                assertNull(store.get(existing));
+                assertEquals("added v2", store.get(added).title());
+                assertEquals(List.of("added v2"), store.list().stream().map(StoredEntry::title).toList());
+                assertEquals(List.of("existing"), sqlite.list().stream().map(StoredEntry::title).toList());
+                assertEquals(3, store.getQueuedCount());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        assertEquals(List.of("added v2"), sqlite.list().stream().map(StoredEntry::title).toList(),
+            "Closing should commit what is queued");
+    }
+
+    @Test
+    void testDurabilityFutureCompletesAfterTheWindow() throws Exception {
+        try (GroupCommitEntryStore store = new GroupCommitEntryStore(sqlite, lock)) {
+            assertTrue(store.whenDurable().isDone(), "Nothing queued is trivially durable");
+            int id = store.insert(entry("saved"));
+            var durable = store.whenDurable();
+            assertFalse(durable.isDone());
+
+            durable.get(5, TimeUnit.SECONDS);
+            assertNotNull(sqlite.get(id), "The entry should be stored once the future completes");
+            assertEquals(0, store.getQueuedCount());
+        }
+    }
+
+    @Test
+    void testChangeThatKeepsFailingIsSetAside() throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                CREATE TRIGGER reject_poison BEFORE INSERT ON passwords WHEN NEW.title = 'poison'
+                BEGIN SELECT RAISE(ABORT, 'rejected'); END
+            """);
+        }
+        try (GroupCommitEntryStore store = new GroupCommitEntryStore(sqlite, lock)) {
+            lock.readLock().lock();
+            try {
+                store.insert(entry("before"));
+                store.insert(entry("poison"));
+                store.insert(entry("after"));
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // Each failed attempt hands out a new future for the retry
+            Throwable error = null;
+            for (int attempt = 0; attempt < GroupCommitEntryStore.MAX_COMMIT_ATTEMPTS; attempt++) {
+                ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> store.whenDurable().get(5, TimeUnit.SECONDS));
+                error = failure.getCause();
+                if (error instanceof GroupCommitEntryStore.ChangesSetAsideException) {
+                    break;
+                }
+            }
+            GroupCommitEntryStore.ChangesSetAsideException setAside =
+                assertInstanceOf(GroupCommitEntryStore.ChangesSetAsideException.class, error);
+            assertEquals(List.of("poison"), setAside.getChanges().stream().map(change -> change.entry().title()).toList());
+            assertEquals(setAside.getChanges(), store.getSetAside());
+            assertEquals(GroupCommitEntryStore.MAX_COMMIT_ATTEMPTS, store.getStats().failedCommits());
+
+            assertEquals(0, store.getQueuedCount());
+            assertTrue(store.whenDurable().isDone(), "Nothing should be left to retry");
+            assertEquals(List.of("before", "after"), sqlite.list().stream().map(StoredEntry::title).toList());
+
+            int later = store.insert(entry("later"));
+            store.whenDurable().get(5, TimeUnit.SECONDS);
+            assertNotNull(sqlite.get(later), "Later changes should be saved again");
+        }
+    }
+
+    @Test
+    void testLockingCommitsQueuedChanges() throws Exception {
+        new File("passwords.db").delete();
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            assertTrue(dbManager.createUser("TestPassword123!"));
+            dbManager.initializeDatabase("TestPassword123!");
+            PasswordEntry entry = new PasswordEntry("Queued", "user", "secret", "", "", "");
+            dbManager.addPasswordEntry(entry);
+            assertTrue(entry.getId() > 0, "The id should be known before the entry is committed");
+
+            dbManager.lock();
+            try (Statement stmt = dbManager.getConnection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM passwords")) {
+                assertEquals(1, rs.getInt(1));
+            }
+            assertTrue(dbManager.whenEntryChangesDurable().isDone());
+        } finally {
+            dbManager.closeConnection();
+            new File("passwords.db").delete();
+        }
+    }
+
+    private static StoredEntry entry(String title) {
+        return new StoredEntry(0, title, "user", "secret", "https://example.com", "notes", "Work", 0, 0);
+    }
+}
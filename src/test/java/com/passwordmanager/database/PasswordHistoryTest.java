@@ -0,0 +1,122 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Consumer;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHistoryTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbManager.closeConnection();
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testPriorVersionsAreRebuiltFromChangedFields() throws Exception {
+        int id = addEntry("Mail", "alice", "first");
+        edit(id, entry -> entry.setPassword("second"));
+        edit(id, entry -> entry.setUsername("alice2"));
+        edit(id, entry -> entry.setPassword("third"));
+
+        List<PasswordEntry> history = dbManager.getPasswordHistory(id);
+        assertEquals(3, history.size());
+        assertEquals(List.of("second", "second", "first"), history.stream().map(PasswordEntry::getPassword).toList());
+        assertEquals(List.of("alice2", "alice", "alice"), history.stream().map(PasswordEntry::getUsername).toList());
+        assertTrue(history.stream().allMatch(version -> version.getTitle().equals("Mail")));
+
+        assertEquals(3, countRows("SELECT COUNT(*) FROM password_history WHERE title IS NULL AND notes IS NULL"),
+            "Unchanged fields should not be stored");
+        assertEquals(1, countRows("SELECT COUNT(*) FROM password_history WHERE username IS NOT NULL"));
+    }
+
+    @Test
+    void testHistoryIsCappedPerEntry() throws Exception {
+        int id = addEntry("Bank", "bob", "v0");
+        int other = addEntry("Other", "carol", "x0");
+        for (int i = 1; i <= DatabaseManager.PASSWORD_HISTORY_LIMIT + 5; i++) {
+            int version = i;
+            edit(id, entry -> entry.setPassword("v" + version));
+        }
+        edit(other, entry -> entry.setPassword("x1"));
+        edit(other, entry -> entry.setTitle("Other"));
+
+        List<PasswordEntry> history = dbManager.getPasswordHistory(id);
+        assertEquals(DatabaseManager.PASSWORD_HISTORY_LIMIT, history.size());
+        assertEquals("v14", history.get(0).getPassword());
+        assertEquals("v5", history.get(history.size() - 1).getPassword());
+        assertEquals(1, dbManager.getPasswordHistory(other).size(), "Saving without changes should add no version");
+    }
+
+    @Test
+    void testHistorySurvivesKeyRotationAndIsErasedWithTheEntry() throws Exception {
+        int id = addEntry("Shop", "dave", "old");
+        edit(id, entry -> entry.setPassword("new"));
+
+        dbManager.rotateDataKey().join();
+        assertEquals(0, countRows("SELECT COUNT(*) FROM password_history WHERE key_version = 0"));
+        assertEquals("old", dbManager.getPasswordHistory(id).get(0).getPassword());
+
+        dbManager.deletePasswordEntry(id);
+        assertEquals(1, countRows("SELECT COUNT(*) FROM password_history"), "History should stay while in the trash");
+        dbManager.deleteFromTrash(id);
+        assertEquals(0, countRows("SELECT COUNT(*) FROM password_history"));
+    }
+
+    @Test
+    void testHistoryIsOnlyStoredWithItsUpdate() throws Exception {
+        int id = addEntry("Forum", "erin", "kept");
+        edit(id, entry -> entry.setPassword("saved"));
+        dbManager.flushEntryChanges();
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("""
+                CREATE TRIGGER reject_update BEFORE UPDATE OF password ON passwords
+                BEGIN SELECT RAISE(ABORT, 'read-only'); END
+            """);
+        }
+
+        edit(id, entry -> entry.setPassword("lost"));
+        assertThrows(java.sql.SQLException.class, () -> dbManager.flushEntryChanges());
+        assertEquals(1, countRows("SELECT COUNT(*) FROM password_history"),
+            "A version should not be stored for an update that did not land");
+
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("DROP TRIGGER reject_update");
+        }
+    }
+
+    private void edit(int id, Consumer<PasswordEntry> edit) throws Exception {
+        PasswordEntry entry = dbManager.getPasswordEntry(id);
+        edit.accept(entry);
+        entry.updateLastModified();
+        dbManager.updatePasswordEntry(entry);
+    }
+
+    private int addEntry(String title, String username, String password) throws Exception {
+        PasswordEntry entry = new PasswordEntry(title, username, password, "", "", "");
+        dbManager.addPasswordEntry(entry);
+        return entry.getId();
+    }
+
+    private int countRows(String sql) throws Exception {
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.model.DeletedEntrySummary;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrashTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dbManager.closeConnection();
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testDeletedEntryCanBeRestoredWithItsAttachments() throws Exception {
+        int id = addEntry("Mistake");
+        dbManager.addAttachment(id, "note.txt", new ByteArrayInputStream("kept".getBytes(StandardCharsets.UTF_8)));
+
+        dbManager.deletePasswordEntry(id);
+        assertTrue(dbManager.getAllPasswords().isEmpty());
+        assertNull(dbManager.getPasswordEntry(id));
+        List<DeletedEntrySummary> trash = dbManager.getTrash();
+        assertEquals(1, trash.size());
+        assertEquals("Mistake", trash.get(0).getTitle());
+
+        assertTrue(dbManager.restoreFromTrash(id));
+        assertEquals("secret", dbManager.getPasswordEntry(id).getPassword());
+        assertEquals(1, dbManager.getAttachments(id).size());
+        assertTrue(dbManager.getTrash().isEmpty());
+    }
+
+    @Test
+    void testOnlyExpiredEntriesArePurged() throws Exception {
+        int expired = addEntry("Expired");
+        int recent = addEntry("Recent");
+        dbManager.deletePasswordEntry(expired);
+        dbManager.deletePasswordEntry(recent);
+        dbManager.flushEntryChanges();
+        long longAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(DatabaseManager.TRASH_RETENTION_DAYS + 1);
+        try (PreparedStatement pstmt = dbManager.getConnection().prepareStatement(
+                "UPDATE passwords SET deleted_at = ? WHERE id = ?")) {
+            pstmt.setLong(1, longAgo);
+            pstmt.setInt(2, expired);
+            pstmt.executeUpdate();
+        }
+
+        assertEquals(1, dbManager.purgeExpiredTrash());
+        assertEquals(0, countRows("SELECT COUNT(*) FROM passwords WHERE id = " + expired));
+        assertEquals(List.of("Recent"), dbManager.getTrash().stream().map(DeletedEntrySummary::getTitle).toList());
+    }
+
+    @Test
+    void testEmptyingTheTrashErasesEntriesAndAttachments() throws Exception {
+        int id = addEntry("Gone");
+        dbManager.addAttachment(id, "file.bin", new ByteArrayInputStream(new byte[100_000]));
+        addEntry("Stays");
+        dbManager.deletePasswordEntry(id);
+
+        assertEquals(1, dbManager.emptyTrash());
+        assertTrue(dbManager.getTrash().isEmpty());
+        assertEquals(1, countRows("SELECT COUNT(*) FROM passwords"));
+        assertEquals(0, countRows("SELECT COUNT(*) FROM attachment_chunks"));
+        assertFalse(dbManager.restoreFromTrash(id));
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA secure_delete")) {
+            assertEquals(0, rs.getInt(1), "secure_delete should only be on while purging");
+        }
+    }
+
+    @Test
+    void testOnlyEntriesInTheTrashCanBeErased() throws Exception {
+        int live = addEntry("Live");
+        dbManager.addAttachment(live, "file.bin", new ByteArrayInputStream(new byte[10]));
+
+        assertFalse(dbManager.deleteFromTrash(live));
+        assertEquals("secret", dbManager.getPasswordEntry(live).getPassword());
+        assertEquals(1, dbManager.getAttachments(live).size());
+
+        dbManager.deletePasswordEntry(live);
+        assertTrue(dbManager.deleteFromTrash(live));
+        assertTrue(dbManager.getTrash().isEmpty());
+
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        assertThrows(java.sql.SQLException.class, () -> dbManager.deletePasswordEntry(live));
+    }
+
+    @Test
+    void testFailedEraseKeepsAttachmentsAndHistory() throws Exception {
+        int id = addEntry("Kept");
+        dbManager.addAttachment(id, "file.bin", new ByteArrayInputStream(new byte[1000]));
+        PasswordEntry edited = dbManager.getPasswordEntry(id);
+        edited.setPassword("changed");
+        dbManager.updatePasswordEntry(edited);
+        dbManager.deletePasswordEntry(id);
+        dbManager.flushEntryChanges();
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("CREATE TRIGGER keep_entries BEFORE DELETE ON passwords BEGIN SELECT RAISE(ABORT, 'locked'); END");
+        }
+
+        assertThrows(java.sql.SQLException.class, () -> dbManager.deleteFromTrash(id));
+        assertEquals(1, countRows("SELECT COUNT(*) FROM attachments WHERE entry_id = " + id),
+            "Attachments should only go with their entry");
+        assertEquals(1, countRows("SELECT COUNT(*) FROM password_history WHERE entry_id = " + id),
+            "History should only go with its entry");
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("DROP TRIGGER keep_entries");
+        }
+    }
+
+    private int addEntry(String title) throws Exception {
+        PasswordEntry entry = new PasswordEntry(title, "user", "secret", "", "", "");
+        dbManager.addPasswordEntry(entry);
+        return entry.getId();
+    }
+
+    private int countRows(String sql) throws Exception {
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.getInt(1);
+        }
+    }
+}
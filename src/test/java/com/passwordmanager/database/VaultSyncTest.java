@@ -0,0 +1,168 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.audit.AuditEvent;
+import com.passwordmanager.model.Attachment;
+import com.passwordmanager.model.DeletedEntrySummary;
+import com.passwordmanager.model.PasswordEntry;
+import com.passwordmanager.security.Encryptor;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultSyncTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private static final Path STICK = Path.of("stick_passwords.db");
+    private DatabaseManager dbManager;
+    private DatabaseManager stick;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new File("passwords.db").delete();
+        Files.deleteIfExists(STICK);
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        for (int i = 0; i < 200; i++) {
+            addEntry(dbManager, "Entry " + i);
+        }
+        dbManager.flushEntryChanges();
+        Files.copy(Path.of("passwords.db"), STICK, StandardCopyOption.REPLACE_EXISTING);
+        stick = DatabaseManager.openForSync(STICK, dbManager.getMasterKey(), dbManager.getCurrentUserId());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (stick != null) {
+            stick.closeConnection();
+        }
+        dbManager.closeConnection();
+        new File("passwords.db").delete();
+        Files.deleteIfExists(STICK);
+    }
+
+    @Test
+    void testChangesFlowBothWaysAndOnlyChangedLeavesAreCompared() throws Exception {
+        edit(dbManager, 1, "edited here", System.currentTimeMillis());
+        int added = addEntry(stick, "Added on the stick");
+        stick.deletePasswordEntry(150);
+
+        VaultSync.Report report = VaultSync.synchronize(dbManager, stick);
+        assertEquals(2, report.copiedToLocal());
+        assertEquals(1, report.copiedToRemote());
+        assertTrue(report.leavesCompared() <= 3, "Leaves without changes should be skipped");
+
+        assertEquals("edited here", stick.getPasswordEntry(1).getPassword());
+        assertEquals("Added on the stick", dbManager.getPasswordEntry(idOf(dbManager, "Added on the stick")).getTitle());
+        assertEquals(added, idOf(stick, "Added on the stick"));
+        assertNull(dbManager.getPasswordEntry(150));
+        assertEquals(List.of(150), dbManager.getTrash().stream().map(DeletedEntrySummary::getId).toList());
+
+        VaultSync.Report again = VaultSync.synchronize(dbManager, stick);
+        assertFalse(again.changedAnything());
+        assertEquals(0, again.leavesCompared());
+    }
+
+    @Test
+    void testConflictKeepsTheNewerVersionAndTheOtherInHistory() throws Exception {
+        VaultSync.synchronize(dbManager, stick);
+        long now = System.currentTimeMillis();
+        edit(dbManager, 5, "older local change", now + 1_000);
+        edit(stick, 5, "newer stick change", now + 2_000);
+
+        VaultSync.Report report = VaultSync.synchronize(dbManager, stick);
+        assertEquals(1, report.conflicts().size());
+        VaultSync.Conflict conflict = report.conflicts().get(0);
+        assertEquals(5, conflict.entryId());
+        assertFalse(conflict.keptLocal());
+
+        assertEquals("newer stick change", dbManager.getPasswordEntry(5).getPassword());
+        assertEquals("older local change", dbManager.getPasswordHistory(5).get(0).getPassword());
+        assertTrue(dbManager.getAuditEvents().stream().anyMatch(event ->
+            event.type() == AuditEvent.Type.SYNC_CONFLICT && event.entryId() == 5));
+    }
+
+    @Test
+    void testEntriesAddedOnBothSidesAreAllKeptWithTheirAttachmentsAndHistory() throws Exception {
+        int local = addEntry(dbManager, "Added here");
+        int remote = addEntry(stick, "Added on the stick");
+        assertEquals(local, remote, "Both copies hand out the same next id");
+        edit(stick, remote, "second password", System.currentTimeMillis());
+        byte[] content = new byte[100 * 1024 + 3];
+        new java.util.Random(3).nextBytes(content);
+        stick.addAttachment(remote, "key.pem", new ByteArrayInputStream(content));
+        dbManager.addAttachment(local, "notes.txt", new ByteArrayInputStream("here".getBytes(StandardCharsets.UTF_8)));
+
+        VaultSync.Report report = VaultSync.synchronize(dbManager, stick);
+        assertEquals(1, report.copiedToLocal());
+        assertEquals(1, report.copiedToRemote());
+        assertEquals(2, report.attachmentsCopied());
+        assertTrue(report.conflicts().isEmpty(), "Different entries should not be taken for one");
+
+        for (DatabaseManager copy : List.of(dbManager, stick)) {
+            assertEquals(202, copy.getAllPasswords().size());
+            int here = idOf(copy, "Added here");
+            int there = idOf(copy, "Added on the stick");
+            assertNotEquals(here, there);
+            assertEquals("secret", copy.getPasswordEntry(here).getPassword());
+            assertEquals("second password", copy.getPasswordEntry(there).getPassword());
+            assertEquals(List.of("secret"), copy.getPasswordHistory(there).stream().map(PasswordEntry::getPassword).toList());
+            assertTrue(copy.getPasswordHistory(here).isEmpty());
+
+            List<Attachment> attachments = copy.getAttachments(there);
+            assertEquals(List.of("key.pem"), attachments.stream().map(Attachment::getName).toList());
+            try (InputStream in = copy.openAttachment(attachments.get(0).getId())) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+            assertEquals(List.of("notes.txt"), copy.getAttachments(here).stream().map(Attachment::getName).toList());
+        }
+
+        assertFalse(VaultSync.synchronize(dbManager, stick).changedAnything());
+    }
+
+    @Test
+    void testAttachmentAddedToAnUnchangedEntryIsCopied() throws Exception {
+        VaultSync.synchronize(dbManager, stick);
+        stick.addAttachment(7, "scan.pdf", new ByteArrayInputStream(new byte[10]));
+
+        VaultSync.Report report = VaultSync.synchronize(dbManager, stick);
+        assertEquals(0, report.copiedToLocal());
+        assertEquals(0, report.copiedToRemote());
+        assertEquals(1, report.attachmentsCopied());
+        assertEquals(List.of("scan.pdf"), dbManager.getAttachments(7).stream().map(Attachment::getName).toList());
+        assertFalse(VaultSync.synchronize(dbManager, stick).changedAnything());
+    }
+
+    @Test
+    void testVaultWithAnotherKeyIsRefused() throws Exception {
+        stick.closeConnection();
+        stick = null;
+        assertThrows(SQLException.class, () ->
+            DatabaseManager.openForSync(STICK, Encryptor.generateDEK(), dbManager.getCurrentUserId()));
+    }
+
+    private static int addEntry(DatabaseManager manager, String title) throws Exception {
+        PasswordEntry entry = new PasswordEntry(title, "user", "secret", "", "", "");
+        manager.addPasswordEntry(entry);
+        return entry.getId();
+    }
+
+    private static int idOf(DatabaseManager manager, String title) throws Exception {
+        return manager.getAllPasswords().stream().filter(entry -> entry.getTitle().equals(title))
+            .mapToInt(PasswordEntry::getId).findFirst().orElseThrow();
+    }
+
+    private static void edit(DatabaseManager manager, int id, String password, long modified) throws Exception {
+        PasswordEntry entry = manager.getPasswordEntry(id);
+        entry.setPassword(password);
+        entry.setLastModified(modified);
+        manager.updatePasswordEntry(entry);
+    }
+}
@@ -0,0 +1,147 @@
+package com.passwordmanager.database;
+
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkingCopyTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new File("passwords.db").delete();
+        new WorkingCopy(Path.of("passwords.db"), WorkingCopy.Mode.LOCAL_FILE).discard();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        new File("passwords.db").delete();
+        new WorkingCopy(Path.of("passwords.db"), WorkingCopy.Mode.LOCAL_FILE).discard();
+        try (var files = Files.list(Path.of("."))) {
+            for (Path file : files.filter(f -> f.getFileName().toString().startsWith("passwords-unsynced-")).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void testChangesReachTheStickOnlyWhenWrittenBack() throws Exception {
+        dbManager = openAccount(WorkingCopy.Mode.LOCAL_FILE);
+        Path localCopy = dbManager.getWorkingCopy().getLocalPath();
+        dbManager.writeBack();
+        assertEquals(1, countEntriesOnStick());
+
+        dbManager.addPasswordEntry(new PasswordEntry("Second", "user", "secret", "", "", ""));
+        dbManager.addPasswordEntry(new PasswordEntry("Third", "user", "secret", "", "", ""));
+        assertEquals(1, countEntriesOnStick(), "Changes should stay on the working copy until written back");
+
+        dbManager.lock();
+        assertEquals(3, countEntriesOnStick(), "Locking should write back");
+        dbManager.lock();
+        assertEquals(2, dbManager.getWorkingCopy().getWriteBackCount(), "Nothing changed, so nothing should be written");
+
+        dbManager.closeConnection();
+        dbManager = null;
+        assertFalse(Files.exists(localCopy), "The local copy should be removed after a clean exit");
+    }
+
+    @Test
+    void testUnsavedChangesAreRecoveredAfterACrash() throws Exception {
+        dbManager = openAccount(WorkingCopy.Mode.LOCAL_FILE);
+        dbManager.writeBack();
+        dbManager.addPasswordEntry(new PasswordEntry("Unsaved", "user", "secret", "", "", ""));
+        crash();
+
+        dbManager = new DatabaseManager(WorkingCopy.Mode.LOCAL_FILE);
+        assertEquals(2, countEntriesOnStick(), "The changes should be written back at the next start");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertEquals(2, dbManager.getAllPasswords().size());
+    }
+
+    @Test
+    void testStickChangedElsewhereIsKept() throws Exception {
+        dbManager = openAccount(WorkingCopy.Mode.LOCAL_FILE);
+        dbManager.writeBack();
+        dbManager.addPasswordEntry(new PasswordEntry("Local", "user", "secret", "", "", ""));
+        crash();
+        try (Connection stick = DriverManager.getConnection("jdbc:sqlite:passwords.db");
+             Statement stmt = stick.createStatement()) {
+            stmt.executeUpdate("DELETE FROM passwords");
+        }
+
+        dbManager = new DatabaseManager(WorkingCopy.Mode.LOCAL_FILE);
+        assertEquals(0, countEntriesOnStick(), "The stick's own change should win");
+        try (var files = Files.list(Path.of("."))) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().startsWith("passwords-unsynced-")).count(),
+                "The working copy should be set aside instead of dropped");
+        }
+    }
+
+    @Test
+    void testMemoryCopyIsWrittenBackOnClose() throws Exception {
+        dbManager = openAccount(WorkingCopy.Mode.MEMORY);
+        assertNull(dbManager.getWorkingCopy().getLocalPath());
+        assertFalse(Files.exists(Path.of("passwords.db")), "A new vault reaches the stick at its first write-back");
+
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+    }
+
+    @Test
+    void testStickPathWithQuotesIsNotPartOfTheStatement(@TempDir Path tempDir) throws Exception {
+        Path stick = tempDir.resolve("it's \"mine\"; DROP TABLE t.db");
+        WorkingCopy first = new WorkingCopy(stick, WorkingCopy.Mode.MEMORY);
+        try (Connection copy = first.open(); Statement stmt = copy.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE t (v TEXT)");
+            stmt.executeUpdate("INSERT INTO t VALUES ('kept')");
+            assertTrue(first.writeBack(copy));
+        }
+        assertTrue(Files.exists(stick));
+
+        try (Connection copy = new WorkingCopy(stick, WorkingCopy.Mode.MEMORY).open();
+             Statement stmt = copy.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT v FROM t")) {
+            assertEquals("kept", rs.getString(1));
+        }
+    }
+
+    private DatabaseManager openAccount(WorkingCopy.Mode mode) throws Exception {
+        DatabaseManager manager = new DatabaseManager(mode);
+        assertTrue(manager.createUser(TEST_MASTER_PASSWORD));
+        manager.initializeDatabase(TEST_MASTER_PASSWORD);
+        manager.addPasswordEntry(new PasswordEntry("First", "user", "secret", "", "", ""));
+        return manager;
+    }
+
+    /**
+     * Drops the connection without writing back, as if the process died
+     */
+    private void crash() throws Exception {
+        // Changes still queued for a group commit are lost in a crash; these tests are about committed ones
+        dbManager.whenEntryChangesDurable().get();
+        dbManager.getConnection().close();
+        dbManager = null;
+    }
+
+    private int countEntriesOnStick() throws Exception {
+        try (Connection stick = DriverManager.getConnection("jdbc:sqlite:passwords.db");
+             Statement stmt = stick.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM passwords")) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.passwordmanager.model;
+
+import com.passwordmanager.security.Encryptor;
+import com.passwordmanager.security.SecretBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarVaultTest {
+    private Encryptor encryptor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        encryptor = new Encryptor(Encryptor.generateDEK());
+    }
+
+    @Test
+    void testRowsAreSortedAndDecryptedOnAccess() throws Exception {
+        ColumnarVault vault = ColumnarVault.builder(encryptor)
+            .add(7, "Mail", "https://mail.example.com/inbox", "Work", 200L,
+                encryptor.encrypt("alice"), encryptor.encrypt("hunter2"), encryptor.encrypt("note"))
+            .add(3, "Bank", "https://bank.example.com", "Finance", 100L,
+                encryptor.encrypt("bob"), encryptor.encrypt("s3cret"), null)
+            .build();
+
+        assertEquals(2, vault.size());
+        assertEquals("Bank", vault.getTitle(0));
+        assertEquals(3, vault.getId(0));
+        assertEquals("https://bank.example.com", vault.getUrl(0));
+        assertEquals("https://mail.example.com/inbox", vault.getUrl(1));
+        assertEquals(200L, vault.getLastModified(1));
+        assertEquals(1, vault.indexOf(7));
+        assertEquals(-1, vault.indexOf(42));
+
+        try (SecretBuffer password = vault.decryptPassword(1);
+             SecretBuffer notes = vault.decryptNotes(0)) {
+            assertEquals("hunter2", password.asString());
+            assertTrue(notes.isEmpty());
+        }
+        assertEquals("alice", vault.row(1).getUsername());
+    }
+
+    @Test
+    void testRepeatedValuesAreStoredOnce() throws Exception {
+        ColumnarVault.Builder builder = ColumnarVault.builder(encryptor);
+        for (int i = 0; i < 100; i++) {
+            builder.add(i, "Entry " + i, "https://example.com/page" + i, i % 2 == 0 ? "Work" : "Home", i,
+                null, encryptor.encrypt("pw" + i), null);
+        }
+        ColumnarVault vault = builder.build();
+
+        assertEquals(2, vault.getCategories().size());
+        assertSame(vault.getCategory(0), vault.getCategory(2));
+        assertEquals("https://example.com/page5", vault.getUrl(vault.indexOf(5)));
+        assertEquals("Home", vault.row(vault.indexOf(5)).getCategory());
+    }
+
+    @Test
+    void testRowEquality() throws Exception {
+        ColumnarVault vault = ColumnarVault.builder(encryptor)
+            .add(1, "One", null, null, 0L, null, encryptor.encrypt("pw"), null)
+            .build();
+
+        assertEquals(vault.row(0), vault.row(0));
+        assertEquals("", vault.getUrl(0));
+        assertTrue(vault.getCategories().isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+package com.passwordmanager.security;
+
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.model.Attachment;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttachmentTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+    private int entryId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Server", "root", "secret", "", "", ""));
+        entryId = dbManager.getAllPasswords().get(0).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testChunkedRoundTripSurvivesKeyRotation() throws Exception {
+        byte[] content = new byte[200 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        int id = dbManager.addAttachment(entryId, "id_ed25519", new ByteArrayInputStream(content));
+        int empty = dbManager.addAttachment(entryId, "empty.txt", new ByteArrayInputStream(new byte[0]));
+
+        List<Attachment> attachments = dbManager.getAttachments(entryId);
+        assertEquals(2, attachments.size());
+        assertEquals("id_ed25519", attachments.get(0).getName());
+        assertEquals(content.length, attachments.get(0).getSize());
+        assertEquals(4, countRows("SELECT COUNT(*) FROM attachment_chunks WHERE attachment_id = " + id),
+            "The file should be stored as 64 KB chunks");
+        assertArrayEquals(content, read(id));
+        assertArrayEquals(new byte[0], read(empty));
+
+        dbManager.rotateDataKey().join();
+
+        assertEquals("id_ed25519", dbManager.getAttachments(entryId).get(0).getName());
+        assertArrayEquals(content, read(id));
+        assertArrayEquals(new byte[0], read(empty));
+    }
+
+    @Test
+    void testReorderedOrTruncatedChunksAreRejected() throws Exception {
+        byte[] content = new byte[3 * 64 * 1024];
+        new Random(7).nextBytes(content);
+        int id = dbManager.addAttachment(entryId, "backup.tar", new ByteArrayInputStream(content));
+
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE attachment_chunks SET chunk_index = -1 WHERE attachment_id = " + id + " AND chunk_index = 0");
+            stmt.executeUpdate("UPDATE attachment_chunks SET chunk_index = 0 WHERE attachment_id = " + id + " AND chunk_index = 1");
+            stmt.executeUpdate("UPDATE attachment_chunks SET chunk_index = 1 WHERE attachment_id = " + id + " AND chunk_index = -1");
+        }
+        assertThrows(IOException.class, () -> read(id), "Swapped chunks should fail authentication");
+
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("DELETE FROM attachment_chunks WHERE attachment_id = " + id + " AND chunk_index = 2");
+            stmt.executeUpdate("UPDATE attachments SET chunk_count = 2 WHERE id = " + id);
+        }
+        assertThrows(IOException.class, () -> read(id), "A file cut short should not pass as complete");
+    }
+
+    @Test
+    void testDeletingEntryRemovesItsAttachments() throws Exception {
+        dbManager.addAttachment(entryId, "notes.pdf", new ByteArrayInputStream(new byte[100 * 1024]));
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE attachments SET chunk_count = NULL");
+        }
+        assertTrue(dbManager.getAttachments(entryId).isEmpty(), "An unfinished upload should be hidden");
+
+        dbManager.addAttachment(entryId, "notes.pdf", new ByteArrayInputStream(new byte[100 * 1024]));
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertEquals(1, countRows("SELECT COUNT(*) FROM attachments"), "Unfinished uploads should be cleaned up on open");
+
+        dbManager.deletePasswordEntry(entryId);
+        assertEquals(1, countRows("SELECT COUNT(*) FROM attachments"), "Attachments should stay with an entry in the trash");
+        dbManager.deleteFromTrash(entryId);
+        assertEquals(0, countRows("SELECT COUNT(*) FROM attachments"));
+        assertEquals(0, countRows("SELECT COUNT(*) FROM attachment_chunks"));
+        assertThrows(java.sql.SQLException.class,
+            () -> dbManager.addAttachment(entryId, "late.txt", new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    void testFailedUploadLeavesNothingBehind() throws Exception {
+        InputStream failing = new InputStream() {
+            private int remaining = 200 * 1024;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Disk removed");
+                }
+                remaining--;
+                return 0;
+            }
+        };
+        assertThrows(IOException.class, () -> dbManager.addAttachment(entryId, "big.iso", failing));
+        assertEquals(0, countRows("SELECT COUNT(*) FROM attachments"));
+        assertEquals(0, countRows("SELECT COUNT(*) FROM attachment_chunks"), "Chunks already written should roll back");
+        assertTrue(dbManager.getConnection().getAutoCommit());
+    }
+
+    private byte[] read(int attachmentId) throws Exception {
+        try (InputStream in = dbManager.openAttachment(attachmentId)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private int countRows(String sql) throws Exception {
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             var rs = stmt.executeQuery(sql)) {
+            return rs.getInt(1);
+        }
+    }
+}
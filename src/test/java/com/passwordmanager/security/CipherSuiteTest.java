@@ -0,0 +1,58 @@
+package com.passwordmanager.security;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CipherSuiteTest {
+
+    @Test
+    void testEverySuiteDecryptsWithAnyEncryptor() throws Exception {
+        SecretKey dek = Encryptor.generateDEK();
+        for (CipherSuite suite : CipherSuite.values()) {
+            Encryptor writer = new Encryptor(dek, suite);
+            String ciphertext = writer.encrypt("correct horse battery staple");
+            assertEquals(suite.id(), Base64.getDecoder().decode(ciphertext)[2], "The header should name the suite");
+
+            for (CipherSuite readerSuite : CipherSuite.values()) {
+                Encryptor reader = new Encryptor(dek, readerSuite);
+                assertEquals("correct horse battery staple", reader.decrypt(ciphertext));
+                assertEquals("correct horse battery staple", reader.decryptSecret(ciphertext).asString());
+            }
+        }
+    }
+
+    @Test
+    void testLegacyCiphertextStillDecrypts() throws Exception {
+        SecretKey dek = Encryptor.generateDEK();
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        // Force the worst case: a legacy nonce that looks like a header
+        iv[0] = (byte) 0xCE;
+        iv[1] = 1;
+        iv[2] = 2;
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, dek, new GCMParameterSpec(128, iv));
+        byte[] body = cipher.doFinal("old row".getBytes(Charset.defaultCharset()));
+        byte[] legacy = new byte[iv.length + body.length];
+        System.arraycopy(iv, 0, legacy, 0, iv.length);
+        System.arraycopy(body, 0, legacy, iv.length, body.length);
+
+        Encryptor encryptor = new Encryptor(dek, CipherSuite.CHACHA20_POLY1305);
+        assertEquals("old row", encryptor.decrypt(Base64.getEncoder().encodeToString(legacy)));
+    }
+
+    @Test
+    void testHeaderIsAuthenticated() throws Exception {
+        SecretKey dek = Encryptor.generateDEK();
+        byte[] ciphertext = new Encryptor(dek, CipherSuite.AES_GCM).encryptBytes("secret".getBytes());
+        ciphertext[2] = (byte) CipherSuite.CHACHA20_POLY1305.id();
+        assertThrows(AEADBadTagException.class, () -> new Encryptor(dek).decryptBytes(ciphertext));
+    }
+}
@@ -61,7 +61,9 @@ public class InputValidatorTest {
         assertTrue(InputValidator.isValidNotes("Some notes about this account."));
         assertTrue(InputValidator.isValidNotes("")); 
         assertTrue(InputValidator.isValidNotes(null)); 
-        assertFalse(InputValidator.isValidNotes("a".repeat(1001))); 
+        assertTrue(InputValidator.isValidNotes("a".repeat(1001)));
+        assertTrue(InputValidator.isValidNotes("Host build\n    HostName 10.0.0.7\n    IdentityFile ~/.ssh/id_ed25519\n    SetEnv TERM=xterm"));
+        assertFalse(InputValidator.isValidNotes("a".repeat(InputValidator.MAX_NOTES_LENGTH + 1)));
     }
 
     @Test
@@ -92,4 +94,22 @@ public class InputValidatorTest {
             "Valid-Category"
         ));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testSecretsAreSanitizedLikeStrings() {
+        String raw = "it's a \\path\u0000with\nbreaks";
+        try (SecretBuffer secret = SecretBuffer.of(raw)) {
+            SecretBuffer sanitized = InputValidator.sanitizeSecret(secret);
+            assertEquals(InputValidator.sanitizeInput(raw), sanitized.asString());
+            sanitized.close();
+        }
+        try (SecretBuffer clean = SecretBuffer.of("nothing to escape")) {
+            assertSame(clean, InputValidator.sanitizeSecret(clean));
+        }
+
+        assertThrows(InputValidator.ValidationException.class, () ->
+            InputValidator.validatePasswordEntry("Title", SecretBuffer.of(" \t "), SecretBuffer.of("secret")));
+        assertDoesNotThrow(() ->
+            InputValidator.validatePasswordEntry("Title", SecretBuffer.of("user"), SecretBuffer.of("secret")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.passwordmanager.security;
+
+import org.junit.jupiter.api.Test;
+import javax.crypto.SecretKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KekCacheTest {
+    private static final String PASSWORD = "TestPassword123!";
+    private final KdfParameters params = KdfParameters.legacy(PasswordHasher.generateSalt());
+
+    @Test
+    void testCachedKeyMatchesDirectDerivation() throws Exception {
+        KekCache cache = new KekCache();
+        cache.derive(PASSWORD, params);
+
+        SecretKey cached = cache.get(PASSWORD, params);
+        assertNotNull(cached);
+        assertArrayEquals(Encryptor.deriveKEK(PASSWORD, params).getEncoded(), cached.getEncoded());
+        assertNotSame(cached, cache.get(PASSWORD, params), "Callers should get their own copy");
+    }
+
+    @Test
+    void testOnlyExactPasswordAndParametersMatch() {
+        KekCache cache = new KekCache();
+        cache.derive(PASSWORD, params);
+
+        assertNull(cache.get("OtherPassword123!", params));
+        assertNull(cache.get(PASSWORD, params.withIterations(params.iterations() + 1)));
+        assertNull(cache.get(PASSWORD, params.withSalt(PasswordHasher.generateSalt())));
+    }
+
+    @Test
+    void testChangingPasswordDiscardsPreviousKeys() {
+        KekCache cache = new KekCache();
+        cache.derive(PASSWORD, params);
+        cache.derive("OtherPassword123!", params);
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(PASSWORD, params));
+        assertNotNull(cache.get("OtherPassword123!", params));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("OtherPassword123!", params));
+    }
+}
@@ -0,0 +1,130 @@
+package com.passwordmanager.security;
+
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+import javax.crypto.SecretKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyFileTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testHkdfMatchesRfc5869() throws Exception {
+        HexFormat hex = HexFormat.of();
+        byte[] ikm = new byte[22];
+        Arrays.fill(ikm, (byte) 0x0b);
+        byte[] okm = Hkdf.derive(ikm, hex.parseHex("000102030405060708090a0b0c"),
+            hex.parseHex("f0f1f2f3f4f5f6f7f8f9"), 42);
+        assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865",
+            hex.formatHex(okm));
+    }
+
+    @Test
+    void testRoundTripAndDamageDetection() throws Exception {
+        KdfParameters params = new KdfParameters(KdfParameters.PBKDF2_SHA256, 1000, "c2FsdA==");
+        KeyFile keyFile = KeyFile.generate(params);
+        Path path = tempDir.resolve("vault.key");
+        keyFile.write(path);
+
+        assertTrue(KeyFile.isKeyFile(path));
+        KeyFile read = KeyFile.read(path);
+        assertEquals(keyFile.lookupId(), read.lookupId());
+        assertEquals(params, read.getParameters());
+        SecretKey passwordKek = Encryptor.generateDEK();
+        assertArrayEquals(keyFile.slotKek(passwordKek).getEncoded(), read.slotKek(passwordKek).getEncoded());
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> KeyFile.read(path), "A damaged key file should fail its MAC");
+    }
+
+    @Test
+    void testNewAccountUnlocksThroughKeyFileSlot() throws Exception {
+        String keyFile = tempDir.resolve("vault.key").toString();
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD, KdfParameters.PBKDF2_SHA256, keyFile));
+        assertTrue(KeyFile.isKeyFile(Path.of(keyFile)), "New accounts should get a version 2 key file");
+
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        assertEquals(1, dbManager.getKeySlots().size());
+        dbManager.addPasswordEntry(new PasswordEntry("Account", "user", "secret", "", "", ""));
+
+        reopen();
+        assertFalse(dbManager.unlockWithKeyFile("WrongPassword123!", keyFile));
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+
+        reopen();
+        String otherKeyFile = tempDir.resolve("other.key").toString();
+        KeyFile.generate(KdfParameters.legacy("c2FsdA==")).write(Path.of(otherKeyFile));
+        assertFalse(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, otherKeyFile),
+            "A version 2 key file without a slot should be rejected");
+    }
+
+    @Test
+    void testEditedKeyFileWithRecomputedMacDoesNotUnlock() throws Exception {
+        Path keyFile = tempDir.resolve("vault.key");
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD, KdfParameters.PBKDF2_SHA256, keyFile.toString()));
+
+        // The MAC is keyed from the file itself, so whoever edits the material can sign it again
+        byte[] bytes = Files.readAllBytes(keyFile);
+        int saltLength = bytes[34] & 0xff;
+        int materialOffset = 35 + saltLength + 1;
+        int macOffset = bytes.length - 32;
+        bytes[materialOffset] ^= 1;
+        byte[] macKey = Hkdf.derive(Arrays.copyOfRange(bytes, materialOffset, macOffset), new byte[0],
+            "passwordmanager key file mac".getBytes(java.nio.charset.StandardCharsets.US_ASCII), 32);
+        javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
+        mac.init(new javax.crypto.spec.SecretKeySpec(macKey, "HmacSHA256"));
+        mac.update(bytes, 0, macOffset);
+        System.arraycopy(mac.doFinal(), 0, bytes, macOffset, 32);
+        Files.write(keyFile, bytes);
+
+        assertNotNull(KeyFile.read(keyFile), "A re-signed file passes the MAC");
+        assertFalse(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile.toString()),
+            "The edited material should not unwrap the DEK");
+    }
+
+    @Test
+    void testVersionOneKeyFileStillUnlocks() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        String keyFile = tempDir.resolve("legacy.key").toString();
+        SecurityKeyManager.generateKeyFile(TEST_MASTER_PASSWORD, keyFile);
+        assertFalse(KeyFile.isKeyFile(Path.of(keyFile)));
+
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        reopen();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+    }
+
+    private void reopen() {
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+    }
+}
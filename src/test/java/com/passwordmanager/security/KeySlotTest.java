@@ -0,0 +1,142 @@
+package com.passwordmanager.security;
+
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeySlotTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private DatabaseManager dbManager;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testKeyFileIsEnrolledOnFirstLogin() throws Exception {
+        String keyFile = createAccount();
+
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile), "Legacy login should enroll the key file");
+        List<KeySlot> slots = dbManager.getKeySlots();
+        assertEquals(1, slots.size());
+        assertEquals(KeySlot.PASSWORD_KEY_FILE, slots.get(0).type());
+
+        reopen();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile), "The key slot should unlock");
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+
+        reopen();
+        assertFalse(dbManager.unlockWithKeyFile("WrongPassword123!", keyFile));
+
+        String otherKeyFile = tempDir.resolve("other.key").toString();
+        SecurityKeyManager.generateKeyFile(TEST_MASTER_PASSWORD, otherKeyFile);
+        assertFalse(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, otherKeyFile),
+            "A key file that was never enrolled should be rejected once one is");
+    }
+
+    @Test
+    void testRecoveryCodeAndSpareKeyFile() throws Exception {
+        String keyFile = createAccount();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        String code = dbManager.addRecoveryCode();
+        String spareKeyFile = tempDir.resolve("spare.key").toString();
+        dbManager.addSpareKeyFile(TEST_MASTER_PASSWORD, spareKeyFile);
+        assertEquals(3, dbManager.getKeySlots().size());
+
+        reopen();
+        assertTrue(dbManager.unlockWithRecoveryCode(code.toLowerCase().replace("-", " ")),
+            "Recovery codes should ignore case and separators");
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+
+        reopen();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, spareKeyFile));
+        KeySlot recoverySlot = dbManager.getKeySlots().stream()
+            .filter(slot -> KeySlot.RECOVERY_CODE.equals(slot.type()))
+            .findFirst().orElseThrow();
+        assertTrue(dbManager.revokeKeySlot(recoverySlot.id()));
+
+        reopen();
+        assertFalse(dbManager.unlockWithRecoveryCode(code), "A revoked slot should no longer unlock");
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile), "Other slots should be unaffected");
+    }
+
+    @Test
+    void testDataKeyRotationKeepsOnlyTheLoginSlot() throws Exception {
+        String keyFile = createAccount();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        String code = dbManager.addRecoveryCode();
+
+        dbManager.rotateDataKey().join();
+
+        assertEquals(1, dbManager.getKeySlots().size());
+        reopen();
+        assertFalse(dbManager.unlockWithRecoveryCode(code));
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+    }
+
+    @Test
+    void testResumedRotationKeepsTheKeyFileSlot() throws Exception {
+        String keyFile = createAccount();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        dbManager.addRecoveryCode();
+        assertEquals(List.of(KeySlot.RECOVERY_CODE),
+            dbManager.getKeySlotsRevokedByRotation().stream().map(KeySlot::type).toList());
+        dbManager.beginDataKeyRotation();
+
+        reopen();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        dbManager.awaitMaintenance();
+        assertFalse(dbManager.isDataKeyRotationPending());
+        assertEquals(List.of(KeySlot.PASSWORD_KEY_FILE), dbManager.getKeySlots().stream().map(KeySlot::type).toList());
+
+        reopen();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertThrows(java.sql.SQLException.class, () -> dbManager.beginDataKeyRotation(),
+            "Without the key file its slot could not be kept");
+        reopen();
+        assertTrue(dbManager.unlockWithKeyFile(TEST_MASTER_PASSWORD, keyFile));
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+    }
+
+    @Test
+    void testRecoveryCodeFormat() {
+        RecoveryCode code = RecoveryCode.generate();
+        assertEquals(code, RecoveryCode.parse(code.toString()));
+        assertNull(RecoveryCode.parse("not a code"));
+        assertNull(RecoveryCode.parse(code.toString() + "A"));
+    }
+
+    private String createAccount() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        String keyFile = tempDir.resolve("vault.key").toString();
+        SecurityKeyManager.generateKeyFile(TEST_MASTER_PASSWORD, keyFile);
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Account", "user", "secret", "", "", ""));
+        reopen();
+        return keyFile;
+    }
+
+    private void reopen() {
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+    }
+}
@@ -0,0 +1,63 @@
+package com.passwordmanager.security;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NoteCompressorTest {
+    private static final String SSH_CONFIG = """
+        Host bastion
+            HostName bastion.example.com
+            User deploy
+            Port 22
+            IdentityFile ~/.ssh/id_ed25519
+            ServerAliveInterval 60
+        Host app-*
+            ProxyJump bastion
+            User deploy
+            IdentityFile ~/.ssh/id_ed25519
+            IdentitiesOnly yes
+        """.repeat(4);
+
+    @Test
+    void testLongNotesAreCompressedAndRoundTrip() throws Exception {
+        Encryptor encryptor = new Encryptor(Encryptor.generateDEK());
+        String plain = encryptor.encrypt(SecretBuffer.of(SSH_CONFIG));
+        String compressed = encryptor.encryptCompressed(SecretBuffer.of(SSH_CONFIG));
+
+        assertTrue(compressed.length() < plain.length() / 3,
+            "Config text should shrink to well under a third: " + compressed.length() + " vs " + plain.length());
+        assertEquals(SSH_CONFIG, encryptor.decryptSecret(compressed).asString());
+        assertEquals(SSH_CONFIG, encryptor.decrypt(compressed));
+
+        Encryptor target = new Encryptor(Encryptor.generateDEK(), CipherSuite.CHACHA20_POLY1305);
+        String rotated = encryptor.reencrypt(compressed, target);
+        assertEquals(compressed.length(), rotated.length(), "Re-encryption should keep the value compressed");
+        assertEquals(SSH_CONFIG, target.decrypt(rotated));
+    }
+
+    @Test
+    void testShortNotesAreNotCompressed() throws Exception {
+        Encryptor encryptor = new Encryptor(Encryptor.generateDEK());
+        byte[] stored = Base64.getDecoder().decode(encryptor.encryptCompressed(SecretBuffer.of("PIN 1234")));
+        assertEquals(CipherSuite.AES_GCM.id(), stored[2], "Short notes should not carry the compressed flag");
+        assertNull(NoteCompressor.compress("x".repeat(NoteCompressor.THRESHOLD - 1).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testOversizedStreamIsRejected() {
+        Deflater deflater = new Deflater();
+        deflater.setInput(new byte[NoteCompressor.MAX_INFLATED_LENGTH + 1]);
+        deflater.finish();
+        byte[] buffer = new byte[64 * 1024];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        byte[] bomb = Arrays.copyOf(buffer, length);
+
+        assertThrows(DataFormatException.class, () -> NoteCompressor.decompress(bomb));
+    }
+}
@@ -0,0 +1,66 @@
+package com.passwordmanager.security;
+
+import com.passwordmanager.database.DatabaseManager;
+import org.junit.jupiter.api.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HexFormat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScryptTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+
+    @Test
+    void testRfc7914Vector() throws Exception {
+        byte[] key = Scrypt.scrypt(
+            "password".getBytes(StandardCharsets.UTF_8),
+            "NaCl".getBytes(StandardCharsets.UTF_8),
+            1024, 8, 16, 64);
+
+        assertEquals(
+            "fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640",
+            HexFormat.of().formatHex(key));
+    }
+
+    @Test
+    void testRejectsInvalidCost() {
+        byte[] password = "password".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> Scrypt.scrypt(password, password, 1000, 8, 1, 32));
+        assertThrows(IllegalArgumentException.class, () -> Scrypt.scrypt(password, password, 1024, 0, 1, 32));
+    }
+
+    @Test
+    void testMemoryIsCappedWhateverTheCoreCount() {
+        KdfParameters params = Scrypt.recommended("salt");
+        assertTrue(128L * params.blockSize() * params.iterations() * params.parallelism() <= Scrypt.MAX_MEMORY_BYTES);
+        assertEquals(1, Scrypt.concurrentLanes(1 << 20, 8), "A lane larger than the cap still runs, alone");
+        assertEquals(Scrypt.MAX_MEMORY_BYTES / (128 * 8 * 1024), Scrypt.concurrentLanes(1024, 8));
+    }
+
+    @Test
+    void testScryptUser() throws Exception {
+        java.io.File dbFile = new java.io.File("passwords.db");
+        dbFile.delete();
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD, KdfParameters.SCRYPT));
+            try (PreparedStatement stmt = dbManager.getConnection()
+                    .prepareStatement("SELECT " + KdfParameters.COLUMNS + " FROM users")) {
+                ResultSet rs = stmt.executeQuery();
+                assertTrue(rs.next());
+                KdfParameters params = KdfParameters.fromResultSet(rs);
+                assertEquals(KdfParameters.SCRYPT, params.algorithm());
+                assertEquals(Scrypt.DEFAULT_BLOCK_SIZE, params.blockSize());
+            }
+
+            assertTrue(dbManager.verifyMasterPassword(TEST_MASTER_PASSWORD));
+            assertFalse(dbManager.verifyMasterPassword("WrongPassword123!"));
+            dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        } finally {
+            dbManager.closeConnection();
+            dbFile.delete();
+        }
+    }
+}
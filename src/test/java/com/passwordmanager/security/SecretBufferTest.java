@@ -0,0 +1,56 @@
+package com.passwordmanager.security;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretBufferTest {
+
+    @Test
+    void testRoundTrip() {
+        try (SecretBuffer secret = SecretBuffer.of("pässwörd-€")) {
+            assertEquals(10, secret.length());
+            assertEquals("pässwörd-€", secret.asString());
+            assertArrayEquals("pässwörd-€".toCharArray(), secret.toCharArray());
+            assertArrayEquals("pässwörd-€".getBytes(StandardCharsets.UTF_8), secret.toBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testFromBytes() {
+        byte[] encoded = "secret ✓".getBytes(StandardCharsets.UTF_8);
+        try (SecretBuffer secret = SecretBuffer.fromBytes(encoded, StandardCharsets.UTF_8)) {
+            assertEquals("secret ✓", secret.asString());
+            assertEquals(8, secret.length());
+        }
+    }
+
+    @Test
+    void testContentEquals() {
+        SecretBuffer a = SecretBuffer.of("same");
+        SecretBuffer b = SecretBuffer.of("same");
+        SecretBuffer c = SecretBuffer.of("different");
+        assertTrue(SecretBuffer.contentEquals(a, b));
+        assertFalse(SecretBuffer.contentEquals(a, c));
+        assertFalse(SecretBuffer.contentEquals(a, null));
+        assertTrue(SecretBuffer.contentEquals(null, null));
+    }
+
+    @Test
+    void testClosedBufferCannotBeRead() {
+        SecretBuffer secret = SecretBuffer.of("wipe me");
+        secret.close();
+        assertTrue(secret.isClosed());
+        assertThrows(IllegalStateException.class, secret::asString);
+        secret.close();
+    }
+
+    @Test
+    void testEmptyAndNull() {
+        assertNull(SecretBuffer.of((String) null));
+        try (SecretBuffer empty = SecretBuffer.of("")) {
+            assertTrue(empty.isEmpty());
+            assertEquals("", empty.asString());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.passwordmanager.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecureWiperTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSecureDeleteFile() throws Exception {
+        Path file = tempDir.resolve("secret.txt");
+        Files.write(file, new byte[3 * 1024 * 1024 + 17]);
+
+        SecureWiper.secureDeleteFile(file.toFile(), WipePolicy.SINGLE_PASS);
+
+        assertFalse(Files.exists(file), "File should be deleted after wiping");
+    }
+
+    @Test
+    void testSecureTempCleanup() throws Exception {
+        Path nested = Files.createDirectories(tempDir.resolve("cleanup/nested"));
+        Files.createDirectories(nested.resolve("deeper"));
+        Files.writeString(tempDir.resolve("cleanup/a.txt"), "secret a");
+        Files.writeString(nested.resolve("b.txt"), "secret b");
+        Files.writeString(nested.resolve("deeper/c.txt"), "secret c");
+        Files.createFile(nested.resolve("empty.txt"));
+
+        SecureWiper.secureTempCleanup(tempDir.resolve("cleanup").toFile());
+
+        assertFalse(Files.exists(tempDir.resolve("cleanup")), "Directory tree should be deleted");
+    }
+
+    @Test
+    void testInMemoryWipesEndWithZeros() {
+        char[] chars = "correct horse battery staple".repeat(300).toCharArray();
+        SecureWiper.wipeCharArray(chars);
+        for (char c : chars) {
+            assertEquals('\u0000', c);
+        }
+
+        byte[] bytes = new byte[10_000];
+        Arrays.fill(bytes, (byte) 42);
+        SecureWiper.wipeByteArray(bytes);
+        assertArrayEquals(new byte[10_000], bytes);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100_000);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 7);
+        }
+        SecureWiper.wipeBuffer(buffer);
+        while (buffer.hasRemaining()) {
+            assertEquals(0, buffer.get());
+        }
+    }
+
+    @Test
+    void testKeystreamIsNotConstant() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        new KeystreamGenerator().fill(buffer);
+        buffer.flip();
+
+        int zeros = 0;
+        while (buffer.hasRemaining()) {
+            if (buffer.get() == 0) {
+                zeros++;
+            }
+        }
+        assertTrue(zeros < 100, "Keystream should not be mostly zeros");
+    }
+
+    @Test
+    void testWipePolicyRequiresAPass() {
+        assertThrows(IllegalArgumentException.class, () -> new WipePolicy(0, false));
+        assertEquals(4, WipePolicy.MULTI_PASS.totalPasses());
+        assertEquals(1, WipePolicy.SINGLE_PASS.totalPasses());
+    }
+}
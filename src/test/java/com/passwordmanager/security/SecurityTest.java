@@ -71,6 +71,7 @@ public class SecurityTest {
         forceOldSaltTimestamp();
         
         dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.awaitMaintenance();
         
         String newSalt = getCurrentSalt();
         assertNotNull(newSalt, "New salt should not be null");
@@ -82,6 +83,203 @@ public class SecurityTest {
             "Authentication should still work after salt rotation");
     }
 
+    @Test
+    void testSaltHistoryRetention() throws SQLException, ValidationException {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        String firstSalt = getCurrentSalt();
+
+        forceOldSaltTimestamp();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.awaitMaintenance();
+        String secondSalt = getCurrentSalt();
+
+        SaltManager saltManager = new SaltManager(dbManager.getConnection(), dbManager.getCurrentUserId(), TEST_MASTER_PASSWORD);
+        assertFalse(saltManager.shouldRotateSalt(), "A fresh salt should not be rotated again");
+        assertEquals(java.util.List.of(secondSalt, firstSalt), saltManager.getActiveSalts(),
+            "A recently retired salt should still be active");
+
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE salt_history SET retired_at = datetime('now', '-31 days') WHERE retired_at IS NOT NULL");
+        }
+        assertEquals(java.util.List.of(secondSalt), saltManager.getActiveSalts());
+
+        forceOldSaltTimestamp();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.awaitMaintenance();
+
+        assertFalse(isSaltInHistory(firstSalt), "Salts retired before the retention period should be pruned");
+        assertTrue(isSaltInHistory(secondSalt), "The salt retired by this rotation should be kept");
+        assertTrue(dbManager.verifyMasterPassword(TEST_MASTER_PASSWORD));
+    }
+
+    @Test
+    void testDataKeyRotation() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Test Account", "testuser", "secretpassword", "https://test.com", "notes", "Test"));
+        byte[] oldDek = dbManager.getMasterKey().getEncoded();
+
+        dbManager.rotateDataKey().join();
+
+        assertFalse(dbManager.isDataKeyRotationPending());
+        assertFalse(java.util.Arrays.equals(oldDek, dbManager.getMasterKey().getEncoded()), "DEK should have changed");
+        assertEquals(0, countRowsWithKeyVersion(0), "Every entry should be on the new key");
+        assertEquals("secretpassword", dbManager.getAllPasswords().get(0).getPassword());
+
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertEquals("secretpassword", dbManager.getAllPasswords().get(0).getPassword(),
+            "The new DEK should be unwrapped at the next login");
+    }
+
+    @Test
+    void testVaultLoadedDuringRotationStaysReadableUntilReloaded() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Old Account", "olduser", "oldpassword", "", "", "Work"));
+
+        dbManager.beginDataKeyRotation();
+        dbManager.addPasswordEntry(new PasswordEntry("New Account", "newuser", "newpassword", "", "", "Work"));
+        dbManager.flushEntryChanges();
+        assertEquals(java.util.List.of("Work"), dbManager.getAllCategories(),
+            "A category on both key versions should be listed once");
+
+        var vault = dbManager.loadVault();
+        dbManager.resumeDataKeyRotation();
+        assertFalse(dbManager.isDataKeyRotationPending());
+        try (SecretBuffer password = vault.decryptPassword(vault.indexOf(findEntryId("Old Account")))) {
+            assertEquals("oldpassword", password.asString(), "The retired key should outlive the rotation");
+        }
+
+        var reloaded = dbManager.loadVault();
+        dbManager.wipeRetiredKey();
+        try (SecretBuffer password = reloaded.decryptPassword(reloaded.indexOf(findEntryId("Old Account")))) {
+            assertEquals("oldpassword", password.asString());
+        }
+    }
+
+    @Test
+    void testInterruptedKeyRotationResumesAtLogin() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Old Account", "olduser", "oldpassword", "", "", ""));
+
+        // Stop after the new key is stored, as if the application quit before re-encrypting
+        dbManager.beginDataKeyRotation();
+        dbManager.addPasswordEntry(new PasswordEntry("New Account", "newuser", "newpassword", "", "", ""));
+        dbManager.flushEntryChanges();
+        assertEquals(1, countRowsWithKeyVersion(0), "Existing entries should still be on the old key");
+        assertEquals("oldpassword", dbManager.getPasswordEntry(findEntryId("Old Account")).getPassword());
+        var vault = dbManager.loadVault();
+        try (SecretBuffer password = vault.decryptPassword(vault.indexOf(findEntryId("Old Account")))) {
+            assertEquals("oldpassword", password.asString(), "The vault should stay readable during rotation");
+        }
+        assertThrows(SQLException.class, () -> dbManager.getMasterKey(), "Backups should wait for the rotation");
+        dbManager.closeConnection();
+
+        dbManager = new DatabaseManager();
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.awaitMaintenance();
+
+        assertFalse(dbManager.isDataKeyRotationPending(), "The rotation should resume and finish after login");
+        assertEquals(0, countRowsWithKeyVersion(0));
+        assertEquals("oldpassword", dbManager.getPasswordEntry(findEntryId("Old Account")).getPassword());
+        assertEquals("newpassword", dbManager.getPasswordEntry(findEntryId("New Account")).getPassword());
+    }
+
+    @Test
+    void testCloseSessionWipesEntries() throws SQLException, ValidationException {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Test Account", "testuser", "secretpassword", "", "", ""));
+
+        PasswordEntry retrieved = dbManager.getAllPasswords().get(0);
+        SecretBuffer password = retrieved.getPasswordSecret();
+        assertEquals("secretpassword", password.asString());
+
+        dbManager.closeSession();
+
+        assertTrue(password.isClosed(), "Secrets should be wiped when the session closes");
+        assertNull(retrieved.getPassword(), "Entry should be cleared when the session closes");
+        assertEquals("secretpassword", dbManager.getAllPasswords().get(0).getPassword(),
+            "A new session should still be able to load entries");
+    }
+
+    @Test
+    void testLegacyKdfUpgradedOnLogin() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD), "User creation should succeed");
+        int calibrated = KdfCalibrator.calibratedIterations();
+        assertEquals(calibrated, getKdfIterations(), "New users should get the calibrated work factor");
+
+        downgradeToLegacyKdf();
+        assertEquals(KdfParameters.LEGACY_ITERATIONS, getKdfIterations());
+        assertTrue(dbManager.verifyMasterPassword(TEST_MASTER_PASSWORD), "Legacy parameters should still verify");
+
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertEquals(calibrated, getKdfIterations(), "Login should upgrade the work factor");
+
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager();
+        assertTrue(dbManager.verifyMasterPassword(TEST_MASTER_PASSWORD), "Upgraded parameters should verify");
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+    }
+
+    @Test
+    void testCalibrationScalesWithTarget() {
+        int fast = KdfCalibrator.calibrate(10);
+        int slow = KdfCalibrator.calibrate(1000);
+        assertTrue(fast >= KdfParameters.LEGACY_ITERATIONS, "Calibration should never go below the legacy count");
+        assertTrue(slow > fast, "A longer target should give more iterations");
+    }
+
+    private int getKdfIterations() throws SQLException {
+        try (PreparedStatement stmt = dbManager.getConnection()
+                .prepareStatement("SELECT kdf_iterations FROM users LIMIT 1")) {
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    private void downgradeToLegacyKdf() throws Exception {
+        Connection connection = dbManager.getConnection();
+        KdfParameters current;
+        String encryptedDek;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT current_salt, kdf_algorithm, kdf_iterations, encrypted_dek FROM users LIMIT 1")) {
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            current = KdfParameters.fromResultSet(rs);
+            encryptedDek = rs.getString("encrypted_dek");
+        }
+
+        javax.crypto.SecretKey dek = Encryptor.decryptDEK(encryptedDek,
+            Encryptor.deriveKEK(TEST_MASTER_PASSWORD, current));
+        String legacyDek = Encryptor.encryptDEK(dek, Encryptor.deriveKEK(TEST_MASTER_PASSWORD, current.salt()));
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE users SET kdf_iterations = ?, encrypted_dek = ?")) {
+            stmt.setInt(1, KdfParameters.LEGACY_ITERATIONS);
+            stmt.setString(2, legacyDek);
+            stmt.executeUpdate();
+        }
+    }
+
+    private int countRowsWithKeyVersion(int version) throws SQLException {
+        try (PreparedStatement stmt = dbManager.getConnection()
+                .prepareStatement("SELECT COUNT(*) FROM passwords WHERE key_version = ?")) {
+            stmt.setInt(1, version);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private int findEntryId(String title) throws SQLException {
+        return dbManager.getEntrySummaries().stream()
+            .filter(summary -> summary.getTitle().equals(title))
+            .findFirst().orElseThrow().getId();
+    }
+
     private String getCurrentSalt() throws SQLException {
         try (PreparedStatement stmt = dbManager.getConnection()
                 .prepareStatement("SELECT current_salt FROM users LIMIT 1")) {
@@ -0,0 +1,85 @@
+package com.passwordmanager.security;
+
+import com.passwordmanager.database.DatabaseManager;
+import com.passwordmanager.model.PasswordEntry;
+import org.junit.jupiter.api.*;
+import java.io.File;
+import java.sql.SQLException;
+import java.time.Duration;
+import javax.crypto.SecretKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTicketTest {
+    private static final String TEST_MASTER_PASSWORD = "TestPassword123!";
+    private static final String PIN = "4711";
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() {
+        new File("passwords.db").delete();
+        dbManager = new DatabaseManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        new File("passwords.db").delete();
+    }
+
+    @Test
+    void testTicketUnwrapsTheDekUntilAttemptsRunOut() throws Exception {
+        SecretKey dek = Encryptor.generateDEK();
+        SessionTicket ticket = SessionTicket.issue(dek, PIN, Duration.ofMinutes(5));
+
+        assertArrayEquals(dek.getEncoded(), ticket.redeem(PIN).getEncoded());
+        for (int i = 1; i < SessionTicket.MAX_ATTEMPTS; i++) {
+            assertNull(ticket.redeem("0000"));
+            assertTrue(ticket.isUsable());
+        }
+        assertNotNull(ticket.redeem(PIN), "A correct PIN should reset the attempt count");
+
+        for (int i = 0; i < SessionTicket.MAX_ATTEMPTS; i++) {
+            assertNull(ticket.redeem("0000"));
+        }
+        assertFalse(ticket.isUsable());
+        assertNull(ticket.redeem(PIN), "A used up ticket should not unlock with the right PIN");
+    }
+
+    @Test
+    void testExpiredTicketIsRejected() throws Exception {
+        SessionTicket ticket = SessionTicket.issue(Encryptor.generateDEK(), PIN, Duration.ZERO);
+        assertFalse(ticket.isUsable());
+        assertNull(ticket.redeem(PIN));
+    }
+
+    @Test
+    void testLockAndQuickUnlock() throws Exception {
+        assertTrue(dbManager.createUser(TEST_MASTER_PASSWORD));
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        dbManager.addPasswordEntry(new PasswordEntry("Account", "user", "secret", "", "", ""));
+        assertThrows(InputValidator.ValidationException.class, () -> dbManager.enableQuickUnlock("12"));
+        dbManager.enableQuickUnlock(PIN);
+
+        dbManager.lock();
+        assertTrue(dbManager.isLocked());
+        assertThrows(SQLException.class, () -> dbManager.getAllPasswords(), "A locked vault should not decrypt");
+        assertFalse(dbManager.quickUnlock("0000"));
+        assertTrue(dbManager.quickUnlock(PIN));
+        assertFalse(dbManager.isLocked());
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+
+        dbManager.lockInBackground().join();
+        assertTrue(dbManager.isLocked());
+        for (int i = 0; i < SessionTicket.MAX_ATTEMPTS; i++) {
+            assertFalse(dbManager.quickUnlock("0000"));
+        }
+        assertFalse(dbManager.canQuickUnlock());
+        assertFalse(dbManager.quickUnlock(PIN), "The PIN should stop working after too many wrong attempts");
+
+        dbManager.initializeDatabase(TEST_MASTER_PASSWORD);
+        assertFalse(dbManager.isLocked(), "The master password should still unlock the vault");
+        assertEquals("secret", dbManager.getAllPasswords().get(0).getPassword());
+    }
+}